@@ -3,14 +3,17 @@ package com.ncwu.iotdevice.AOP.Aspects;
 
 import com.ncwu.iotdevice.AOP.annotation.CloseValue;
 import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import com.ncwu.iotdevice.simulation.transform.ValveClosedTransformer;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.core.annotation.Order;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * 用于将流量设置为0
  * @author jingxu
@@ -23,16 +26,13 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class ClosedTheValue {
 
-    private final StringRedisTemplate redisTemplate;
+    private final SimulationContextHolder contextHolder;
+    private final ValveClosedTransformer valveClosedTransformer;
 
     @Around("@annotation(closeValue)")
     public Object makeFlowToZero(ProceedingJoinPoint proceedingJoinPoint, CloseValue closeValue) throws Throwable {
         MeterDataBo dataBo = (MeterDataBo) proceedingJoinPoint.getArgs()[0];
-        Boolean isClosed = redisTemplate.opsForSet().isMember("meter_closed", dataBo.getDeviceId());
-        if (Boolean.TRUE.equals(isClosed)){
-            dataBo.setFlow(0.0);
-            dataBo.setIsOpen("closed");
-        }
-        return proceedingJoinPoint.proceed(new Object[]{dataBo});
+        valveClosedTransformer.apply(dataBo, contextHolder.current(), ThreadLocalRandom.current());
+        return proceedingJoinPoint.proceed();
     }
 }
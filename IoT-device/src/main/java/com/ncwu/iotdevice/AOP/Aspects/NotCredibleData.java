@@ -2,8 +2,9 @@ package com.ncwu.iotdevice.AOP.Aspects;
 
 
 import com.ncwu.iotdevice.AOP.annotation.NotCredible;
-import com.ncwu.iotdevice.config.ServerConfig;
 import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import com.ncwu.iotdevice.simulation.transform.NotCredibleTransformer;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
@@ -13,8 +14,6 @@ import org.springframework.stereotype.Component;
 
 import java.util.concurrent.ThreadLocalRandom;
 
-import static com.ncwu.iotdevice.utils.Utils.keep3;
-
 /**
  * 一定概率的将数据置为不可信
  *
@@ -27,37 +26,14 @@ import static com.ncwu.iotdevice.utils.Utils.keep3;
 @RequiredArgsConstructor
 public class NotCredibleData {
 
-    private final ServerConfig serverConfig;
+    private final SimulationContextHolder contextHolder;
+    private final NotCredibleTransformer notCredibleTransformer;
 
     @Order(3)
     @Around("@annotation(notCredible)")
     public Object makeDataNotCredible(ProceedingJoinPoint pjp, NotCredible notCredible) throws Throwable {
-        double pnotCredible = serverConfig.getPnotCredible();
-        double v = Math.random();
-        //事件发生
-        if (v <= pnotCredible) {
-
-            return pjp.proceed(new MeterDataBo[]{dataNotCredibleProcessor(pjp)});
-        } else {
-            return pjp.proceed();
-        }
-    }
-
-    /**
-     * 污染原来的数据
-     */
-    public MeterDataBo dataNotCredibleProcessor(ProceedingJoinPoint pjp) {
-        MeterDataBo dataBo = (MeterDataBo) pjp.getArgs()[0];
-        double p = ThreadLocalRandom.current().nextDouble(1);
-        if (p <= 0.4) {
-            dataBo.setFlow(keep3(dataBo.getFlow() * ThreadLocalRandom.current().nextDouble(3, 5)));
-        } else if (p <= 0.8) {
-            dataBo.setWaterTem(keep3(dataBo.getWaterTem() * ThreadLocalRandom.current().nextDouble(2, 4)));
-        } else {
-            dataBo.setPressure(keep3(dataBo.getPressure() * ThreadLocalRandom.current().nextDouble(2, 4)));
-        }
-        //模拟边缘设备计算
-        dataBo.setStatus("error");
-        return dataBo;
+        //原地修改入参，无需重建参数数组
+        notCredibleTransformer.apply((MeterDataBo) pjp.getArgs()[0], contextHolder.current(), ThreadLocalRandom.current());
+        return pjp.proceed();
     }
 }
@@ -1,12 +0,0 @@
-package com.ncwu.iotdevice.AOP.annotation;
-
-import java.lang.annotation.ElementType;
-import java.lang.annotation.Retention;
-import java.lang.annotation.RetentionPolicy;
-import java.lang.annotation.Target;
-
-@Target({ElementType.METHOD})
-@Retention(RetentionPolicy.RUNTIME)
-public @interface InitLuaScript {
-     String value() default "setHashValues.lua"; // Lua 脚本路径
-}
\ No newline at end of file
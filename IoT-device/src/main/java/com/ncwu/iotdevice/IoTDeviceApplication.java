@@ -1,15 +1,22 @@
 package com.ncwu.iotdevice;
 
+import com.ncwu.common.cache.NamespaceEpochConfig;
+import com.ncwu.common.clock.VirtualClockConfig;
+import com.ncwu.common.registry.DeviceRegistryConfig;
+import com.ncwu.common.valve.ValveCommandConfig;
 import org.apache.dubbo.config.spring.context.annotation.EnableDubbo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @EnableScheduling
 @EnableDubbo
 @SpringBootApplication
+@Import({DeviceRegistryConfig.class, ValveCommandConfig.class, VirtualClockConfig.class,
+        NamespaceEpochConfig.class})
 @EnableAspectJAutoProxy(exposeProxy = true) // 必须设置为 true
 public class IoTDeviceApplication {
 
@@ -0,0 +1,630 @@
+package com.ncwu.iotdevice.cluster;
+
+
+import com.ncwu.iotdevice.service.DeviceStatusCache;
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.MeterKind;
+import com.ncwu.iotdevice.simulation.SensorIndex;
+import com.ncwu.iotdevice.simulation.SimulationEngine;
+import com.ncwu.iotdevice.simulation.WaterQualityKind;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟器的分区归属与租约
+ * <p>
+ * 设备按 {@link ShardRing} 划分到固定数量的分区，分区按 nacos 中的实例列表做一致性哈希分配给节点。
+ * 节点只模拟自己持有 redis 租约的分区，租约由本节点定时续约，节点宕机后租约自然过期，由新的归属节点接管；
+ * 换主时旧节点先停止本地模拟再释放租约，新节点拿到租约后才开始模拟，同一台设备不会被两个节点同时上报。
+ * <p>
+ * 期望运行的设备按分区保存在 redis 集合中，与节点无关。启停接口在任意节点上调用时只修改这些集合，
+ * 再通过 redis 订阅广播给所有节点，各节点只处理自己持有的分区；接管分区的节点从集合中恢复运行状态。
+ * 设备是否已注册与各类设备的总数同样保存在 redis 的 {@link #STATE_KEY} 中，任意节点(包括重启后的节点)
+ * 收到启停请求时都从这里判断，不依赖执行了注册的那个节点的本地状态。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+@Slf4j
+@Component
+public class ShardCoordinator implements MessageListener {
+
+    /**
+     * 启停广播频道，消息格式为 类型:操作[:设备编号列表]
+     */
+    public static final String CHANNEL = "simulator:shard";
+    public static final int METER = 1;
+    public static final int SENSOR = 2;
+
+    private static final String LEASE_PREFIX = "simulator:lease:";
+    private static final String RUNNING_PREFIX = "simulator:running:";
+    private static final String NODES_KEY = "simulator:nodes";
+    /**
+     * 集群共享的注册状态：init 为 1 表示设备已全部注册，meter / sensor 为各类设备总数
+     */
+    public static final String STATE_KEY = "simulator:state";
+    private static final String INIT_FIELD = "init";
+    /**
+     * 租约时长与续约周期，续约周期为租约时长的三分之一，连续两次续约失败仍有余量
+     */
+    private static final long LEASE_TTL_MS = 15_000;
+    private static final long RENEW_MS = 5_000;
+    private static final int SCAN_COUNT = 2000;
+
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> leaseScript = new DefaultRedisScript<>();
+    private final DefaultRedisScript<Long> releaseScript = new DefaultRedisScript<>();
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<DiscoveryClient> discoveryClient;
+    private final ObjectProvider<Registration> registration;
+    private final DeviceIndex deviceIndex;
+    private final SensorIndex sensorIndex;
+    private final SimulationEngine simulationEngine;
+    private final MeterKind meterKind;
+    private final WaterQualityKind waterQualityKind;
+    private final DeviceStatusCache statusCache;
+    private final MeterRegistry meterRegistry;
+    private final String serviceId;
+    private final int serverPort;
+
+    private String nodeId;
+    private volatile ShardRing ring = new ShardRing(List.of());
+    /**
+     * 本节点持有租约的分区，写入在 this 的锁内进行，读取使用不可变副本
+     */
+    private final BitSet held = new BitSet(ShardRing.PARTITIONS);
+    private volatile BitSet heldView = new BitSet(ShardRing.PARTITIONS);
+    private long leaseDeadlineNanos;
+    private volatile boolean reloadRequested;
+
+    public ShardCoordinator(StringRedisTemplate redisTemplate,
+                            ObjectProvider<DiscoveryClient> discoveryClient,
+                            ObjectProvider<Registration> registration,
+                            DeviceIndex deviceIndex, SensorIndex sensorIndex,
+                            SimulationEngine simulationEngine,
+                            MeterKind meterKind, WaterQualityKind waterQualityKind,
+                            DeviceStatusCache statusCache, MeterRegistry meterRegistry,
+                            @Value("${spring.application.name}") String serviceId,
+                            @Value("${server.port:8080}") int serverPort) {
+        this.redisTemplate = redisTemplate;
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.deviceIndex = deviceIndex;
+        this.sensorIndex = sensorIndex;
+        this.simulationEngine = simulationEngine;
+        this.meterKind = meterKind;
+        this.waterQualityKind = waterQualityKind;
+        this.statusCache = statusCache;
+        this.meterRegistry = meterRegistry;
+        this.serviceId = serviceId;
+        this.serverPort = serverPort;
+        leaseScript.setLocation(new ClassPathResource("shardLease.lua"));
+        leaseScript.setResultType(List.class);
+        releaseScript.setLocation(new ClassPathResource("shardRelease.lua"));
+        releaseScript.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    void init() {
+        //拓扑变化后状态表重建，运行状态丢失，下一次续约时从期望运行集合恢复
+        deviceIndex.addRebuildListener(() -> reloadRequested = true);
+        Gauge.builder("simulator.shard.partitions", this, c -> c.heldView.cardinality())
+                .description("本节点持有租约的分区数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 节点退出时停止本地模拟并主动释放租约，其他节点在下一次续约时即可接管，不必等待租约过期
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (nodeId == null || held.isEmpty()) {
+            return;
+        }
+        try {
+            stopPartitions(held);
+            releaseLeases(held);
+            redisTemplate.opsForHash().delete(NODES_KEY, nodeId);
+        } catch (Exception e) {
+            log.warn("释放分区租约失败，等待租约过期: {}", e.getMessage());
+        }
+        held.clear();
+        heldView = new BitSet(ShardRing.PARTITIONS);
+    }
+
+    /**
+     * 设备是否归本节点模拟
+     */
+    public boolean owns(String deviceId) {
+        return heldView.get(ShardRing.partitionOf(deviceId));
+    }
+
+    /**
+     * 本节点是否为集群中最后一个模拟器节点
+     */
+    public boolean isLastMember() {
+        String self = nodeId();
+        return self == null || members(self).size() <= 1;
+    }
+
+    // ------------------------------------------------------------------ 启停，任意节点调用
+
+    /**
+     * 将某一类的全部已注册设备加入期望运行集合，并通知各节点开始模拟
+     * <p>
+     * 以 SSCAN 分块读取注册集合，每块按分区分组后在一次 pipeline 中写入
+     *
+     * @return 加入的设备数量
+     */
+    public long startAll(int type) {
+        long total = 0;
+        List<String> chunk = new ArrayList<>(SCAN_COUNT);
+        ScanOptions options = ScanOptions.scanOptions().count(SCAN_COUNT).build();
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan("device:" + name(type), options)) {
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == SCAN_COUNT) {
+                    total += chunk.size();
+                    writeDesired(type, chunk, true);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            total += chunk.size();
+            writeDesired(type, chunk, true);
+        }
+        publish(type, "*+", null);
+        return total;
+    }
+
+    /**
+     * 将一批设备加入期望运行集合，归属节点收到通知后开始模拟
+     */
+    public void start(int type, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        writeDesired(type, ids, true);
+        publish(type, "+", ids);
+    }
+
+    /**
+     * 清空某一类的期望运行集合，所有节点停止该类设备的模拟
+     */
+    public void stopAll(int type) {
+        List<String> keys = new ArrayList<>(ShardRing.PARTITIONS);
+        for (int p = 0; p < ShardRing.PARTITIONS; p++) {
+            keys.add(runningKey(type, p));
+        }
+        redisTemplate.delete(keys);
+        publish(type, "*-", null);
+    }
+
+    /**
+     * 将一批设备移出期望运行集合，归属节点收到通知后停止模拟
+     */
+    public void stop(int type, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        writeDesired(type, ids, false);
+        publish(type, "-", ids);
+    }
+
+    /**
+     * 整个集群期望运行的设备数量，一次 pipeline 读取全部分区的 SCARD
+     */
+    public long desiredCount(int type) {
+        List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int p = 0; p < ShardRing.PARTITIONS; p++) {
+                connection.setCommands().sCard(bytes(runningKey(type, p)));
+            }
+            return null;
+        });
+        long total = 0;
+        for (Object size : sizes) {
+            if (size instanceof Long n) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 集群状态：各节点最近一次续约时上报的分区数与本地运行设备数，过期的节点条目顺带清理
+     */
+    public ClusterStatus status() {
+        String self = nodeId();
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(NODES_KEY);
+        long now = System.currentTimeMillis();
+        List<NodeStatus> nodes = new ArrayList<>();
+        List<Object> stale = new ArrayList<>();
+        entries.forEach((node, value) -> {
+            String[] parts = value.toString().split(",");
+            long updatedAt = Long.parseLong(parts[3]);
+            if (now - updatedAt > 3 * LEASE_TTL_MS) {
+                stale.add(node);
+                return;
+            }
+            nodes.add(new NodeStatus(node.toString(), Integer.parseInt(parts[0]),
+                    Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), updatedAt));
+        });
+        if (!stale.isEmpty()) {
+            redisTemplate.opsForHash().delete(NODES_KEY, stale.toArray());
+        }
+        nodes.sort(Comparator.comparing(NodeStatus::node));
+        return new ClusterStatus(self, ring.nodes(), nodes);
+    }
+
+    public record NodeStatus(String node, int partitions, int meters, int sensors, long updatedAt) {
+    }
+
+    public record ClusterStatus(String self, List<String> members, List<NodeStatus> nodes) {
+    }
+
+    // ------------------------------------------------------------------ 注册状态，任意节点读取
+
+    /**
+     * 设备全部注册完成后记录注册状态与各类设备总数
+     */
+    public void markInitialized(long meters, long sensors) {
+        redisTemplate.opsForHash().putAll(STATE_KEY, Map.of(
+                INIT_FIELD, "1",
+                name(METER), String.valueOf(meters),
+                name(SENSOR), String.valueOf(sensors)));
+    }
+
+    /**
+     * 设备是否已完成注册
+     */
+    public boolean isInitialized() {
+        return "1".equals(redisTemplate.opsForHash().get(STATE_KEY, INIT_FIELD));
+    }
+
+    /**
+     * 某一类已注册的设备总数，未注册时为 0
+     */
+    public long registeredCount(int type) {
+        Object count = redisTemplate.opsForHash().get(STATE_KEY, name(type));
+        return count == null ? 0 : Long.parseLong(count.toString());
+    }
+
+    /**
+     * 清除注册状态，设备数据被清空后调用
+     */
+    public void clearInitialized() {
+        redisTemplate.delete(STATE_KEY);
+    }
+
+    // ------------------------------------------------------------------ 分区归属与租约
+
+    /**
+     * 刷新成员列表、交出不再属于本节点的分区，并获取或续约属于本节点的分区
+     */
+    @Scheduled(fixedDelay = RENEW_MS)
+    public synchronized void rebalance() {
+        String self = nodeId();
+        if (self == null) {
+            return;
+        }
+        try {
+            List<String> members = members(self);
+            if (!new TreeSet<>(members).equals(new TreeSet<>(ring.nodes()))) {
+                ring = new ShardRing(members);
+                log.info("模拟器节点变化，当前节点 {}", ring.nodes());
+            }
+            //先交出不再属于本节点的分区：停止本地模拟后再释放租约
+            BitSet release = new BitSet(ShardRing.PARTITIONS);
+            for (int p = held.nextSetBit(0); p >= 0; p = held.nextSetBit(p + 1)) {
+                if (!self.equals(ring.ownerOf(p))) {
+                    release.set(p);
+                }
+            }
+            if (!release.isEmpty()) {
+                stopPartitions(release);
+                releaseLeases(release);
+                held.andNot(release);
+                log.info("已交出 {} 个分区", release.cardinality());
+            }
+            //获取或续约属于本节点的分区，被其他节点占用的分区等待其释放或过期
+            List<Integer> desired = ring.partitionsOf(self);
+            long begin = System.nanoTime();
+            BitSet granted = acquireLeases(desired);
+            leaseDeadlineNanos = begin + TimeUnit.MILLISECONDS.toNanos(LEASE_TTL_MS);
+            BitSet lost = (BitSet) held.clone();
+            lost.andNot(granted);
+            BitSet acquired = (BitSet) granted.clone();
+            acquired.andNot(held);
+            if (!lost.isEmpty()) {
+                stopPartitions(lost);
+                log.warn("{} 个分区的租约已被其他节点接管", lost.cardinality());
+            }
+            held.clear();
+            held.or(granted);
+            heldView = (BitSet) held.clone();
+            if (reloadRequested) {
+                reloadRequested = false;
+                acquired = (BitSet) held.clone();
+            }
+            if (!acquired.isEmpty()) {
+                reloadPartitions(acquired);
+                log.info("已接管 {} 个分区，共持有 {} 个", acquired.cardinality(), held.cardinality());
+            }
+            reportStatus(self);
+        } catch (Exception e) {
+            log.warn("分区租约续约失败: {}", e.getMessage());
+            //租约在下一次续约前就会过期时停止本地全部模拟，避免与接管的节点重复上报
+            if (!held.isEmpty() && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RENEW_MS) >= leaseDeadlineNanos) {
+                stopPartitions(held);
+                held.clear();
+                heldView = new BitSet(ShardRing.PARTITIONS);
+                log.error("分区租约即将过期，已停止本节点的全部模拟");
+            }
+        }
+    }
+
+    private BitSet acquireLeases(List<Integer> partitions) {
+        BitSet granted = new BitSet(ShardRing.PARTITIONS);
+        if (partitions.isEmpty()) {
+            return granted;
+        }
+        List<String> keys = partitions.stream().map(p -> LEASE_PREFIX + p).toList();
+        List<?> result = redisTemplate.execute(leaseScript, keys, nodeId, String.valueOf(LEASE_TTL_MS));
+        if (result != null) {
+            for (Object index : result) {
+                granted.set(partitions.get(((Number) index).intValue() - 1));
+            }
+        }
+        return granted;
+    }
+
+    private void releaseLeases(BitSet partitions) {
+        List<String> keys = new ArrayList<>(partitions.cardinality());
+        for (int p = partitions.nextSetBit(0); p >= 0; p = partitions.nextSetBit(p + 1)) {
+            keys.add(LEASE_PREFIX + p);
+        }
+        redisTemplate.execute(releaseScript, keys, nodeId);
+    }
+
+    private void reportStatus(String self) {
+        String value = held.cardinality() + "," + deviceIndex.runningCount() + ","
+                + sensorIndex.runningCount() + "," + System.currentTimeMillis();
+        redisTemplate.opsForHash().put(NODES_KEY, self, value);
+    }
+
+    /**
+     * 节点编号为 nacos 中注册的 ip:port，注册完成前返回 null；未启用服务注册时使用本机地址
+     */
+    public String nodeId() {
+        if (nodeId != null) {
+            return nodeId;
+        }
+        Registration r = registration.getIfAvailable();
+        if (r != null) {
+            if (r.getPort() <= 0) {
+                return null;
+            }
+            nodeId = r.getHost() + ":" + r.getPort();
+        } else {
+            try {
+                nodeId = InetAddress.getLocalHost().getHostAddress() + ":" + serverPort;
+            } catch (UnknownHostException e) {
+                nodeId = "localhost:" + serverPort;
+            }
+        }
+        return nodeId;
+    }
+
+    /**
+     * nacos 中的模拟器实例，查询失败时只包含本节点；此时其他节点持有的租约仍然有效，不会重复模拟
+     */
+    private List<String> members(String self) {
+        List<String> members = new ArrayList<>();
+        DiscoveryClient client = discoveryClient.getIfAvailable();
+        if (client != null) {
+            try {
+                for (ServiceInstance instance : client.getInstances(serviceId)) {
+                    members.add(instance.getHost() + ":" + instance.getPort());
+                }
+            } catch (Exception e) {
+                log.warn("查询模拟器实例列表失败: {}", e.getMessage());
+            }
+        }
+        if (!members.contains(self)) {
+            members.add(self);
+        }
+        return members;
+    }
+
+    // ------------------------------------------------------------------ 本地模拟
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split(":", 3);
+        if (parts.length < 2) {
+            return;
+        }
+        int type = "sensor".equals(parts[0]) ? SENSOR : METER;
+        try {
+            apply(type, parts[1], parts.length == 3 ? Arrays.asList(parts[2].split(",")) : List.of());
+        } catch (Exception e) {
+            log.error("处理分区启停通知失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void apply(int type, String op, List<String> ids) {
+        switch (op) {
+            case "+" -> {
+                BitSet view = heldView;
+                startLocal(type, ids.stream().filter(id -> view.get(ShardRing.partitionOf(id))).toList());
+                statusCache.invalidateAll(ids);
+            }
+            case "-" -> {
+                stopLocal(type, ids);
+                statusCache.invalidateAll(ids);
+            }
+            case "*+" -> {
+                reloadPartitions(held, type);
+                statusCache.invalidateAll();
+            }
+            case "*-" -> {
+                if (type == METER) {
+                    deviceIndex.stopAll();
+                    simulationEngine.disarmAll(meterKind);
+                } else {
+                    sensorIndex.stopAll();
+                    simulationEngine.disarmAll(waterQualityKind);
+                }
+                statusCache.invalidateAll();
+            }
+            default -> log.warn("未知的分区启停操作: {}", op);
+        }
+    }
+
+    private void reloadPartitions(BitSet partitions) {
+        reloadPartitions(partitions, METER);
+        reloadPartitions(partitions, SENSOR);
+    }
+
+    /**
+     * 从期望运行集合恢复一批分区的运行状态，一次 pipeline 读取全部分区
+     */
+    @SuppressWarnings("unchecked")
+    private void reloadPartitions(BitSet partitions, int type) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        List<Object> members = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int p = partitions.nextSetBit(0); p >= 0; p = partitions.nextSetBit(p + 1)) {
+                connection.setCommands().sMembers(bytes(runningKey(type, p)));
+            }
+            return null;
+        });
+        List<String> ids = new ArrayList<>();
+        for (Object set : members) {
+            if (set instanceof Collection<?> c) {
+                ids.addAll((Collection<String>) c);
+            }
+        }
+        startLocal(type, ids);
+    }
+
+    /**
+     * 停止本地运行中、且属于给定分区的全部设备
+     */
+    private void stopPartitions(BitSet partitions) {
+        List<String> meters = new ArrayList<>();
+        for (int slot = 0; slot < deviceIndex.capacity(); slot++) {
+            if (deviceIndex.isRunning(slot) && partitions.get(ShardRing.partitionOf(deviceIndex.idOf(slot)))) {
+                meters.add(deviceIndex.idOf(slot));
+            }
+        }
+        List<String> sensors = new ArrayList<>();
+        for (int slot = 0; slot < sensorIndex.capacity(); slot++) {
+            if (sensorIndex.isRunning(slot) && partitions.get(ShardRing.partitionOf(sensorIndex.idOf(slot)))) {
+                sensors.add(sensorIndex.idOf(slot));
+            }
+        }
+        stopLocal(METER, meters);
+        stopLocal(SENSOR, sensors);
+    }
+
+    private void startLocal(int type, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (type == METER) {
+            int[] slots = deviceIndex.slotsOf(ids);
+            deviceIndex.markRunning(slots);
+            simulationEngine.arm(meterKind, slots);
+        } else {
+            int[] slots = sensorIndex.slotsOf(ids);
+            sensorIndex.markRunning(slots);
+            simulationEngine.arm(waterQualityKind, slots);
+        }
+    }
+
+    private void stopLocal(int type, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (type == METER) {
+            int[] slots = deviceIndex.slotsOf(ids);
+            deviceIndex.markStopped(slots);
+            simulationEngine.disarm(meterKind, slots);
+        } else {
+            int[] slots = sensorIndex.slotsOf(ids);
+            sensorIndex.markStopped(slots);
+            simulationEngine.disarm(waterQualityKind, slots);
+        }
+    }
+
+    // ------------------------------------------------------------------ 期望运行集合
+
+    /**
+     * 按分区分组后在一次 pipeline 中写入或移出期望运行集合
+     */
+    private void writeDesired(int type, Collection<String> ids, boolean add) {
+        Map<Integer, List<byte[]>> grouped = new HashMap<>();
+        for (String id : ids) {
+            grouped.computeIfAbsent(ShardRing.partitionOf(id), p -> new ArrayList<>()).add(bytes(id));
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            grouped.forEach((p, members) -> {
+                byte[] key = bytes(runningKey(type, p));
+                byte[][] values = members.toArray(new byte[0][]);
+                if (add) {
+                    connection.setCommands().sAdd(key, values);
+                } else {
+                    connection.setCommands().sRem(key, values);
+                }
+            });
+            return null;
+        });
+    }
+
+    private void publish(int type, String op, Collection<String> ids) {
+        String message = name(type) + ":" + op + (ids == null ? "" : ":" + String.join(",", ids));
+        redisTemplate.convertAndSend(CHANNEL, message);
+    }
+
+    private static String runningKey(int type, int partition) {
+        return RUNNING_PREFIX + name(type) + ":" + partition;
+    }
+
+    private static String name(int type) {
+        return type == SENSOR ? "sensor" : "meter";
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+package com.ncwu.iotdevice.cluster;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 模拟器节点的一致性哈希环
+ * <p>
+ * 设备按编号哈希到固定数量的分区，分区再按一致性哈希分配给节点：每个节点在环上放置若干虚拟节点，
+ * 分区落在顺时针方向的第一个虚拟节点上。节点加入或离开时只有约 1/N 的分区换主，其余分区不动。
+ * 环在构造时一次算好全部分区的归属，查询是数组下标访问。
+ * <p>
+ * 哈希只依赖编号与节点名的字符，所有节点对同一成员列表算出的归属完全一致。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+public final class ShardRing {
+
+    /**
+     * 分区数量，租约与期望运行集合都以分区为单位
+     */
+    public static final int PARTITIONS = 256;
+    /**
+     * 每个节点的虚拟节点数量
+     */
+    private static final int VIRTUAL_NODES = 64;
+
+    private final List<String> nodes;
+    private final int[] owner = new int[PARTITIONS];
+
+    public ShardRing(Collection<String> members) {
+        this.nodes = List.copyOf(new TreeSet<>(members));
+        if (nodes.isEmpty()) {
+            Arrays.fill(owner, -1);
+            return;
+        }
+        int points = nodes.size() * VIRTUAL_NODES;
+        long[] ring = new long[points];
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                //高位存哈希，低位存节点下标，排序后即为环上顺序
+                ring[n * VIRTUAL_NODES + v] = (hash(nodes.get(n) + "#" + v) & ~0xFFFFL) | n;
+            }
+        }
+        Arrays.sort(ring);
+        for (int p = 0; p < PARTITIONS; p++) {
+            long point = hash("partition-" + p) & ~0xFFFFL;
+            int i = Arrays.binarySearch(ring, point);
+            i = i >= 0 ? i : -i - 1;
+            owner[p] = (int) (ring[i == points ? 0 : i] & 0xFFFFL);
+        }
+    }
+
+    /**
+     * 设备所在的分区
+     */
+    public static int partitionOf(CharSequence deviceId) {
+        return (int) Long.remainderUnsigned(hash(deviceId), PARTITIONS);
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 分区的归属节点，环为空时返回 null
+     */
+    public String ownerOf(int partition) {
+        int n = owner[partition];
+        return n < 0 ? null : nodes.get(n);
+    }
+
+    /**
+     * 某个节点应当持有的全部分区
+     */
+    public List<Integer> partitionsOf(String node) {
+        int n = nodes.indexOf(node);
+        List<Integer> result = new ArrayList<>();
+        for (int p = 0; p < PARTITIONS && n >= 0; p++) {
+            if (owner[p] == n) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * FNV-1a 加 64 位末端混合，不依赖 JVM 的 hashCode 实现
+     */
+    private static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ncwu.iotdevice.config;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.mq.BatchingProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模拟器的批量消息发送器，批量参数取自 {@link ServerConfig}，支持动态配置
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Configuration
+public class BatchingProducerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public BatchingProducer batchingProducer(RocketMQTemplate rocketMQTemplate,
+                                             ObjectMapper objectMapper,
+                                             ServerConfig serverConfig,
+                                             MeterRegistry meterRegistry,
+                                             @Qualifier("messageSuccessCounter") Counter messageSuccessCounter,
+                                             @Qualifier("messageFailureCounter") Counter messageFailureCounter) {
+        return new BatchingProducer(rocketMQTemplate, objectMapper, meterRegistry,
+                messageSuccessCounter, messageFailureCounter, "mq",
+                new BatchingProducer.Settings(serverConfig::getMqBatchQueueCapacity,
+                        serverConfig::getMqBatchMaxBytes, serverConfig::getMqBatchLingerMs));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ncwu.iotdevice.config;
+
+import com.ncwu.common.redis.RedisChannelListener;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import com.ncwu.iotdevice.simulation.ValveStateCache;
+import com.ncwu.iotdevice.simulation.scenario.ScenarioHolder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * redis 订阅配置
+ * <p>
+ * 服务内唯一的订阅容器，公共组件声明的订阅一并注册在这里
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/3
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       SimulationContextHolder contextHolder,
+                                                                       ValveStateCache valveStateCache,
+                                                                       ScenarioHolder scenarioHolder,
+                                                                       ShardCoordinator shardCoordinator,
+                                                                       ObjectProvider<RedisChannelListener> sharedListeners) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(contextHolder, new ChannelTopic(SimulationContextHolder.CHANNEL));
+        container.addMessageListener(valveStateCache, new ChannelTopic(ValveStateCache.CHANNEL));
+        container.addMessageListener(scenarioHolder, new ChannelTopic(ScenarioHolder.CHANNEL));
+        container.addMessageListener(shardCoordinator, new ChannelTopic(ShardCoordinator.CHANNEL));
+        RedisChannelListener.registerAll(container, sharedListeners);
+        return container;
+    }
+}
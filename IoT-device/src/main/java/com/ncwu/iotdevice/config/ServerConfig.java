@@ -1,6 +1,8 @@
 package com.ncwu.iotdevice.config;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
@@ -23,6 +25,15 @@ public class ServerConfig {
     private String meterReportFrequency;
     //水表上报偏移时间，以毫秒为单位
     private String meterTimeOffset;
+    //以上四项解析后的毫秒数，随配置刷新时的 setter 一起更新，热路径直接读取，未配置时为 -1
+    @Setter(AccessLevel.NONE)
+    private volatile long waterQualityReportFrequencyMs = -1;
+    @Setter(AccessLevel.NONE)
+    private volatile long waterQualityReportTimeOffsetMs = -1;
+    @Setter(AccessLevel.NONE)
+    private volatile long meterReportFrequencyMs = -1;
+    @Setter(AccessLevel.NONE)
+    private volatile long meterTimeOffsetMs = -1;
     //管网的初始压力
     private double p0;
     //管网数据离散步长
@@ -37,4 +48,71 @@ public class ServerConfig {
     int n;
     //早八宿舍起床比例
     double wakeUpDormRate;
-}
\ No newline at end of file
+    //时间轮每个 tick 的毫秒数
+    long wheelTickMs = 100;
+    //时间轮桶数量，取 2 的幂
+    int wheelSize = 1024;
+    //MQ 批量消息的最大字节数，RocketMQ 单条消息上限为 4M
+    int mqBatchMaxBytes = 1024 * 1024;
+    //MQ 批量消息的最长等待时间，以毫秒为单位
+    long mqBatchLingerMs = 50;
+    //每个 topic 待发送队列的容量，超出后调用方阻塞等待
+    int mqBatchQueueCapacity = 200_000;
+    //模拟随机种子，配置后每台设备的数据序列可复现，为空时使用非确定的随机数
+    Long simulationSeed;
+    //水表上报数据录制文件名，相对路径写在录制目录下，为空时不录制
+    String recordFile;
+    //录制目录，回放只允许读取该目录中的文件
+    String recordDir = "recordings";
+    //心跳合并写入 redis 的刷新间隔，以毫秒为单位
+    long heartbeatFlushMs = 100;
+    //心跳写入时单条 HSET 包含的最多设备数
+    int heartbeatChunkSize = 5000;
+    //累计用水量增量写回 redis 的刷新间隔，以毫秒为单位
+    long usageFlushMs = 1000;
+    //累计用水量写回时单次脚本调用包含的最多设备数
+    int usageFlushChunkSize = 1000;
+    //批量改写大哈希表时每块的初始字段数，随实测耗时自适应调整
+    int bulkChunkSize = 1000;
+    //批量改写时单块 pipeline 的耗时上限，以毫秒为单位
+    long bulkChunkBudgetMs = 5;
+    //批量改写期间其他客户端可接受的 redis 延迟，以块间 PING 的往返耗时估计，以毫秒为单位
+    long bulkLatencyTargetMs = 5;
+    //单次初始化允许注册的最多水表数量，按三个校区计算，默认覆盖 3 校区 × 50 栋 × 20 层 × 100 间的 30 万台规模，
+    //更大的规模需在 nacos 中调高 server.max-devices
+    int maxDevices = 300_000;
+    //场景文件路径，redis 中没有场景时启动加载，为空时不加载
+    String scenarioFile;
+    //水表按例外上报，开启后只有数值越过死区、状态变化或到达保活周期时才发送到 MQ
+    boolean reportByException;
+    //按例外上报的瞬时流量死区
+    double flowDeadband = 0.01;
+    //按例外上报的水压死区
+    double pressureDeadband = 0.01;
+    //按例外上报的保活周期，以模拟时间的毫秒为单位
+    long keepaliveMs = 60_000;
+
+    public void setWaterQualityReportFrequency(String waterQualityReportFrequency) {
+        this.waterQualityReportFrequency = waterQualityReportFrequency;
+        this.waterQualityReportFrequencyMs = parseMs(waterQualityReportFrequency);
+    }
+
+    public void setWaterQualityReportTimeOffset(String waterQualityReportTimeOffset) {
+        this.waterQualityReportTimeOffset = waterQualityReportTimeOffset;
+        this.waterQualityReportTimeOffsetMs = parseMs(waterQualityReportTimeOffset);
+    }
+
+    public void setMeterReportFrequency(String meterReportFrequency) {
+        this.meterReportFrequency = meterReportFrequency;
+        this.meterReportFrequencyMs = parseMs(meterReportFrequency);
+    }
+
+    public void setMeterTimeOffset(String meterTimeOffset) {
+        this.meterTimeOffset = meterTimeOffset;
+        this.meterTimeOffsetMs = parseMs(meterTimeOffset);
+    }
+
+    private static long parseMs(String value) {
+        return value == null || value.isBlank() ? -1 : Long.parseLong(value.trim());
+    }
+}
@@ -6,9 +6,14 @@ import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.common.enums.SuccessCode;
 import com.ncwu.common.domain.dto.IdsDTO;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
+import com.ncwu.iotdevice.config.ServerConfig;
 import com.ncwu.iotdevice.exception.DeviceRegisterException;
+import com.ncwu.iotdevice.service.DeviceProvisioner;
 import com.ncwu.iotdevice.service.VirtualMeterDeviceService;
 import com.ncwu.iotdevice.service.VirtualWaterQualityDeviceService;
+import com.ncwu.iotdevice.simulation.scenario.ScenarioHolder;
+import com.ncwu.iotdevice.simulation.scenario.ScenarioParser;
 import com.ncwu.iotdevice.utils.Utils;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
@@ -40,6 +45,10 @@ public class DeviceController {
     private final VirtualWaterQualityDeviceService virtualWaterQualityDeviceService;
     private final Utils utils;
     private final StringRedisTemplate stringRedisTemplate;
+    private final ServerConfig serverConfig;
+    private final DeviceProvisioner deviceProvisioner;
+    private final ScenarioHolder scenarioHolder;
+    private final ShardCoordinator shardCoordinator;
 
     /**
      * 初始化
@@ -59,18 +68,28 @@ public class DeviceController {
                                 @Min(1) @Max(99) @RequestParam(defaultValue = "1") int floors,
                                 @Min(1) @Max(999) @RequestParam(defaultValue = "10") int rooms) throws InterruptedException {
         int totalBuildings = dormitoryBuildings + educationBuildings + experimentBuildings;
-        if (3 * totalBuildings * floors * rooms > 100000) {
-            throw new DeviceRegisterException("开启设备数量超过系统10万上限,请调整。");
+        if (3L * totalBuildings * floors * rooms > serverConfig.getMaxDevices()) {
+            throw new DeviceRegisterException("开启设备数量超过系统" + serverConfig.getMaxDevices() + "台上限,请调整。");
         }
         return virtualMeterDeviceService.init(totalBuildings, floors, rooms, dormitoryBuildings, educationBuildings, experimentBuildings);
     }
 
+    /**
+     * 查看设备注册进度，没有进行中或中断的注册时返回 null
+     */
+    @GetMapping("/provisionProgress")
+    public Result<DeviceProvisioner.Progress> provisionProgress() {
+        return Result.ok(deviceProvisioner.unfinished());
+    }
+
     /**
      * 更改当天的时间
      * <p>
      * 当然 😂 这不是逆转时间的公式，在物理世界，过去的人和事儿就是过去了
      * <p>
      * 这不过是虚拟世界罢了，祝你一切都好！
+     * <p>
+     * 模拟时钟只向前走，早于当前的时间点会落在下一天
      *
      * @param time 你要重置的时间点,以秒为单位
      * @author 景旭
@@ -99,6 +118,20 @@ public class DeviceController {
         return virtualMeterDeviceService.changeSeason(season);
     }
 
+    /**
+     * 设置模拟时钟的倍速
+     * <p>
+     * 倍速为 288 时一个模拟日在五分钟内走完，用于在短时间内触发按天运行的统计任务；倍速为 1 时与真实时钟一致
+     *
+     * @param factor 倍速
+     */
+    @GetMapping("/clockFactor")
+    @RequireRole(value = {3}, names = {"管理员"})
+    public Result<String> changeClockFactor(@DecimalMin(value = "0", inclusive = false)
+                                            @DecimalMax("100000") double factor) {
+        return virtualMeterDeviceService.changeClockFactor(factor);
+    }
+
 
     /**
      * 重置全部设备
@@ -146,6 +179,41 @@ public class DeviceController {
         return virtualMeterDeviceService.changeMode(mode);
     }
 
+    /**
+     * 加载场景，按时段与楼宇编排爆管、漏水等异常事件，语法见 {@link ScenarioParser}
+     *
+     * @param scenario 场景原文
+     */
+    @PostMapping("/scenario")
+    @RequireRole(value = {3}, names = {"管理员"})
+    public Result<String> loadScenario(@NotBlank @RequestBody String scenario) {
+        int events = scenarioHolder.load(scenario);
+        return Result.ok("场景已加载，共 " + events + " 条事件");
+    }
+
+    /**
+     * 查看当前场景各事件命中的水表数量与是否生效
+     */
+    @GetMapping("/scenario")
+    public Result<List<ScenarioHolder.Summary>> scenario() {
+        return Result.ok(scenarioHolder.describe());
+    }
+
+    @DeleteMapping("/scenario")
+    @RequireRole(value = {3}, names = {"管理员"})
+    public Result<String> clearScenario() {
+        scenarioHolder.clear();
+        return Result.ok("场景已清除");
+    }
+
+    /**
+     * 查看模拟器集群：当前成员、各节点持有的分区数与本地运行的设备数
+     */
+    @GetMapping("/cluster")
+    public Result<ShardCoordinator.ClusterStatus> cluster() {
+        return Result.ok(shardCoordinator.status());
+    }
+
     /**
      * 得到所有开启的设备数量
      */
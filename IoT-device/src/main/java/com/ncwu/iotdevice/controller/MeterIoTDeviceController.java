@@ -5,6 +5,8 @@ import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.domain.dto.IdsDTO;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.iotdevice.service.VirtualMeterDeviceService;
+import com.ncwu.iotdevice.simulation.TelemetryReplayer;
+import com.ncwu.iotdevice.simulation.ValveStateCache;
 import com.ncwu.iotdevice.utils.Utils;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
@@ -12,7 +14,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -30,6 +34,8 @@ public class MeterIoTDeviceController {
 
     private final VirtualMeterDeviceService virtualMeterDeviceService;
     private final Utils utils;
+    private final TelemetryReplayer telemetryReplayer;
+    private final ValveStateCache valveStateCache;
 
     /**
      * 开启所有水表
@@ -138,18 +144,66 @@ public class MeterIoTDeviceController {
 
     /**
      * 所有设备开启阀门
+     *
+     * @param campus 校区编号，为空时针对全部校区
      */
     @GetMapping("/openAllValues")
-    public Result<String> openAllValues() {
-        return virtualMeterDeviceService.openAllValue();
+    public Result<String> openAllValues(@Min(1) @Max(3) @RequestParam(required = false) Integer campus) {
+        return virtualMeterDeviceService.openCampusValue(campus);
     }
 
     /**
      * 所有设备关闭阀门
+     *
+     * @param campus 校区编号，为空时针对全部校区
      */
     @GetMapping("/closeAllValues")
-    public Result<String> closeAllValues() {
-        return virtualMeterDeviceService.closeAllValue();
+    public Result<String> closeAllValues(@Min(1) @Max(3) @RequestParam(required = false) Integer campus) {
+        return virtualMeterDeviceService.closeCampusValue(campus);
+    }
+
+    /**
+     * 查询阀门指令的下发时间、目标数量与各模拟器节点、接入网关的确认数
+     *
+     * @param version 开关阀门接口返回的指令版本
+     */
+    @GetMapping("/valveCommand")
+    public Result<Map<Object, Object>> valveCommand(@Min(1) @RequestParam long version) {
+        Map<Object, Object> status = valveStateCache.status(version);
+        if (status.isEmpty()) {
+            return Result.fail(ErrorCode.PARAM_VALIDATION_ERROR.code(), "指令不存在或已过期");
+        }
+        return Result.ok(status);
+    }
+
+    /**
+     * 按倍速回放录制的水表上报数据
+     *
+     * @param file  录制目录中的文件名
+     * @param speed 回放倍速，小于等于 0 表示不限速
+     */
+    @RequireRole(value = {2,3}, names = {"运维","管理员"})
+    @PostMapping("/replay")
+    public Result<String> replay(@NotBlank @RequestParam String file,
+                                 @RequestParam(defaultValue = "1") double speed) {
+        try {
+            if (!telemetryReplayer.start(file, speed)) {
+                return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(), "已有回放任务在运行中");
+            }
+        } catch (IOException e) {
+            return Result.fail(ErrorCode.PARAM_VALIDATION_ERROR.code(), e.getMessage());
+        }
+        return Result.ok("开始回放 " + file);
+    }
+
+    /**
+     * 停止回放
+     */
+    @RequireRole(value = {2,3}, names = {"运维","管理员"})
+    @PostMapping("/replay/stop")
+    public Result<String> stopReplay() {
+        telemetryReplayer.stop();
+        return Result.ok("已停止回放，共发送 " + telemetryReplayer.getReplayed() + " 条数据");
     }
 
 }
\ No newline at end of file
@@ -43,4 +43,12 @@ public class MeterDataBo implements Serializable {
     String IsOpen;
     //数据状态
     String status;
+    //上报方式：为空时为固定周期上报，change 为越过死区上报，keepalive 为保活上报
+    String reportMode;
+    //越过死区前保持的瞬时水流量，仅在此前有上报被抑制时携带
+    Double holdFlow;
+    //越过死区前保持的水压
+    Double holdPressure;
+    //越过死区前最后一次被抑制的上报中的累计用水量
+    Double holdUsage;
 }
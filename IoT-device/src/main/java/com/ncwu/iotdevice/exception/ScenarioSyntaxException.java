@@ -0,0 +1,15 @@
+package com.ncwu.iotdevice.exception;
+
+
+/**
+ * 场景文件语法错误
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+public class ScenarioSyntaxException extends RuntimeException {
+    public ScenarioSyntaxException(int line, String message) {
+        super("场景文件第 " + line + " 条事件: " + message);
+    }
+}
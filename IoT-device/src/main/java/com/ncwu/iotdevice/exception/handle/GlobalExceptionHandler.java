@@ -3,6 +3,7 @@ package com.ncwu.iotdevice.exception.handle;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.iotdevice.exception.DeviceRegisterException;
+import com.ncwu.iotdevice.exception.ScenarioSyntaxException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.context.MessageSourceResolvable;
 import org.springframework.http.HttpStatus;
@@ -45,6 +46,13 @@ public class GlobalExceptionHandler {
                 , ErrorCode.PARAM_VALIDATION_ERROR.message());
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(ScenarioSyntaxException.class)
+    public Result<String> scenarioSyntaxException(ScenarioSyntaxException e) {
+        return Result.fail(e.getMessage(), ErrorCode.PARAM_VALIDATION_ERROR.code(),
+                ErrorCode.PARAM_VALIDATION_ERROR.message());
+    }
+
     //    @ExceptionHandler(DeviceRegisterException)
 //    public Result<String> deviceInitException(DeviceRegisterException e){
 //        return Result.fail(e.getDesc(),ErrorCode.BUSINESS_INIT_ERROR.code()
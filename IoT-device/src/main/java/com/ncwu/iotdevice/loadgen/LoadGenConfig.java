@@ -0,0 +1,43 @@
+package com.ncwu.iotdevice.loadgen;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * 压测负载生成配置，仅在 loadgen profile 下生效
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+@Data
+@Component
+@Profile("loadgen")
+@ConfigurationProperties(prefix = "loadgen")
+public class LoadGenConfig {
+    //虚拟设备群规模
+    private int fleetSize = 1_000_000;
+    //目标发送速率，条/秒
+    private int targetRate = 50_000;
+    //压测持续时间，秒
+    private int durationSeconds = 60;
+    //发送线程数，目标速率在线程间平均分配
+    private int producerThreads = 4;
+    //单个批量消息包含的条数
+    private int batchSize = 200;
+    //最多同时在途的批量消息数，超出后发送线程阻塞
+    private int maxInFlight = 64;
+    //教学楼、实验楼占全部楼宇的比例，其余为宿舍楼
+    private double educationRatio = 0.2;
+    private double experimentRatio = 0.2;
+    //模拟季节 1-4
+    private int season = 2;
+    //目标 topic
+    private String topic = "Meter-Data";
+    //压测结果输出文件，为空时只打印日志
+    private String resultFile;
+    //压测结束后是否退出进程
+    private boolean exitOnFinish = true;
+}
@@ -0,0 +1,24 @@
+package com.ncwu.iotdevice.loadgen;
+
+/**
+ * 一次压测的结果
+ *
+ * @param fleetSize    虚拟设备群规模
+ * @param targetRate   目标速率，条/秒
+ * @param sent         发送成功的消息数
+ * @param errors       发送失败的消息数
+ * @param seconds      实际持续时间，秒
+ * @param achievedRate 实际成功速率，条/秒
+ * @param p50Ms        批量发送延迟 p50，毫秒
+ * @param p95Ms        批量发送延迟 p95，毫秒
+ * @param p99Ms        批量发送延迟 p99，毫秒
+ * @param p999Ms       批量发送延迟 p99.9，毫秒
+ * @param maxMs        批量发送延迟最大值，毫秒
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+public record LoadGenResult(int fleetSize, int targetRate, long sent, long errors, double seconds,
+                            double achievedRate, double p50Ms, double p95Ms, double p99Ms,
+                            double p999Ms, double maxMs) {
+}
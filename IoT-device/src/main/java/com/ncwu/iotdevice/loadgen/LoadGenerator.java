@@ -0,0 +1,234 @@
+package com.ncwu.iotdevice.loadgen;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.MeterTelemetryModel;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import com.ncwu.iotdevice.simulation.SimulationRandom;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+
+/**
+ * 无界面的压测负载生成器
+ * <p>
+ * 以 --spring.profiles.active=dev,loadgen 启动时生效。复用数字孪生模式的用水模型和水压模型，
+ * 但设备群是纯内存的 {@link VirtualFleet}，跳过 redis 心跳、累计用水量脚本和 mysql 状态维护，
+ * 按目标速率把数据以批量消息直接发到 Meter-Data，用于在百万级设备规模下压测接入链路。
+ * <p>
+ * 每个发送线程负责槽位模线程数相同的那部分设备，按固定节拍发送批次，落后时立即补发而不是丢弃，
+ * 在途批次数由信号量限制。压测结束后输出实际速率、批量发送延迟分位数和发送失败数。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+@Slf4j
+@Component
+@Profile("loadgen")
+@RequiredArgsConstructor
+public class LoadGenerator implements ApplicationRunner {
+
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    private final LoadGenConfig config;
+    private final ServerConfig serverConfig;
+    private final SimulationRandom simulationRandom;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ConfigurableApplicationContext applicationContext;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        int threads = Math.max(1, config.getProducerThreads());
+        int batchSize = Math.max(1, config.getBatchSize());
+        VirtualFleet fleet = new VirtualFleet(config.getFleetSize(),
+                config.getEducationRatio(), config.getExperimentRatio());
+        MeterTelemetryModel model = new MeterTelemetryModel(fleet, serverConfig, simulationRandom);
+        Timer latency = Timer.builder("loadgen.send.latency")
+                .description("压测批量消息发送延迟")
+                .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                .distributionStatisticExpiry(Duration.ofSeconds(config.getDurationSeconds() + 60L))
+                .distributionStatisticBufferLength(1)
+                .register(meterRegistry);
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getMaxInFlight()));
+        //每台设备的等效上报周期
+        double reportPeriod = (double) fleet.size() / Math.max(1, config.getTargetRate());
+        log.info("压测开始：设备 {} 台，目标 {} 条/秒，持续 {} 秒，{} 个发送线程，每批 {} 条，等效上报周期 {} 秒",
+                fleet.size(), config.getTargetRate(), config.getDurationSeconds(), threads, batchSize,
+                keep3(reportPeriod));
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        //每个线程发送一个批次的间隔
+        long batchIntervalNanos = (long) (1e9 * batchSize * threads / Math.max(1, config.getTargetRate()));
+        List<Thread> producers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int offset = i;
+            producers.add(Thread.ofPlatform().name("loadgen-producer-" + i).start(() ->
+                    produce(fleet, model, offset, threads, batchSize, batchIntervalNanos, reportPeriod,
+                            start, end, latency, inFlight)));
+        }
+
+        long lastSent = 0;
+        long lastLog = start;
+        for (Thread producer : producers) {
+            while (!producer.join(Duration.ofMillis(PROGRESS_INTERVAL_MS))) {
+                long now = System.nanoTime();
+                long total = sent.sum();
+                log.info("压测进行中：已发送 {} 条，失败 {} 条，最近速率 {} 条/秒", total, errors.sum(),
+                        keep3((total - lastSent) * 1e9 / (now - lastLog)));
+                lastSent = total;
+                lastLog = now;
+            }
+        }
+        //等待在途批次全部返回
+        if (!inFlight.tryAcquire(Math.max(1, config.getMaxInFlight()), 30, TimeUnit.SECONDS)) {
+            log.warn("仍有批次未返回，按当前统计输出结果");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LoadGenResult result = result(fleet.size(), seconds, latency.takeSnapshot());
+        log.info("压测结束：{}", result);
+        if (config.getResultFile() != null && !config.getResultFile().isBlank()) {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(new File(config.getResultFile()), result);
+            log.info("压测结果已写入 {}", config.getResultFile());
+        }
+        if (config.isExitOnFinish()) {
+            int code = SpringApplication.exit(applicationContext, () -> result.errors() > 0 ? 1 : 0);
+            System.exit(code);
+        }
+    }
+
+    /**
+     * 单个发送线程：负责 slot % stride == offset 的设备，轮流为它们生成数据
+     */
+    private void produce(VirtualFleet fleet, MeterTelemetryModel model, int offset, int stride, int batchSize,
+                         long batchIntervalNanos, double reportPeriod, long start, long end,
+                         Timer latency, Semaphore inFlight) {
+        int slot = offset;
+        long round = 0;
+        long next = start;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                return;
+            }
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            next += batchIntervalNanos;
+            SimulationContext context = context(fleet.size());
+            List<Message<String>> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                try {
+                    String id = fleet.idOf(slot);
+                    RandomGenerator random = simulationRandom.forReport(id, round);
+                    MeterDataBo dataBo = model.build(slot, context, random);
+                    dataBo.setTotalUsage(keep3(fleet.accumulate(slot, dataBo.getFlow(), reportPeriod)));
+                    batch.add(MessageBuilder.withPayload(objectMapper.writeValueAsString(dataBo)).build());
+                } catch (Exception e) {
+                    errors.increment();
+                    log.error("压测数据生成失败: {}", e.getMessage());
+                }
+                slot += stride;
+                if (slot >= fleet.size()) {
+                    slot = offset;
+                    round++;
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            send(batch, latency, inFlight);
+        }
+    }
+
+    private void send(List<Message<String>> batch, Timer latency, Semaphore inFlight) {
+        int size = batch.size();
+        long begin = System.nanoTime();
+        try {
+            rocketMQTemplate.asyncSend(config.getTopic(), batch, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    long elapsed = System.nanoTime() - begin;
+                    latency.record(elapsed, TimeUnit.NANOSECONDS);
+                    maxLatencyNanos.accumulate(elapsed);
+                    sent.add(size);
+                    inFlight.release();
+                }
+
+                @Override
+                public void onException(Throwable throwable) {
+                    errors.add(size);
+                    inFlight.release();
+                    log.error("压测批量发送失败 {} 条: {}", size, throwable.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            errors.add(size);
+            inFlight.release();
+            log.error("压测批量发送失败 {} 条: {}", size, e.getMessage());
+        }
+    }
+
+    /**
+     * 压测使用的模拟配置：模拟时间取当前时刻，季节取配置值
+     */
+    private SimulationContext context(int fleetSize) {
+        return new SimulationContext(0, LocalTime.now().toSecondOfDay(), config.getSeason(), "normal",
+                0, 0, fleetSize, 0, 0, 0, null);
+    }
+
+    private LoadGenResult result(int fleetSize, double seconds, HistogramSnapshot snapshot) {
+        double[] p = new double[4];
+        ValueAtPercentile[] values = snapshot.percentileValues();
+        for (int i = 0; i < values.length && i < p.length; i++) {
+            p[i] = keep3(values[i].value(TimeUnit.MILLISECONDS));
+        }
+        long total = sent.sum();
+        return new LoadGenResult(fleetSize, config.getTargetRate(), total, errors.sum(), keep3(seconds),
+                keep3(total / seconds), p[0], p[1], p[2], p[3], keep3(maxLatencyNanos.get() / 1e6));
+    }
+}
@@ -0,0 +1,152 @@
+package com.ncwu.iotdevice.loadgen;
+
+
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.MeterFleet;
+import com.ncwu.iotdevice.utils.DeviceCodes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 压测用的纯内存虚拟设备群
+ * <p>
+ * 不依赖 init 生成的楼宇拓扑，也不写 redis 和 mysql。槽位按 (校区, 楼宇, 楼层, 房间) 固定展开，
+ * 每栋楼 99 层、每层 999 间，设备编号由槽位直接换算，因此规模只受 9 位编号的容量限制。
+ * 累计用水量由负责该槽位的发送线程在本地累加，同一槽位只会被一个线程访问。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+public class VirtualFleet implements MeterFleet {
+
+    private static final int CAMPUSES = 3;
+    private static final int BUILDINGS = 99;
+    private static final int FLOORS = 99;
+    private static final int ROOMS = 999;
+    private static final int PER_BUILDING = FLOORS * ROOMS;
+    public static final int MAX_SIZE = CAMPUSES * BUILDINGS * PER_BUILDING;
+
+    private final int size;
+    private final byte[] category;
+    private final AtomicIntegerArray activeQuota;
+    private final AtomicIntegerArray spareQuota;
+    private final boolean[] educationActive;
+    private final double[] totalUsage;
+
+    /**
+     * @param size            设备数量
+     * @param educationRatio  教学楼占比
+     * @param experimentRatio 实验楼占比
+     */
+    public VirtualFleet(int size, double educationRatio, double experimentRatio) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("虚拟设备群规模必须在 1 到 " + MAX_SIZE + " 之间");
+        }
+        this.size = size;
+        this.category = new byte[size];
+        this.activeQuota = new AtomicIntegerArray(size);
+        this.spareQuota = new AtomicIntegerArray(size);
+        this.educationActive = new boolean[size];
+        this.totalUsage = new double[size];
+        //楼宇类别按每个校区内的楼宇编号划分，与数字孪生模式一致
+        int buildings = Math.min(BUILDINGS, (size + PER_BUILDING - 1) / PER_BUILDING);
+        int education = (int) Math.round(buildings * educationRatio);
+        int experiment = education + (int) Math.round(buildings * experimentRatio);
+        for (int slot = 0; slot < size; slot++) {
+            int building = (slot / PER_BUILDING) % BUILDINGS + 1;
+            category[slot] = building <= education ? DeviceIndex.EDUCATION
+                    : building <= experiment ? DeviceIndex.EXPERIMENT : DeviceIndex.DORMITORY;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 按槽位换算 1CBBFFRRR 格式的设备编号
+     */
+    @Override
+    public String idOf(int slot) {
+        int room = slot % ROOMS + 1;
+        int floor = (slot / ROOMS) % FLOORS + 1;
+        int building = (slot / PER_BUILDING) % BUILDINGS + 1;
+        int campus = slot / (PER_BUILDING * BUILDINGS) + 1;
+        return DeviceCodes.meter(campus, building, floor, room);
+    }
+
+    @Override
+    public byte categoryOf(int slot) {
+        return category[slot];
+    }
+
+    @Override
+    public int[] slotsIn(byte kind) {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (category[i] == kind) {
+                result[n++] = i;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public void setQuota(int slot, int active, int spare) {
+        activeQuota.set(slot, active);
+        spareQuota.set(slot, spare);
+    }
+
+    @Override
+    public void clearQuota(byte kind) {
+        for (int i = 0; i < size; i++) {
+            if (category[i] == kind) {
+                activeQuota.set(i, 0);
+                spareQuota.set(i, 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean takeActiveQuota(int slot) {
+        return decrementIfPositive(activeQuota, slot);
+    }
+
+    @Override
+    public boolean takeSpareQuota(int slot) {
+        return decrementIfPositive(spareQuota, slot);
+    }
+
+    private static boolean decrementIfPositive(AtomicIntegerArray quota, int slot) {
+        int remaining;
+        do {
+            remaining = quota.get(slot);
+            if (remaining <= 0) {
+                return false;
+            }
+        } while (!quota.compareAndSet(slot, remaining, remaining - 1));
+        return true;
+    }
+
+    @Override
+    public void setEducationActive(int slot, boolean active) {
+        educationActive[slot] = active;
+    }
+
+    @Override
+    public boolean isEducationActive(int slot) {
+        return educationActive[slot];
+    }
+
+    /**
+     * 按瞬时流量和上报间隔累加用水量
+     *
+     * @return 累加后的累计用水量
+     */
+    public double accumulate(int slot, double flow, double seconds) {
+        return totalUsage[slot] += flow * seconds;
+    }
+}
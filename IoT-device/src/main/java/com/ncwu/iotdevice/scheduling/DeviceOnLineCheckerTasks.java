@@ -0,0 +1,96 @@
+package com.ncwu.iotdevice.scheduling;
+
+import com.ncwu.iotdevice.service.DeadlineIndex;
+import com.ncwu.iotdevice.service.DeviceTransitionBatcher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * 设备下线检测定时任务
+ * <p>
+ * 水表与水质传感器共用一个检测周期：一次 MGET 读取初始化与受检标志，
+ * 再分别从各自的离线截止时间索引中取出到期设备，整批交给上下线批量处理器。
+ * 处理失败的设备放回索引，下一个周期重新取出。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2025/12/27
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceOnLineCheckerTasks {
+
+    /**
+     * 单次从截止时间索引中取出的最多设备数
+     */
+    private static final int POP_LIMIT = 1000;
+    private static final List<String> FLAGS = List.of("isInit", "MeterChecked", "WaterQualityChecked");
+
+    private final StringRedisTemplate redisTemplate;
+    private final DeadlineIndex deadlineIndex;
+    private final DeviceTransitionBatcher deviceTransitionBatcher;
+
+    /**
+     * 只取出离线截止时间已到期的设备，不再扫描整个 OnLineMap
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void checkOnLineDevices() {
+        //检查设备运行控制器
+        List<String> flags = redisTemplate.opsForValue().multiGet(FLAGS);
+        if (flags == null || !isSet(flags.get(0))) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (isSet(flags.get(1))) {
+            check(DeadlineIndex.METER_KEY, "METER", "水表", now);
+        }
+        if (isSet(flags.get(2))) {
+            check(DeadlineIndex.SENSOR_KEY, "WATER_QUALITY", "传感器", now);
+        }
+    }
+
+    private void check(String key, String deviceType, String label, long now) {
+        //本周期内到期的设备整批处理
+        List<String> offline = new ArrayList<>();
+        try {
+            List<String> expired;
+            do {
+                expired = deadlineIndex.popExpired(key, now, POP_LIMIT);
+                offline.addAll(expired);
+            } while (expired.size() == POP_LIMIT);
+        } catch (Exception e) {
+            log.error("{}--取出到期设备异常，先处理已取出的 {} 台", label, offline.size(), e);
+        }
+        if (offline.isEmpty()) {
+            return;
+        }
+        log.info("{}--检测到 {} 台设备下线", label, offline.size());
+        List<String> failed;
+        try {
+            failed = deviceTransitionBatcher.offline(offline, deviceType);
+        } catch (Exception e) {
+            log.error("设备下线检测异常", e);
+            failed = offline;
+        }
+        //已从索引中取出但未能处理的设备放回索引，下个周期重试
+        if (!failed.isEmpty()) {
+            try {
+                deadlineIndex.restore(key, failed, now);
+            } catch (Exception e) {
+                log.error("{}--{} 台设备未能放回截止时间索引，需等待下一次上报后重新检测", label, failed.size(), e);
+            }
+        }
+    }
+
+    private static boolean isSet(String flag) {
+        return flag != null && !"0".equals(flag);
+    }
+}
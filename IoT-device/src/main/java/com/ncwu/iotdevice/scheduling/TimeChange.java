@@ -1,16 +1,18 @@
 package com.ncwu.iotdevice.scheduling;
 
 
+import com.ncwu.common.clock.VirtualClock;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Objects;
-
 /**
- * 在redis模拟时钟
+ * 把模拟时钟的当天时间同步到 redis 的 Time
+ * <p>
+ * 模拟时间由 {@link VirtualClock} 推算，上报与流量模型不再读取 Time；这里只按原来五分钟的粒度
+ * 写入 Time 供外部查看。时钟加速后五分钟的模拟时间可能不到一秒，因此每秒检查一次，跨过刻度才写入。
  *
  * @author jingxu
  * @version 1.0.0
@@ -20,17 +22,24 @@ import java.util.Objects;
 @Component
 @RequiredArgsConstructor
 public class TimeChange {
+    private static final int STEP_SECONDS = 60 * 5;
+
     private final StringRedisTemplate redisTemplate;
-    //redis 时钟五分钟指针动一次
-    @Scheduled(fixedRate = 1000 * 60 * 5)
+    private final VirtualClock clock;
+    private int lastTime = -1;
+
+    @Scheduled(fixedRate = 1000)
     public void timeChange() {
-        if (Objects.requireNonNull(redisTemplate.opsForValue().get("isInit")).equals("0")){
+        String isInit = redisTemplate.opsForValue().get("isInit");
+        if (isInit == null || isInit.equals("0")) {
+            return;
+        }
+        int time = clock.secondOfDay() / STEP_SECONDS * STEP_SECONDS;
+        if (time == lastTime) {
             return;
         }
-        //读取旧值 time以秒为单位
-        int time = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("Time")));
-        time += 60 * 5;
-        redisTemplate.opsForValue().set("Time", String.valueOf((time) % (24 * 60 * 60)));
-        log.info("修改时间成功,现在是:{}", time);
+        lastTime = time;
+        redisTemplate.opsForValue().set("Time", String.valueOf(time));
+        log.debug("模拟时间已同步,现在是:{}", time);
     }
 }
@@ -1,28 +1,28 @@
 package com.ncwu.iotdevice.service;
 
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.clock.VirtualClock;
+import com.ncwu.common.mq.BatchingProducer;
 import com.ncwu.iotdevice.AOP.annotation.CloseValue;
 import com.ncwu.iotdevice.AOP.annotation.NotCredible;
 import com.ncwu.iotdevice.AOP.annotation.RandomEvent;
 import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
 import com.ncwu.iotdevice.domain.Bo.WaterQualityDataBo;
 import com.ncwu.iotdevice.exception.MessageSendException;
-import com.ncwu.iotdevice.mapper.DeviceMapper;
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.TelemetryRecorder;
+import com.ncwu.iotdevice.simulation.UsageLedger;
 import com.ncwu.iotdevice.utils.Utils;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.rocketmq.client.producer.SendCallback;
-import org.apache.rocketmq.client.producer.SendResult;
-import org.apache.rocketmq.spring.core.RocketMQTemplate;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
-import io.micrometer.core.instrument.Counter;
 
 import java.time.ZoneId;
-
-import static com.ncwu.iotdevice.utils.Utils.keep3;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
 
 /**
  * @author jingxu
@@ -33,36 +33,51 @@ import static com.ncwu.iotdevice.utils.Utils.keep3;
 @Service
 public class DataSender {
 
-    //两个消息队列消费计数器，用于监控失败比例
-    private final Counter messageSuccessCounter;
-    private final Counter messageFailureCounter;
-    private final ObjectMapper objectMapper;
-    private final RocketMQTemplate rocketMQTemplate;
+    /**
+     * 上报脚本的状态码：正常上报、设备刚启动仅写入心跳、重复数据
+     */
+    private static final long REPORTED = 0;
+    private static final String OFFLINE_MAP = "device:OffLine";
+    private static final List<String> REPORT_KEYS = List.of("OnLineMap",
+            UsageLedger.MILLILITRE_KEY, UsageLedger.CHECKPOINT_KEY, UsageLedger.TOTAL_KEY, OFFLINE_MAP);
+    //上报脚本，execute 时优先使用 EVALSHA
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> reportBatchScript = loadScript("deviceReportBatch.lua");
+
+    private final BatchingProducer batchingProducer;
+    private final HeartbeatCoalescer heartbeatCoalescer;
+    private final TelemetryRecorder telemetryRecorder;
+    private final UsageLedger usageLedger;
+    private final DeviceIndex deviceIndex;
+    private final VirtualClock virtualClock;
     private final StringRedisTemplate redisTemplate;
-    private final DeviceMapper deviceMapper;
     private final VirtualMeterDeviceService virtualMeterDeviceService;
 
     //构造函数，用于自动装配
-    public DataSender(@Qualifier("messageSuccessCounter") Counter MessageSuccessCounter,
-                      @Qualifier("messageFailureCounter") Counter MessageFailureCounter,
-                      ObjectMapper objectMapper,
-                      RocketMQTemplate rocketMQTemplate,
+    public DataSender(BatchingProducer batchingProducer,
+                      HeartbeatCoalescer heartbeatCoalescer,
+                      TelemetryRecorder telemetryRecorder,
+                      UsageLedger usageLedger,
+                      DeviceIndex deviceIndex,
+                      VirtualClock virtualClock,
                       StringRedisTemplate redisTemplate,
-                      DeviceMapper deviceMapper,
                       VirtualMeterDeviceService virtualMeterDeviceService
     ) {
-        this.messageSuccessCounter = MessageSuccessCounter;
-        this.messageFailureCounter = MessageFailureCounter;
-        this.objectMapper = objectMapper;
-        this.rocketMQTemplate = rocketMQTemplate;
+        this.batchingProducer = batchingProducer;
+        this.heartbeatCoalescer = heartbeatCoalescer;
+        this.telemetryRecorder = telemetryRecorder;
+        this.usageLedger = usageLedger;
+        this.deviceIndex = deviceIndex;
+        this.virtualClock = virtualClock;
         this.redisTemplate = redisTemplate;
-        this.deviceMapper = deviceMapper;
         this.virtualMeterDeviceService = virtualMeterDeviceService;
     }
 
 
     /**
      * 此方法传递发送的数据，并且更新 redis 中设备的在在线状态
+     * <p>
+     * 重复检测、离线检测与心跳在一个 lua 脚本中完成，只需一次往返，累计用水量在本地账本中累加
      *
      * @param dataBo 数据载荷
      * @throws MessageSendException 数据发送失败异常
@@ -71,114 +86,141 @@ public class DataSender {
     @RandomEvent
     @CloseValue
     public void sendMeterData(MeterDataBo dataBo) throws MessageSendException {
-        String deviceId = dataBo.getDeviceId();
-        Object onLineMap = redisTemplate.opsForHash().get("OnLineMap", dataBo.getDeviceId());
-        long deviceCurrentTime = dataBo.getTimeStamp().atZone(ZoneId.of("Asia/Shanghai")).toInstant().toEpochMilli();
+        sendMeterDataBatch(List.of(dataBo));
+    }
+
+    /**
+     * 批量发送同一个调度 tick 内到期的水表数据，所有设备的 redis 状态在一次 EVALSHA 中完成
+     *
+     * @param batch 数据载荷，调用方应已完成异常事件处理
+     */
+    public void sendMeterDataBatch(List<MeterDataBo> batch) {
+        sendMeterDataBatch(batch, i -> true);
+    }
+
+    /**
+     * 批量发送水表数据，redis 状态照常更新，只有通过筛选的数据发送到 MQ
+     *
+     * @param batch   数据载荷
+     * @param publish 按批次下标判断是否发送，只对上报脚本确认有效的数据调用
+     */
+    public void sendMeterDataBatch(List<MeterDataBo> batch, IntPredicate publish) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long[] deviceTimes = new long[batch.size()];
+        int[] slots = new int[batch.size()];
         long now = System.currentTimeMillis();
-        if (onLineMap != null) {
-            long preTime = Long.parseLong(String.valueOf(onLineMap));
-            if (preTime == -1) {
-                heartBeat(deviceId, now);
-                return;
+        List<String> args = new ArrayList<>(1 + batch.size() * 3);
+        //刚启动的设备以模拟时钟写入 OnLineMap，与数据时间戳可比较
+        args.add(String.valueOf(virtualClock.millis()));
+        for (int i = 0; i < batch.size(); i++) {
+            MeterDataBo dataBo = batch.get(i);
+            deviceTimes[i] = toEpochMilli(dataBo);
+            slots[i] = deviceIndex.slotOf(dataBo.getDeviceId());
+            args.add(dataBo.getDeviceId());
+            args.add(String.valueOf(deviceTimes[i]));
+            //本地账本尚未载入的设备随本次上报读取 redis 中的累计值与检查点
+            args.add(usageLedger.needsBase(slots[i]) ? "1" : "0");
+        }
+        List<?> reply = redisTemplate.execute(reportBatchScript, REPORT_KEYS, args.toArray());
+        if (reply == null) {
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            MeterDataBo dataBo = batch.get(i);
+            if (afterReport(dataBo, slots[i], deviceTimes[i], now, reply, i * 4)) {
+                telemetryRecorder.record(dataBo);
+                if (publish.test(i)) {
+                    batchingProducer.send("Meter-Data", dataBo);
+                }
             }
-            if (deviceCurrentTime <= preTime) {
+        }
+    }
+
+    /**
+     * 解析上报脚本的返回值，并把本次上报计入累计用水量
+     *
+     * @return 数据是否需要继续发送
+     */
+    private boolean afterReport(MeterDataBo dataBo, int slot, long deviceCurrentTime, long now,
+                                List<?> reply, int offset) {
+        String deviceId = dataBo.getDeviceId();
+        long status = ((Number) reply.get(offset)).longValue();
+        long totalMl = usageLedger.record(slot, deviceId, status, deviceCurrentTime, dataBo.getFlow(),
+                String.valueOf(reply.get(offset + 2)), String.valueOf(reply.get(offset + 3)));
+        if (status != 2) {
+            //脚本已更新 OnLineMap，离线截止时间随下一次心跳刷新一起写入
+            heartbeatCoalescer.touchDeadline(deviceId, now);
+        }
+        if (status != REPORTED) {
+            if (status == 2) {
                 log.warn("检测到重复数据，跳过上报{}", deviceId);
-                return;
             }
-            double increment = keep3(dataBo.getFlow() * (deviceCurrentTime - preTime) / 1000.0);
-            Double currentTotal = redisTemplate.opsForHash().increment("meter:total_usage", deviceId, increment);
-            dataBo.setTotalUsage(keep3(currentTotal));
+            return false;
         }
-        Boolean onLine = redisTemplate.hasKey("device:OffLine:" + deviceId);
-        if (onLine) {
-            // 消息队列通知上线
-            try {
-                rocketMQTemplate.convertAndSend("DeviceOnLine", deviceId);
-                messageSuccessCounter.increment();
-            } catch (Exception e) {
-                log.error("设备上线通知发送失败: deviceId={}, error={}", deviceId, e.getMessage());
-                messageFailureCounter.increment();
-            }
-            //如果设备上线,调用设备上线后置处理器
-            virtualMeterDeviceService.markDeviceOnline(deviceId, now, deviceMapper, redisTemplate);
+        if (totalMl >= 0) {
+            dataBo.setTotalUsage(totalMl / 1000.0);
         }
-        String data;
-        try {
-            data = objectMapper.writeValueAsString(dataBo);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        if (((Number) reply.get(offset + 1)).longValue() == 1) {
+            //如果设备上线,调用设备上线后置处理器，上线通知随批量处理一起发送
+            virtualMeterDeviceService.markDeviceOnline(deviceId, deviceCurrentTime);
         }
-        //Iot设备上报数据频率高，这里使用异步调用
-        asyncSendData("Meter-Data", data);
-        
-        // 数据上报成功后，同步更新心跳时间戳，确保心跳和数据的同步性
-        heartBeat(deviceId, deviceCurrentTime);
+        return true;
     }
 
+    private static long toEpochMilli(MeterDataBo dataBo) {
+        return dataBo.getTimeStamp().atZone(ZoneId.of("Asia/Shanghai")).toInstant().toEpochMilli();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static DefaultRedisScript<List> loadScript(String path) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    /**
+     * 心跳先在内存中合并，由心跳合并写入器按周期批量写入 OnLineMap
+     */
     public void heartBeat(String deviceId, long timestamp) {
-        redisTemplate.opsForHash().put("OnLineMap", deviceId, String.valueOf(timestamp));
+        heartbeatCoalescer.beat(deviceId, timestamp);
     }
 
     public void sendWaterQualityData(WaterQualityDataBo dataBo) throws MessageSendException {
-        String deviceId = dataBo.getDeviceId();
-        long timestamp = System.currentTimeMillis();
-        //每次接到上报的数据，就查询redis的离线列表，看看有没有离线设备重新上报数据(重新上线)
-        Boolean onLine = redisTemplate.hasKey("device:OffLine:" + deviceId);
-        if (onLine) {
-            //消息队列通知上线
-            try {
-                rocketMQTemplate.convertAndSend("DeviceOnLine", deviceId);
-                messageSuccessCounter.increment();
-            } catch (Exception e) {
-                log.error("设备上线通知发送失败: deviceId={}, error={}", deviceId, e.getMessage());
-                messageFailureCounter.increment();
-            }
-            //如果设备上线,调用设备上线后置处理器
-            virtualMeterDeviceService.markDeviceOnline(deviceId, timestamp, deviceMapper, redisTemplate);
-        }
-        String data;
-        try {
-            data = objectMapper.writeValueAsString(dataBo);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-        //Iot设备上报数据频率高，这里使用异步调用
-        asyncSendData("WaterQuality-Data", data);
-        
-        // 数据上报成功后，同步更新心跳时间戳，确保心跳和数据的同步性
-        heartBeat(deviceId, timestamp);
+        sendWaterQualityDataBatch(List.of(dataBo));
     }
 
     /**
-     * 异步向 mq 发送消息
+     * 批量发送同一个调度 tick 内到期的水质数据
      * <p>
-     * 失败将重新发送一次，随后再失败将记录日志
+     * 离线设备表用一次 HMGET 查询，不再逐台 EXISTS；心跳交给心跳合并写入器
+     *
+     * @param batch 数据载荷
      */
-    private <T> void asyncSendData(String topic, T data) {
-        rocketMQTemplate.asyncSend(topic, data, new SendCallback() {
-            @Override
-            public void onSuccess(SendResult sendResult) {
-                messageSuccessCounter.increment();
-            }
-            @Override
-            public void onException(Throwable throwable) {
-                messageFailureCounter.increment();
-                log.error("{},MQ 异步发送失败，尝试再次异步发送", throwable.getMessage());
-                rocketMQTemplate.asyncSend(topic, data, new SendCallback() {
-                    @Override
-                    public void onSuccess(SendResult sendResult) {
-                        log.info("重试发送成功");
-                        messageSuccessCounter.increment();
-                    }
-                    @Override
-                    public void onException(Throwable t) {
-                        messageFailureCounter.increment();
-                        log.error("重试发送仍然失败，记录：{}", data);
-                    }
-                });
+    public void sendWaterQualityDataBatch(List<WaterQualityDataBo> batch) throws MessageSendException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long timestamp = virtualClock.millis();
+        List<Object> deviceIds = new ArrayList<>(batch.size());
+        for (WaterQualityDataBo dataBo : batch) {
+            deviceIds.add(dataBo.getDeviceId());
+        }
+        //查询redis的离线设备表，看看有没有离线设备重新上报数据(重新上线)
+        List<Object> offline = redisTemplate.opsForHash().multiGet(OFFLINE_MAP, deviceIds);
+        for (int i = 0; i < batch.size(); i++) {
+            WaterQualityDataBo dataBo = batch.get(i);
+            String deviceId = dataBo.getDeviceId();
+            if (offline != null && offline.get(i) != null) {
+                //如果设备上线,调用设备上线后置处理器，上线通知随批量处理一起发送
+                virtualMeterDeviceService.markDeviceOnline(deviceId, timestamp);
             }
-        });
+            //Iot设备上报数据频率高，交给批量发送器按批次异步发送
+            batchingProducer.send("WaterQuality-Data", dataBo);
+            // 数据上报成功后，同步更新心跳时间戳，确保心跳和数据的同步性
+            heartBeat(deviceId, timestamp);
+        }
     }
 }
-
-
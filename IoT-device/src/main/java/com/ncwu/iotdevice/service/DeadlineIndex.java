@@ -0,0 +1,161 @@
+package com.ncwu.iotdevice.service;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 设备离线截止时间索引
+ * <p>
+ * 每类设备一个 redis 有序集合，成员为设备编号，分数为"最后一次心跳或上报时间 + 上报周期 * n"，
+ * 即不再收到数据就应判定离线的时刻。心跳与上报只在内存中记录最新时间，由心跳合并写入器在同一个
+ * pipeline 中批量 ZADD；离线检测只用脚本取出已到期的成员，复杂度 O(到期数 * log n)，不再扫描整个 OnLineMap。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/11
+ */
+@Slf4j
+@Component
+public class DeadlineIndex {
+
+    public static final String METER_KEY = "device:deadline:meter";
+    public static final String SENSOR_KEY = "device:deadline:sensor";
+
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> popScript = new DefaultRedisScript<>();
+
+    private final StringRedisTemplate redisTemplate;
+    private final ServerConfig serverConfig;
+
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    public DeadlineIndex(StringRedisTemplate redisTemplate, ServerConfig serverConfig) {
+        this.redisTemplate = redisTemplate;
+        this.serverConfig = serverConfig;
+        popScript.setLocation(new ClassPathResource("popExpiredDeadlines.lua"));
+        popScript.setResultType(List.class);
+    }
+
+    /**
+     * 记录设备最近一次有数据的时间，下一个刷新周期写入 redis
+     */
+    public void touch(String deviceId, long timestamp) {
+        pending.merge(deviceId, timestamp, Math::max);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * 在调用方的 pipeline 中写入积攒的截止时间
+     *
+     * @param chunkSize 单条 ZADD 包含的最多成员数
+     */
+    public void writePending(RedisConnection connection, int chunkSize) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long meterTimeout = timeout(serverConfig.getMeterReportFrequencyMs());
+        long sensorTimeout = timeout(serverConfig.getWaterQualityReportFrequencyMs());
+        Set<Tuple> meters = new HashSet<>();
+        Set<Tuple> sensors = new HashSet<>();
+        Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            String deviceId = entry.getKey();
+            byte[] member = deviceId.getBytes(StandardCharsets.UTF_8);
+            if (deviceId.startsWith("2")) {
+                sensors.add(new DefaultTuple(member, (double) (entry.getValue() + sensorTimeout)));
+                sensors = flushIfFull(connection, SENSOR_KEY, sensors, chunkSize);
+            } else {
+                meters.add(new DefaultTuple(member, (double) (entry.getValue() + meterTimeout)));
+                meters = flushIfFull(connection, METER_KEY, meters, chunkSize);
+            }
+        }
+        flushIfFull(connection, METER_KEY, meters, 1);
+        flushIfFull(connection, SENSOR_KEY, sensors, 1);
+    }
+
+    private static Set<Tuple> flushIfFull(RedisConnection connection, String key, Set<Tuple> tuples, int chunkSize) {
+        if (tuples.size() < Math.max(1, chunkSize)) {
+            return tuples;
+        }
+        connection.zSetCommands().zAdd(key.getBytes(StandardCharsets.UTF_8), tuples);
+        return new HashSet<>();
+    }
+
+    /**
+     * 取出并移除已经到期的设备
+     *
+     * @param key   {@link #METER_KEY} 或 {@link #SENSOR_KEY}
+     * @param now   当前时间
+     * @param limit 最多取出数量
+     * @return 到期的设备编号
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> popExpired(String key, long now, int limit) {
+        List<Object> ids = redisTemplate.execute(popScript, List.of(key), String.valueOf(now), String.valueOf(limit));
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> result.add(id.toString()));
+        return result;
+    }
+
+    /**
+     * 把下线处理失败的设备重新放回索引，下一个检测周期再次取出
+     * <p>
+     * 只写入索引中没有的设备：期间重新上报的设备已有更晚的截止时间，保留不动
+     *
+     * @param key      {@link #METER_KEY} 或 {@link #SENSOR_KEY}
+     * @param ids      设备编号
+     * @param deadline 截止时间，通常为本次检测时间
+     */
+    public void restore(String key, Collection<String> ids, long deadline) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(ids.size() * 2);
+        for (String id : ids) {
+            tuples.add(ZSetOperations.TypedTuple.of(id, (double) deadline));
+        }
+        redisTemplate.opsForZSet().addIfAbsent(key, tuples);
+    }
+
+    /**
+     * 清空某类设备的截止时间，重新开始模拟时调用
+     */
+    public void clear(String key) {
+        String prefix = METER_KEY.equals(key) ? "1" : "2";
+        pending.keySet().removeIf(id -> id.startsWith(prefix));
+        redisTemplate.delete(key);
+    }
+
+    private long timeout(long frequencyMs) {
+        return frequencyMs * Math.max(1, serverConfig.getN());
+    }
+}
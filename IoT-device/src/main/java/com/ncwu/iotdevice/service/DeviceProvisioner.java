@@ -0,0 +1,275 @@
+package com.ncwu.iotdevice.service;
+
+
+import cn.hutool.core.lang.UUID;
+import com.ncwu.common.registry.DeviceRegistryIndex;
+import com.ncwu.common.registry.DeviceRegistrySync;
+import com.ncwu.iotdevice.exception.DeviceRegisterException;
+import com.ncwu.iotdevice.utils.DeviceCodes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 流式设备注册
+ * <p>
+ * 按楼层为单位逐块生成设备：编号按位直接换算，不再一次性构建全部设备列表；mysql 使用多行 INSERT 批量写入，
+ * redis 的设备集合、心跳表在 pipeline 中按块写入，布隆过滤器按块批量添加，内存占用只与单块大小有关。
+ * <p>
+ * 每写完一块就把进度游标保存到 redis，进程中途崩溃后以相同拓扑再次初始化时，从游标处继续，
+ * 游标所指的那一块先删除可能已部分写入的数据库行再重写，redis 与布隆过滤器的写入本身是幂等的。
+ * <p>
+ * 每块写入后同步更新本地设备位图，并广播给其他实例的 {@link DeviceRegistrySync}。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/13
+ */
+@Slf4j
+@Component
+public class DeviceProvisioner {
+
+    public static final String CURSOR_KEY = "device:provision";
+    private static final String BLOOM_KEY = "device:bloom";
+    /**
+     * 每块包含的最多设备数
+     */
+    private static final int CHUNK_DEVICES = 2000;
+    /**
+     * 单条 INSERT 包含的最多行数
+     */
+    private static final int ROWS_PER_INSERT = 500;
+    private static final String INSERT_HEAD = "INSERT INTO virtual_device (device_code, sn_code, device_type, "
+            + "campus_no, building_no, floor_no, room_no, install_date, status, is_running) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final byte[] METER_SET = "device:meter".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SENSOR_SET = "device:sensor".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ONLINE_MAP = "OnLineMap".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_STARTED = "-1".getBytes(StandardCharsets.UTF_8);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedissonClient redissonClient;
+    private final DeviceRegistryIndex registryIndex;
+
+    private volatile double progress = 1;
+
+    public DeviceProvisioner(JdbcTemplate jdbcTemplate, StringRedisTemplate redisTemplate,
+                             RedissonClient redissonClient, DeviceRegistryIndex registryIndex,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.redissonClient = redissonClient;
+        this.registryIndex = registryIndex;
+        Gauge.builder("device.provision.progress", this, p -> p.progress)
+                .description("设备注册进度(0-1)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一次注册的进度
+     *
+     * @param buildings 每个校区的楼宇数
+     * @param floors    每栋楼的层数
+     * @param rooms     每层的房间数
+     * @param done      已完成的楼层数
+     * @param total     楼层总数
+     */
+    public record Progress(int buildings, int floors, int rooms, long done, long total) {
+        public double ratio() {
+            return total == 0 ? 1 : (double) done / total;
+        }
+    }
+
+    /**
+     * 读取尚未完成的注册进度
+     *
+     * @return 没有未完成的注册时返回 null
+     */
+    public Progress unfinished() {
+        Map<Object, Object> cursor = redisTemplate.opsForHash().entries(CURSOR_KEY);
+        if (cursor.isEmpty()) {
+            return null;
+        }
+        return new Progress(intOf(cursor, "buildings"), intOf(cursor, "floors"), intOf(cursor, "rooms"),
+                intOf(cursor, "done"), intOf(cursor, "total"));
+    }
+
+    /**
+     * 上一次注册是否以相同拓扑中断，可以续传
+     */
+    public boolean canResume(int buildings, int floors, int rooms) {
+        Progress p = unfinished();
+        return p != null && p.buildings() == buildings && p.floors() == floors && p.rooms() == rooms
+                && p.done() < p.total();
+    }
+
+    /**
+     * 注册全部设备
+     *
+     * @param resume 是否从上一次中断的位置继续
+     * @return 注册的设备总数(水表与水质传感器)
+     */
+    public long provision(int buildings, int floors, int rooms, boolean resume) {
+        if (buildings <= 0 || floors <= 0 || rooms <= 0) {
+            throw new DeviceRegisterException("楼宇、楼层、房间数量必须大于 0");
+        }
+        //每个楼层为一个单元：rooms 台水表 + 1 台水质传感器
+        int totalUnits = 3 * buildings * floors;
+        int unitsPerChunk = Math.max(1, CHUNK_DEVICES / (rooms + 1));
+        long totalDevices = (long) totalUnits * (rooms + 1);
+        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter(BLOOM_KEY);
+        int start = 0;
+        if (resume) {
+            Progress p = Objects.requireNonNull(unfinished());
+            start = (int) p.done();
+            //游标所指的块可能已部分写入数据库
+            deleteUnits(start, Math.min(totalUnits, start + unitsPerChunk), buildings, floors);
+            log.info("从第 {}/{} 个楼层继续注册设备", start, totalUnits);
+        } else {
+            //先删除旧的布隆过滤器，避免残留数据影响
+            bloomFilter.delete();
+            Map<String, String> cursor = new HashMap<>();
+            cursor.put("buildings", String.valueOf(buildings));
+            cursor.put("floors", String.valueOf(floors));
+            cursor.put("rooms", String.valueOf(rooms));
+            cursor.put("done", "0");
+            cursor.put("total", String.valueOf(totalUnits));
+            redisTemplate.opsForHash().putAll(CURSOR_KEY, cursor);
+        }
+        bloomFilter.tryInit(Math.max(100_000, totalDevices * 2), 0.01);
+
+        long begin = System.currentTimeMillis();
+        int lastLogged = -1;
+        progress = (double) start / totalUnits;
+        for (int from = start; from < totalUnits; from += unitsPerChunk) {
+            int to = Math.min(totalUnits, from + unitsPerChunk);
+            writeChunk(from, to, buildings, floors, rooms, bloomFilter);
+            redisTemplate.opsForHash().put(CURSOR_KEY, "done", String.valueOf(to));
+            progress = (double) to / totalUnits;
+            int percent = (int) (progress * 10);
+            if (percent != lastLogged) {
+                lastLogged = percent;
+                log.info("设备注册进度 {}%，{}/{} 个楼层", percent * 10, to, totalUnits);
+            }
+        }
+        //注册完成，清除游标
+        redisTemplate.delete(CURSOR_KEY);
+        progress = 1;
+        log.info("设备注册完成，共 {} 台，耗时 {} ms", totalDevices, System.currentTimeMillis() - begin);
+        return totalDevices;
+    }
+
+    /**
+     * 生成并写入 [from, to) 范围内楼层的全部设备
+     */
+    private void writeChunk(int from, int to, int buildings, int floors, int rooms, RBloomFilter<String> bloomFilter) {
+        List<String> meters = new ArrayList<>((to - from) * rooms);
+        List<String> sensors = new ArrayList<>(to - from);
+        List<Object[]> rows = new ArrayList<>((to - from) * (rooms + 1));
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int unit = from; unit < to; unit++) {
+            int campus = unit / (buildings * floors) + 1;
+            int building = unit / floors % buildings + 1;
+            int floor = unit % floors + 1;
+            for (int r = 1; r <= rooms; r++) {
+                String id = DeviceCodes.meter(campus, building, floor, r);
+                meters.add(id);
+                rows.add(row(id, DeviceCodes.METER, now));
+            }
+            String sensor = DeviceCodes.sensor(campus, building, floor);
+            sensors.add(sensor);
+            rows.add(row(sensor, DeviceCodes.SENSOR, now));
+        }
+        insertRows(rows);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setCommands().sAdd(METER_SET, toBytes(meters));
+            connection.setCommands().sAdd(SENSOR_SET, toBytes(sensors));
+            Map<byte[], byte[]> heartbeats = new HashMap<>(meters.size() + sensors.size());
+            meters.forEach(id -> heartbeats.put(id.getBytes(StandardCharsets.UTF_8), NOT_STARTED));
+            sensors.forEach(id -> heartbeats.put(id.getBytes(StandardCharsets.UTF_8), NOT_STARTED));
+            //所有设备心跳表，-1 表示尚未启动
+            connection.hashCommands().hMSet(ONLINE_MAP, heartbeats);
+            return null;
+        });
+        bloomFilter.add(meters);
+        bloomFilter.add(sensors);
+        registryIndex.addAll(meters);
+        registryIndex.addAll(sensors);
+        DeviceRegistrySync.publishAdded(redisTemplate, meters);
+        DeviceRegistrySync.publishAdded(redisTemplate, sensors);
+    }
+
+    private static Object[] row(String id, int type, Timestamp now) {
+        String sn = "JX" + UUID.fastUUID().toString().substring(0, 18).toUpperCase();
+        return new Object[]{id, sn, type, id.substring(1, 2), id.substring(2, 4), id.substring(4, 6),
+                id.substring(6, 9), now, "online", false};
+    }
+
+    /**
+     * 以多行 INSERT 写入，每条语句最多 ROWS_PER_INSERT 行，
+     * 效果等同于开启 rewriteBatchedStatements，但不依赖连接串配置
+     */
+    private void insertRows(List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += ROWS_PER_INSERT) {
+            int to = Math.min(rows.size(), from + ROWS_PER_INSERT);
+            StringBuilder sql = new StringBuilder(INSERT_HEAD.length() + (to - from) * (INSERT_ROW.length() + 1));
+            sql.append(INSERT_HEAD);
+            Object[] args = new Object[(to - from) * 10];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    sql.append(',');
+                }
+                sql.append(INSERT_ROW);
+                Object[] row = rows.get(i);
+                System.arraycopy(row, 0, args, n, row.length);
+                n += row.length;
+            }
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    /**
+     * 删除 [from, to) 范围内楼层已经写入的设备行
+     */
+    private void deleteUnits(int from, int to, int buildings, int floors) {
+        List<Object[]> args = new ArrayList<>(to - from);
+        for (int unit = from; unit < to; unit++) {
+            int campus = unit / (buildings * floors) + 1;
+            int building = unit / floors % buildings + 1;
+            int floor = unit % floors + 1;
+            String code = DeviceCodes.meter(campus, building, floor, 1);
+            args.add(new Object[]{code.substring(1, 2), code.substring(2, 4), code.substring(4, 6)});
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM virtual_device WHERE campus_no = ? AND building_no = ? AND floor_no = ?",
+                args);
+    }
+
+    private static byte[][] toBytes(List<String> ids) {
+        byte[][] result = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            result[i] = ids.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private static int intOf(Map<Object, Object> map, String key) {
+        Object v = map.get(key);
+        return v == null ? 0 : Integer.parseInt(v.toString());
+    }
+}
@@ -0,0 +1,195 @@
+package com.ncwu.iotdevice.service;
+
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.ncwu.common.cache.NamespaceEpoch;
+import com.ncwu.iotdevice.domain.entity.VirtualDevice;
+import com.ncwu.iotdevice.mapper.DeviceMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 设备状态三级缓存：本地 Caffeine -> redis -> mysql
+ * <p>
+ * 批量查询时，本地未命中的设备交给 {@link CacheLoader#loadAll} 一次性加载：先用一次 MGET 查询 redis，
+ * 仍未命中的再按块执行 SELECT ... IN 查询数据库，查到的结果在一次 pipeline 中回填 redis。
+ * 每一级的命中次数与命中率以指标形式暴露。redis 中的键挂在 {@link NamespaceEpoch#DEVICE_STATUS} 命名空间下，
+ * 整体清空时只需版本号加一。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/14
+ */
+@Slf4j
+@Component
+public class DeviceStatusCache {
+
+    /**
+     * 单条 SELECT 的 IN 列表最多包含的设备数
+     */
+    private static final int SELECT_CHUNK = 1000;
+    /**
+     * redis 缓存基础过期时间与随机偏移，单位秒，避免同时过期
+     */
+    private static final int TTL_SECONDS = 180;
+    private static final int TTL_JITTER_SECONDS = 120;
+
+    private final StringRedisTemplate redisTemplate;
+    private final DeviceMapper deviceMapper;
+    private final NamespaceEpoch namespaceEpoch;
+    private final LoadingCache<String, String> cache;
+
+    //各级查询与命中次数
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder dbHits = new LongAdder();
+
+    public DeviceStatusCache(StringRedisTemplate redisTemplate, DeviceMapper deviceMapper,
+                             NamespaceEpoch namespaceEpoch, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.deviceMapper = deviceMapper;
+        this.namespaceEpoch = namespaceEpoch;
+        //最大容量10000，写入后5分钟过期
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build(new StatusLoader());
+        registerLevel(meterRegistry, "local", localHits);
+        registerLevel(meterRegistry, "redis", redisHits);
+        registerLevel(meterRegistry, "db", dbHits);
+    }
+
+    private void registerLevel(MeterRegistry meterRegistry, String level, LongAdder hits) {
+        Gauge.builder("device.status.cache.hits", hits, LongAdder::sum)
+                .description("设备状态缓存各级命中次数")
+                .tag("level", level)
+                .register(meterRegistry);
+        Gauge.builder("device.status.cache.hit.ratio", this, c -> c.ratio(hits))
+                .description("设备状态缓存各级命中次数占全部查询的比例")
+                .tag("level", level)
+                .register(meterRegistry);
+    }
+
+    private double ratio(LongAdder hits) {
+        long total = requests.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    /**
+     * 批量查询设备状态，值格式为 "状态,是否运行"，不存在的设备不出现在结果中
+     */
+    public Map<String, String> getAll(Collection<String> ids) {
+        requests.add(ids.size());
+        Map<String, String> present = cache.getAllPresent(ids);
+        localHits.add(present.size());
+        if (present.size() == ids.size()) {
+            return present;
+        }
+        //剩余的设备由 loadAll 批量加载
+        Map<String, String> result = new HashMap<>(cache.getAll(ids));
+        result.putAll(present);
+        return result;
+    }
+
+    public void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll(Iterable<String> ids) {
+        cache.invalidateAll(ids);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 本地缓存未命中时的批量加载器
+     */
+    private final class StatusLoader implements CacheLoader<String, String> {
+
+        @Override
+        public String load(String id) {
+            return loadAll(Set.of(id)).get(id);
+        }
+
+        @Override
+        public Map<String, String> loadAll(Set<? extends String> ids) {
+            List<String> keys = new ArrayList<>(ids);
+            Map<String, String> result = new HashMap<>(keys.size());
+            //L2 一次 MGET 查询 redis
+            String prefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+            List<String> values = redisTemplate.opsForValue()
+                    .multiGet(keys.stream().map(id -> prefix + id).toList());
+            List<String> missing = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                String value = values == null ? null : values.get(i);
+                if (value != null) {
+                    result.put(keys.get(i), value);
+                } else {
+                    missing.add(keys.get(i));
+                }
+            }
+            redisHits.add(result.size());
+            if (missing.isEmpty()) {
+                return result;
+            }
+            //L3 按块查询数据库
+            Map<String, String> loaded = new HashMap<>(missing.size());
+            for (int from = 0; from < missing.size(); from += SELECT_CHUNK) {
+                List<String> chunk = missing.subList(from, Math.min(missing.size(), from + SELECT_CHUNK));
+                List<VirtualDevice> devices = deviceMapper.selectList(new LambdaQueryWrapper<VirtualDevice>()
+                        .select(VirtualDevice::getDeviceCode, VirtualDevice::getStatus, VirtualDevice::getIsRunning)
+                        .in(VirtualDevice::getDeviceCode, chunk));
+                devices.forEach(d -> loaded.put(d.getDeviceCode(), d.getStatus() + "," + d.getIsRunning()));
+            }
+            dbHits.add(loaded.size());
+            if (!loaded.isEmpty()) {
+                backfill(loaded);
+                result.putAll(loaded);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 在一次 pipeline 中回填 redis，过期时间带随机偏移
+     */
+    private void backfill(Map<String, String> loaded) {
+        String prefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                loaded.forEach((id, value) -> connection.stringCommands().set(
+                        (prefix + id).getBytes(StandardCharsets.UTF_8),
+                        value.getBytes(StandardCharsets.UTF_8),
+                        Expiration.seconds(TTL_SECONDS + random.nextInt(TTL_JITTER_SECONDS + 1)),
+                        RedisStringCommands.SetOption.upsert()));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("设备状态回填 redis 失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.ncwu.iotdevice.service;
+
+
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.ncwu.common.cache.NamespaceEpoch;
+import com.ncwu.common.domain.Bo.ErrorDataMessageBO;
+import com.ncwu.iotdevice.domain.entity.VirtualDevice;
+import com.ncwu.iotdevice.mapper.DeviceMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备上下线状态的批量处理器
+ * <p>
+ * 一个检测周期内下线的设备、以及上报时发现重新上线的设备，不再逐台发送消息、逐行更新数据库、逐条操作 redis，
+ * 而是整批处理：数据库按块执行 UPDATE ... WHERE device_code IN (...)，redis 操作在一次 pipeline 中完成，
+ * 告警与上线通知作为一个 RocketMQ 批量消息发出。每个周期记录处理的设备数和耗时。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/12
+ */
+@Slf4j
+@Component
+public class DeviceTransitionBatcher {
+
+    /**
+     * 单条 UPDATE 的 IN 列表与单个批量消息包含的最多设备数
+     */
+    private static final int CHUNK = 1000;
+    private static final byte[] OFFLINE_MAP = "device:OffLine".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ONLINE_MAP = "OnLineMap".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OFFLINE_VALUE = "offLine,false".getBytes(StandardCharsets.UTF_8);
+
+    private final DeviceMapper deviceMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ObjectProvider<VirtualMeterDeviceService> meterDeviceService;
+    private final MeterRegistry meterRegistry;
+    private final NamespaceEpoch namespaceEpoch;
+
+    /**
+     * 等待批量处理的上线设备及其上线时间
+     */
+    private final Map<String, Long> pendingOnline = new ConcurrentHashMap<>();
+
+    public DeviceTransitionBatcher(DeviceMapper deviceMapper, StringRedisTemplate redisTemplate,
+                                   RocketMQTemplate rocketMQTemplate,
+                                   ObjectProvider<VirtualMeterDeviceService> meterDeviceService,
+                                   MeterRegistry meterRegistry, NamespaceEpoch namespaceEpoch) {
+        this.deviceMapper = deviceMapper;
+        this.redisTemplate = redisTemplate;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.meterDeviceService = meterDeviceService;
+        this.meterRegistry = meterRegistry;
+        this.namespaceEpoch = namespaceEpoch;
+    }
+
+    /**
+     * 批量处理一个检测周期内下线的设备
+     * <p>
+     * 按块依次更新数据库与 redis，状态生效后再发送下线告警。某一块失败时其余块照常处理，
+     * 失败的设备返回给调用方重新放回截止时间索引，下个检测周期重试，暂时的数据库或 redis 故障不会丢失下线告警。
+     *
+     * @param ids        下线设备编号
+     * @param deviceType 告警消息中的设备类型 METER / WATER_QUALITY
+     * @return 处理失败的设备编号
+     */
+    public List<String> offline(List<String> ids, String deviceType) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        long begin = System.nanoTime();
+        //水质传感器只修改仍处于在线状态的设备，与原逐台处理的条件一致
+        boolean onlyOnline = "WATER_QUALITY".equals(deviceType);
+        String statusPrefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+        List<String> applied = new ArrayList<>(ids.size());
+        List<String> failed = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK));
+            try {
+                //更新数据库状态
+                LambdaUpdateWrapper<VirtualDevice> updateWrapper = new LambdaUpdateWrapper<VirtualDevice>()
+                        .in(VirtualDevice::getDeviceCode, chunk)
+                        .eq(onlyOnline, VirtualDevice::getStatus, "online")
+                        .set(VirtualDevice::getIsRunning, false)
+                        .set(VirtualDevice::getStatus, "offline");
+                deviceMapper.update(updateWrapper);
+                //数据库更新完成后再清理缓存，同时移出在线状态表并写入离线设备表，为后续上线提供方便
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (String deviceId : chunk) {
+                        byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+                        connection.keyCommands().del(bytes(statusPrefix + deviceId));
+                        connection.hashCommands().hDel(ONLINE_MAP, id);
+                        connection.hashCommands().hSet(OFFLINE_MAP, id, OFFLINE_VALUE);
+                    }
+                    return null;
+                });
+                //状态生效后再发送下线告警，失败重试时不会重复告警
+                List<Message<ErrorDataMessageBO>> messages = new ArrayList<>(chunk.size());
+                for (String deviceId : chunk) {
+                    messages.add(MessageBuilder.withPayload(offlineMessage(deviceId, deviceType)).build());
+                }
+                sendBatch("ErrorData", messages);
+                applied.addAll(chunk);
+            } catch (Exception e) {
+                log.error("{} 台{}设备下线处理失败，下个周期重试", chunk.size(), deviceType, e);
+                failed.addAll(chunk);
+            }
+        }
+        if (!applied.isEmpty()) {
+            meterDeviceService.getObject().madeSomeLocalCacheInvalidated(applied);
+            record("offline", applied.size(), begin);
+            log.warn("已修改 {} 台{}设备的状态为 offline", applied.size(), deviceType);
+        }
+        return failed;
+    }
+
+    /**
+     * 记录重新上线的设备，在下一个处理周期批量生效
+     */
+    public void online(String deviceId, long timestamp) {
+        pendingOnline.merge(deviceId, timestamp, Math::max);
+    }
+
+    /**
+     * 批量处理上一个周期内重新上线的设备
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flushOnline() {
+        if (pendingOnline.isEmpty()) {
+            return;
+        }
+        Map<String, Long> batch = new HashMap<>();
+        Iterator<Map.Entry<String, Long>> it = pendingOnline.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (pendingOnline.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        List<String> ids = new ArrayList<>(batch.keySet());
+        try {
+            for (int from = 0; from < ids.size(); from += CHUNK) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + CHUNK));
+                //消息队列通知上线
+                List<Message<String>> messages = new ArrayList<>(chunk.size());
+                for (String deviceId : chunk) {
+                    messages.add(MessageBuilder.withPayload(deviceId).build());
+                }
+                sendBatch("DeviceOnLine", messages);
+                //更新数据库状态（仅当当前为 offline 时）
+                LambdaUpdateWrapper<VirtualDevice> updateWrapper = new LambdaUpdateWrapper<VirtualDevice>()
+                        .in(VirtualDevice::getDeviceCode, chunk)
+                        .eq(VirtualDevice::getStatus, "offline")
+                        .set(VirtualDevice::getIsRunning, true)
+                        .set(VirtualDevice::getStatus, "online");
+                deviceMapper.update(updateWrapper);
+            }
+            //移出离线设备表并重新加入心跳监控
+            String statusPrefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                Map<byte[], byte[]> heartbeats = new HashMap<>();
+                for (Map.Entry<String, Long> entry : batch.entrySet()) {
+                    String deviceId = entry.getKey();
+                    connection.hashCommands().hDel(OFFLINE_MAP, bytes(deviceId));
+                    connection.keyCommands().del(bytes(statusPrefix + deviceId));
+                    heartbeats.put(bytes(deviceId), bytes(String.valueOf(entry.getValue())));
+                    if (heartbeats.size() == CHUNK) {
+                        connection.hashCommands().hMSet(ONLINE_MAP, heartbeats);
+                        heartbeats = new HashMap<>();
+                    }
+                }
+                if (!heartbeats.isEmpty()) {
+                    connection.hashCommands().hMSet(ONLINE_MAP, heartbeats);
+                }
+                return null;
+            });
+            meterDeviceService.getObject().madeSomeLocalCacheInvalidated(ids);
+        } catch (Exception e) {
+            log.error("{} 台设备上线处理失败: {}", ids.size(), e.getMessage(), e);
+        }
+        record("online", ids.size(), begin);
+    }
+
+    private ErrorDataMessageBO offlineMessage(String deviceId, String deviceType) {
+        ErrorDataMessageBO errorDataMessageBO = new ErrorDataMessageBO();
+        errorDataMessageBO.setErrorType("OFFLINE");
+        errorDataMessageBO.setLevel("WARN");
+        errorDataMessageBO.setDeviceId(deviceId);
+        errorDataMessageBO.setDesc("设备下线");
+        errorDataMessageBO.setDeviceType(deviceType);
+        return errorDataMessageBO;
+    }
+
+    private <T> void sendBatch(String topic, List<Message<T>> messages) {
+        int size = messages.size();
+        rocketMQTemplate.asyncSend(topic, messages, new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                log.error("{} 批量发送失败 {} 条: {}", topic, size, throwable.getMessage());
+            }
+        });
+    }
+
+    private void record(String direction, int count, long begin) {
+        DistributionSummary.builder("device.transition.count")
+                .description("单个周期批量处理的设备上下线数量")
+                .tag("direction", direction)
+                .register(meterRegistry)
+                .record(count);
+        Timer.builder("device.transition.apply.latency")
+                .description("单个周期批量处理设备上下线的耗时")
+                .tag("direction", direction)
+                .register(meterRegistry)
+                .record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
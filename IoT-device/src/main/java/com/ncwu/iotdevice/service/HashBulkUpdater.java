@@ -0,0 +1,213 @@
+package com.ncwu.iotdevice.service;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 大哈希表字段的分块批量处理
+ * <p>
+ * 原先的 setHashValues.lua 在一次脚本中 HKEYS 再逐字段 HSET，脚本执行期间 redis 无法处理其他客户端的请求，
+ * 十万台设备启动时所有客户端都要等待整个脚本结束。这里改为由 HSCAN 游标逐块取出字段，每块用一条多字段 HSET
+ * 直接写回，块与块之间让出 redis。
+ * <p>
+ * Spring 的扫描游标在打开时固定 COUNT，无法随块大小调整，因此游标由这里自行推进：每一步经 hashScanStep.lua
+ * 执行一次 HSCAN，COUNT 取当前块大小，脚本只包含这一条命令，占用 redis 的时间与直接 HSCAN 相同。
+ * <p>
+ * 每块写回后用一次 PING 估计其他客户端此刻的排队延迟：超过 {@link ServerConfig#getBulkLatencyTargetMs()}
+ * 或单块耗时超过 {@link ServerConfig#getBulkChunkBudgetMs()} 时块减半、间隔加倍，否则逐步恢复。
+ * 进度以指标 redis.bulk.progress 暴露，并每 10% 记录一次日志。
+ * <p>
+ * HSCAN 只保证遍历开始前已存在的字段至少返回一次，改写已有字段不会触发 rehash，重复返回的字段只是重复写入同一个值；
+ * 遍历期间删除字段也不会让其余字段被漏掉。除整体改写外，{@link #forEachChunk} 也用于分块删除过期的阀门设备规则。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HashBulkUpdater {
+
+    private static final int MIN_CHUNK = 50;
+    private static final int MAX_CHUNK = 10_000;
+    private static final long MAX_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MIN_PAUSE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ServerConfig serverConfig;
+    private final MeterRegistry meterRegistry;
+    private final DefaultRedisScript<List> scanScript = loadScanScript();
+
+    private volatile double progress = 1;
+    private Timer chunkTimer;
+    private Timer probeTimer;
+
+    @PostConstruct
+    void init() {
+        chunkTimer = Timer.builder("redis.bulk.chunk.latency")
+                .description("批量处理时一块字段的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        probeTimer = Timer.builder("redis.bulk.probe.latency")
+                .description("批量改写期间 PING 的往返耗时，用于估计其他客户端的延迟")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("redis.bulk.progress", this, u -> u.progress)
+                .description("当前批量改写的进度(0-1)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 当前批量改写的进度，没有进行中的改写时为 1
+     */
+    public double progress() {
+        return progress;
+    }
+
+    /**
+     * 把哈希表中匹配 pattern 的全部字段改写为同一个值
+     *
+     * @param key     哈希表
+     * @param pattern 字段匹配模式，与 HSCAN 的 MATCH 相同
+     * @param value   新的值
+     * @return 改写的字段数
+     */
+    public long setAll(String key, String pattern, String value) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = value.getBytes(StandardCharsets.UTF_8);
+        return forEachChunk(key, pattern, v -> !value.equals(v), fields -> {
+            Map<byte[], byte[]> values = new HashMap<>(fields.size() * 2);
+            fields.forEach(f -> values.put(f.getBytes(StandardCharsets.UTF_8), rawValue));
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                connection.hashCommands().hMSet(rawKey, values);
+                return null;
+            });
+        });
+    }
+
+    /**
+     * 逐块处理哈希表中匹配 pattern 且值满足条件的字段
+     * <p>
+     * 每块交给 action 在一次往返中处理，块大小与块间间隔按 redis 的延迟自适应调整。
+     * 处理方式需容忍字段在扫描与处理之间被其他客户端改写，例如在脚本中重新检查字段的值。
+     *
+     * @param key     哈希表
+     * @param pattern 字段匹配模式，与 HSCAN 的 MATCH 相同
+     * @param select  按字段的值选择需要处理的字段
+     * @param action  处理一块字段
+     * @return 处理的字段数
+     */
+    public synchronized long forEachChunk(String key, String pattern, Predicate<String> select,
+                                          Consumer<List<String>> action) {
+        Long size = redisTemplate.opsForHash().size(key);
+        long total = size == null ? 0 : size;
+        if (total == 0) {
+            return 0;
+        }
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, serverConfig.getBulkChunkBudgetMs()));
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, serverConfig.getBulkLatencyTargetMs()));
+        int chunk = Math.clamp(serverConfig.getBulkChunkSize(), MIN_CHUNK, MAX_CHUNK);
+        long pause = MIN_PAUSE_NANOS;
+        long scanned = 0;
+        long written = 0;
+        int lastLogged = -1;
+        long begin = System.nanoTime();
+        progress = 0;
+        List<String> fields = new ArrayList<>();
+        String cursor = "0";
+        try {
+            do {
+                List<?> page = redisTemplate.execute(scanScript, List.of(key), cursor, pattern, String.valueOf(chunk));
+                cursor = page.get(0).toString();
+                List<?> entries = (List<?>) page.get(1);
+                for (int i = 0; i + 1 < entries.size(); i += 2) {
+                    scanned++;
+                    if (select.test(entries.get(i + 1).toString())) {
+                        fields.add(entries.get(i).toString());
+                    }
+                }
+                progress = Math.min(1, (double) scanned / total);
+                boolean last = "0".equals(cursor);
+                if (fields.isEmpty() || (fields.size() < chunk && !last)) {
+                    continue;
+                }
+                long took = write(action, fields);
+                written += fields.size();
+                fields = new ArrayList<>();
+                if (last) {
+                    break;
+                }
+                long probe = probe();
+                //其他客户端的延迟或单块耗时超出目标时缩小块并拉长间隔，否则逐步恢复，下一步 HSCAN 即按新的块大小取字段
+                if (probe > targetNanos || took > budgetNanos) {
+                    chunk = Math.max(MIN_CHUNK, chunk / 2);
+                    pause = Math.min(MAX_PAUSE_NANOS, pause * 2);
+                } else if (took < budgetNanos / 2) {
+                    chunk = Math.min(MAX_CHUNK, chunk + chunk / 4 + 1);
+                    pause = Math.max(MIN_PAUSE_NANOS, pause / 2);
+                }
+                int percent = (int) (progress * 10);
+                if (percent != lastLogged) {
+                    lastLogged = percent;
+                    log.info("{} 批量处理进度 {}%，{}/{}，当前块大小 {}", key, percent * 10, scanned, total, chunk);
+                }
+                LockSupport.parkNanos(pause);
+            } while (!"0".equals(cursor));
+        } finally {
+            progress = 1;
+        }
+        log.info("{} 批量处理完成，扫描 {} 个字段，处理 {} 个，耗时 {} ms", key, scanned, written,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        return written;
+    }
+
+    /**
+     * 处理一块字段
+     *
+     * @return 耗时，纳秒
+     */
+    private long write(Consumer<List<String>> action, List<String> fields) {
+        long start = System.nanoTime();
+        action.accept(fields);
+        long took = System.nanoTime() - start;
+        chunkTimer.record(took, TimeUnit.NANOSECONDS);
+        return took;
+    }
+
+    private static DefaultRedisScript<List> loadScanScript() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("hashScanStep.lua"));
+        script.setResultType(List.class);
+        return script;
+    }
+
+    private long probe() {
+        long start = System.nanoTime();
+        redisTemplate.execute((RedisCallback<String>) connection -> connection.ping());
+        long took = System.nanoTime() - start;
+        probeTimer.record(took, TimeUnit.NANOSECONDS);
+        return took;
+    }
+}
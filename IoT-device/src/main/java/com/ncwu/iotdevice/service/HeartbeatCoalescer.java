@@ -0,0 +1,211 @@
+package com.ncwu.iotdevice.service;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 心跳合并写入器
+ * <p>
+ * 设备心跳不再逐条 HSET OnLineMap，而是先在内存中按设备编号合并(同一设备只保留最新时间戳)，
+ * 每个刷新周期把积攒的心跳按块拆成多条多字段 HSET，在一次 pipeline 中写入 redis。
+ * 写入延迟与 redis 的 HSET 耗时、CPU 占用以指标形式暴露。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/10
+ */
+@Slf4j
+@Component
+public class HeartbeatCoalescer {
+
+    private static final String ONLINE_MAP = "OnLineMap";
+    private static final byte[] ONLINE_MAP_KEY = ONLINE_MAP.getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ServerConfig serverConfig;
+    private final MeterRegistry meterRegistry;
+    private final DeadlineIndex deadlineIndex;
+
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread flusher;
+    private Timer flushTimer;
+
+    //redis INFO 中读取的累计值，单位秒
+    private volatile double redisCpuSeconds;
+    private volatile double hsetCpuSeconds;
+    private volatile long hsetCalls;
+
+    public HeartbeatCoalescer(StringRedisTemplate redisTemplate, ServerConfig serverConfig,
+                              MeterRegistry meterRegistry, DeadlineIndex deadlineIndex) {
+        this.redisTemplate = redisTemplate;
+        this.serverConfig = serverConfig;
+        this.meterRegistry = meterRegistry;
+        this.deadlineIndex = deadlineIndex;
+    }
+
+    @PostConstruct
+    void start() {
+        flushTimer = Timer.builder("redis.onlinemap.flush.latency")
+                .description("一次心跳 pipeline 写入 OnLineMap 的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("redis.onlinemap.pending", pending, Map::size)
+                .description("等待写入 OnLineMap 的心跳数")
+                .register(meterRegistry);
+        Gauge.builder("redis.cpu.seconds", this, c -> c.redisCpuSeconds)
+                .description("redis 进程累计 CPU 时间(秒)")
+                .register(meterRegistry);
+        Gauge.builder("redis.hset.cpu.seconds", this, c -> c.hsetCpuSeconds)
+                .description("redis 执行 HSET 命令累计耗时(秒)，主要来自 OnLineMap 更新")
+                .register(meterRegistry);
+        Gauge.builder("redis.hset.calls", this, c -> c.hsetCalls)
+                .description("redis 累计执行 HSET 命令次数")
+                .register(meterRegistry);
+        running = true;
+        flusher = Thread.ofPlatform().name("heartbeat-flusher").daemon(true).start(this::flushLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        LockSupport.unpark(flusher);
+        flush();
+    }
+
+    /**
+     * 记录一次心跳，实际写入在下一个刷新周期完成
+     *
+     * @param timestamp 写入 OnLineMap 的模拟时钟时间，离线截止时间按真实时间计算，不受时钟倍速影响
+     */
+    public void beat(String deviceId, long timestamp) {
+        pending.merge(deviceId, timestamp, Math::max);
+        deadlineIndex.touch(deviceId, System.currentTimeMillis());
+    }
+
+    /**
+     * 只刷新离线截止时间，用于已经由上报脚本写过 OnLineMap 的设备
+     *
+     * @param timestamp 真实时间
+     */
+    public void touchDeadline(String deviceId, long timestamp) {
+        deadlineIndex.touch(deviceId, timestamp);
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, serverConfig.getHeartbeatFlushMs())));
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("心跳批量写入异常: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 取出当前积攒的全部心跳，按块组装多字段 HSET，与离线截止时间的 ZADD 在一次 pipeline 中发出
+     */
+    private void flush() {
+        int chunkSize = Math.max(1, serverConfig.getHeartbeatChunkSize());
+        Map<byte[], byte[]> chunk = new HashMap<>();
+        List<Map<byte[], byte[]>> chunks = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            //只移除取出时的值，期间写入的更新心跳留到下一个周期
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            chunk.put(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                    String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            if (chunk.size() >= chunkSize) {
+                chunks.add(chunk);
+                chunk = new HashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        if (chunks.isEmpty() && !deadlineIndex.hasPending()) {
+            return;
+        }
+        long begin = System.nanoTime();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map<byte[], byte[]> fields : chunks) {
+                connection.hashCommands().hMSet(ONLINE_MAP_KEY, fields);
+            }
+            deadlineIndex.writePending(connection, chunkSize);
+            return null;
+        });
+        flushTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 定期读取 redis 的 CPU 与 HSET 命令统计
+     */
+    @Scheduled(fixedDelay = 10_000)
+    public void sampleRedisCpu() {
+        try {
+            Properties cpu = redisTemplate.execute((RedisCallback<Properties>) c -> info(c, "cpu"));
+            if (cpu != null) {
+                redisCpuSeconds = parse(cpu.getProperty("used_cpu_sys")) + parse(cpu.getProperty("used_cpu_user"));
+            }
+            Properties stats = redisTemplate.execute((RedisCallback<Properties>) c -> info(c, "commandstats"));
+            String hset = stats == null ? null : stats.getProperty("cmdstat_hset");
+            if (hset != null) {
+                //格式：calls=100,usec=200,usec_per_call=2.00,...
+                for (String part : hset.split(",")) {
+                    String[] kv = part.split("=", 2);
+                    if (kv.length != 2) {
+                        continue;
+                    }
+                    if ("calls".equals(kv[0])) {
+                        hsetCalls = (long) parse(kv[1]);
+                    } else if ("usec".equals(kv[0])) {
+                        hsetCpuSeconds = parse(kv[1]) / 1e6;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取 redis CPU 统计失败: {}", e.getMessage());
+        }
+    }
+
+    private static Properties info(RedisConnection connection, String section) {
+        return connection.serverCommands().info(section);
+    }
+
+    private static double parse(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -4,10 +4,8 @@ package com.ncwu.iotdevice.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.iotdevice.domain.entity.VirtualDevice;
-import com.ncwu.iotdevice.mapper.DeviceMapper;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
-import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.List;
 import java.util.Map;
@@ -34,6 +32,8 @@ public interface VirtualMeterDeviceService extends IService<VirtualDevice> {
 
     Result<String> changeSeason(int season);
 
+    Result<String> changeClockFactor(double factor);
+
     Result<String> closeValue(@NotNull @NotEmpty List<String> ids);
 
     Result<String> open(@NotNull @NotEmpty List<String> ids);
@@ -42,6 +42,10 @@ public interface VirtualMeterDeviceService extends IService<VirtualDevice> {
 
     Result<String> closeAllValue();
 
+    Result<String> openCampusValue(Integer campus);
+
+    Result<String> closeCampusValue(Integer campus);
+
     Result<String> destroyAll();
 
     Result<String> offline(@NotNull @NotEmpty List<String> ids);
@@ -52,6 +56,5 @@ public interface VirtualMeterDeviceService extends IService<VirtualDevice> {
 
     void madeSomeLocalCacheInvalidated(List<String> ids);
 
-    void markDeviceOnline(String deviceCode, long timestamp, DeviceMapper deviceMapper,
-                                 StringRedisTemplate redisTemplate);
+    void markDeviceOnline(String deviceCode, long timestamp);
 }
@@ -1,45 +1,44 @@
 package com.ncwu.iotdevice.service.impl;
 
 
-import cn.hutool.core.lang.UUID;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ncwu.common.apis.iot_device.IotDeviceApi;
+import com.ncwu.common.cache.NamespaceEpoch;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.common.enums.SuccessCode;
-import com.ncwu.iotdevice.AOP.annotation.InitLuaScript;
 import com.ncwu.iotdevice.AOP.annotation.Time;
-import com.ncwu.common.Constants.DeviceStatus;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
 import com.ncwu.iotdevice.config.ServerConfig;
-import com.ncwu.iotdevice.domain.Bo.DeviceIdList;
-import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
 import com.ncwu.iotdevice.domain.entity.VirtualDevice;
 import com.ncwu.iotdevice.mapper.DeviceMapper;
-import com.ncwu.iotdevice.service.DataSender;
-import org.springframework.beans.factory.ObjectProvider;
+import com.ncwu.iotdevice.service.DeadlineIndex;
+import com.ncwu.iotdevice.service.DeviceProvisioner;
+import com.ncwu.iotdevice.service.DeviceStatusCache;
+import com.ncwu.iotdevice.service.DeviceTransitionBatcher;
+import com.ncwu.iotdevice.service.HashBulkUpdater;
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.MeterKind;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import com.ncwu.iotdevice.simulation.SimulationEngine;
+import com.ncwu.iotdevice.simulation.UsageLedger;
+import com.ncwu.iotdevice.simulation.ValveStateCache;
 import com.ncwu.iotdevice.service.VirtualMeterDeviceService;
-import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static com.ncwu.common.Constants.DeviceStatus.UNKNOWN_START_ALL_DEVICE;
-import static com.ncwu.iotdevice.AOP.Aspects.InitLuaScript.Lua_script;
 import static com.ncwu.iotdevice.utils.Utils.*;
 
 /**
@@ -58,98 +57,81 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
         implements VirtualMeterDeviceService, com.ncwu.common.apis.iot_device.VirtualMeterDeviceService, IotDeviceApi {
 
     /**
-     * 设备总数
+     * Redis字符串模板，用于缓存操作
      */
-    private int allSize;
+    private final StringRedisTemplate redisTemplate;
     /**
-     * 运行中的设备集合，使用线程安全的ConcurrentHashMap
+     * RocketMQ消息模板，用于异步消息发送
      */
-    private final Set<String> runningDevices = ConcurrentHashMap.newKeySet();
+    private final RocketMQTemplate rocketMQTemplate;
     /**
-     * Redis中设备状态的键前缀
+     * 设备数据访问层
      */
-    final String deviceStatusPrefix = "cache:device:status:";
-
+    private final DeviceMapper deviceMapper;
     /**
-     * 调度器，用于管理定时任务
+     * 服务器配置
      */
-    private ScheduledExecutorService scheduler;
+    private final ServerConfig serverConfig;
     /**
-     * Redis字符串模板，用于缓存操作
+     * 模拟配置快照，上报热路径只读本地快照
      */
-    private final StringRedisTemplate redisTemplate;
+    private final SimulationContextHolder contextHolder;
     /**
-     * RocketMQ消息模板，用于异步消息发送
+     * 设备稠密下标与状态表，槽位同时也是时间轮槽位
      */
-    private final RocketMQTemplate rocketMQTemplate;
+    private final DeviceIndex deviceIndex;
     /**
-     * 设备数据访问层
+     * 阀门关闭状态，本地副本
      */
-    private final DeviceMapper deviceMapper;
+    private final ValveStateCache valveStateCache;
     /**
-     * 水质设备服务实现
+     * 离线截止时间索引
      */
-    private final VirtualWaterQualityDeviceServiceImpl waterQualityDeviceService;
+    private final DeadlineIndex deadlineIndex;
     /**
-     * 服务器配置
+     * 设备上下线状态的批量处理器
      */
-    private final ServerConfig serverConfig;
+    private final DeviceTransitionBatcher deviceTransitionBatcher;
     /**
-     * 数据发送器，负责发送设备数据
+     * 流式设备注册
      */
-    @Autowired
-    private ObjectProvider<DataSender> dataSender;
+    private final DeviceProvisioner deviceProvisioner;
     /**
-     * Redisson客户端，用于分布式锁等操作
+     * 大哈希表的分块批量改写
      */
-    private final RedissonClient redissonClient;
-
+    private final HashBulkUpdater hashBulkUpdater;
     /**
-     * 本地缓存，使用Caffeine实现
+     * 统一的设备模拟引擎，水表与水质传感器共用一个时间轮
      */
-    Cache<String, String> cache;
-
-
+    private final SimulationEngine simulationEngine;
     /**
-     * 初始化方法，在Bean创建后自动调用
-     * 创建调度器和本地缓存
+     * 水表在模拟引擎中的描述，持有用水模型
      */
-    @PostConstruct
-    void init() {
-        // 经压测验证，约 70 台虚拟设备对应 1 个调度线程即可满足精度与吞吐
-        // 取 max 防止入参为 0 发生异常
-        scheduler = Executors.newScheduledThreadPool(
-                Math.max(5, (int) (this.count() / 70)),
-                Thread.ofVirtual().factory()
-        );
-        //初始化Caffeine本地缓存，最大容量10000，写入后5分钟过期
-        cache = Caffeine.newBuilder()
-                .maximumSize(10_000)
-                .expireAfterWrite(5, TimeUnit.MINUTES)
-                .build();
-    }
+    private final MeterKind meterKind;
 
     /**
-     * 随机数生成器，用于生成随机延迟和数值
+     * 设备状态三级缓存
      */
-    private static final Random RANDOM = new Random();
+    private final DeviceStatusCache statusCache;
+    private final NamespaceEpoch namespaceEpoch;
     /**
-     * 线程池，用于执行异步任务，核心线程10，最大15，队列容量60，线程空闲时间60秒
+     * 分区归属与租约，启停经由期望运行集合广播给各归属节点
      */
-    final ExecutorService pool = getExecutorPools("iot-device", 10, 15, 60, 1000);
+    private final ShardCoordinator shardCoordinator;
     /**
-     * 存储每个设备的调度句柄，用于精准停止模拟
+     * 累计用水量的本地账本，清除 redis 数据前丢弃未写回的增量
      */
-    private final Map<String, ScheduledFuture<?>> deviceTasks = new ConcurrentHashMap<>();
-
+    private final UsageLedger usageLedger;
     /**
-     * 存储设备上报时间戳，以便和心跳对齐
+     * 模拟时钟，上报时间戳与当天时间都由它推算
      */
-    private final ConcurrentHashMap<String, Long> reportTime = new ConcurrentHashMap<>();
+    private final VirtualClock virtualClock;
+
+
     /**
-     * 设备是否已经完成了初始化，使用volatile保证可见性
+     * 线程池，用于执行异步任务，核心线程10，最大15，队列容量60，线程空闲时间60秒
      */
-    public volatile boolean isInit = false;
+    final ExecutorService pool = getExecutorPools("iot-device", 10, 15, 60, 1000);
 
     /**
      * 应用销毁时调用，优雅关闭所有资源
@@ -157,12 +139,15 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      */
     @PreDestroy
     public void destroy() {
+        // 集群中还有其他模拟器节点时只交出本节点的分区，由其他节点接管
+        if (!shardCoordinator.isLastMember()) {
+            return;
+        }
         // 确保应用关闭时停止所有调度
         stopSimulation();
         // 确保应用关闭之后清空 redis 中所有数据
+        usageLedger.clear();
         clearRedisAndDbData(redisTemplate, deviceMapper);
-        // 关闭调度器
-        scheduler.shutdown();
     }
 
     /**
@@ -175,7 +160,7 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      * <p>
      * 3. 批量更新数据库中的设备运行状态
      * <p>
-     * 4. 使用Lua脚本更新Redis在线设备映射
+     * 4. 按块改写Redis在线设备映射，不阻塞其他客户端
      * <p>
      * 5. 为每个设备启动数据上报和心跳任务
      * <p>
@@ -184,51 +169,46 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      * @return 启动结果，包含成功启动的设备数量
      */
     @Time  // AOP注解：记录方法执行耗时
-    @InitLuaScript  // AOP注解：初始化Lua脚本
     @Override
     public Result<String> start() {
-        // 检查设备初始化状态开关
-        if (!isInit) {
+        // 检查集群共享的设备注册状态，任意节点都可以处理启动请求
+        if (!shardCoordinator.isInitialized()) {
             return Result.fail(ErrorCode.DEVICE_INIT_ERROR.code(),
                     ErrorCode.DEVICE_INIT_ERROR.message());
         }
 
-        // 从Redis获取所有水表设备ID
-        Set<String> readiedIds = redisTemplate.opsForSet().members("device:meter");
+        // 只读取水表设备数量，设备编号由分区协调器分块扫描
+        Long registered = redisTemplate.opsForSet().size("device:meter");
 
-        // 检查模拟器状态：如果所有设备都已运行，返回错误
-        if (readiedIds != null && runningDevices.size() == readiedIds.size()) {
+        // 检查模拟器状态：如果整个集群期望运行的设备已包含全部设备，返回错误
+        if (registered != null && shardCoordinator.desiredCount(ShardCoordinator.METER) == registered) {
             log.info("所有模拟设备已全部在运行中");
             return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(),
                     ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.message());
         }
-        int alreadyRunning = runningDevices.size();
-        // 将设备ID添加到运行集合
-        if (readiedIds != null) {
-            runningDevices.addAll(readiedIds);
-        }
 
-        if (readiedIds != null && !readiedIds.isEmpty()) {
-            // 异步更新数据库：将未运行的设备状态设置为运行中
-            this.lambdaUpdate().in(VirtualDevice::getDeviceCode, readiedIds)
+        if (registered != null && registered > 0) {
+            // 更新数据库：将未运行的水表设置为运行中
+            this.lambdaUpdate().likeRight(VirtualDevice::getDeviceCode, "1")
+                    .eq(VirtualDevice::getIsRunning, false)
                     .set(VirtualDevice::getIsRunning, true).update();
-            // 使用Lua脚本批量更新Redis在线设备映射，提高性能
-            String hashKey = "OnLineMap";
-            redisTemplate.execute(Lua_script, List.of(hashKey), "-1");
+            // 由 HSCAN 游标分块改写在线设备映射中的水表，块间让出 redis，-1 表示设备刚启动
+            hashBulkUpdater.setAll("OnLineMap", "1*", "-1");
+            //上一轮遗留的离线截止时间作废，随新的心跳重新写入
+            deadlineIndex.clear(DeadlineIndex.METER_KEY);
 
-            // 为每个设备启动独立的数据上报和心跳任务
-            runningDevices.forEach(this::scheduleNextReport);
-            runningDevices.forEach(this::startHeartbeat);
-            log.info("成功开启 {} 台设备的模拟数据流", readiedIds.size());
+            // 写入期望运行集合，各节点将自己分区内设备的上报和心跳挂到时间轮上
+            long started = shardCoordinator.startAll(ShardCoordinator.METER);
+            log.info("成功开启 {} 台设备的模拟数据流", started);
 
             // 设置设备可检查状态标志
             redisTemplate.opsForValue().set("MeterChecked", "1");
 
             // 清理相关缓存，确保数据一致性
-            cache.invalidateAll();  // 清空本地缓存
-            redisScanDel(deviceStatusPrefix + "*", 100, redisTemplate);  // 删除Redis设备状态缓存
+            statusCache.invalidateAll();  // 清空本地缓存
+            namespaceEpoch.invalidate(NamespaceEpoch.DEVICE_STATUS);  // Redis设备状态缓存整体换代，旧键随过期时间回收
 
-            return Result.ok("成功开启" + (readiedIds.size() - alreadyRunning) + "台设备");
+            return Result.ok("成功开启" + started + "台设备");
         }
 
         return Result.fail(UNKNOWN_START_ALL_DEVICE, ErrorCode.UNKNOWN.code(), ErrorCode.UNKNOWN.message());
@@ -242,35 +222,33 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      */
     @Override
     public Result<String> startList(List<String> ids) {
+        // 检查集群共享的设备注册状态
+        if (!shardCoordinator.isInitialized()) {
+            return Result.fail(ErrorCode.DEVICE_INIT_ERROR.code(),
+                    ErrorCode.DEVICE_INIT_ERROR.message());
+        }
+
         // 检查是否所有设备都已运行
-        if (ids != null && runningDevices.size() == allSize) {
+        long registered = shardCoordinator.registeredCount(ShardCoordinator.METER);
+        if (ids != null && registered > 0 && shardCoordinator.desiredCount(ShardCoordinator.METER) == registered) {
             log.info("模拟器已全部在运行中，无需继续开启设备");
             return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(),
                     ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.message());
         }
 
-        // 检查设备初始化状态
-        if (!isInit) {
-            return Result.fail(ErrorCode.DEVICE_INIT_ERROR.code(),
-                    ErrorCode.DEVICE_INIT_ERROR.message());
-        }
-
         if (ids != null && !ids.isEmpty()) {
-            List<String> keys = ids.stream().map(id -> deviceStatusPrefix + id).toList();
+            String statusPrefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+            List<String> keys = ids.stream().map(id -> statusPrefix + id).toList();
             // 删除指定设备的缓存
             redisTemplate.delete(keys);
-            // 将设备添加到运行集合
-            runningDevices.addAll(ids);
-            // 更新Redis在线设备映射，记录上线时间
-            String now = String.valueOf(System.currentTimeMillis());
-            ids.forEach(id -> redisTemplate.opsForHash()
-                    .put("OnLineMap", id, now));
+            // 更新Redis在线设备映射，记录上线时间，与上报数据使用同一个模拟时钟，一条多字段 HSET 写入
+            String now = String.valueOf(virtualClock.millis());
+            Map<String, String> online = new HashMap<>(ids.size() * 2);
+            ids.forEach(id -> online.put(id, now));
+            redisTemplate.opsForHash().putAll("OnLineMap", online);
 
-            // 为每个设备启动心跳任务
-            ids.forEach(this::startHeartbeat);
-
-            // 为每个设备启动数据上报任务
-            ids.forEach(this::scheduleNextReport);
+            // 加入期望运行集合，由归属节点挂上数据上报和心跳
+            shardCoordinator.start(ShardCoordinator.METER, ids);
 
             // 异步更新数据库：设置设备为运行状态和在线状态
             pool.submit(() -> {
@@ -300,32 +278,21 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      * @return 停止结果
      */
     @Time  // AOP注解：记录方法执行耗时
-    @InitLuaScript  // AOP注解：初始化Lua脚本
     @Override
     public Result<String> stopSimulation() {
         // 设置设备不可检查状态
         redisTemplate.opsForValue().set("MeterChecked", "0");
 
-        // 清空运行设备集合，停止所有设备
-        runningDevices.clear();
-
-        // 取消所有排队中的定时任务
-        deviceTasks.forEach((id, future) -> {
-            if (future != null && !future.isCancelled()) {
-                future.cancel(false);  // 非强制取消，允许当前任务完成
-            }
-        });
+        // 清空期望运行集合，所有节点清除运行标志并摘除时间轮条目，正在执行的批次会在检查运行标志后跳过
+        shardCoordinator.stopAll(ShardCoordinator.METER);
 
         // 通过消息队列异步更新数据库状态
         // 由于异步线程的异常不被事务控制，使用消息队列确保可靠性
         rocketMQTemplate.convertAndSend("OpsForDataBase", "LetAllMetersStopRunning");
 
-        // 清理状态缓存，使用scan安全删除
-        cache.invalidateAll();  // 清空本地缓存
-        redisScanDel(deviceStatusPrefix + "*", 100, redisTemplate);  // 删除Redis设备状态缓存
-
-        // 清空任务映射
-        deviceTasks.clear();
+        // 清理状态缓存，redis 中的状态缓存整体换代，无需扫描键空间
+        statusCache.invalidateAll();  // 清空本地缓存
+        namespaceEpoch.invalidate(NamespaceEpoch.DEVICE_STATUS);
 
         log.info("已停止所有模拟数据上报任务");
         return Result.ok("已停止所有模拟数据上报任务");
@@ -344,18 +311,8 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
             return Result.fail(null, "设备列表为空");
         }
 
-        // 遍历需要停止的设备，执行停止操作
-        ids.forEach(id -> {
-            ScheduledFuture<?> future = deviceTasks.get(id);
-            if (future != null) {
-                // 取消该设备的定时任务
-                future.cancel(false);
-                // 从任务映射中移除
-                deviceTasks.remove(id);
-                // 从运行设备集合中移除
-                runningDevices.remove(id);
-            }
-        });
+        // 移出期望运行集合，归属节点清除运行标志并摘除时间轮条目，O(k)
+        shardCoordinator.stop(ShardCoordinator.METER, ids);
 
         // 异步更新数据库：将指定设备设置为非运行状态
         pool.submit(() -> {
@@ -367,8 +324,9 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
         });
 
         // 清理相关缓存
-        cache.invalidateAll(ids);  // 清空本地缓存中指定设备
-        ids.forEach(id -> redisTemplate.delete(deviceStatusPrefix + id));  // 删除Redis中的设备状态缓存
+        statusCache.invalidateAll(ids);  // 清空本地缓存中指定设备
+        String statusPrefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+        redisTemplate.delete(ids.stream().map(id -> statusPrefix + id).toList());  // 删除Redis中的设备状态缓存
 
         return Result.ok(SuccessCode.DEVICE_STOP_SUCCESS.getCode(),
                 SuccessCode.DEVICE_STOP_SUCCESS.getMessage());
@@ -379,91 +337,87 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
      */
     @Override
     public Result<Map<String, String>> checkDeviceStatus(List<String> ids) {
-        Map<String, String> result = new HashMap<>();
-        Set<String> remaining = new HashSet<>(ids);
-        //L1 Cache查询本地缓存
-        for (String id : ids) {
-            String value = cache.getIfPresent(id);
-            if (value != null) {
-                result.put(id, value);
-                remaining.remove(id);
-            }
-        }
-        //L2 Cache查询redis
-        for (String id : new HashSet<>(remaining)) {
-            String key = deviceStatusPrefix + id;
-            String value = redisTemplate.opsForValue().get(key);
-            if (value != null) {
-                result.put(id, value);
-                cache.put(id, value);
-                remaining.remove(id);
-            }
-        }
-
-        if (remaining.isEmpty()) {
-            return Result.ok(result);
-        }
-        //缓存若未命中，查询数据库
-        int offset = RANDOM.nextInt(120 + 1);
-        List<VirtualDevice> deviceStatus = this.lambdaQuery()
-                .select(VirtualDevice::getDeviceCode, VirtualDevice::getStatus, VirtualDevice::getIsRunning)
-                .in(VirtualDevice::getDeviceCode, remaining)
-                .list();
-        Map<String, String> map = deviceStatus.stream()
-                .collect(Collectors.toMap(VirtualDevice::getDeviceCode,
-                        device -> device.getStatus() + "," + device.getIsRunning()));
-        result.putAll(map);
-        map.forEach((key, value) -> {
-            redisTemplate.opsForValue().set(deviceStatusPrefix + key, value, 180 + offset, TimeUnit.SECONDS);
-            cache.put(key, value);
-        });
-        return Result.ok(result);
+        //本地缓存未命中的设备由三级缓存批量加载：一次 MGET，再按块查询数据库
+        return Result.ok(statusCache.getAll(ids));
     }
 
 
+    /**
+     * 模拟时钟只向前走，目标时间早于当前时间时调到下一天的这一时刻
+     */
     @Override
     public Result<String> changeTime(int time) {
-        redisTemplate.opsForValue().set("Time", String.valueOf(time));
+        virtualClock.setSecondOfDay(time);
+        redisTemplate.opsForValue().set("Time", String.valueOf(virtualClock.secondOfDay()));
+        contextHolder.publishChange();
         return Result.ok(SuccessCode.TIME_CHANGE_SUCCESS.getCode(),
                 SuccessCode.TIME_CHANGE_SUCCESS.getMessage());
     }
 
+    @Override
+    public Result<String> changeClockFactor(double factor) {
+        virtualClock.setFactor(factor);
+        return Result.ok(SuccessCode.CLOCK_CHANGE_SUCCESS.getCode(),
+                SuccessCode.CLOCK_CHANGE_SUCCESS.getMessage());
+    }
+
     @Override
     public Result<String> changeSeason(int season) {
         redisTemplate.opsForValue().set("Season", String.valueOf(season));
+        contextHolder.publishChange();
         return Result.ok(SuccessCode.SEASON_CHANGE_SUCCESS.getCode(), SuccessCode.SEASON_CHANGE_SUCCESS.getMessage());
     }
 
     /**
-     * 将设备列表里面的水表的水闸设置为关
+     * 将设备列表里面的水表的水闸设置为关，按校区分批下发带版本号的阀门指令
+     *
+     * @return 各校区批次的指令版本，可用于查询确认情况
      */
     @Override
     public Result<String> closeValue(List<String> ids) {
-        redisTemplate.opsForSet().add("meter_closed", ids.toArray(new String[0]));
-        return Result.ok(SuccessCode.METER_CLOSE_SUCCESS.getCode(), SuccessCode.METER_CLOSE_SUCCESS.getMessage());
+        List<Long> versions = valveStateCache.close(ids);
+        return Result.ok(joinVersions(versions), SuccessCode.METER_CLOSE_SUCCESS.getCode(),
+                SuccessCode.METER_CLOSE_SUCCESS.getMessage());
     }
 
     @Override
     public Result<String> open(List<String> ids) {
-        redisTemplate.opsForSet().remove("meter_closed", ids.toArray());
-        return Result.ok(SuccessCode.METER_OPEN_SUCCESS.getCode(), SuccessCode.METER_OPEN_SUCCESS.getMessage());
+        List<Long> versions = valveStateCache.open(ids);
+        return Result.ok(joinVersions(versions), SuccessCode.METER_OPEN_SUCCESS.getCode(),
+                SuccessCode.METER_OPEN_SUCCESS.getMessage());
     }
 
     @Override
     public Result<String> openAllValue() {
-        redisTemplate.delete("meter_closed");
-        return Result.ok(SuccessCode.METER_OPEN_SUCCESS.getCode(), SuccessCode.METER_OPEN_SUCCESS.getMessage());
+        return openCampusValue(null);
     }
 
     @Override
     public Result<String> closeAllValue() {
-        Set<Object> keys = redisTemplate.opsForHash().keys("OnLineMap");
-        List<String> list = keys.stream()
-                .map(Object::toString)
-                .filter(s -> !s.startsWith("2"))
-                .toList();
-        list.forEach(id -> redisTemplate.opsForSet().add("meter_closed", id));
-        return Result.ok(SuccessCode.METER_CLOSE_SUCCESS.getCode(), SuccessCode.METER_CLOSE_SUCCESS.getMessage());
+        return closeCampusValue(null);
+    }
+
+    /**
+     * 整校区开阀，每个校区只下发一条指令，不再逐台写入
+     *
+     * @param campus 校区编号，为空时针对全部校区
+     */
+    @Override
+    public Result<String> openCampusValue(Integer campus) {
+        List<Long> versions = valveStateCache.openAll(campus);
+        return Result.ok(joinVersions(versions), SuccessCode.METER_OPEN_SUCCESS.getCode(),
+                SuccessCode.METER_OPEN_SUCCESS.getMessage());
+    }
+
+    @Override
+    public Result<String> closeCampusValue(Integer campus) {
+        List<Long> versions = valveStateCache.closeAll(campus);
+        return Result.ok(joinVersions(versions), SuccessCode.METER_CLOSE_SUCCESS.getCode(),
+                SuccessCode.METER_CLOSE_SUCCESS.getMessage());
+    }
+
+    private static String joinVersions(List<Long> versions) {
+        return versions.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 
 
@@ -473,10 +427,12 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
                 Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("WaterQualityChecked"))) == 1) {
             return Result.fail(ErrorCode.DEVICE_CANT_RESET_ERROR.code(), ErrorCode.DEVICE_CANT_RESET_ERROR.message());
         }
-        this.isInit = false;
-        cache.invalidateAll();
+        shardCoordinator.clearInitialized();
+        statusCache.invalidateAll();
         redisTemplate.opsForValue().set("isInit", "0");
+        usageLedger.clear();
         clearRedisAndDbData(redisTemplate,deviceMapper);
+        contextHolder.publishChange();
         return Result.ok(SuccessCode.DEVICE_RESET_SUCCESS.getCode(), SuccessCode.DEVICE_RESET_SUCCESS.getMessage());
     }
 
@@ -491,8 +447,8 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
     public Result<String> offline(List<String> ids) {
         log.info("下线设备：{}", sanitizeForLog(ids.toString()));
 
-        // 从运行设备集合中移除
-        ids.forEach(runningDevices::remove);
+        // 移出期望运行集合，归属节点清除运行标志并摘除时间轮条目
+        shardCoordinator.stop(ShardCoordinator.METER, ids);
 
         // 更新数据库：设置设备状态为离线，运行状态为false
         boolean updateResult = lambdaUpdate()
@@ -526,6 +482,7 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
         if (mode.equals("burstPipe") || mode.equals("leaking") || mode.equals("normal") || mode.equals("shows")) {
             // 将模式存储到Redis中，供所有设备使用
             redisTemplate.opsForValue().set("mode", mode);
+            contextHolder.publishChange();
             return Result.ok(SuccessCode.METER_MODE_CHANGE_SUCCESS.getCode(),
                     SuccessCode.METER_MODE_CHANGE_SUCCESS.getMessage());
         }
@@ -560,518 +517,6 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
                 .replace('\n', ' ');
     }
 
-    /**
-     * 为指定设备启动心跳任务
-     * <p>
-     * 心跳任务会定期发送设备心跳信息，确保设备在线状态
-     *
-     * @param deviceId 设备ID
-     */
-    private void startHeartbeat(String deviceId) {
-        // 获取心跳发送间隔（秒）和时间偏移（秒）
-        int time = Integer.parseInt(serverConfig.getMeterReportFrequency()) / 1000;
-        int offset = Integer.parseInt(serverConfig.getMeterTimeOffset()) / 1000;
-        // 启动定时心跳任务
-        scheduler.scheduleAtFixedRate(() -> {
-            long now = System.currentTimeMillis();
-
-            // 检查设备是否还在运行，如果不在运行则停止心跳
-            if (!runningDevices.contains(deviceId)) {
-                return;
-            }
-
-            // 使用当前时间作为心跳时间戳，确保心跳的时效性
-            // 如果距离上次上报超过15秒，说明设备可能有问题，但仍使用当前时间保持心跳
-            try {
-                // 发送心跳信息
-                dataSender.getObject().heartBeat(deviceId, now);
-            } catch (Exception e) {
-                log.error("心跳发送异常: {}", e.getMessage(), e);
-            }
-        }, 0, time + offset, TimeUnit.SECONDS);  // 立即开始，每隔time+offset秒执行一次
-    }
-
-    /**
-     * 核心递归调度逻辑，为指定设备启动数据上报任务
-     * <p>
-     * 该方法采用递归调度模式，每次上报完成后会自动调度下一次上报，
-     * 形成持续的数据上报流。通过随机延迟避免设备集中上报。
-     *
-     * @param deviceId 设备ID
-     */
-    private void scheduleNextReport(String deviceId) {
-        String sanitizedDeviceId = sanitizeForLog(deviceId);
-
-        // 检查设备是否还在运行集合中，如果不在则停止调度
-        if (!runningDevices.contains(deviceId)) {
-            log.info("设备 {} 不在运行集合中, 停止上报调度", sanitizedDeviceId);
-            return;
-        }
-
-        // 获取上报配置参数
-        String reportFrequency = serverConfig.getMeterReportFrequency();  // 基础上报频率
-        String timeOffset = serverConfig.getMeterTimeOffset();  // 时间偏移范围
-
-        // 配置参数校验
-        if (reportFrequency == null || timeOffset == null) {
-            log.warn("设备 {} 上报配置缺失", sanitizedDeviceId);
-            return;
-        }
-
-        // 计算随机上报延迟，打破设备集中上报的峰值
-        // 延迟 = 基础频率 + 随机偏移，使上报时间更加分散
-        long delay = Long.parseLong(reportFrequency) +
-                ThreadLocalRandom.current().nextLong(Long.parseLong(timeOffset));
-        // 调度单次数据上报任务
-        ScheduledFuture<?> future = scheduler.schedule(() -> {
-            try {
-                // 处理单个设备的数据上报
-                processSingleDevice(deviceId);
-            } catch (Exception e) {
-                log.error("设备 {} 数据上报失败: {}", sanitizedDeviceId, e.getMessage(), e);
-            } finally {
-                // 无论成功失败，都要递归调度下一次上报
-                scheduleNextReport(deviceId);
-            }
-        }, delay, TimeUnit.MILLISECONDS);
-
-        // 保存任务句柄，用于后续取消操作
-        deviceTasks.put(deviceId, future);
-    }
-
-    /**
-     * 生成单条模拟数据并发送
-     * <p>
-     * 该方法为单个设备生成完整的水表数据，包括：<p>
-     * - 水流量（根据时间和楼宇类型计算）<p>
-     * - 水压（根据水流量计算）<p>
-     * - 水温（根据时间和季节计算）<p>
-     * - 时间戳和其他元数据
-     *
-     * @param id 设备编号
-     */
-    private void processSingleDevice(String id) {
-        MeterDataBo dataBo = new MeterDataBo();
-
-        // 获取模拟的时间参数（秒）
-        int time = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("Time")));
-
-        // 根据时间和楼宇类型生成水流量
-        double flow = waterFlowGenerate(time, id);
-
-        // 根据水流量计算对应的水压
-        double pressure = waterPressureGenerate(flow, serverConfig);
-
-        // 获取当前季节参数
-        int season = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("Season")));
-
-        // 根据季节设置水温计算的中间值和步长
-        int mid, step;
-        step = switch (season) {
-            case 1 -> {  // 春季
-                mid = 15;  // 中间温度15度
-                yield 3;   // 步长3度
-            }
-            case 2 -> {  // 夏季
-                mid = 22;  // 中间温度22度
-                yield 5;   // 步长5度
-            }
-            case 3 -> {  // 秋季
-                mid = 17;  // 中间温度17度
-                yield 2;   // 步长2度
-            }
-            default -> { // 冬季
-                mid = 6;   // 中间温度6度
-                yield 2;   // 步长2度
-            }
-        };
-
-        // 设置数据对象的基本信息
-        dataBo.setDeviceId(id);  // 设备ID
-        dataBo.setDevice(1);    // 设备类型标识
-
-        // 设置时间戳，添加随机纳秒避免时间戳完全相同
-        dataBo.setTimeStamp(LocalDateTime.now().plusNanos(ThreadLocalRandom.current().nextInt(1000000)));
-
-        // 设置模拟数据
-        dataBo.setFlow(flow);    // 水流量
-        dataBo.setPressure(pressure);  // 水压
-        dataBo.setWaterTem(waterTemperateGenerate(time, mid, step));  // 水温
-        dataBo.setIsOpen(DeviceStatus.NORMAL);    // 设备开关状态
-        dataBo.setStatus(DeviceStatus.NORMAL);     // 设备运行状态
-
-        // 发送数据到消息队列或数据接收端
-        dataSender.getObject().sendMeterData(dataBo);
-        reportTime.put(dataBo.getDeviceId(), System.currentTimeMillis());
-    }
-
-    /**
-     * 根据时间和楼宇类型生成水流量
-     * <p>
-     * 该方法根据设备ID判断楼宇类型，并调用相应的流量生成算法：<p>
-     * - 教学楼：使用教育区流量模式<p>
-     * - 实验楼：使用实验区流量模式  <p>
-     * - 宿舍楼：使用宿舍区流量模式
-     *
-     * @param time     模拟时间（从0点开始的秒数）
-     * @param deviceId 设备ID
-     * @return 水流量值（保留3位小数）
-     */
-    private double waterFlowGenerate(int time, String deviceId) {
-        // 从设备ID中提取楼宇编号（第3-4位字符）
-        int buildingNum = Integer.parseInt(deviceId.substring(2, 4));
-        double flow;
-
-        // 获取楼宇类型分界参数
-        int education = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue()
-                .get("device:educationBuildings")));   // 教学楼数量
-        int experiment = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue()
-                .get("device:experimentBuildings"))); // 实验楼数量
-
-        // 根据楼宇编号选择对应的流量生成算法
-        if (buildingNum <= education) {
-            // 教学楼：使用教学区流量模式
-            flow = getEducationFlow(time, deviceId);
-        } else if (buildingNum <= experiment) {
-            // 实验楼：使用实验区流量模式
-            flow = getExperimentFlow(time, deviceId);
-        } else {
-            // 宿舍楼：使用宿舍区流量模式
-            flow = getDormitoryFlow(time, deviceId);
-        }
-
-        // 保留3位小数后返回
-        return keep3(flow);
-    }
-
-    /**
-     * 每台设备可以上报活跃用水数据的剩余次数
-     */
-    Map<String, Integer> EachDeviceRemainingReportActiveWaterInfoCounts;
-    /**
-     * 每台设备可以上报活跃用水数据的次数的副本，用于后续时段
-     */
-    Map<String, Integer> temp;
-    /**
-     * 是否已经随机选择了上报活跃用水数据的水表设备
-     */
-    volatile boolean flag = false;
-    /**
-     * 同步锁对象，用于保护宿舍设备选择的并发操作
-     */
-    final Object lock = new Object();
-
-    private double getDormitoryFlow(int time, String id) {
-        double p = Math.random();
-        int offset = ThreadLocalRandom.current().nextInt(10 * 60);
-        double v = ThreadLocalRandom.current().nextDouble(1);
-        //上报周期
-        int fre = Integer.parseInt(serverConfig.getMeterReportFrequency()) / 1000;
-        if (((time <= 7 * 3600) && (time >= 0)) || (time >= 23 * 3600) && (time <= 24 * 3600)) {
-            if (p >= 0.8) {
-                //模拟宿舍起夜上厕所行为，最多夜间两次
-                int freCnt = 7 * 3600 / fre;
-                double p1 = 1 - (2.0 / freCnt);
-                if (v >= p1) {
-                    return ThreadLocalRandom.current().nextDouble(0.1, 0.15);
-                }
-            }
-        } else if (time > 7.25 * 3600 + offset && time <= 8 * 3600 + offset) {
-            double wakeUpDormRate = serverConfig.getWakeUpDormRate();
-            synchronized (lock) {
-                if (!flag) {
-                    EachDeviceRemainingReportActiveWaterInfoCounts = chooseDormitory(wakeUpDormRate);
-                    if (EachDeviceRemainingReportActiveWaterInfoCounts != null) {
-                        temp = new HashMap<>(EachDeviceRemainingReportActiveWaterInfoCounts);
-                    }
-                    flag = true;
-                }
-            }
-            if (p >= 0.93) {
-                if (EachDeviceRemainingReportActiveWaterInfoCounts != null) {
-                    synchronized (lock) {
-                        if (EachDeviceRemainingReportActiveWaterInfoCounts.containsKey(id)
-                                && EachDeviceRemainingReportActiveWaterInfoCounts.get(id) > 0) {
-                            Integer cnt = EachDeviceRemainingReportActiveWaterInfoCounts.get(id);
-                            EachDeviceRemainingReportActiveWaterInfoCounts.put(id, --cnt);
-                            return ThreadLocalRandom.current().nextDouble(0.2, 0.3);
-                        }
-                    }
-                }
-            }
-        } else if (time > 8 * 3600 + offset && time <= 12.5 * 3600) {
-            //剩余
-            if (p >= 0.98) {
-                synchronized (lock) {
-                    if (temp.containsKey(id) && temp.get(id) > 0) {
-                        Integer cnt = temp.get(id);
-                        temp.put(id, --cnt);
-                        return ThreadLocalRandom.current().nextDouble(0.12, 0.15);
-                    } else return 0;
-                }
-            }
-        } else if (time > 12.5 * 3600 && time <= 18 * 3600) {
-            double freCnt = 7.5 * 3600 / fre;
-            double p3 = 1 - (5.0 / freCnt);
-            if (p >= p3) {
-                return ThreadLocalRandom.current().nextDouble(0.07, 0.1);
-            } else return 0;
-        } else if (time >= 20 * 3600 && time <= 22 * 3600) {
-            int freCnt = 3 * 3600 / fre;
-            double p4 = 1 - (2.0 / freCnt);
-            if (p >= p4) {
-                return ThreadLocalRandom.current().nextDouble(0.12, 0.3);
-            } else {
-                return 0;
-            }
-        } else if (time >= 23.5 * 3600 && time <= 24 * 3600) {
-            flag = false;
-            return 0;
-        } else {
-            if (p > 0.99995) {
-                return ThreadLocalRandom.current().nextDouble(0.02, 0.05);
-            } else return 0;
-        }
-        return 0.0;
-    }
-
-    /**
-     * 方法返回约总设备的0.v倍的宿舍设备数量
-     *
-     * @param v 倍数
-     */
-    private Map<String, Integer> chooseDormitory(double v) {
-        //宿舍楼的编号都在实验楼之后，下标是左闭右开的，firstIndex是第一个宿舍楼的下标
-        int firstIndex = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue()
-                .get("device:experimentBuildings")));
-        Long size;
-        size = redisTemplate.opsForSet().size("device:meter");
-        if (size != null) {
-            Map<Object, Object> entries = redisTemplate.opsForHash().randomEntries("OnLineMap", (long) (size * v));
-            if (entries != null) {
-                return entries.keySet().stream()
-                        .map(Object::toString)
-                        .filter(id -> id.startsWith("1"))
-                        .filter(id -> Integer.parseInt(id.substring(2, 4)) > firstIndex)
-                        .collect(Collectors.toMap(id -> id, id -> 30));
-            }
-        }
-        return null;
-    }
-
-    /**
-     * 是否已经获取了实验楼设备列表
-     */
-    volatile boolean isGetExperimentDevices = false;
-    /**
-     * 是否已经获取了教学楼设备列表
-     */
-    volatile boolean isGetEducationDevices = false;
-    /**
-     * 教学楼设备ID集合
-     */
-    volatile Set<String> educationIds;
-    /**
-     * 每个实验楼设备剩余上报活跃用水数据的次数
-     */
-    volatile Map<String, Integer> EachExperimentDeviceRemainingReportActiveWaterInfoCounts;
-    /**
-     * 实验楼设备同步锁对象
-     */
-    final Object lock1 = new Object();
-    /**
-     * 上午时段（8-12点）标志位
-     */
-    volatile boolean flag1 = false;
-    /**
-     * 下午时段（12-15点）标志位
-     */
-    volatile boolean flag2 = false;
-    /**
-     * 傍晚时段（15-18点）标志位
-     */
-    volatile boolean flag3 = false;
-    /**
-     * 晚间时段（18-22点）标志位
-     */
-    volatile boolean flag4 = false;
-
-    private double getExperimentFlow(int time, String deviceId) {
-        //正在运行试验的教室，用水量可能一直存在
-        double p = ThreadLocalRandom.current().nextDouble(1);
-        if (time >= 8 * 3600 && time <= 12 * 3600) {
-            //这里两次检查的目的是提高并发能力。只有一个线程是需要加锁的，其他线程无需加锁，因此在外部只需检查标志位
-            if (!flag1) {
-                synchronized (lock1) {
-                    if (!flag1) {
-                        AssignRunnableActiveDevice();
-                        flag1 = true;
-                    }
-                }
-            }
-            if (p >= 0.95) {
-                return returnFlow(deviceId, 0.01, 0.05);
-            } else return 0;
-        } else if (time > 12 * 3600 && time <= 15 * 3600) {
-            if (!flag2) {
-                synchronized (lock1) {
-                    if (!flag2) {
-                        AssignRunnableActiveDevice();
-                        flag2 = true;
-                    }
-                }
-            }
-            if (p >= 0.95) {
-                return returnFlow(deviceId, 0.01, 0.05);
-            } else return 0;
-        } else if (time > 15 * 3600 && time <= 18 * 3600) {
-            if (!flag3) {
-                synchronized (lock1) {
-                    if (!flag3) {
-                        AssignRunnableActiveDevice();
-                        flag3 = true;
-                    }
-                }
-            }
-            if (p >= 0.95) {
-                return returnFlow(deviceId, 0.1, 0.15);
-            } else return 0;
-        } else if (time > 18 * 3600 && time <= 22 * 3600) {
-            if (!flag4) {
-                synchronized (lock1) {
-                    if (!flag4) {
-                        AssignRunnableActiveDevice();
-                        flag4 = true;
-                    }
-                }
-            }
-            if (p >= 0.95) {
-                return returnFlow(deviceId, 0.05, 0.1);
-            } else return 0;
-        } else if (time >= 23 * 3600 && time <= 24 * 3600) {
-            //重置标志位，以便第二天选取不同的运行集合
-            reset();
-            return 0;
-        } else {
-            return 0;
-        }
-    }
-
-    /**
-     * 保证第二天可以正常分配上报活跃水信息的水表设备
-     */
-    private void reset() {
-        flag1 = false;
-        flag2 = false;
-        flag3 = false;
-        flag4 = false;
-    }
-
-    private double returnFlow(String deviceId, double origin, double bound) {
-        Integer cnt = EachExperimentDeviceRemainingReportActiveWaterInfoCounts.get(deviceId);
-        if (cnt != null && cnt > 0) {
-            EachExperimentDeviceRemainingReportActiveWaterInfoCounts.put(deviceId, --cnt);
-            return ThreadLocalRandom.current().nextDouble(origin, bound);
-        } else return 0;
-    }
-
-    /**
-     * 分配可以上报活跃水信息的设备
-     */
-    private void AssignRunnableActiveDevice() {
-        int education = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("device:educationBuildings")));
-        int experiment = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("device:experimentBuildings")));
-        synchronized (lock1) {
-            if (!isGetExperimentDevices) {
-                //设备全量列表
-                Set<String> members = Objects.requireNonNull(redisTemplate.opsForSet().members("device:meter"));
-                //是实验楼的所有设备数量
-                int canRunning = (int) members.stream().filter(id -> {
-                    int buildingNum = Integer.parseInt(id.substring(2, 4));
-                    return buildingNum > education && buildingNum <= experiment;
-                }).count();
-                //选择的所有运行设备
-                EachExperimentDeviceRemainingReportActiveWaterInfoCounts = members
-                        .stream()
-                        .filter(id -> {
-                            int buildingNum = Integer.parseInt(id.substring(2, 4));
-                            return buildingNum > education && buildingNum <= experiment;
-                        })
-                        .limit(Math.max(1, canRunning / 3))
-                        .collect(Collectors.toMap(id -> id, id -> 60));
-                isGetExperimentDevices = true;
-            }
-        }
-    }
-
-    private double getEducationFlow(int time, String deviceId) {
-        // 教学区活跃时段（以小时为单位，0-23）
-        // 假设：早上 8-12 点，下午 14-20 点
-        boolean isActiveTime = (time >= 8 * 3600 && time <= 12 * 3600) || (time >= 14 * 3600 && time <= 21 * 3600);
-        // 教学区设备集合，只第一次获取
-        int education = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("device:educationBuildings")));
-        synchronized (this) {
-            if (!isGetEducationDevices) {
-                Set<String> members = Objects.requireNonNull(redisTemplate.opsForSet().members("device:meter"));
-                int canRunning = (int) members.stream()
-                        .filter(id -> {
-                            int building = Integer.parseInt(id.substring(2, 4));
-                            return building <= education;
-                        })
-                        .count();
-                educationIds = members.stream()
-                        .filter(id -> {
-                            int building = Integer.parseInt(id.substring(2, 4));
-                            return building <= education;
-                        })
-                        .limit(Math.max(1, canRunning / 2))
-                        .collect(Collectors.toSet());
-                isGetEducationDevices = true;
-            }
-        }
-        // 如果这个设备属于教学楼
-        if (educationIds != null && educationIds.contains(deviceId)) {
-            double p = ThreadLocalRandom.current().nextDouble(); // 0-1 随机概率
-            if (!isActiveTime) {
-                // 非活跃时间，绝大多数为 0
-                if (p <= 0.99991) {
-                    return 0.0;
-                } else {
-                    return ThreadLocalRandom.current().nextDouble(0.1, 0.15);
-                }
-            } else {
-                // 活跃时间，偶尔有人使用水，流量低且离散
-                if (p <= 0.9995) {
-                    return 0.0; // 大多数时间没用水
-                } else {
-                    return ThreadLocalRandom.current().nextDouble(0.05, 0.15);
-                }
-            }
-        } else {
-            // 非教学楼设备，不处理
-            return 0.0;
-        }
-    }
-
-    /**
-     * 根据每天不同时段生成水温的水温生成器
-     *
-     * @param time 时间
-     * @param mid  季节基准值
-     * @param step 昼夜温差
-     */
-    private double waterTemperateGenerate(double time, double mid, double step) {
-        double pi = Math.PI;
-
-        // 一天 = 86400 秒，14 点 = 14 * 3600 秒
-        double phi = (pi / 2) - (2 * pi * 14 * 3600 / 86400);
-
-        return keep3(
-                mid + step * Math.sin(2 * pi * time / 86400 + phi)
-        );
-    }
-
-
     /**
      * 初始化设备并入库
      */
@@ -1083,128 +528,71 @@ public class VirtualMeterDeviceServiceImpl extends ServiceImpl<DeviceMapper, Vir
             return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(),
                     ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.message());
         }
-        if (isInit) {
+        if (shardCoordinator.isInitialized()) {
             return Result.fail(ErrorCode.DEVICE_ALREADY_INIT_ERROR.code()
                     , ErrorCode.DEVICE_ALREADY_INIT_ERROR.message());
         }
         String prefix = "device:";
-        //清除上一次模拟数据
-        clearRedisAndDbData(redisTemplate, deviceMapper);
+        //相同拓扑的上一次注册中途中断时从断点继续，否则清除上一次模拟数据
+        boolean resume = deviceProvisioner.canResume(buildings, floors, rooms);
+        if (!resume) {
+            usageLedger.clear();
+            clearRedisAndDbData(redisTemplate, deviceMapper);
+        }
+        simulationEngine.disarmAll(meterKind);
+        //新拓扑下重新选择活跃用水设备
+        meterKind.resetSelections();
         redisTemplate.opsForValue().set(prefix + "educationBuildings", String.valueOf(educationBuildings));
         redisTemplate.opsForValue().set(prefix + "experimentBuildings", String.valueOf(educationBuildings + experimentBuildings));
-
-        DeviceIdList deviceIdList = initAllRedisData(buildings, floors, rooms, redisTemplate, redissonClient);
-
-        List<String> meterDeviceIds = deviceIdList.getMeterDeviceIds();
-        List<String> waterQualityDeviceIds = deviceIdList.getWaterQualityDeviceIds();
-
-        List<VirtualDevice> meterList = new ArrayList<>();
-        List<VirtualDevice> waterList = new ArrayList<>();
-
-        //构建集合
-        buildDevicesList(meterDeviceIds, meterList, 1);
-        buildDevicesList(waterQualityDeviceIds, waterList, 2);
-        VirtualMeterDeviceServiceImpl proxy = (VirtualMeterDeviceServiceImpl) AopContext.currentProxy();
-        //异步写入数据库
-        pool.submit(() -> proxy.saveBatch(meterList, 2000));
-        pool.submit(() -> proxy.saveBatch(waterList, 2000));
-        this.isInit = true;
-        waterQualityDeviceService.setInit(true);
+        initRedisSettings(buildings, floors, rooms, redisTemplate);
+
+        //流式写入数据库、redis 与布隆过滤器
+        deviceProvisioner.provision(buildings, floors, rooms, resume);
+        //全部设备注册完成后才设置初始化标志位，注册状态与设备总数写入集群共享的状态表
+        int allSize = buildings * floors * rooms * 3;
+        Long sensors = redisTemplate.opsForSet().size("device:sensor");
+        shardCoordinator.markInitialized(allSize, sensors == null ? 0 : sensors);
+        redisTemplate.opsForValue().set("isInit", "1");
         log.info("设备注册完成：校区 3 楼宇 {} 层数 {} 房间 {}", buildings, floors, rooms);
-        this.allSize = buildings * floors * rooms * 3;
         //总数量写入redis
         redisTemplate.opsForValue().set("allDeviceNums", String.valueOf(allSize));
+        //本实例立即刷新快照并按新拓扑重建状态表，再通知其他实例
+        contextHolder.refresh();
+        contextHolder.publishChange();
         //新建时序数据库
         rocketMQTemplate.convertAndSend("InfluxDB","rebuild");
         return Result.ok(SuccessCode.DEVICE_REGISTER_SUCCESS.getCode(),
                 SuccessCode.DEVICE_REGISTER_SUCCESS.getMessage());
     }
 
-    /**
-     * 构建设备集合，方便批量存入数据库
-     *
-     * @param deviceIds         传入的集合总数
-     * @param virtualDeviceList 目标集合
-     */
-    private static void buildDevicesList(List<String> deviceIds, List<VirtualDevice> virtualDeviceList, int type) {
-        Date now = new Date();
-        deviceIds.forEach(id -> {
-            VirtualDevice virtualDevice = new VirtualDevice();
-            virtualDevice.setDeviceType(type);
-            virtualDevice.setDeviceCode(id);
-            String sn = "JX" + UUID.fastUUID().toString().substring(0, 18).toUpperCase();
-            virtualDevice.setInstallDate(now);
-            virtualDevice.setSnCode(sn);
-            virtualDevice.setCampusNo(id.substring(1, 2));
-            virtualDevice.setBuildingNo(id.substring(2, 4));
-            virtualDevice.setFloorNo(id.substring(4, 6));
-            virtualDevice.setRoomNo(id.substring(6, 9));
-            virtualDevice.setStatus("online");
-            virtualDevice.setIsRunning(false);
-            virtualDeviceList.add(virtualDevice);
-        });
-    }
-
     /**
      * 设备上线后置处理器
+     * <p>
+     * 交给批量处理器，在下一个处理周期与其他上线设备一起更新数据库、redis 并发送上线通知
      */
-    public void markDeviceOnline(String deviceCode, long timestamp, DeviceMapper deviceMapper,
-                                 StringRedisTemplate redisTemplate) {
-        //得到自定义线程池
-        ExecutorService pools = getExecutorPools("markDeviceOnline", 5, 10, 60, 1000);
-        // 1. 更新数据库状态（仅当当前为 offline 时）
-        pools.submit(() -> {
-            LambdaUpdateWrapper<VirtualDevice> updateWrapper =
-                    new LambdaUpdateWrapper<VirtualDevice>()
-                            .eq(VirtualDevice::getDeviceCode, deviceCode)
-                            .eq(VirtualDevice::getStatus, "offline")
-                            .set(VirtualDevice::getIsRunning, true)
-                            .set(VirtualDevice::getStatus, "online");
-            deviceMapper.update(updateWrapper);
-        });
-
-        // 2. 清理离线缓存
-        redisTemplate.delete("device:OffLine:" + deviceCode);
-        redisTemplate.delete("cache:device:status:" + deviceCode);
-        cache.invalidate(deviceCode);
-        // 3. 加入心跳监控
-        redisTemplate.opsForHash()
-                .put("OnLineMap", deviceCode, String.valueOf(timestamp));
-    }
-
-    /**
-     * 判断设备是否在线
-     */
-    private boolean isDeviceOnline(String deviceId) {
-        //先查询缓存
-        String s = redisTemplate.opsForValue().get("device:OffLine:" + deviceId);
-        String status = "online";
-        if (s != null) {
-            VirtualDevice device = this.lambdaQuery().eq(VirtualDevice::getDeviceCode, deviceId)
-                    .one();
-            if (device != null) {
-                status = device.getStatus();
-            }
-        }
-        return status.startsWith("online");
+    public void markDeviceOnline(String deviceCode, long timestamp) {
+        deviceTransitionBatcher.online(deviceCode, timestamp);
     }
 
     public void madeSomeLocalCacheInvalidated(List<String> ids) {
-        ids.forEach(cache::invalidate);
+        statusCache.invalidateAll(ids);
     }
 
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof VirtualMeterDeviceServiceImpl that)) return false;
-        return isInit == that.isInit && isRunning() == that.isRunning();
+        return deviceIndex.runningCount() == that.deviceIndex.runningCount();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(isInit, isRunning());
+        return Objects.hash(deviceIndex.runningCount());
     }
 
+    /**
+     * 集群中是否还有期望运行的水表，本节点没有运行设备不代表其他节点也没有
+     */
     private boolean isRunning() {
-        return !runningDevices.isEmpty();
+        return shardCoordinator.desiredCount(ShardCoordinator.METER) > 0;
     }
 }
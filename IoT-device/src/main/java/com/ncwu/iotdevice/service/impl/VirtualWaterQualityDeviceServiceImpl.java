@@ -1,36 +1,33 @@
 package com.ncwu.iotdevice.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ncwu.common.cache.NamespaceEpoch;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.common.enums.SuccessCode;
-import com.ncwu.iotdevice.config.ServerConfig;
-import com.ncwu.iotdevice.domain.Bo.WaterQualityDataBo;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
 import com.ncwu.iotdevice.domain.entity.VirtualDevice;
-import com.ncwu.iotdevice.exception.DeviceRegisterException;
 import com.ncwu.iotdevice.mapper.DeviceMapper;
-import com.ncwu.iotdevice.service.DataSender;
-import org.springframework.beans.factory.ObjectProvider;
 import com.ncwu.iotdevice.service.VirtualWaterQualityDeviceService;
-import jakarta.annotation.PostConstruct;
+import com.ncwu.iotdevice.simulation.SensorIndex;
+import com.ncwu.iotdevice.simulation.SimulationEngine;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.*;
-
-import static com.ncwu.iotdevice.utils.Utils.keep3;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
+ * 水质传感器模拟
+ * <p>
+ * 传感器与水表共用 {@link SimulationEngine} 的时间轮、执行线程与心跳合并写入，
+ * 运行状态保存在 {@link SensorIndex} 中。启停设备只修改期望运行集合，
+ * 由 {@link ShardCoordinator} 通知持有对应分区的节点标记槽位并挂上或摘除时间轮条目。
+ *
  * @author jingxu
  * @version 1.0.0
  * @since 2025/12/29
@@ -42,76 +39,42 @@ import static com.ncwu.iotdevice.utils.Utils.keep3;
 public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapper, VirtualDevice>
         implements VirtualWaterQualityDeviceService {
 
-    private final Set<String> runningDevices = ConcurrentHashMap.newKeySet();
-
-    final String deviceStatusPrefix = "cache:device:status:";
-
-    //存储设备上报时间戳，以便和心跳对齐
-    private final ConcurrentHashMap<String, Long> reportTime = new ConcurrentHashMap<>();
-
     //开大小为5的线程池
     final ExecutorService pool = Executors.newFixedThreadPool(10);
 
-    //设备是否已经完成了初始化
-    @Setter
-    public volatile boolean isInit = false;
-    private ScheduledExecutorService scheduler;
-    private final Map<String, ScheduledFuture<?>> deviceTasks = new ConcurrentHashMap<>();
-
-    private final DeviceMapper deviceMapper;
     private final StringRedisTemplate redisTemplate;
-    private final ServerConfig serverConfig;
-    @Autowired
-    private ObjectProvider<DataSender> dataSender;
-
-    @PostConstruct
-    void init() {
-        Long size = redisTemplate.opsForSet().size("device:sensor");
-        if (size == null) {
-            throw new DeviceRegisterException("请先初始化设备");
-        }
-        scheduler = Executors.newScheduledThreadPool(
-                Math.max(5, (int) (this.count() / 100)),
-                Thread.ofVirtual().factory());
-    }
+    private final ShardCoordinator shardCoordinator;
+    private final NamespaceEpoch namespaceEpoch;
 
     @Override
     public Result<String> startAll() {
-        if (!isInit) {
+        //注册状态保存在 redis 中，任意节点都可以处理启动请求
+        if (!shardCoordinator.isInitialized()) {
             return Result.fail(ErrorCode.DEVICE_ERROR.code(), ErrorCode.DEVICE_INIT_ERROR.message());
         }
         Long size1 = redisTemplate.opsForSet().size("device:sensor");
         if (size1 == null) {
             return Result.fail(ErrorCode.UNKNOWN.code(), ErrorCode.UNKNOWN.message());
         }
-        if (runningDevices.size() == size1) {
-            //如果所有设备已经存在于运行设备集合中，无需继续
+        if (shardCoordinator.desiredCount(ShardCoordinator.SENSOR) == size1) {
+            //如果所有设备已经存在于期望运行集合中，无需继续
             return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(),
                     ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.message());
         }
-        Set<String> ids = redisTemplate.opsForSet().members("device:sensor");
-        if (ids == null) {
-            return Result.fail(ErrorCode.UNKNOWN.code(), ErrorCode.UNKNOWN.message());
-        }
-        List<String> list = ids.stream().toList();
-        runningDevices.addAll(list);
-        if (ids.isEmpty()) {
+        if (size1 == 0) {
             return Result.fail(ErrorCode.DEVICE_ERROR.code(), ErrorCode.DEVICE_INIT_ERROR.message());
         }
         pool.submit(() -> {
             //修改数据库状态
             this.lambdaUpdate()
-                    .in(VirtualDevice::getDeviceCode, ids)
+                    .likeRight(VirtualDevice::getDeviceCode, "2")
                     .eq(VirtualDevice::getIsRunning, false)
                     .set(VirtualDevice::getStatus, "online")
                     .set(VirtualDevice::getIsRunning, true).update();
         });
-        //递归上报数据
-        ids.forEach(this::scheduleNextReport);
-        //递归上报心跳
-        ids.forEach(this::startHeartbeat);
-        log.info("成功开启{}台设备的数据流", ids.size());
-        runningDevices.addAll(ids);
+        //写入期望运行集合，各节点将自己分区内的传感器挂到模拟引擎的时间轮上
+        long started = shardCoordinator.startAll(ShardCoordinator.SENSOR);
+        log.info("成功开启{}台设备的数据流", started);
         //可以受检
         redisTemplate.opsForValue().set("WaterQualityChecked", "1");
         return Result.ok(SuccessCode.DEVICE_OPEN_SUCCESS.getCode(),
@@ -120,20 +83,19 @@ public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapp
 
     @Override
     public Result<String> startList(List<String> ids) {
-        if (!isInit) {
+        if (!shardCoordinator.isInitialized()) {
             return Result.fail(ErrorCode.DEVICE_ERROR.code(), ErrorCode.DEVICE_INIT_ERROR.message());
         }
-        runningDevices.addAll(ids);
-        ids.forEach(this::scheduleNextReport);
-        ids.forEach(this::startHeartbeat);
+        shardCoordinator.start(ShardCoordinator.SENSOR, ids);
         //更新数据库状态,异步执行
         pool.submit(() -> {
             this.lambdaUpdate().in(VirtualDevice::getDeviceCode, ids)
                     .set(VirtualDevice::getStatus, "online")
-                    .set(VirtualDevice::getIsRunning, true);
+                    .set(VirtualDevice::getIsRunning, true).update();
         });
         //删除缓存
-        redisTemplate.delete(deviceStatusPrefix);
+        String statusPrefix = namespaceEpoch.prefix(NamespaceEpoch.DEVICE_STATUS);
+        redisTemplate.delete(ids.stream().map(id -> statusPrefix + id).toList());
         log.info("批量：成功开启{}台设备的数据流", ids.size());
         return Result.ok(SuccessCode.DEVICE_OPEN_SUCCESS.getCode(),
                 SuccessCode.DEVICE_OPEN_SUCCESS.getMessage());
@@ -143,18 +105,14 @@ public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapp
     public Result<String> stopAll() {
         //停止受检
         redisTemplate.opsForValue().set("WaterQualityChecked", "0");
-        runningDevices.clear();
-        //立即停止未进行的调度任务，正在运行的调度任务将再下一次上报时停止。
-        deviceTasks.forEach((id, future) -> {
-            if (future != null && !future.isCancelled()) {
-                future.cancel(false);
-            }
-        });
+        //清空期望运行集合，所有节点清空运行标志并摘除时间轮条目，正在执行的批次会在检查运行标志后跳过
+        shardCoordinator.stopAll(ShardCoordinator.SENSOR);
         //更新数据库状态,异步执行
         pool.submit(() -> {
             this.lambdaUpdate()
+                    .likeRight(VirtualDevice::getDeviceCode, "2")
                     .eq(VirtualDevice::getIsRunning, true)
-                    .set(VirtualDevice::getIsRunning, false);
+                    .set(VirtualDevice::getIsRunning, false).update();
         });
         return Result.ok(SuccessCode.DEVICE_STOP_SUCCESS.getCode(), SuccessCode.DEVICE_STOP_SUCCESS.getMessage());
     }
@@ -169,7 +127,7 @@ public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapp
                     .set(VirtualDevice::getIsRunning, false)
                     .update();
         });
-        ids.forEach(runningDevices::remove);
+        shardCoordinator.stop(ShardCoordinator.SENSOR, ids);
         return Result.ok(SuccessCode.DEVICE_OFFLINE_SUCCESS.getCode(), SuccessCode.DEVICE_OFFLINE_SUCCESS.getMessage());
     }
 
@@ -190,17 +148,8 @@ public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapp
         if (ids == null || ids.isEmpty()) {
             return Result.fail(ErrorCode.UNKNOWN.code(), ErrorCode.UNKNOWN.message());
         }
-        //移除运行中列表
-        ids.forEach(runningDevices::remove);
-        //停止未运行的任务
-        ids.forEach(id -> {
-            ScheduledFuture<?> future = deviceTasks.get(id);
-            if (future != null) {
-                future.cancel(false);
-                deviceTasks.remove(id);
-                runningDevices.remove(id);
-            }
-        });
+        //移出期望运行集合，归属节点清除运行标志并摘除时间轮条目，O(k)
+        shardCoordinator.stop(ShardCoordinator.SENSOR, ids);
         pool.submit(() -> {
             this.lambdaUpdate().in(VirtualDevice::getDeviceCode, ids)
                     .set(VirtualDevice::getIsRunning, false)
@@ -215,123 +164,13 @@ public class VirtualWaterQualityDeviceServiceImpl extends ServiceImpl<DeviceMapp
             return Result.fail(ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.code(),
                     ErrorCode.DEVICE_DEVICE_RUNNING_NOW_ERROR.message());
         } else {
-            this.isInit = false;
+            shardCoordinator.clearInitialized();
             return Result.ok(SuccessCode.DEVICE_REGISTER_SUCCESS.getCode(),
                     SuccessCode.DEVICE_REGISTER_SUCCESS.getMessage());
         }
     }
 
-    private void scheduleNextReport(String deviceId) {
-        if (!runningDevices.contains(deviceId)) {
-            return;
-        }
-        //读取上报时间 - 使用水质传感器的配置
-        String reportFrequency = serverConfig.getWaterQualityReportFrequency();
-        String timeOffset = serverConfig.getWaterQualityReportTimeOffset();
-        if (reportFrequency == null) {
-            return;
-        }
-        long delay = Long.parseLong(reportFrequency) + ThreadLocalRandom.current()
-                .nextLong(Long.parseLong(timeOffset));
-        ScheduledFuture<?> future = scheduler.schedule(() -> {
-            try {
-                reportTime.put(deviceId, System.currentTimeMillis());
-                processSingleDevice(deviceId);
-                scheduleNextReport(deviceId);
-            } catch (Exception e) {
-                log.error("设备:{}上报失败,原因:{}", sanitizeForLog(deviceId), e.getMessage());
-            }
-        }, delay, TimeUnit.MILLISECONDS);
-        deviceTasks.put(deviceId, future);
-    }
-
-    /**
-     * 生成水质模拟器的数据
-     *
-     * @param deviceId 设备编号
-     */
-    private void processSingleDevice(String deviceId) {
-        WaterQualityDataBo dataBo = new WaterQualityDataBo();
-        dataBo.setTimeStamp(LocalDateTime.now());
-        dataBo.setDevice(2);
-        dataBo.setDeviceId(deviceId);
-        int season = Integer.parseInt(Objects.requireNonNull(redisTemplate.opsForValue().get("Season")));
-        double ph, turbidity, chlorine;
-        if (season == 1) {
-            ph = ThreadLocalRandom.current().nextDouble(6.8, 7.2);
-            turbidity = ThreadLocalRandom.current().nextDouble(0.3, 0.6);
-            chlorine = ThreadLocalRandom.current().nextDouble(0.3, 0.45);
-        } else if (season == 2) {
-            ph = ThreadLocalRandom.current().nextDouble(7.2, 7.8);
-            turbidity = ThreadLocalRandom.current().nextDouble(0.4, 0.7);
-            chlorine = ThreadLocalRandom.current().nextDouble(0.4, 0.7);
-        } else if (season == 3) {
-            ph = ThreadLocalRandom.current().nextDouble(7.0, 7.5);
-            turbidity = ThreadLocalRandom.current().nextDouble(0.2, 0.4);
-            chlorine = ThreadLocalRandom.current().nextDouble(0.3, 0.45);
-        } else {
-            ph = ThreadLocalRandom.current().nextDouble(7.4, 8.0);
-            turbidity = ThreadLocalRandom.current().nextDouble(0.1, 0.25);
-            chlorine = ThreadLocalRandom.current().nextDouble(0.2, 0.35);
-        }
-        dataBo.setPh(keep3(ph));
-        dataBo.setTurbidity(keep3(turbidity));
-        dataBo.setChlorine(keep3(chlorine + turbidity * 0.2));
-        dataBo.setStatus("normal");
-        sendData(dataBo);
-    }
-
-    /**
-     * 发送模拟数据
-     */
-    private void sendData(WaterQualityDataBo dataBo) {
-        dataSender.getObject().sendWaterQualityData(dataBo);
-    }
-
     private boolean isRunning() {
-        return !runningDevices.isEmpty();
-    }
-
-    /**
-     * 单独开一个心跳任务
-     */
-    private void startHeartbeat(String deviceId) {
-        int time = Integer.parseInt(serverConfig.getWaterQualityReportFrequency()) / 1000;
-        int offset = Integer.parseInt(serverConfig.getWaterQualityReportTimeOffset()) / 1000;
-        scheduler.scheduleAtFixedRate(() -> {
-            long now = System.currentTimeMillis();
-            Long lastReportTime = this.reportTime.get(deviceId);
-            
-            // 检查设备是否在线，如果不在运行则停止心跳
-            if (!isDeviceOnline(deviceId)) {
-                return;
-            }
-            
-            // 使用当前时间作为心跳时间戳，确保心跳的时效性
-            // 如果距离上次上报超过配置的时间间隔，说明设备可能有问题，但仍使用当前时间保持心跳
-            long heartbeatTimestamp = now;
-            try {
-                dataSender.getObject().heartBeat(deviceId, heartbeatTimestamp);
-            } catch (Exception e) {
-                log.error("心跳发送异常: {}", e.getMessage(), e);
-            }
-        }, 0, time + offset, TimeUnit.SECONDS);
-    }
-
-    /**
-     * 判断设备是否在线
-     */
-    private boolean isDeviceOnline(String deviceId) {
-        //先查询缓存
-        String s = redisTemplate.opsForValue().get("device:OffLine:" + deviceId);
-        String status = "online";
-        if (s != null) {
-            VirtualDevice device = this.lambdaQuery().eq(VirtualDevice::getDeviceCode, deviceId)
-                    .one();
-            if (device != null) {
-                status = device.getStatus();
-            }
-        }
-        return status.startsWith("online");
+        return shardCoordinator.desiredCount(ShardCoordinator.SENSOR) > 0;
     }
 }
@@ -0,0 +1,374 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.utils.DeviceCodes;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 水表设备的稠密下标与列式状态表
+ * <p>
+ * 设备编号 1CBBFFRRR 按 (校区, 楼宇, 楼层, 房间) 直接换算出连续的槽位，不需要哈希查找，
+ * 也不需要 substring + parseInt。楼宇类别、运行标志、活跃用水剩余次数、
+ * 阀门状态都以槽位为下标保存在数组中，活跃用水次数使用原子数组，扣减无锁。
+ * 累计用水量只由 {@link UsageLedger} 维护，这里不再保存副本。
+ * <p>
+ * 楼宇拓扑随模拟配置快照变化时整体重建，热路径只需读取一次 volatile 引用。
+ * 运行标志与阀门开关状态会被上报线程、分区迁移与阀门指令等多个线程读取，以原子数组保存：
+ * 写入方各自加锁(运行标志在本类的锁内，阀门状态在 {@link ValveStateCache} 的锁内)，读取无锁且总能看到最近一次写入。
+ * 阀门版本号只在 {@link ValveStateCache} 的锁内读写，使用普通数组。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/6
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceIndex implements MeterFleet {
+
+    public static final byte EDUCATION = 0;
+    public static final byte EXPERIMENT = 1;
+    public static final byte DORMITORY = 2;
+    private static final int CAMPUSES = 3;
+
+    private final SimulationContextHolder contextHolder;
+    private final List<Runnable> rebuildListeners = new CopyOnWriteArrayList<>();
+    private volatile Table table = new Table(0, 0, 0, 0, 0);
+
+    @PostConstruct
+    void init() {
+        ensure(contextHolder.current());
+        contextHolder.addListener(this::ensure);
+    }
+
+    /**
+     * 注册状态表重建监听器
+     */
+    public void addRebuildListener(Runnable listener) {
+        rebuildListeners.add(listener);
+    }
+
+    /**
+     * 楼宇拓扑变化时重建状态表，原有运行状态全部丢弃
+     *
+     * @return 是否发生了重建
+     */
+    public boolean ensure(SimulationContext context) {
+        synchronized (this) {
+            Table t = table;
+            if (t.buildings == context.buildings() && t.floors == context.floors() && t.rooms == context.rooms()
+                    && t.education == context.educationBuildings() && t.experiment == context.experimentBuildings()) {
+                return false;
+            }
+            table = new Table(context.buildings(), context.floors(), context.rooms(),
+                    context.educationBuildings(), context.experimentBuildings());
+            log.info("设备状态表已重建，容量 {}", table.capacity);
+        }
+        rebuildListeners.forEach(Runnable::run);
+        return true;
+    }
+
+    public int capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * 由设备编号换算槽位
+     *
+     * @return 槽位，编号非法或超出当前拓扑时返回 -1
+     */
+    public int slotOf(String deviceId) {
+        Table t = table;
+        if (deviceId == null || deviceId.length() != 9 || deviceId.charAt(0) != '1') {
+            return -1;
+        }
+        int campus = digit(deviceId, 1);
+        int building = digit(deviceId, 2) * 10 + digit(deviceId, 3);
+        int floor = digit(deviceId, 4) * 10 + digit(deviceId, 5);
+        int room = digit(deviceId, 6) * 100 + digit(deviceId, 7) * 10 + digit(deviceId, 8);
+        if (campus < 1 || campus > CAMPUSES || building < 1 || building > t.buildings
+                || floor < 1 || floor > t.floors || room < 1 || room > t.rooms) {
+            return -1;
+        }
+        return (((campus - 1) * t.buildings + building - 1) * t.floors + floor - 1) * t.rooms + room - 1;
+    }
+
+    /**
+     * 批量换算槽位，忽略非法编号
+     */
+    public int[] slotsOf(Collection<String> deviceIds) {
+        int[] result = new int[deviceIds.size()];
+        int n = 0;
+        for (String id : deviceIds) {
+            if (n == result.length) {
+                break;
+            }
+            int slot = slotOf(id);
+            if (slot >= 0) {
+                result[n++] = slot;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public String idOf(int slot) {
+        return table.codes[slot];
+    }
+
+    @Override
+    public byte categoryOf(int slot) {
+        return table.category[slot];
+    }
+
+    /**
+     * 得到某一类楼宇的全部槽位
+     */
+    @Override
+    public int[] slotsIn(byte category) {
+        Table t = table;
+        int[] result = new int[t.capacity];
+        int n = 0;
+        for (int i = 0; i < t.capacity; i++) {
+            if (t.category[i] == category) {
+                result[n++] = i;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public boolean isRunning(int slot) {
+        return table.running.get(slot) != 0;
+    }
+
+    /**
+     * 标记一批设备为运行中
+     *
+     * @return 新启动的设备数量
+     */
+    public synchronized int markRunning(int[] slots) {
+        Table t = table;
+        int started = 0;
+        for (int slot : slots) {
+            if (t.running.get(slot) == 0) {
+                t.running.set(slot, 1);
+                started++;
+            }
+        }
+        t.runningCount += started;
+        return started;
+    }
+
+    public synchronized void markStopped(int[] slots) {
+        Table t = table;
+        for (int slot : slots) {
+            if (t.running.get(slot) != 0) {
+                t.running.set(slot, 0);
+                t.runningCount--;
+            }
+        }
+    }
+
+    public synchronized void stopAll() {
+        Table t = table;
+        for (int i = 0; i < t.capacity; i++) {
+            t.running.set(i, 0);
+        }
+        t.runningCount = 0;
+    }
+
+    public synchronized int runningCount() {
+        return table.runningCount;
+    }
+
+    /**
+     * 得到设备本次上报的序号，从 0 开始，状态表重建后归零
+     */
+    public long nextReportIndex(int slot) {
+        return table.reportIndex.getAndIncrement(slot);
+    }
+
+    /**
+     * 设置设备当前时段与后续时段的活跃用水次数
+     */
+    @Override
+    public void setQuota(int slot, int active, int spare) {
+        Table t = table;
+        t.activeQuota.set(slot, active);
+        t.spareQuota.set(slot, spare);
+    }
+
+    /**
+     * 清空某一类楼宇的活跃用水次数
+     */
+    @Override
+    public void clearQuota(byte category) {
+        Table t = table;
+        for (int i = 0; i < t.capacity; i++) {
+            if (t.category[i] == category) {
+                t.activeQuota.set(i, 0);
+                t.spareQuota.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * 消耗一次当前时段的活跃用水次数，无锁
+     */
+    @Override
+    public boolean takeActiveQuota(int slot) {
+        return decrementIfPositive(table.activeQuota, slot);
+    }
+
+    /**
+     * 消耗一次后续时段的活跃用水次数，无锁
+     */
+    @Override
+    public boolean takeSpareQuota(int slot) {
+        return decrementIfPositive(table.spareQuota, slot);
+    }
+
+    private static boolean decrementIfPositive(AtomicIntegerArray quota, int slot) {
+        int remaining;
+        do {
+            remaining = quota.get(slot);
+            if (remaining <= 0) {
+                return false;
+            }
+        } while (!quota.compareAndSet(slot, remaining, remaining - 1));
+        return true;
+    }
+
+    @Override
+    public void setEducationActive(int slot, boolean active) {
+        table.educationActive[slot] = active;
+    }
+
+    @Override
+    public boolean isEducationActive(int slot) {
+        return table.educationActive[slot];
+    }
+
+    /**
+     * 按版本号写入阀门状态，版本不高于当前状态的指令被忽略
+     *
+     * @return 是否写入
+     */
+    public boolean applyValve(int slot, boolean closed, long version) {
+        Table t = table;
+        if (version <= t.valveVersion[slot]) {
+            return false;
+        }
+        t.valveVersion[slot] = version;
+        t.valveClosed.set(slot, closed ? 1 : 0);
+        return true;
+    }
+
+    /**
+     * 记录关阀指令的下发时间，收到第一条零流量上报后清零
+     */
+    public void setValvePending(int slot, long issuedAt) {
+        table.valvePending.set(slot, issuedAt);
+    }
+
+    public long valvePending(int slot) {
+        return table.valvePending.get(slot);
+    }
+
+    /**
+     * 某个校区的槽位范围，同一校区的水表槽位连续
+     *
+     * @return {起始槽位, 结束槽位(不含)}
+     */
+    public int[] campusRange(int campus) {
+        Table t = table;
+        int perCampus = t.buildings * t.floors * t.rooms;
+        if (campus < 1 || campus > CAMPUSES) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(campus - 1) * perCampus, campus * perCampus};
+    }
+
+    public void clearValves() {
+        Table t = table;
+        Arrays.fill(t.valveVersion, 0);
+        for (int i = 0; i < t.capacity; i++) {
+            t.valveClosed.set(i, 0);
+            t.valvePending.set(i, 0);
+        }
+    }
+
+    public boolean isValveClosed(int slot) {
+        return table.valveClosed.get(slot) != 0;
+    }
+
+    private static int digit(String s, int i) {
+        int d = s.charAt(i) - '0';
+        return d >= 0 && d <= 9 ? d : -1000;
+    }
+
+    /**
+     * 一份拓扑对应的全部列
+     */
+    private static final class Table {
+        final int buildings;
+        final int floors;
+        final int rooms;
+        final int education;
+        final int experiment;
+        final int capacity;
+
+        final String[] codes;
+        final byte[] category;
+        final AtomicIntegerArray running;
+        final AtomicLongArray reportIndex;
+        final AtomicIntegerArray activeQuota;
+        final AtomicIntegerArray spareQuota;
+        final boolean[] educationActive;
+        final AtomicIntegerArray valveClosed;
+        final long[] valveVersion;
+        final AtomicLongArray valvePending;
+        int runningCount;
+
+        Table(int buildings, int floors, int rooms, int education, int experiment) {
+            this.buildings = buildings;
+            this.floors = floors;
+            this.rooms = rooms;
+            this.education = education;
+            this.experiment = experiment;
+            this.capacity = Math.max(0, CAMPUSES * buildings * floors * rooms);
+            this.codes = new String[capacity];
+            this.category = new byte[capacity];
+            this.running = new AtomicIntegerArray(capacity);
+            this.reportIndex = new AtomicLongArray(capacity);
+            this.activeQuota = new AtomicIntegerArray(capacity);
+            this.spareQuota = new AtomicIntegerArray(capacity);
+            this.educationActive = new boolean[capacity];
+            this.valveClosed = new AtomicIntegerArray(capacity);
+            this.valveVersion = new long[capacity];
+            this.valvePending = new AtomicLongArray(capacity);
+            int slot = 0;
+            for (int c = 1; c <= CAMPUSES && capacity > 0; c++) {
+                for (int b = 1; b <= buildings; b++) {
+                    byte kind = b <= education ? EDUCATION : b <= experiment ? EXPERIMENT : DORMITORY;
+                    for (int f = 1; f <= floors; f++) {
+                        for (int r = 1; r <= rooms; r++) {
+                            codes[slot] = DeviceCodes.meter(c, b, f, r);
+                            category[slot++] = kind;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import java.util.List;
+
+/**
+ * 交给 {@link SimulationEngine} 调度的一种设备
+ * <p>
+ * 描述该种设备的槽位空间、运行标志、上报周期、数据模型与批量发送方式，
+ * 调度、分批、心跳与并行执行都由引擎统一完成。
+ *
+ * @param <T> 数据载荷类型
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+public interface DeviceKind<T> {
+
+    /**
+     * 种类名称，用作监控指标标签
+     */
+    String name();
+
+    /**
+     * 当前拓扑下的槽位数量
+     */
+    int capacity();
+
+    String idOf(int slot);
+
+    boolean isRunning(int slot);
+
+    /**
+     * 得到设备本次上报的序号
+     */
+    long nextReportIndex(int slot);
+
+    TelemetryModel<T> model();
+
+    /**
+     * 批量发送同一个 tick 内生成的数据
+     *
+     * @param batch 数据载荷
+     * @param slots 与载荷一一对应的槽位
+     */
+    void send(List<T> batch, int[] slots);
+
+    /**
+     * 上报周期，单位毫秒，配置缺失时返回负数
+     */
+    long reportPeriodMs();
+
+    /**
+     * 上报随机偏移上限，单位毫秒
+     */
+    long reportJitterMs();
+
+    /**
+     * 心跳周期，单位毫秒
+     */
+    long heartbeatPeriodMs();
+}
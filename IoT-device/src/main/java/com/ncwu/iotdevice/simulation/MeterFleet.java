@@ -0,0 +1,48 @@
+package com.ncwu.iotdevice.simulation;
+
+
+/**
+ * 用水模型所需的设备群视图
+ * <p>
+ * 提供槽位到设备编号、楼宇类别的映射，以及活跃用水次数和教学楼活跃标志的读写。
+ * 数字孪生模拟由 {@link DeviceIndex} 实现，压测负载生成使用纯内存的虚拟设备群实现。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+public interface MeterFleet {
+
+    String idOf(int slot);
+
+    byte categoryOf(int slot);
+
+    /**
+     * 得到某一类楼宇的全部槽位
+     */
+    int[] slotsIn(byte category);
+
+    /**
+     * 设置设备当前时段与后续时段的活跃用水次数
+     */
+    void setQuota(int slot, int active, int spare);
+
+    /**
+     * 清空某一类楼宇的活跃用水次数
+     */
+    void clearQuota(byte category);
+
+    /**
+     * 消耗一次当前时段的活跃用水次数
+     */
+    boolean takeActiveQuota(int slot);
+
+    /**
+     * 消耗一次后续时段的活跃用水次数
+     */
+    boolean takeSpareQuota(int slot);
+
+    void setEducationActive(int slot, boolean active);
+
+    boolean isEducationActive(int slot);
+}
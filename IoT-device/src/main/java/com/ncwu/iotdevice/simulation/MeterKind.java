@@ -0,0 +1,121 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.clock.VirtualClock;
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.service.DataSender;
+import com.ncwu.iotdevice.simulation.transform.TelemetryPipeline;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 水表
+ * <p>
+ * 槽位与运行状态来自 {@link DeviceIndex}，数据由用水模型生成后经过异常事件变换链，
+ * 批量发送后把实际发送到 MQ 的数据的上报时间与累计用水量写回状态表。开启按例外上报时由 {@link ReportDeadband} 决定哪些数据发送到 MQ。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+@Component
+public class MeterKind implements DeviceKind<MeterDataBo> {
+
+    private final DeviceIndex deviceIndex;
+    private final ServerConfig serverConfig;
+    private final ObjectProvider<DataSender> dataSender;
+    private final ReportDeadband reportDeadband;
+    private final ValveStateCache valveStateCache;
+    private final VirtualClock virtualClock;
+    private final MeterTelemetryModel telemetryModel;
+    private final TelemetryModel<MeterDataBo> model;
+
+    public MeterKind(DeviceIndex deviceIndex, ServerConfig serverConfig, SimulationRandom simulationRandom,
+                     TelemetryPipeline telemetryPipeline, ObjectProvider<DataSender> dataSender,
+                     ReportDeadband reportDeadband, ValveStateCache valveStateCache, VirtualClock virtualClock) {
+        this.deviceIndex = deviceIndex;
+        this.serverConfig = serverConfig;
+        this.dataSender = dataSender;
+        this.reportDeadband = reportDeadband;
+        this.valveStateCache = valveStateCache;
+        this.virtualClock = virtualClock;
+        this.telemetryModel = new MeterTelemetryModel(deviceIndex, serverConfig, simulationRandom);
+        this.model = (slot, context, random) -> telemetryPipeline.apply(
+                telemetryModel.build(slot, context, random), random);
+    }
+
+    /**
+     * 新拓扑下重新选择活跃用水设备
+     */
+    public void resetSelections() {
+        telemetryModel.resetSelections();
+    }
+
+    @Override
+    public String name() {
+        return "meter";
+    }
+
+    @Override
+    public int capacity() {
+        return deviceIndex.capacity();
+    }
+
+    @Override
+    public String idOf(int slot) {
+        return deviceIndex.idOf(slot);
+    }
+
+    @Override
+    public boolean isRunning(int slot) {
+        return deviceIndex.isRunning(slot);
+    }
+
+    @Override
+    public long nextReportIndex(int slot) {
+        return deviceIndex.nextReportIndex(slot);
+    }
+
+    @Override
+    public TelemetryModel<MeterDataBo> model() {
+        return model;
+    }
+
+    @Override
+    public void send(List<MeterDataBo> batch, int[] slots) {
+        long now = System.currentTimeMillis();
+        // 保活周期按模拟时间计算，与上报时间戳处于同一时间线
+        long virtualNow = virtualClock.millis();
+        // 筛选只对上报脚本确认有效的数据调用，重复、离线被拒绝的数据与死区内被抑制的数据都不会记为已上报
+        boolean[] published = new boolean[batch.size()];
+        dataSender.getObject().sendMeterDataBatch(batch,
+                i -> published[i] = reportDeadband.admit(slots[i], batch.get(i), virtualNow));
+        for (int i = 0; i < batch.size(); i++) {
+            if (!published[i]) {
+                continue;
+            }
+            valveStateCache.onReported(slots[i], batch.get(i), now);
+        }
+    }
+
+    @Override
+    public long reportPeriodMs() {
+        return serverConfig.getMeterTimeOffsetMs() < 0 ? -1 : serverConfig.getMeterReportFrequencyMs();
+    }
+
+    @Override
+    public long reportJitterMs() {
+        return serverConfig.getMeterTimeOffsetMs();
+    }
+
+    /**
+     * 心跳周期与原先保持一致：基础频率 + 随机偏移上限
+     */
+    @Override
+    public long heartbeatPeriodMs() {
+        return reportPeriodMs() + reportJitterMs();
+    }
+}
@@ -0,0 +1,375 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.Constants.DeviceStatus;
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+import static com.ncwu.iotdevice.utils.Utils.waterPressureGenerate;
+
+/**
+ * 水表用水模型
+ * <p>
+ * 按楼宇类别与模拟时间生成水流量、水压和水温，活跃用水设备的选择状态保存在 {@link MeterFleet} 中。
+ * 数字孪生模拟与压测负载生成共用同一套模型，两者只是设备群的实现不同。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/9
+ */
+public class MeterTelemetryModel implements TelemetryModel<MeterDataBo> {
+
+    private final MeterFleet fleet;
+    private final ServerConfig serverConfig;
+    private final SimulationRandom simulationRandom;
+
+    public MeterTelemetryModel(MeterFleet fleet, ServerConfig serverConfig, SimulationRandom simulationRandom) {
+        this.fleet = fleet;
+        this.serverConfig = serverConfig;
+        this.simulationRandom = simulationRandom;
+    }
+
+    /**
+     * 清空各类楼宇的选择纪元与轮次，下一次上报时重新选择活跃用水设备
+     */
+    public void resetSelections() {
+        dormitoryEpoch.set(NO_EPOCH);
+        experimentEpoch.set(NO_EPOCH);
+        educationEpoch.set(NO_EPOCH);
+        for (int i = 0; i < selectionRounds.length(); i++) {
+            selectionRounds.set(i, 0);
+        }
+    }
+
+    /**
+     * 生成单条模拟数据
+     * <p>
+     * 该方法为单个设备生成完整的水表数据，包括：<p>
+     * - 水流量（根据时间和楼宇类型计算）<p>
+     * - 水压（根据水流量计算）<p>
+     * - 水温（根据时间和季节计算）<p>
+     * - 时间戳和其他元数据
+     *
+     * @param slot    设备槽位
+     * @param context 模拟配置快照
+     * @param random  本次上报使用的随机流
+     * @return 模拟数据
+     */
+    @Override
+    public MeterDataBo build(int slot, SimulationContext context, RandomGenerator random) {
+        MeterDataBo dataBo = new MeterDataBo();
+
+        // 获取模拟的时间参数（秒）
+        int time = context.time();
+
+        // 根据时间和楼宇类型生成水流量
+        double flow = waterFlowGenerate(context, slot, random);
+
+        // 根据水流量计算对应的水压
+        double pressure = waterPressureGenerate(flow, serverConfig, random);
+
+        // 获取当前季节参数
+        int season = context.season();
+
+        // 根据季节设置水温计算的中间值和步长
+        int mid, step;
+        step = switch (season) {
+            case 1 -> {  // 春季
+                mid = 15;  // 中间温度15度
+                yield 3;   // 步长3度
+            }
+            case 2 -> {  // 夏季
+                mid = 22;  // 中间温度22度
+                yield 5;   // 步长5度
+            }
+            case 3 -> {  // 秋季
+                mid = 17;  // 中间温度17度
+                yield 2;   // 步长2度
+            }
+            default -> { // 冬季
+                mid = 6;   // 中间温度6度
+                yield 2;   // 步长2度
+            }
+        };
+
+        // 设置数据对象的基本信息
+        dataBo.setDeviceId(fleet.idOf(slot));  // 设备ID
+        dataBo.setDevice(1);    // 设备类型标识
+
+        // 设置时间戳，取执行批次的模拟时刻，添加随机纳秒避免时间戳完全相同
+        dataBo.setTimeStamp(context.timestamp().plusNanos(random.nextInt(1000000)));
+
+        // 设置模拟数据
+        dataBo.setFlow(flow);    // 水流量
+        dataBo.setPressure(pressure);  // 水压
+        dataBo.setWaterTem(waterTemperateGenerate(time, mid, step));  // 水温
+        dataBo.setIsOpen(DeviceStatus.NORMAL);    // 设备开关状态
+        dataBo.setStatus(DeviceStatus.NORMAL);     // 设备运行状态
+        return dataBo;
+    }
+
+    /**
+     * 根据时间和楼宇类型生成水流量
+     * <p>
+     * 该方法根据槽位上预先计算的楼宇类别，调用相应的流量生成算法：<p>
+     * - 教学楼：使用教育区流量模式<p>
+     * - 实验楼：使用实验区流量模式  <p>
+     * - 宿舍楼：使用宿舍区流量模式
+     *
+     * @param context 模拟配置快照
+     * @param slot    设备槽位
+     * @param random  本次上报使用的随机流
+     * @return 水流量值（保留3位小数）
+     */
+    private double waterFlowGenerate(SimulationContext context, int slot, RandomGenerator random) {
+        int time = context.time();
+        // 楼宇类别在状态表重建时已按楼宇编号计算好
+        double flow = switch (fleet.categoryOf(slot)) {
+            // 教学楼：使用教学区流量模式
+            case DeviceIndex.EDUCATION -> getEducationFlow(time, slot, random);
+            // 实验楼：使用实验区流量模式
+            case DeviceIndex.EXPERIMENT -> getExperimentFlow(time, slot, random);
+            // 宿舍楼：使用宿舍区流量模式
+            default -> getDormitoryFlow(time, slot, random);
+        };
+
+        // 保留3位小数后返回
+        return keep3(flow);
+    }
+
+    /**
+     * 活跃用水设备选择的时段纪元：0 表示尚未选择，其余为当前生效的时段编号。
+     * 进入新时段时只有 CAS 成功的线程重新选择设备，其余线程不阻塞，直接按每台设备的原子配额计算
+     */
+    private static final int NO_EPOCH = 0;
+    /**
+     * 宿舍楼：早晨时段选择一次，后续时段沿用剩余配额
+     */
+    private final AtomicInteger dormitoryEpoch = new AtomicInteger(NO_EPOCH);
+    /**
+     * 实验楼：四个时段各重新选择一次
+     */
+    private final AtomicInteger experimentEpoch = new AtomicInteger(NO_EPOCH);
+    /**
+     * 教学楼：每次初始化后选择一次
+     */
+    private final AtomicInteger educationEpoch = new AtomicInteger(NO_EPOCH);
+    private static final int SELECTING = -1;
+    private static final int SELECTED = 1;
+    /**
+     * 每类楼宇已经进行的设备选择轮次，作为可复现随机流的序号
+     */
+    private final AtomicLongArray selectionRounds = new AtomicLongArray(3);
+
+    /**
+     * 尝试切换到新的时段纪元
+     *
+     * @return 是否由当前线程完成切换，切换成功的线程负责重新选择设备
+     */
+    private static boolean advanceEpoch(AtomicInteger epoch, int window) {
+        int current = epoch.get();
+        return current != window && epoch.compareAndSet(current, window);
+    }
+
+    private double getDormitoryFlow(int time, int slot, RandomGenerator random) {
+        double p = random.nextDouble();
+        int offset = random.nextInt(10 * 60);
+        double v = random.nextDouble(1);
+        //上报周期
+        int fre = (int) (serverConfig.getMeterReportFrequencyMs() / 1000);
+        if (((time <= 7 * 3600) && (time >= 0)) || (time >= 23 * 3600) && (time <= 24 * 3600)) {
+            if (p >= 0.8) {
+                //模拟宿舍起夜上厕所行为，最多夜间两次
+                int freCnt = 7 * 3600 / fre;
+                double p1 = 1 - (2.0 / freCnt);
+                if (v >= p1) {
+                    return random.nextDouble(0.1, 0.15);
+                }
+            }
+        } else if (time > 7.25 * 3600 + offset && time <= 8 * 3600 + offset) {
+            if (advanceEpoch(dormitoryEpoch, 1)) {
+                chooseDormitory(serverConfig.getWakeUpDormRate());
+            }
+            if (p >= 0.93 && fleet.takeActiveQuota(slot)) {
+                return random.nextDouble(0.2, 0.3);
+            }
+        } else if (time > 8 * 3600 + offset && time <= 12.5 * 3600) {
+            //剩余
+            if (p >= 0.98) {
+                if (fleet.takeSpareQuota(slot)) {
+                    return random.nextDouble(0.12, 0.15);
+                } else return 0;
+            }
+        } else if (time > 12.5 * 3600 && time <= 18 * 3600) {
+            double freCnt = 7.5 * 3600 / fre;
+            double p3 = 1 - (5.0 / freCnt);
+            if (p >= p3) {
+                return random.nextDouble(0.07, 0.1);
+            } else return 0;
+        } else if (time >= 20 * 3600 && time <= 22 * 3600) {
+            int freCnt = 3 * 3600 / fre;
+            double p4 = 1 - (2.0 / freCnt);
+            if (p >= p4) {
+                return random.nextDouble(0.12, 0.3);
+            } else {
+                return 0;
+            }
+        } else if (time >= 23.5 * 3600 && time <= 24 * 3600) {
+            //第二天早晨重新选择
+            dormitoryEpoch.set(NO_EPOCH);
+            return 0;
+        } else {
+            if (p > 0.99995) {
+                return random.nextDouble(0.02, 0.05);
+            } else return 0;
+        }
+        return 0.0;
+    }
+
+    /**
+     * 以 v 的概率选中每台宿舍设备，选中的设备早晨与后续时段各有 30 次活跃用水
+     *
+     * @param v 倍数
+     */
+    private void chooseDormitory(double v) {
+        fleet.clearQuota(DeviceIndex.DORMITORY);
+        RandomGenerator random = selectionRandom(DeviceIndex.DORMITORY);
+        for (int slot : fleet.slotsIn(DeviceIndex.DORMITORY)) {
+            if (random.nextDouble() < v) {
+                fleet.setQuota(slot, 30, 30);
+            }
+        }
+    }
+
+    private double getExperimentFlow(int time, int slot, RandomGenerator random) {
+        //正在运行试验的教室，用水量可能一直存在
+        double p = random.nextDouble(1);
+        //上午(8-12点)、下午(12-15点)、傍晚(15-18点)、晚间(18-22点)四个时段
+        int window;
+        double origin, bound;
+        if (time >= 8 * 3600 && time <= 12 * 3600) {
+            window = 1;
+            origin = 0.01;
+            bound = 0.05;
+        } else if (time > 12 * 3600 && time <= 15 * 3600) {
+            window = 2;
+            origin = 0.01;
+            bound = 0.05;
+        } else if (time > 15 * 3600 && time <= 18 * 3600) {
+            window = 3;
+            origin = 0.1;
+            bound = 0.15;
+        } else if (time > 18 * 3600 && time <= 22 * 3600) {
+            window = 4;
+            origin = 0.05;
+            bound = 0.1;
+        } else {
+            if (time >= 23 * 3600 && time <= 24 * 3600) {
+                //重置纪元，以便第二天选取不同的运行集合
+                experimentEpoch.set(NO_EPOCH);
+            }
+            return 0;
+        }
+        //每个时段只有一个线程重新分配，其他线程无需等待
+        if (advanceEpoch(experimentEpoch, window)) {
+            AssignRunnableActiveDevice();
+        }
+        if (p >= 0.95 && fleet.takeActiveQuota(slot)) {
+            return random.nextDouble(origin, bound);
+        }
+        return 0;
+    }
+
+    /**
+     * 分配可以上报活跃水信息的设备，由切换时段纪元的线程调用
+     */
+    private void AssignRunnableActiveDevice() {
+        //实验楼的所有设备，选择其中三分之一作为运行设备
+        int[] candidates = fleet.slotsIn(DeviceIndex.EXPERIMENT);
+        fleet.clearQuota(DeviceIndex.EXPERIMENT);
+        selectRandom(candidates, Math.max(1, candidates.length / 3), selectionRandom(DeviceIndex.EXPERIMENT),
+                slot -> fleet.setQuota(slot, 60, 0));
+    }
+
+    /**
+     * 某一类楼宇下一轮设备选择使用的随机流，固定种子时每一轮的选择结果可复现
+     */
+    private RandomGenerator selectionRandom(byte category) {
+        return simulationRandom.forSelection(category, selectionRounds.getAndIncrement(category));
+    }
+
+    /**
+     * 从候选槽位中等概率选出恰好 count 个(候选不足时全选)
+     */
+    private static void selectRandom(int[] candidates, int count, RandomGenerator random, IntConsumer action) {
+        int need = Math.min(count, candidates.length);
+        for (int i = 0; i < candidates.length && need > 0; i++) {
+            if (random.nextInt(candidates.length - i) < need) {
+                action.accept(candidates[i]);
+                need--;
+            }
+        }
+    }
+
+    private double getEducationFlow(int time, int slot, RandomGenerator random) {
+        // 教学区活跃时段（以小时为单位，0-23）
+        // 假设：早上 8-12 点，下午 14-20 点
+        boolean isActiveTime = (time >= 8 * 3600 && time <= 12 * 3600) || (time >= 14 * 3600 && time <= 21 * 3600);
+        // 教学区设备集合，只第一次获取；选择期间其他线程不等待，按尚未选中处理
+        if (educationEpoch.get() == NO_EPOCH && educationEpoch.compareAndSet(NO_EPOCH, SELECTING)) {
+            int[] candidates = fleet.slotsIn(DeviceIndex.EDUCATION);
+            for (int candidate : candidates) {
+                fleet.setEducationActive(candidate, false);
+            }
+            selectRandom(candidates, Math.max(1, candidates.length / 2), selectionRandom(DeviceIndex.EDUCATION),
+                    s -> fleet.setEducationActive(s, true));
+            educationEpoch.set(SELECTED);
+        }
+        // 如果这个设备属于教学楼
+        if (fleet.isEducationActive(slot)) {
+            double p = random.nextDouble(); // 0-1 随机概率
+            if (!isActiveTime) {
+                // 非活跃时间，绝大多数为 0
+                if (p <= 0.99991) {
+                    return 0.0;
+                } else {
+                    return random.nextDouble(0.1, 0.15);
+                }
+            } else {
+                // 活跃时间，偶尔有人使用水，流量低且离散
+                if (p <= 0.9995) {
+                    return 0.0; // 大多数时间没用水
+                } else {
+                    return random.nextDouble(0.05, 0.15);
+                }
+            }
+        } else {
+            // 非教学楼设备，不处理
+            return 0.0;
+        }
+    }
+
+    /**
+     * 根据每天不同时段生成水温的水温生成器
+     *
+     * @param time 时间
+     * @param mid  季节基准值
+     * @param step 昼夜温差
+     */
+    private double waterTemperateGenerate(double time, double mid, double step) {
+        double pi = Math.PI;
+
+        // 一天 = 86400 秒，14 点 = 14 * 3600 秒
+        double phi = (pi / 2) - (2 * pi * 14 * 3600 / 86400);
+
+        return keep3(
+                mid + step * Math.sin(2 * pi * time / 86400 + phi)
+        );
+    }
+}
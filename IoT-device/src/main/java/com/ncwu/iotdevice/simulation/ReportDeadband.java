@@ -0,0 +1,156 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 水表按例外上报(report-by-exception)的死区判定
+ * <p>
+ * 开启后水表仍按固定周期采样并更新 redis 中的在线状态与累计用水量，但只有流量或水压相对上一次
+ * 发送的数值越过死区、数据状态或阀门状态发生变化、或距上一次发送超过保活周期（模拟时间）时才发送到 MQ，
+ * 夜间流量长期为 0 的设备因此只剩保活消息。
+ * <p>
+ * 越过死区的消息携带此前保持的流量与水压，以及最后一次被抑制的上报中的累计用水量，消费端据此在变化时刻之前
+ * 补一个保持点，还原阶梯状的时序，抑制期间的用水量也不会并入变化之后的区间。
+ * 每台设备的上报由同一个执行批次串行处理，各列按槽位读写无需加锁，状态表随设备状态表一起重建。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Component
+@RequiredArgsConstructor
+public class ReportDeadband {
+
+    public static final String CHANGE = "change";
+    public static final String KEEPALIVE = "keepalive";
+    private static final String NORMAL = "normal";
+
+    private final ServerConfig serverConfig;
+    private final DeviceIndex deviceIndex;
+    private final MeterRegistry meterRegistry;
+
+    private volatile Table table = new Table(0);
+    private Counter changed;
+    private Counter keepalive;
+    private Counter suppressed;
+
+    @PostConstruct
+    void init() {
+        table = new Table(deviceIndex.capacity());
+        deviceIndex.addRebuildListener(() -> table = new Table(deviceIndex.capacity()));
+        changed = counter(CHANGE);
+        keepalive = counter(KEEPALIVE);
+        suppressed = counter("suppressed");
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("simulator.meter.exception.reports")
+                .description("按例外上报模式下水表上报的去向")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 判断一条已通过上报脚本的数据是否需要发送到 MQ，需要发送时记录本次数值并标注上报方式
+     *
+     * @param slot   设备槽位
+     * @param dataBo 数据载荷
+     * @param now    当前模拟时间，epoch 毫秒
+     * @return 是否发送，未开启按例外上报时总是发送
+     */
+    public boolean admit(int slot, MeterDataBo dataBo, long now) {
+        if (!serverConfig.isReportByException()) {
+            return true;
+        }
+        Table t = table;
+        if (slot >= t.capacity) {
+            return true;
+        }
+        boolean first = t.sentAt[slot] == 0;
+        boolean crossed = first
+                || exceeds(dataBo.getFlow(), t.flow[slot], serverConfig.getFlowDeadband())
+                || exceeds(dataBo.getPressure(), t.pressure[slot], serverConfig.getPressureDeadband())
+                || !Objects.equals(dataBo.getStatus(), t.status[slot])
+                || !Objects.equals(dataBo.getIsOpen(), t.open[slot]);
+        if (!crossed && now - t.sentAt[slot] < serverConfig.getKeepaliveMs()) {
+            t.held[slot] = true;
+            t.usage[slot] = value(dataBo.getTotalUsage());
+            suppressed.increment();
+            return false;
+        }
+        if (crossed) {
+            // 只有中间确实抑制过上报、且保持的是正常数据时才需要补保持点
+            if (t.held[slot] && NORMAL.equals(t.status[slot])) {
+                dataBo.setHoldFlow(t.flow[slot]);
+                dataBo.setHoldPressure(t.pressure[slot]);
+                if (!Double.isNaN(t.usage[slot])) {
+                    dataBo.setHoldUsage(t.usage[slot]);
+                }
+            }
+            dataBo.setReportMode(CHANGE);
+            changed.increment();
+        } else {
+            dataBo.setReportMode(KEEPALIVE);
+            keepalive.increment();
+        }
+        t.flow[slot] = value(dataBo.getFlow());
+        t.pressure[slot] = value(dataBo.getPressure());
+        t.status[slot] = dataBo.getStatus();
+        t.open[slot] = dataBo.getIsOpen();
+        t.usage[slot] = value(dataBo.getTotalUsage());
+        t.sentAt[slot] = now;
+        t.held[slot] = false;
+        return true;
+    }
+
+    private static boolean exceeds(Double value, double last, double deadband) {
+        double v = value(value);
+        if (Double.isNaN(v) || Double.isNaN(last)) {
+            return Double.isNaN(v) != Double.isNaN(last);
+        }
+        return Math.abs(v - last) > deadband;
+    }
+
+    private static double value(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * 每台设备最近一次发送的数值
+     */
+    private static final class Table {
+        final int capacity;
+        final double[] flow;
+        final double[] pressure;
+        //最近一次采样的累计用水量，包括被抑制的采样
+        final double[] usage;
+        final String[] status;
+        final String[] open;
+        final long[] sentAt;
+        final boolean[] held;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.flow = new double[capacity];
+            this.pressure = new double[capacity];
+            this.usage = new double[capacity];
+            this.status = new String[capacity];
+            this.open = new String[capacity];
+            this.sentAt = new long[capacity];
+            this.held = new boolean[capacity];
+            Arrays.fill(flow, Double.NaN);
+            Arrays.fill(pressure, Double.NaN);
+            Arrays.fill(usage, Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.utils.DeviceCodes;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 水质传感器的稠密下标与运行状态表
+ * <p>
+ * 每层楼一台传感器，编号 2CBBFF001 按 (校区, 楼宇, 楼层) 直接换算出连续的槽位，
+ * 取代原先的运行设备集合与逐台的调度任务表。楼宇拓扑随模拟配置快照变化时整体重建。
+ * 运行标志与 {@link DeviceIndex} 相同，以原子数组保存，在本类的锁内写入，读取无锁。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SensorIndex {
+
+    private static final int CAMPUSES = 3;
+
+    private final SimulationContextHolder contextHolder;
+    private volatile Table table = new Table(0, 0);
+
+    @PostConstruct
+    void init() {
+        ensure(contextHolder.current());
+        contextHolder.addListener(this::ensure);
+    }
+
+    /**
+     * 楼宇拓扑变化时重建状态表，原有运行状态全部丢弃
+     */
+    public synchronized void ensure(SimulationContext context) {
+        Table t = table;
+        if (t.buildings == context.buildings() && t.floors == context.floors()) {
+            return;
+        }
+        table = new Table(context.buildings(), context.floors());
+        log.info("传感器状态表已重建，容量 {}", table.capacity);
+    }
+
+    public int capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * 由设备编号换算槽位
+     *
+     * @return 槽位，编号非法或超出当前拓扑时返回 -1
+     */
+    public int slotOf(String deviceId) {
+        Table t = table;
+        if (deviceId == null || deviceId.length() != 9 || deviceId.charAt(0) != '2') {
+            return -1;
+        }
+        int campus = digit(deviceId, 1);
+        int building = digit(deviceId, 2) * 10 + digit(deviceId, 3);
+        int floor = digit(deviceId, 4) * 10 + digit(deviceId, 5);
+        if (campus < 1 || campus > CAMPUSES || building < 1 || building > t.buildings
+                || floor < 1 || floor > t.floors || !deviceId.endsWith("001")) {
+            return -1;
+        }
+        return ((campus - 1) * t.buildings + building - 1) * t.floors + floor - 1;
+    }
+
+    /**
+     * 批量换算槽位，忽略非法编号
+     */
+    public int[] slotsOf(Collection<String> deviceIds) {
+        int[] result = new int[deviceIds.size()];
+        int n = 0;
+        for (String id : deviceIds) {
+            if (n == result.length) {
+                break;
+            }
+            int slot = slotOf(id);
+            if (slot >= 0) {
+                result[n++] = slot;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    public String idOf(int slot) {
+        return table.codes[slot];
+    }
+
+    public boolean isRunning(int slot) {
+        return table.running.get(slot) != 0;
+    }
+
+    /**
+     * 标记一批设备为运行中
+     *
+     * @return 新启动的设备数量
+     */
+    public synchronized int markRunning(int[] slots) {
+        Table t = table;
+        int started = 0;
+        for (int slot : slots) {
+            if (t.running.get(slot) == 0) {
+                t.running.set(slot, 1);
+                started++;
+            }
+        }
+        t.runningCount += started;
+        return started;
+    }
+
+    public synchronized void markStopped(int[] slots) {
+        Table t = table;
+        for (int slot : slots) {
+            if (t.running.get(slot) != 0) {
+                t.running.set(slot, 0);
+                t.runningCount--;
+            }
+        }
+    }
+
+    public synchronized void stopAll() {
+        Table t = table;
+        for (int i = 0; i < t.capacity; i++) {
+            t.running.set(i, 0);
+        }
+        t.runningCount = 0;
+    }
+
+    public synchronized int runningCount() {
+        return table.runningCount;
+    }
+
+    /**
+     * 得到设备本次上报的序号，从 0 开始，状态表重建后归零
+     */
+    public long nextReportIndex(int slot) {
+        return table.reportIndex.getAndIncrement(slot);
+    }
+
+    private static int digit(String s, int i) {
+        int d = s.charAt(i) - '0';
+        return d >= 0 && d <= 9 ? d : -1000;
+    }
+
+    private static final class Table {
+        final int buildings;
+        final int floors;
+        final int capacity;
+        final String[] codes;
+        final AtomicIntegerArray running;
+        final AtomicLongArray reportIndex;
+        int runningCount;
+
+        Table(int buildings, int floors) {
+            this.buildings = buildings;
+            this.floors = floors;
+            this.capacity = Math.max(0, CAMPUSES * buildings * floors);
+            this.codes = new String[capacity];
+            this.running = new AtomicIntegerArray(capacity);
+            this.reportIndex = new AtomicLongArray(capacity);
+            int slot = 0;
+            for (int c = 1; c <= CAMPUSES && capacity > 0; c++) {
+                for (int b = 1; b <= buildings; b++) {
+                    for (int f = 1; f <= floors; f++) {
+                        codes[slot++] = DeviceCodes.sensor(c, b, f);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import java.time.LocalDateTime;
+
+/**
+ * 模拟世界的配置快照
+ * <p>
+ * 不可变对象，每次刷新都会生成一个版本号更大的新快照，上报热路径只读取本地快照，不再访问 redis。
+ * 执行批次通过 {@link #at(LocalDateTime)} 得到带有模拟时钟时刻的副本，同一批次的数据共用这一时刻。
+ *
+ * @param version             快照版本号，单调递增
+ * @param time                模拟时间，当天从 0 点开始的秒数
+ * @param season              模拟季节 1-4
+ * @param mode                管网特殊事件模式 normal/burstPipe/leaking/shows
+ * @param educationBuildings  教学楼的终止编号
+ * @param experimentBuildings 实验楼的终止编号
+ * @param meterCount          水表设备总数
+ * @param buildings           每个校区的楼宇数
+ * @param floors              每栋楼的层数
+ * @param rooms               每层的房间数
+ * @param clock               执行批次的模拟时刻，配置快照中为空
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/3
+ */
+public record SimulationContext(long version, int time, int season, String mode,
+                                int educationBuildings, int experimentBuildings, long meterCount,
+                                int buildings, int floors, int rooms, LocalDateTime clock) {
+
+    /**
+     * 尚未初始化时使用的默认快照
+     */
+    public static final SimulationContext EMPTY = new SimulationContext(0, 0, 1, "normal", 0, 0, 0, 0, 0, 0, null);
+
+    /**
+     * 得到模拟时刻为 clock 的副本，当天时间随之更新
+     */
+    public SimulationContext at(LocalDateTime clock) {
+        return new SimulationContext(version, clock.toLocalTime().toSecondOfDay(), season, mode,
+                educationBuildings, experimentBuildings, meterCount, buildings, floors, rooms, clock);
+    }
+
+    /**
+     * 数据时间戳，没有模拟时刻时取当前时间
+     */
+    public LocalDateTime timestamp() {
+        return clock == null ? LocalDateTime.now() : clock;
+    }
+
+    public boolean isNormalMode() {
+        return mode == null || "normal".equals(mode);
+    }
+}
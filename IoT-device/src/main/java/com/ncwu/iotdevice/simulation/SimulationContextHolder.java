@@ -0,0 +1,150 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.clock.VirtualClock;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 持有当前模拟配置快照
+ * <p>
+ * 修改 Season、mode 或重新 init 的一方写入 redis 后调用 {@link #publishChange()}，
+ * 所有实例通过 redis 订阅收到通知后重新加载快照。另有低频定时刷新兜底，防止通知丢失。
+ * <p>
+ * 当天时间不再读取 redis 中的 Time，而是由 {@link VirtualClock} 推算，执行批次通过 {@link #now()} 取得带模拟时刻的快照。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/3
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SimulationContextHolder implements MessageListener {
+
+    /**
+     * 配置变更通知频道
+     */
+    public static final String CHANNEL = "simulation:context";
+
+    private static final List<String> KEYS = List.of("Season", "mode",
+            "device:educationBuildings", "device:experimentBuildings", "TotalBuildings", "Floors", "Rooms");
+
+    private final StringRedisTemplate redisTemplate;
+    private final VirtualClock clock;
+    private final AtomicLong version = new AtomicLong();
+    private volatile SimulationContext current = SimulationContext.EMPTY;
+    private final List<Consumer<SimulationContext>> listeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("模拟配置快照加载失败，使用默认值: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 得到当前快照，不访问 redis
+     */
+    public SimulationContext current() {
+        return current;
+    }
+
+    /**
+     * 得到模拟时刻为当前模拟时钟的快照，供执行批次使用
+     */
+    public SimulationContext now() {
+        return current.at(clock.now());
+    }
+
+    /**
+     * 从 redis 重新加载快照，一次 MGET 加一次 SCARD，同时兜底重新加载时钟锚点
+     */
+    public synchronized SimulationContext refresh() {
+        clock.reload();
+        List<String> values = redisTemplate.opsForValue().multiGet(KEYS);
+        Long meterCount = redisTemplate.opsForSet().size("device:meter");
+        SimulationContext old = current;
+        SimulationContext next = new SimulationContext(
+                version.incrementAndGet(),
+                clock.secondOfDay(),
+                parseInt(values, 0, old.season()),
+                values == null || values.get(1) == null ? "normal" : values.get(1),
+                parseInt(values, 2, 0),
+                parseInt(values, 3, 0),
+                meterCount == null ? 0 : meterCount,
+                parseInt(values, 4, 0),
+                parseInt(values, 5, 0),
+                parseInt(values, 6, 0),
+                null);
+        current = next;
+        for (Consumer<SimulationContext> listener : listeners) {
+            try {
+                listener.accept(next);
+            } catch (Exception e) {
+                log.error("模拟配置快照监听器执行失败: {}", e.getMessage(), e);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * 注册快照刷新监听器，在刷新线程中同步执行
+     */
+    public void addListener(Consumer<SimulationContext> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 通知所有实例配置已变更
+     */
+    public void publishChange() {
+        redisTemplate.convertAndSend(CHANNEL, "refresh");
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            SimulationContext context = refresh();
+            log.info("模拟配置快照已刷新: {}", context);
+        } catch (Exception e) {
+            log.error("模拟配置快照刷新失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 兜底刷新，防止订阅消息丢失导致快照长期过期
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void periodicRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("模拟配置快照定时刷新失败: {}", e.getMessage());
+        }
+    }
+
+    private static int parseInt(List<String> values, int index, int defaultValue) {
+        if (values == null || values.get(index) == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(values.get(index));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.clock.VirtualClock;
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.service.HeartbeatCoalescer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.random.RandomGenerator;
+
+/**
+ * 统一的设备模拟引擎
+ * <p>
+ * 水表、水质传感器等所有 {@link DeviceKind} 共用一个时间轮、一个虚拟线程执行器和同一套心跳合并写入，
+ * 线程数、CPU 与 redis 往返只随总上报量增长，与设备种类和代码路径的数量无关。
+ * <p>
+ * 时间轮槽位按种类交错编号：全局槽位 = 种类内槽位 * 种类数 + 种类下标。
+ * 每个 tick 到期的心跳直接交给心跳合并写入器，上报按种类分组、按 {@link #REPORT_CHUNK} 拆分后并行生成与发送。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+@Slf4j
+@Component
+public class SimulationEngine {
+
+    /**
+     * 单个执行任务处理的最多上报数量，同一批次的 redis 状态更新在一次往返中完成，
+     * 超出后拆分为多个批次并行执行，避免单个脚本阻塞 redis 过久
+     */
+    private static final int REPORT_CHUNK = 2000;
+
+    private final ServerConfig serverConfig;
+    private final SimulationContextHolder contextHolder;
+    private final SimulationRandom simulationRandom;
+    private final HeartbeatCoalescer heartbeatCoalescer;
+    private final VirtualClock clock;
+    private final MeterRegistry meterRegistry;
+    private final DeviceKind<?>[] kinds;
+    private final Map<DeviceKind<?>, Integer> kindIndex = new IdentityHashMap<>();
+    private final Counter[] reportCounters;
+
+    private TimingWheel wheel;
+    private ExecutorService workers;
+
+    public SimulationEngine(ServerConfig serverConfig, SimulationContextHolder contextHolder,
+                            SimulationRandom simulationRandom, HeartbeatCoalescer heartbeatCoalescer,
+                            VirtualClock clock, MeterRegistry meterRegistry, List<DeviceKind<?>> kinds) {
+        this.serverConfig = serverConfig;
+        this.contextHolder = contextHolder;
+        this.simulationRandom = simulationRandom;
+        this.heartbeatCoalescer = heartbeatCoalescer;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.kinds = kinds.toArray(new DeviceKind<?>[0]);
+        this.reportCounters = new Counter[this.kinds.length];
+        for (int i = 0; i < this.kinds.length; i++) {
+            kindIndex.put(this.kinds[i], i);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        // 时间轮只负责计时与分批，每个 tick 的批次交给虚拟线程执行
+        workers = Executors.newVirtualThreadPerTaskExecutor();
+        int initialSlots = 0;
+        for (DeviceKind<?> kind : kinds) {
+            initialSlots = Math.max(initialSlots, kind.capacity());
+        }
+        wheel = new TimingWheel(serverConfig.getWheelTickMs(), serverConfig.getWheelSize(),
+                initialSlots * kinds.length, kinds.length, this::onTick, workers);
+        for (int i = 0; i < kinds.length; i++) {
+            reportCounters[i] = Counter.builder("simulator.engine.reports")
+                    .description("模拟引擎生成并发送的上报数量")
+                    .tag("kind", kinds[i].name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("simulator.wheel.reports.rate", wheel, TimingWheel::getReportsPerSecond)
+                .description("时间轮实际上报速率(条/秒)")
+                .register(meterRegistry);
+        Gauge.builder("simulator.wheel.tick.drift", wheel, TimingWheel::getTickDriftMs)
+                .description("时间轮 tick 实际触发时间与理论时间的偏差(毫秒)")
+                .register(meterRegistry);
+        Gauge.builder("simulator.wheel.armed", wheel, TimingWheel::getArmedReports)
+                .description("时间轮中处于调度状态的设备数量")
+                .register(meterRegistry);
+        wheel.start("simulation-timing-wheel");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        wheel.shutdown();
+        workers.shutdown();
+    }
+
+    /**
+     * 将一批设备的数据上报和心跳挂到时间轮上，周期取该种类当前的配置
+     *
+     * @param kind  设备种类
+     * @param slots 种类内槽位
+     */
+    public void arm(DeviceKind<?> kind, int[] slots) {
+        int k = indexOf(kind);
+        long period = kind.reportPeriodMs();
+        if (period <= 0) {
+            log.warn("{} 上报配置缺失，{} 台设备未能开始调度", kind.name(), slots.length);
+            return;
+        }
+        wheel.setPeriods(k, period, kind.reportJitterMs(), kind.heartbeatPeriodMs());
+        int[] global = toGlobal(k, slots);
+        wheel.arm(global, global.length);
+    }
+
+    /**
+     * 摘除一批设备的全部条目，O(k)
+     */
+    public void disarm(DeviceKind<?> kind, int[] slots) {
+        int[] global = toGlobal(indexOf(kind), slots);
+        wheel.disarm(global, global.length);
+    }
+
+    /**
+     * 摘除某一种类的全部条目
+     */
+    public void disarmAll(DeviceKind<?> kind) {
+        int[] slots = new int[kind.capacity()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = i;
+        }
+        disarm(kind, slots);
+    }
+
+    private int indexOf(DeviceKind<?> kind) {
+        Integer k = kindIndex.get(kind);
+        if (k == null) {
+            throw new IllegalArgumentException("未注册的设备种类: " + kind.name());
+        }
+        return k;
+    }
+
+    private int[] toGlobal(int k, int[] slots) {
+        int[] global = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            global[i] = slots[i] * kinds.length + k;
+        }
+        return global;
+    }
+
+    /**
+     * 时间轮 tick 回调
+     * <p>
+     * 心跳直接在回调线程中合并，上报按种类分组后拆分交给虚拟线程并行执行
+     *
+     * @param reportSlots    到期需要上报的全局槽位
+     * @param heartbeatSlots 到期需要心跳的全局槽位
+     */
+    private void onTick(int[] reportSlots, int[] heartbeatSlots) {
+        int n = kinds.length;
+        //心跳与上报使用同一个模拟时钟写入 OnLineMap，重复数据检测才能比较
+        long now = clock.millis();
+        for (int slot : heartbeatSlots) {
+            DeviceKind<?> kind = kinds[slot % n];
+            int local = slot / n;
+            // 检查设备是否还在运行，如果不在运行则停止心跳
+            if (!kind.isRunning(local)) {
+                continue;
+            }
+            try {
+                heartbeatCoalescer.beat(kind.idOf(local), now);
+            } catch (Exception e) {
+                log.error("心跳发送异常: {}", e.getMessage(), e);
+            }
+        }
+        if (reportSlots.length == 0) {
+            return;
+        }
+        List<int[]> grouped = groupByKind(reportSlots);
+        for (int k = 0; k < n; k++) {
+            int[] locals = grouped.get(k);
+            for (int from = 0; from < locals.length; from += REPORT_CHUNK) {
+                int kindNo = k;
+                int start = from;
+                int end = Math.min(locals.length, from + REPORT_CHUNK);
+                workers.execute(() -> reportChunk(kindNo, kinds[kindNo], locals, start, end));
+            }
+        }
+    }
+
+    private List<int[]> groupByKind(int[] reportSlots) {
+        int n = kinds.length;
+        int[] counts = new int[n];
+        for (int slot : reportSlots) {
+            counts[slot % n]++;
+        }
+        List<int[]> grouped = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            grouped.add(new int[counts[k]]);
+        }
+        Arrays.fill(counts, 0);
+        for (int slot : reportSlots) {
+            int k = slot % n;
+            grouped.get(k)[counts[k]++] = slot / n;
+        }
+        return grouped;
+    }
+
+    /**
+     * 处理一个批次中 [from, to) 范围内设备的数据上报
+     * <p>
+     * 先逐台生成数据，再整批交给该种类的发送方式
+     */
+    private <T> void reportChunk(int k, DeviceKind<T> kind, int[] locals, int from, int to) {
+        SimulationContext context = contextHolder.now();
+        TelemetryModel<T> model = kind.model();
+        List<T> batch = new ArrayList<>(to - from);
+        int[] batchSlots = new int[to - from];
+        for (int i = from; i < to; i++) {
+            int slot = locals[i];
+            // 设备已停止运行，摘除残留条目
+            if (!kind.isRunning(slot)) {
+                wheel.disarm(new int[]{slot * kinds.length + k}, 1);
+                continue;
+            }
+            try {
+                // 生成数据与施加异常事件使用同一个随机流
+                RandomGenerator random = simulationRandom.forReport(kind.idOf(slot), kind.nextReportIndex(slot));
+                batch.add(model.build(slot, context, random));
+                batchSlots[batch.size() - 1] = slot;
+            } catch (Exception e) {
+                log.error("设备 {} 数据生成失败: {}", kind.idOf(slot), e.getMessage(), e);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            kind.send(batch, Arrays.copyOf(batchSlots, batch.size()));
+            reportCounters[k].increment(batch.size());
+        } catch (Exception e) {
+            log.error("{} 台{}设备批量上报失败: {}", batch.size(), kind.name(), e.getMessage(), e);
+        }
+    }
+}
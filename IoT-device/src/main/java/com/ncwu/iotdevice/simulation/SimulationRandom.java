@@ -0,0 +1,95 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * 模拟数据的随机数来源
+ * <p>
+ * 未配置 server.simulation-seed 时直接使用 ThreadLocalRandom，与原先行为一致。
+ * 配置种子后，每一次上报都由 (种子, 设备编号, 上报序号) 经 SplitMix64 混合得到独立的随机流，
+ * 与线程调度和上报先后无关，相同种子和相同模拟时间下生成完全相同的数据序列。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/8
+ */
+@Component
+@RequiredArgsConstructor
+public class SimulationRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final ServerConfig serverConfig;
+
+    public boolean isSeeded() {
+        return serverConfig.getSimulationSeed() != null;
+    }
+
+    /**
+     * 得到某台设备第 reportIndex 次上报使用的随机流
+     */
+    public RandomGenerator forReport(String deviceId, long reportIndex) {
+        Long seed = serverConfig.getSimulationSeed();
+        if (seed == null) {
+            return ThreadLocalRandom.current();
+        }
+        return new SplitMix(mix64(mix64(seed ^ deviceKey(deviceId)) + reportIndex * GOLDEN_GAMMA));
+    }
+
+    /**
+     * 得到第 round 次设备选择使用的随机流
+     *
+     * @param salt  区分不同的选择场景
+     * @param round 该场景下的选择轮次
+     */
+    public RandomGenerator forSelection(long salt, long round) {
+        Long seed = serverConfig.getSimulationSeed();
+        if (seed == null) {
+            return ThreadLocalRandom.current();
+        }
+        return new SplitMix(mix64(mix64(seed ^ mix64(salt)) + round * GOLDEN_GAMMA));
+    }
+
+    /**
+     * 设备编号对应的稳定整数，不依赖种子
+     */
+    public static long deviceKey(String deviceId) {
+        long key = 0;
+        for (int i = 0; i < deviceId.length(); i++) {
+            key = key * 31 + deviceId.charAt(i);
+        }
+        return mix64(key);
+    }
+
+    /**
+     * SplitMix64 的混合函数
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 单次上报内使用的轻量随机数生成器，只在一个线程内使用
+     */
+    private static final class SplitMix implements RandomGenerator {
+        private long state;
+
+        SplitMix(long state) {
+            this.state = state;
+        }
+
+        @Override
+        public long nextLong() {
+            state += GOLDEN_GAMMA;
+            return mix64(state);
+        }
+    }
+}
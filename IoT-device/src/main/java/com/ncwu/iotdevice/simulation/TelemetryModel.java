@@ -0,0 +1,27 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 设备数据模型
+ * <p>
+ * 由槽位、模拟配置快照和本次上报的随机流生成一条数据，不访问 redis，
+ * 相同的输入总是得到相同的数据。
+ *
+ * @param <T> 数据载荷类型
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+@FunctionalInterface
+public interface TelemetryModel<T> {
+
+    /**
+     * @param slot    设备在所属种类中的槽位
+     * @param context 模拟配置快照
+     * @param random  本次上报使用的随机流
+     * @return 模拟数据
+     */
+    T build(int slot, SimulationContext context, RandomGenerator random);
+}
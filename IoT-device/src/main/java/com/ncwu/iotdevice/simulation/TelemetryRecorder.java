@@ -0,0 +1,170 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * 将发往 Meter-Data 的数据录制为紧凑的二进制文件，供 {@link TelemetryReplayer} 回放
+ * <p>
+ * 文件格式：魔数 + 版本号，之后每条记录依次为 时间戳(long 毫秒)、设备编号(int)、
+ * 流量、累计用水量、水压、水温(double)、阀门状态与数据状态(byte 字典编码)。
+ * 只有配置了 server.record-file 时才会录制，相对路径写在 server.record-dir 下，回放只能读取该目录中的文件。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/8
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TelemetryRecorder {
+
+    static final int MAGIC = 0x43575251;
+    static final int VERSION = 1;
+    static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+    /**
+     * 状态字段的字典，未在字典中的值以 {@link #LITERAL} 加字符串写出
+     */
+    static final List<String> DICTIONARY = List.of("normal", "error", "burstPipe", "closed", "close", "failure");
+    static final byte LITERAL = -1;
+    static final byte ABSENT = -2;
+
+    private final ServerConfig serverConfig;
+    private DataOutputStream out;
+
+    @PostConstruct
+    void init() {
+        String file = serverConfig.getRecordFile();
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        try {
+            Path path = Path.of(serverConfig.getRecordDir()).resolve(file);
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            log.info("开始录制水表上报数据: {}", path);
+        } catch (IOException e) {
+            log.error("录制文件打开失败，本次不录制: {}", e.getMessage());
+            out = null;
+        }
+    }
+
+    public boolean isRecording() {
+        return out != null;
+    }
+
+    public void record(MeterDataBo dataBo) {
+        if (out == null) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                out.writeLong(dataBo.getTimeStamp().atZone(ZONE).toInstant().toEpochMilli());
+                out.writeInt(Integer.parseInt(dataBo.getDeviceId()));
+                out.writeDouble(orZero(dataBo.getFlow()));
+                out.writeDouble(orZero(dataBo.getTotalUsage()));
+                out.writeDouble(orZero(dataBo.getPressure()));
+                out.writeDouble(orZero(dataBo.getWaterTem()));
+                writeCode(out, dataBo.getIsOpen());
+                writeCode(out, dataBo.getStatus());
+            } catch (IOException e) {
+                log.error("录制写入失败，停止录制: {}", e.getMessage());
+                closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * 从录制文件中读取下一条记录，文件结束时返回 null
+     */
+    static MeterDataBo read(DataInputStream in) throws IOException {
+        long timestamp;
+        try {
+            timestamp = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        MeterDataBo dataBo = new MeterDataBo();
+        dataBo.setDevice(1);
+        dataBo.setTimeStamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZONE));
+        dataBo.setDeviceId(String.valueOf(in.readInt()));
+        dataBo.setFlow(in.readDouble());
+        dataBo.setTotalUsage(in.readDouble());
+        dataBo.setPressure(in.readDouble());
+        dataBo.setWaterTem(in.readDouble());
+        dataBo.setIsOpen(readCode(in));
+        dataBo.setStatus(readCode(in));
+        return dataBo;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.error("录制文件刷盘失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        flush();
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    private static void writeCode(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(ABSENT);
+            return;
+        }
+        int code = DICTIONARY.indexOf(value);
+        if (code >= 0) {
+            out.writeByte(code);
+        } else {
+            out.writeByte(LITERAL);
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readCode(DataInputStream in) throws IOException {
+        byte code = in.readByte();
+        if (code == ABSENT) {
+            return null;
+        }
+        return code == LITERAL ? in.readUTF() : DICTIONARY.get(code);
+    }
+
+    private static double orZero(Double value) {
+        return value == null ? 0 : value;
+    }
+}
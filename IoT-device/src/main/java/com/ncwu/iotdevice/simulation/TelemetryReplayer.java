@@ -0,0 +1,138 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 将 {@link TelemetryRecorder} 录制的文件按任意倍速回放到 Meter-Data
+ * <p>
+ * 回放时保持记录之间的相对时间间隔并按倍速缩放，时间戳平移到回放开始时刻，
+ * 消费端看到的是一段新的实时数据。倍速小于等于 0 时不做节流，尽快发送。
+ * <p>
+ * 只回放录制目录 {@link ServerConfig#getRecordDir()} 中的文件，调用方给出的是目录内的相对文件名，
+ * 绝对路径、以 .. 或符号链接指向目录之外的文件一律拒绝，不能借回放读取服务器上的任意文件。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/8
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TelemetryReplayer {
+
+    private final BatchingProducer batchingProducer;
+    private final ServerConfig serverConfig;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong replayed = new AtomicLong();
+
+    /**
+     * 开始回放，同一时刻只允许一个回放任务
+     *
+     * @param file 录制目录中的相对文件名
+     * @return 是否成功开始
+     * @throws IOException 文件不在录制目录中或不可读
+     */
+    public boolean start(String file, double speed) throws IOException {
+        Path path = resolve(file);
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        replayed.set(0);
+        Thread.ofVirtual().name("telemetry-replay").start(() -> {
+            try {
+                replay(path, speed);
+            } catch (Exception e) {
+                log.error("回放 {} 失败: {}", file, e.getMessage(), e);
+            } finally {
+                running.set(false);
+                log.info("回放结束，共发送 {} 条数据", replayed.get());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 把文件名解析为录制目录中的文件
+     */
+    private Path resolve(String file) throws IOException {
+        Path dir = Path.of(serverConfig.getRecordDir()).toAbsolutePath().normalize();
+        Path name;
+        try {
+            name = Path.of(file);
+        } catch (InvalidPathException e) {
+            throw new IOException("录制文件名不合法: " + file);
+        }
+        Path path = dir.resolve(name).normalize();
+        if (name.isAbsolute() || !path.startsWith(dir) || path.equals(dir)) {
+            throw new IOException("只能回放录制目录中的文件: " + file);
+        }
+        if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+            throw new IOException("录制文件不可读: " + file);
+        }
+        //符号链接可能指向目录之外
+        if (!path.toRealPath().startsWith(dir.toRealPath())) {
+            throw new IOException("只能回放录制目录中的文件: " + file);
+        }
+        return path;
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    private void replay(Path path, double speed) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != TelemetryRecorder.MAGIC || in.readInt() != TelemetryRecorder.VERSION) {
+                throw new IOException("不是有效的录制文件");
+            }
+            long firstRecord = -1;
+            long startNanos = System.nanoTime();
+            long startMillis = System.currentTimeMillis();
+            MeterDataBo dataBo;
+            while (running.get() && (dataBo = TelemetryRecorder.read(in)) != null) {
+                long recorded = dataBo.getTimeStamp().atZone(TelemetryRecorder.ZONE).toInstant().toEpochMilli();
+                if (firstRecord < 0) {
+                    firstRecord = recorded;
+                }
+                long offsetMillis = speed > 0 ? (long) ((recorded - firstRecord) / speed) : 0;
+                if (speed > 0) {
+                    long wait = startNanos + TimeUnit.MILLISECONDS.toNanos(offsetMillis) - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                dataBo.setTimeStamp(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(startMillis + offsetMillis), TelemetryRecorder.ZONE));
+                batchingProducer.send("Meter-Data", dataBo);
+                replayed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ncwu.iotdevice.simulation;
+
+
+/**
+ * 时间轮每个 tick 的批处理回调
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/2
+ */
+@FunctionalInterface
+public interface TickBatchHandler {
+
+    /**
+     * @param reportSlots    本 tick 到期需要上报数据的设备槽位
+     * @param heartbeatSlots 本 tick 到期需要发送心跳的设备槽位
+     */
+    void onTick(int[] reportSlots, int[] heartbeatSlots);
+}
@@ -0,0 +1,373 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 哈希时间轮调度器
+ * <p>
+ * 统一托管整个虚拟设备群的上报与心跳截止时间，替代每台设备各自持有的 ScheduledFuture。
+ * 所有截止时间保存在基本类型数组中，每个槽位(设备下标)占用两个条目：上报与心跳。
+ * <p>
+ * 条目编号 = 槽位 * 2 + 类型，桶内使用数组实现的双向链表，因此单台设备的启停都是 O(1)，
+ * 启停 k 台设备为 O(k)。每个 tick 到期的设备被收集成一个批次，一次性交给 {@link TickBatchHandler}。
+ * <p>
+ * 多种设备共用一个时间轮时槽位按种类交错编号，种类 = 槽位 % kinds，每种设备有各自的上报与心跳周期。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/2
+ */
+@Slf4j
+public class TimingWheel {
+
+    public static final int REPORT = 0;
+    public static final int HEARTBEAT = 1;
+    private static final int NIL = -1;
+    private static final long DISARMED = -1L;
+
+    /**
+     * 每个 tick 的毫秒数
+     */
+    private final long tickMs;
+    /**
+     * 时间轮桶数减一，桶数必须为 2 的幂
+     */
+    private final int mask;
+    private final int[] bucketHead;
+    /**
+     * 以下数组以条目编号为下标
+     */
+    private int[] next;
+    private int[] prev;
+    private long[] deadline;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TickBatchHandler handler;
+    private final Executor executor;
+
+    /**
+     * 设备种类数量
+     */
+    private final int kinds;
+    /**
+     * 各种类的上报周期与随机偏移，单位毫秒，可由 nacos 动态刷新
+     */
+    private final long[] reportPeriodMs;
+    private final long[] reportJitterMs;
+    /**
+     * 各种类的心跳周期，单位毫秒
+     */
+    private final long[] heartbeatPeriodMs;
+
+    private long currentTick;
+    private volatile boolean running;
+    private Thread ticker;
+
+    //tick 收集缓冲区，仅由 ticker 线程访问
+    private int[] reportBuffer = new int[256];
+    private int[] heartbeatBuffer = new int[256];
+
+    //监控指标
+    private final LongAdder firedReports = new LongAdder();
+    private volatile double reportsPerSecond;
+    private volatile double tickDriftMs;
+    private volatile int armedReports;
+
+    public TimingWheel(long tickMs, int wheelSize, int initialSlots,
+                       TickBatchHandler handler, Executor executor) {
+        this(tickMs, wheelSize, initialSlots, 1, handler, executor);
+    }
+
+    public TimingWheel(long tickMs, int wheelSize, int initialSlots, int kinds,
+                       TickBatchHandler handler, Executor executor) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs 必须大于 0");
+        }
+        if (kinds <= 0) {
+            throw new IllegalArgumentException("kinds 必须大于 0");
+        }
+        int size = Integer.highestOneBit(Math.max(16, wheelSize - 1) << 1);
+        this.tickMs = tickMs;
+        this.kinds = kinds;
+        this.reportPeriodMs = new long[kinds];
+        this.reportJitterMs = new long[kinds];
+        this.heartbeatPeriodMs = new long[kinds];
+        this.mask = size - 1;
+        this.bucketHead = new int[size];
+        Arrays.fill(bucketHead, NIL);
+        this.handler = handler;
+        this.executor = executor;
+        allocate(Math.max(16, initialSlots));
+    }
+
+    /**
+     * 设置全部种类的上报周期与心跳周期
+     */
+    public void setPeriods(long reportPeriodMs, long reportJitterMs, long heartbeatPeriodMs) {
+        for (int kind = 0; kind < kinds; kind++) {
+            setPeriods(kind, reportPeriodMs, reportJitterMs, heartbeatPeriodMs);
+        }
+    }
+
+    /**
+     * 设置某一种类的上报周期与心跳周期，在时间轮的锁内写入，ticker 线程读取时可见
+     */
+    public void setPeriods(int kind, long reportPeriodMs, long reportJitterMs, long heartbeatPeriodMs) {
+        lock.lock();
+        try {
+            this.reportPeriodMs[kind] = Math.max(tickMs, reportPeriodMs);
+            this.reportJitterMs[kind] = Math.max(0, reportJitterMs);
+            this.heartbeatPeriodMs[kind] = Math.max(tickMs, heartbeatPeriodMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 启动 ticker 线程
+     */
+    public synchronized void start(String name) {
+        if (running) {
+            return;
+        }
+        running = true;
+        ticker = Thread.ofPlatform().name(name).daemon(true).start(this::runLoop);
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+        }
+    }
+
+    /**
+     * 为一批设备同时挂上上报与心跳条目
+     * <p>
+     * 首次上报延迟为一个完整的上报周期加随机偏移，心跳立即开始，与原先的调度行为一致。
+     *
+     * @param slots 设备槽位
+     * @param count 有效数量
+     */
+    public void arm(int[] slots, int count) {
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = slots[i];
+                ensureCapacity(slot + 1);
+                int report = slot << 1;
+                if (deadline[report] == DISARMED) {
+                    armedReports++;
+                }
+                link(report, currentTick + reportDelayTicks(slot % kinds));
+                link(report | HEARTBEAT, currentTick + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 摘除一批设备的全部条目，O(k)
+     */
+    public void disarm(int[] slots, int count) {
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                int slot = slots[i];
+                if ((slot << 1) >= deadline.length) {
+                    continue;
+                }
+                if (deadline[slot << 1] != DISARMED) {
+                    armedReports--;
+                }
+                unlink(slot << 1);
+                unlink((slot << 1) | HEARTBEAT);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 摘除所有条目
+     */
+    public void disarmAll() {
+        lock.lock();
+        try {
+            Arrays.fill(bucketHead, NIL);
+            Arrays.fill(next, NIL);
+            Arrays.fill(prev, NIL);
+            Arrays.fill(deadline, DISARMED);
+            armedReports = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isArmed(int slot) {
+        lock.lock();
+        try {
+            return (slot << 1) < deadline.length && deadline[slot << 1] != DISARMED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getReportsPerSecond() {
+        return reportsPerSecond;
+    }
+
+    public double getTickDriftMs() {
+        return tickDriftMs;
+    }
+
+    public int getArmedReports() {
+        return armedReports;
+    }
+
+    private void runLoop() {
+        long tickNanos = tickMs * 1_000_000L;
+        long origin = System.nanoTime();
+        long ticks = 0;
+        long windowStart = origin;
+        long windowReports = 0;
+        while (running) {
+            long expected = origin + (ticks + 1) * tickNanos;
+            long wait = expected - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            ticks++;
+            long now = System.nanoTime();
+            tickDriftMs = (now - expected) / 1_000_000.0;
+            try {
+                advance();
+            } catch (Exception e) {
+                log.error("时间轮推进异常: {}", e.getMessage(), e);
+            }
+            //每秒统计一次实际上报速率
+            if (now - windowStart >= 1_000_000_000L) {
+                long fired = firedReports.sum();
+                reportsPerSecond = (fired - windowReports) * 1e9 / (now - windowStart);
+                windowReports = fired;
+                windowStart = now;
+            }
+        }
+    }
+
+    /**
+     * 推进一个 tick，收集当前桶内到期的条目并重新挂载下一次截止时间
+     * <p>
+     * 正常只由 ticker 线程调用，测试不启动 ticker 时可直接逐个 tick 推进
+     */
+    void advance() {
+        int reportCount = 0;
+        int heartbeatCount = 0;
+        lock.lock();
+        try {
+            long tick = ++currentTick;
+            int e = bucketHead[(int) (tick & mask)];
+            while (e != NIL) {
+                int nxt = next[e];
+                if (deadline[e] <= tick) {
+                    int slot = e >>> 1;
+                    if ((e & HEARTBEAT) == REPORT) {
+                        if (reportCount == reportBuffer.length) {
+                            reportBuffer = Arrays.copyOf(reportBuffer, reportCount << 1);
+                        }
+                        reportBuffer[reportCount++] = slot;
+                        link(e, tick + reportDelayTicks(slot % kinds));
+                    } else {
+                        if (heartbeatCount == heartbeatBuffer.length) {
+                            heartbeatBuffer = Arrays.copyOf(heartbeatBuffer, heartbeatCount << 1);
+                        }
+                        heartbeatBuffer[heartbeatCount++] = slot;
+                        link(e, tick + toTicks(heartbeatPeriodMs[slot % kinds]));
+                    }
+                }
+                e = nxt;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (reportCount == 0 && heartbeatCount == 0) {
+            return;
+        }
+        firedReports.add(reportCount);
+        int[] reports = Arrays.copyOf(reportBuffer, reportCount);
+        int[] heartbeats = Arrays.copyOf(heartbeatBuffer, heartbeatCount);
+        executor.execute(() -> handler.onTick(reports, heartbeats));
+    }
+
+    private long reportDelayTicks(int kind) {
+        long jitter = reportJitterMs[kind];
+        long delay = reportPeriodMs[kind] + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        return toTicks(delay);
+    }
+
+    private long toTicks(long ms) {
+        return Math.max(1, (ms + tickMs - 1) / tickMs);
+    }
+
+    /**
+     * 将条目挂到目标截止 tick 对应的桶头部，已挂载的条目先摘除
+     */
+    private void link(int e, long deadlineTick) {
+        unlink(e);
+        int b = (int) (deadlineTick & mask);
+        int head = bucketHead[b];
+        next[e] = head;
+        prev[e] = NIL;
+        if (head != NIL) {
+            prev[head] = e;
+        }
+        bucketHead[b] = e;
+        deadline[e] = deadlineTick;
+    }
+
+    private void unlink(int e) {
+        if (e >= deadline.length || deadline[e] == DISARMED) {
+            return;
+        }
+        int p = prev[e];
+        int n = next[e];
+        if (p != NIL) {
+            next[p] = n;
+        } else {
+            bucketHead[(int) (deadline[e] & mask)] = n;
+        }
+        if (n != NIL) {
+            prev[n] = p;
+        }
+        next[e] = NIL;
+        prev[e] = NIL;
+        deadline[e] = DISARMED;
+    }
+
+    private void ensureCapacity(int slots) {
+        if ((slots << 1) > deadline.length) {
+            allocate(Math.max(slots, deadline.length));
+        }
+    }
+
+    private void allocate(int slots) {
+        int entries = slots << 1;
+        int old = deadline == null ? 0 : deadline.length;
+        next = next == null ? new int[entries] : Arrays.copyOf(next, entries);
+        prev = prev == null ? new int[entries] : Arrays.copyOf(prev, entries);
+        deadline = deadline == null ? new long[entries] : Arrays.copyOf(deadline, entries);
+        Arrays.fill(next, old, entries, NIL);
+        Arrays.fill(prev, old, entries, NIL);
+        Arrays.fill(deadline, old, entries, DISARMED);
+    }
+}
@@ -0,0 +1,414 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 水表累计用水量的本地账本
+ * <p>
+ * 上报不再逐条 HINCRBYFLOAT meter:total_usage，累计用水量以毫升为单位保存在按槽位索引的 long 数组中，
+ * 每次上报按 瞬时流量 * 与上一次上报的时间差 在本地累加，舍入误差留在本槽位参与下一次累加，不会随时间漂移。
+ * 增量按 {@link ServerConfig#getUsageFlushMs()} 周期取出，分块经 usageFlush.lua 在一次 pipeline 中写回。
+ * <p>
+ * 每台设备在 redis 中有一个检查点 {@link #CHECKPOINT_KEY}，记录已写回的增量终点(设备数据时间)。
+ * 每段增量带着起点与终点写回，检查点已越过起点的增量被拒绝，因此失败后的重试、节点重启、分区迁移后
+ * 新旧节点交错写回都不会重复计入。设备首次上报或增量被拒绝后，随上报脚本读取一次毫升累计值与检查点，
+ * redis 比本地更新时以 redis 为准。写回失败的批次保留下来，在下一个周期先于新的增量按顺序重试。
+ * <p>
+ * 状态表按槽位分为 {@link #STRIPES} 段，每段一把锁，各上报线程只在本设备所在的段上竞争。
+ * 状态表整体替换(设备重建、销毁)时先发布新表，再逐段将旧表标记作废并取出增量，作废后才拿到锁的上报改用新表。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Slf4j
+@Component
+public class UsageLedger {
+
+    /**
+     * 累计用水量，保留三位小数的字符串，其他服务按原格式读取
+     */
+    public static final String TOTAL_KEY = "meter:total_usage";
+    /**
+     * 累计用水量，毫升整数
+     */
+    public static final String MILLILITRE_KEY = "meter:total_usage_ml";
+    /**
+     * 累计用水量检查点，已写回的增量终点
+     */
+    public static final String CHECKPOINT_KEY = "meter:usage_at";
+    private static final byte[][] FLUSH_KEYS = {
+            MILLILITRE_KEY.getBytes(StandardCharsets.UTF_8),
+            CHECKPOINT_KEY.getBytes(StandardCharsets.UTF_8),
+            TOTAL_KEY.getBytes(StandardCharsets.UTF_8)};
+    /**
+     * 状态表的分段数，必须为 2 的幂
+     */
+    private static final int STRIPES = 64;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ServerConfig serverConfig;
+    private final DeviceIndex deviceIndex;
+    private final MeterRegistry meterRegistry;
+    private final byte[] flushScript;
+
+    private volatile Table table = new Table(0);
+    /**
+     * 已取出但尚未确认写回的批次，只由刷新线程与关闭流程在 flushLock 下访问
+     */
+    private final Deque<List<Delta>> unsent = new ArrayDeque<>();
+    private final Object flushLock = new Object();
+    private volatile int unsentDevices;
+    private volatile boolean running;
+    private Thread flusher;
+    private Timer flushTimer;
+    private Counter rejected;
+
+    public UsageLedger(StringRedisTemplate redisTemplate, ServerConfig serverConfig,
+                       DeviceIndex deviceIndex, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.serverConfig = serverConfig;
+        this.deviceIndex = deviceIndex;
+        this.meterRegistry = meterRegistry;
+        DefaultRedisScript<Object> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("usageFlush.lua"));
+        this.flushScript = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostConstruct
+    void start() {
+        table = new Table(deviceIndex.capacity());
+        deviceIndex.addRebuildListener(this::rebuild);
+        flushTimer = Timer.builder("simulator.meter.usage.flush.latency")
+                .description("一次 pipeline 写回累计用水量增量的耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("simulator.meter.usage.pending", this, UsageLedger::pending)
+                .description("等待写回累计用水量的设备数")
+                .register(meterRegistry);
+        rejected = Counter.builder("simulator.meter.usage.rejected")
+                .description("因检查点已越过增量起点而被拒绝的写回")
+                .register(meterRegistry);
+        running = true;
+        flusher = Thread.ofPlatform().name("usage-flusher").daemon(true).start(this::flushLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("关闭时累计用水量写回失败，重启后从检查点继续累计: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 设备是否需要随本次上报读取 redis 中的累计值与检查点
+     */
+    public boolean needsBase(int slot) {
+        Table t = table;
+        return slot >= 0 && slot < t.capacity && !t.loaded[slot];
+    }
+
+    /**
+     * 记录一次上报脚本的结果并累加用水量
+     *
+     * @param slot       设备槽位
+     * @param deviceId   设备编号
+     * @param status     上报脚本的状态码，0 正常上报 1 设备刚启动 2 重复数据
+     * @param deviceTime 数据时间戳
+     * @param flow       瞬时流量
+     * @param base       redis 中的累计毫升数，未读取时为空串
+     * @param baseAt     redis 中的检查点，未读取或不存在时为空串
+     * @return 累计毫升数，设备不在状态表中时返回 -1
+     */
+    public long record(int slot, String deviceId, long status, long deviceTime, Double flow,
+                       String base, String baseAt) {
+        while (true) {
+            Table t = table;
+            if (slot < 0 || slot >= t.capacity) {
+                return -1;
+            }
+            Stripe stripe = t.stripeOf(slot);
+            synchronized (stripe) {
+                //状态表已被替换，改用新表
+                if (stripe.retired) {
+                    continue;
+                }
+                return record(t, stripe, slot, deviceId, status, deviceTime, flow, base, baseAt);
+            }
+        }
+    }
+
+    /**
+     * 在持有槽位所在段的锁时调用
+     */
+    private static long record(Table t, Stripe stripe, int slot, String deviceId, long status, long deviceTime,
+                               Double flow, String base, String baseAt) {
+        t.ids[slot] = deviceId;
+        if (base != null && !base.isEmpty()) {
+            load(t, slot, Long.parseLong(base), baseAt == null || baseAt.isEmpty() ? 0 : Long.parseLong(baseAt),
+                    deviceTime);
+        }
+        if (status == 2 || deviceTime <= t.anchor[slot]) {
+            return t.total[slot];
+        }
+        if (status == 0 && t.anchor[slot] != 0 && flow != null) {
+            double exact = flow * (deviceTime - t.anchor[slot]) + t.carry[slot];
+            long ml = Math.round(exact);
+            t.carry[slot] = exact - ml;
+            t.total[slot] += ml;
+            t.pendingMl[slot] += ml;
+        }
+        if (t.anchor[slot] == 0) {
+            t.pendingFrom[slot] = deviceTime;
+        }
+        //流量为 0 时同样推进检查点，重启后不会把停用时段按新的流量重新累计
+        t.anchor[slot] = deviceTime;
+        stripe.markDirty(t, slot);
+        return t.total[slot];
+    }
+
+    /**
+     * 采用 redis 中的累计值，本地的起点更新且未被拒绝过时保留本地状态
+     */
+    private static void load(Table t, int slot, long base, long baseAt, long deviceTime) {
+        t.loaded[slot] = true;
+        if (!t.stale[slot] && t.anchor[slot] != 0 && baseAt <= t.anchor[slot]) {
+            return;
+        }
+        t.stale[slot] = false;
+        t.total[slot] = base;
+        t.anchor[slot] = baseAt > 0 ? baseAt : deviceTime;
+        t.pendingFrom[slot] = t.anchor[slot];
+        t.pendingMl[slot] = 0;
+        t.carry[slot] = 0;
+    }
+
+    /**
+     * 丢弃本地全部累计值与未写回的增量，设备销毁重置时调用
+     */
+    public void clear() {
+        synchronized (flushLock) {
+            Table old = table;
+            table = new Table(deviceIndex.capacity());
+            drain(old, true);
+            unsent.clear();
+            unsentDevices = 0;
+        }
+    }
+
+    /**
+     * 状态表重建前先取出旧表中的增量，槽位随拓扑变化，旧表按设备编号写回
+     */
+    private void rebuild() {
+        synchronized (flushLock) {
+            Table old = table;
+            table = new Table(deviceIndex.capacity());
+            enqueue(drain(old, true));
+        }
+    }
+
+    /**
+     * 逐段取出增量，每次只持有一段的锁
+     *
+     * @param retire 是否同时将各段标记作废，状态表被替换时使用
+     */
+    private static List<Delta> drain(Table t, boolean retire) {
+        List<Delta> drained = new ArrayList<>();
+        for (Stripe stripe : t.stripes) {
+            synchronized (stripe) {
+                if (retire) {
+                    stripe.retired = true;
+                }
+                for (int i = 0; i < stripe.dirtyCount; i++) {
+                    int slot = stripe.dirty[i];
+                    t.queued[slot] = false;
+                    if (t.anchor[slot] > t.pendingFrom[slot]) {
+                        drained.add(new Delta(t.ids[slot], t.pendingFrom[slot], t.anchor[slot], t.pendingMl[slot]));
+                    }
+                    t.pendingFrom[slot] = t.anchor[slot];
+                    t.pendingMl[slot] = 0;
+                }
+                stripe.dirtyCount = 0;
+            }
+        }
+        return drained;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, serverConfig.getUsageFlushMs())));
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("累计用水量写回失败，下个周期重试: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 取出本周期的增量排在未确认批次之后，按顺序写回，失败的批次留在队首
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            enqueue(drain(table, false));
+            while (!unsent.isEmpty()) {
+                write(unsent.peekFirst());
+                unsentDevices -= unsent.pollFirst().size();
+            }
+        }
+    }
+
+    private void enqueue(List<Delta> drained) {
+        if (!drained.isEmpty()) {
+            unsent.addLast(drained);
+            unsentDevices += drained.size();
+        }
+    }
+
+    private void write(List<Delta> batch) {
+        int chunkSize = Math.max(1, serverConfig.getUsageFlushChunkSize());
+        long begin = System.nanoTime();
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int from = 0; from < batch.size(); from += chunkSize) {
+                int to = Math.min(batch.size(), from + chunkSize);
+                byte[][] keysAndArgs = new byte[FLUSH_KEYS.length + (to - from) * 4][];
+                System.arraycopy(FLUSH_KEYS, 0, keysAndArgs, 0, FLUSH_KEYS.length);
+                int n = FLUSH_KEYS.length;
+                for (int i = from; i < to; i++) {
+                    Delta d = batch.get(i);
+                    keysAndArgs[n++] = d.deviceId.getBytes(StandardCharsets.UTF_8);
+                    keysAndArgs[n++] = bytes(d.from);
+                    keysAndArgs[n++] = bytes(d.to);
+                    keysAndArgs[n++] = bytes(d.ml);
+                }
+                connection.scriptingCommands().eval(flushScript, ReturnType.MULTI, FLUSH_KEYS.length, keysAndArgs);
+            }
+            return null;
+        });
+        flushTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        for (Object reply : replies) {
+            if (reply instanceof List<?> ids) {
+                ids.forEach(id -> reject(id.toString()));
+            }
+        }
+    }
+
+    /**
+     * 增量被拒绝说明 redis 中已有更新的累计值，下一次上报时重新读取并以 redis 为准
+     */
+    private void reject(String deviceId) {
+        rejected.increment();
+        int slot = deviceIndex.slotOf(deviceId);
+        Table t = table;
+        if (slot >= 0 && slot < t.capacity) {
+            synchronized (t.stripeOf(slot)) {
+                t.stale[slot] = true;
+                t.loaded[slot] = false;
+            }
+        }
+    }
+
+    private int pending() {
+        int dirty = 0;
+        for (Stripe stripe : table.stripes) {
+            dirty += stripe.dirtyCount;
+        }
+        return dirty + unsentDevices;
+    }
+
+    private static byte[] bytes(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一台设备在 (from, to] 时段内的用水量增量
+     */
+    private record Delta(String deviceId, long from, long to, long ml) {
+    }
+
+    /**
+     * 每台设备的累计值、积分起点与待写回的增量，槽位的状态由其所在段的锁保护
+     */
+    private static final class Table {
+        final int capacity;
+        final String[] ids;
+        final long[] total;
+        final long[] anchor;
+        final double[] carry;
+        final long[] pendingFrom;
+        final long[] pendingMl;
+        final boolean[] loaded;
+        final boolean[] stale;
+        final boolean[] queued;
+        final Stripe[] stripes = new Stripe[STRIPES];
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.ids = new String[capacity];
+            this.total = new long[capacity];
+            this.anchor = new long[capacity];
+            this.carry = new double[capacity];
+            this.pendingFrom = new long[capacity];
+            this.pendingMl = new long[capacity];
+            this.loaded = new boolean[capacity];
+            this.stale = new boolean[capacity];
+            this.queued = new boolean[capacity];
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(capacity / STRIPES + 1);
+            }
+        }
+
+        Stripe stripeOf(int slot) {
+            return stripes[slot & (STRIPES - 1)];
+        }
+    }
+
+    /**
+     * 状态表的一段，自身即为该段的锁，记录段内有待写回增量的槽位
+     */
+    private static final class Stripe {
+        final int[] dirty;
+        volatile int dirtyCount;
+        /**
+         * 所属状态表已被替换
+         */
+        boolean retired;
+
+        Stripe(int size) {
+            this.dirty = new int[size];
+        }
+
+        void markDirty(Table t, int slot) {
+            if (!t.queued[slot]) {
+                t.queued[slot] = true;
+                dirty[dirtyCount++] = slot;
+            }
+        }
+    }
+}
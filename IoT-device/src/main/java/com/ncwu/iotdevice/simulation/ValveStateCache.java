@@ -0,0 +1,378 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.common.valve.ValveAckBatcher;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.common.valve.ValveRules;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.service.HashBulkUpdater;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阀门状态的本地副本与阀门指令通道
+ * <p>
+ * 开关阀门不再维护关闭设备的集合，而是经 valveCommand.lua 按校区分批下发带版本号的 {@link ValveCommand}：
+ * 整校区开关只写一条校区规则，单台开关写设备规则，随后广播给所有节点。各节点收到指令后按版本号写入
+ * {@link DeviceIndex}，本节点正在模拟的设备计入确认数，由 {@link ValveAckBatcher} 合并写回指令记录。
+ * 上报热路径只查询数组，不再访问 redis。
+ * <p>
+ * 关阀指令的下发时间记在设备槽位上，设备第一条零流量上报发出时记录从下发到生效的延迟。
+ * <p>
+ * 整校区指令取代本校区版本更小的设备规则：本地副本收到指令时立即删除，redis 中的由下发节点在脚本之外
+ * 经 {@link HashBulkUpdater} 逐块扫描、按块删除，不在一次脚本中遍历整张设备规则表。删除完成前读取到的旧规则
+ * 版本号较小，不影响生效状态。清除模拟数据时两张规则表一起删除，各节点在状态表重建或定时刷新时按 redis
+ * 重新对齐本地副本。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Slf4j
+@Component
+public class ValveStateCache implements MessageListener {
+
+    /**
+     * 阀门指令广播频道
+     */
+    public static final String CHANNEL = ValveCommand.CHANNEL;
+    private static final int CAMPUSES = ValveRules.CAMPUSES;
+    private static final List<String> RULE_KEYS = List.of(ValveCommand.CAMPUS_KEY, ValveCommand.DEVICE_KEY);
+
+    private final StringRedisTemplate redisTemplate;
+    private final DeviceIndex deviceIndex;
+    private final ValveAckBatcher ackBatcher;
+    private final ObjectProvider<ShardCoordinator> shardCoordinator;
+    private final MeterRegistry meterRegistry;
+    private final HashBulkUpdater hashBulkUpdater;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> commandScript = new DefaultRedisScript<>();
+    private final DefaultRedisScript<Long> pruneScript = new DefaultRedisScript<>();
+
+    /**
+     * 规则的本地副本，状态表重建后据此重新写入，无需访问 redis
+     */
+    private final ValveRules rules = new ValveRules();
+    private Timer latency;
+
+    public ValveStateCache(StringRedisTemplate redisTemplate, DeviceIndex deviceIndex, ValveAckBatcher ackBatcher,
+                           ObjectProvider<ShardCoordinator> shardCoordinator, MeterRegistry meterRegistry,
+                           HashBulkUpdater hashBulkUpdater) {
+        this.redisTemplate = redisTemplate;
+        this.deviceIndex = deviceIndex;
+        this.ackBatcher = ackBatcher;
+        this.shardCoordinator = shardCoordinator;
+        this.meterRegistry = meterRegistry;
+        this.hashBulkUpdater = hashBulkUpdater;
+        commandScript.setLocation(new ClassPathResource("valveCommand.lua"));
+        commandScript.setResultType(List.class);
+        pruneScript.setLocation(new ClassPathResource("pruneValveRules.lua"));
+        pruneScript.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    void init() {
+        latency = Timer.builder("valve.command.latency")
+                .description("关阀指令从下发到设备第一条零流量上报的耗时")
+                .tag("source", "simulator")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        deviceIndex.addRebuildListener(this::reload);
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("阀门状态加载失败，默认全部打开: {}", e.getMessage());
+        }
+    }
+
+    public boolean isClosed(String deviceId) {
+        int slot = deviceIndex.slotOf(deviceId);
+        if (slot >= 0) {
+            return deviceIndex.isValveClosed(slot);
+        }
+        long[] rule = rules.effective(deviceId);
+        return rule != null && rule[1] == 1;
+    }
+
+    /**
+     * 关闭一批水表的阀门
+     *
+     * @return 各校区批次的指令版本
+     */
+    public List<Long> close(Collection<String> ids) {
+        return issue(ValveCommand.CLOSE, byCampus(ids));
+    }
+
+    public List<Long> open(Collection<String> ids) {
+        return issue(ValveCommand.OPEN, byCampus(ids));
+    }
+
+    /**
+     * 关闭校区内全部水表的阀门
+     *
+     * @param campus 校区编号，为空时针对全部校区
+     */
+    public List<Long> closeAll(Integer campus) {
+        return issue(ValveCommand.CLOSE_ALL, campuses(campus));
+    }
+
+    public List<Long> openAll(Integer campus) {
+        return issue(ValveCommand.OPEN_ALL, campuses(campus));
+    }
+
+    /**
+     * 查询指令记录：下发时间、校区、动作、目标数量与各来源的确认数
+     */
+    public Map<Object, Object> status(long version) {
+        return redisTemplate.opsForHash().entries(ValveCommand.ackKey(version));
+    }
+
+    private List<Long> issue(String action, Map<Integer, String> batches) {
+        if (batches.isEmpty()) {
+            return List.of();
+        }
+        //先分配版本号，脚本要写入的指令记录才能在 KEYS 中声明
+        Long last = redisTemplate.opsForValue().increment(ValveCommand.VERSION_KEY, batches.size());
+        if (last == null) {
+            return List.of();
+        }
+        long version = last - batches.size() + 1;
+        List<String> keys = new ArrayList<>(2 + batches.size());
+        keys.add(ValveCommand.CAMPUS_KEY);
+        keys.add(ValveCommand.DEVICE_KEY);
+        List<String> args = new ArrayList<>(4 + batches.size() * 3);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(CHANNEL);
+        args.add(String.valueOf(ValveCommand.RECORD_TTL_SECONDS));
+        args.add(action);
+        for (Map.Entry<Integer, String> batch : batches.entrySet()) {
+            keys.add(ValveCommand.ackKey(version));
+            args.add(String.valueOf(version++));
+            args.add(String.valueOf(batch.getKey()));
+            args.add(batch.getValue());
+        }
+        List<?> reply = redisTemplate.execute(commandScript, keys, args.toArray());
+        List<Long> versions = new ArrayList<>(batches.size());
+        if (reply != null) {
+            for (Object v : reply) {
+                versions.add(((Number) v).longValue());
+            }
+        }
+        log.info("阀门指令 {} 已下发，版本 {}", action, versions);
+        if (ValveCommand.CLOSE_ALL.equals(action) || ValveCommand.OPEN_ALL.equals(action)) {
+            pruneDeviceRules(List.copyOf(batches.keySet()), versions);
+        }
+        return versions;
+    }
+
+    /**
+     * 在后台分块删除 redis 中已被整校区指令取代的设备规则
+     * <p>
+     * 块大小与间隔随 redis 延迟自适应，每块经 pruneValveRules.lua 按当前校区规则重新比较后删除，
+     * 扫描之后被更新指令改写的设备规则不会被误删。失败时保留旧规则，下一次整校区指令再清理。
+     *
+     * @param campuses 校区编号，与 versions 一一对应
+     * @param versions 各校区指令的版本号
+     */
+    private void pruneDeviceRules(List<Integer> campuses, List<Long> versions) {
+        Thread.ofVirtual().name("valve-rule-prune").start(() -> {
+            for (int i = 0; i < campuses.size() && i < versions.size(); i++) {
+                String campus = String.valueOf(campuses.get(i));
+                long version = versions.get(i);
+                try {
+                    long pruned = hashBulkUpdater.forEachChunk(ValveCommand.DEVICE_KEY, "?" + campus + "*",
+                            rule -> ValveCommand.parseRule(rule)[0] < version,
+                            ids -> {
+                                List<String> args = new ArrayList<>(ids.size() + 1);
+                                args.add(campus);
+                                args.addAll(ids);
+                                redisTemplate.execute(pruneScript, RULE_KEYS, args.toArray());
+                            });
+                    log.debug("校区 {} 清理被取代的设备规则 {} 条", campus, pruned);
+                } catch (Exception e) {
+                    log.warn("校区 {} 被取代的设备规则清理失败，下次整校区指令时重试: {}", campus, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private static Map<Integer, String> byCampus(Collection<String> ids) {
+        Map<Integer, StringJoiner> grouped = new TreeMap<>();
+        for (String id : ids) {
+            int campus = ValveRules.campusOf(id);
+            if (campus >= 1 && campus <= CAMPUSES) {
+                grouped.computeIfAbsent(campus, c -> new StringJoiner(",")).add(id);
+            }
+        }
+        Map<Integer, String> batches = new TreeMap<>();
+        grouped.forEach((campus, joiner) -> batches.put(campus, joiner.toString()));
+        return batches;
+    }
+
+    private static Map<Integer, String> campuses(Integer campus) {
+        Map<Integer, String> batches = new TreeMap<>();
+        for (int c = 1; c <= CAMPUSES; c++) {
+            if (campus == null || campus == c) {
+                batches.put(c, "");
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * 收到指令广播，写入本地状态并确认本节点正在模拟的设备
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ValveCommand command;
+        try {
+            command = ValveCommand.decode(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            log.warn("无法解析的阀门指令: {}", e.getMessage());
+            return;
+        }
+        int applied = apply(command);
+        if (applied > 0) {
+            ackBatcher.ack(command.version(), source(), applied);
+        }
+    }
+
+    /**
+     * 按版本号写入一条指令
+     *
+     * @return 状态发生变化且在本节点运行中的设备数量
+     */
+    private synchronized int apply(ValveCommand command) {
+        long[] rule = {command.version(), command.closes() ? 1 : 0};
+        int applied = 0;
+        if (command.campusWide()) {
+            int campus = command.campus();
+            if (campus < 1 || campus > CAMPUSES) {
+                return 0;
+            }
+            rules.apply(command);
+            int[] range = deviceIndex.campusRange(campus);
+            for (int slot = range[0]; slot < range[1]; slot++) {
+                applied += applySlot(slot, rule, command.issuedAt());
+            }
+            return applied;
+        }
+        rules.apply(command);
+        for (String id : command.ids()) {
+            int slot = deviceIndex.slotOf(id);
+            if (slot >= 0) {
+                applied += applySlot(slot, rule, command.issuedAt());
+            }
+        }
+        return applied;
+    }
+
+    private int applySlot(int slot, long[] rule, long issuedAt) {
+        boolean closed = rule[1] == 1;
+        //所有节点都保存全部设备的阀门状态，分区迁移后接管的设备无需重新加载
+        if (!deviceIndex.applyValve(slot, closed, rule[0]) || !deviceIndex.isRunning(slot)) {
+            return 0;
+        }
+        deviceIndex.setValvePending(slot, closed ? issuedAt : 0);
+        return 1;
+    }
+
+    /**
+     * 水表数据发出后调用，关阀后第一条零流量上报记录指令生效延迟
+     */
+    public void onReported(int slot, MeterDataBo dataBo, long now) {
+        long issuedAt = deviceIndex.valvePending(slot);
+        if (issuedAt > 0 && dataBo.getFlow() != null && dataBo.getFlow() == 0) {
+            deviceIndex.setValvePending(slot, 0);
+            latency.record(Math.max(0, now - issuedAt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 从 redis 重新加载全部规则，并以此替换本地副本
+     * <p>
+     * 读取期间持有锁，广播的指令暂不写入状态表，见 {@link ValveRules#load}。规则没有变化时不改动状态表。
+     *
+     * @return 本地规则是否发生变化
+     */
+    public synchronized boolean refresh() {
+        if (!rules.load(redisTemplate)) {
+            return false;
+        }
+        applyToIndex();
+        return true;
+    }
+
+    /**
+     * 状态表重建后从 redis 重新加载，redis 不可用时按本地规则写入
+     */
+    private void reload() {
+        try {
+            if (refresh()) {
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("阀门状态加载失败，沿用本地规则: {}", e.getMessage());
+        }
+        applyToIndex();
+    }
+
+    /**
+     * 状态表重建后按本地规则重新写入
+     */
+    private synchronized void applyToIndex() {
+        deviceIndex.clearValves();
+        for (int c = 1; c <= CAMPUSES; c++) {
+            long[] rule = rules.campusRule(c);
+            if (rule != null) {
+                int[] range = deviceIndex.campusRange(c);
+                for (int slot = range[0]; slot < range[1]; slot++) {
+                    deviceIndex.applyValve(slot, rule[1] == 1, rule[0]);
+                }
+            }
+        }
+        rules.forEachDevice((id, rule) -> {
+            int slot = deviceIndex.slotOf(id);
+            if (slot >= 0) {
+                deviceIndex.applyValve(slot, rule[1] == 1, rule[0]);
+            }
+        });
+    }
+
+    private String source() {
+        String node = shardCoordinator.getObject().nodeId();
+        return node == null ? "simulator" : node;
+    }
+
+    /**
+     * 兜底刷新，防止订阅消息丢失
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void periodicRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("阀门状态定时刷新失败: {}", e.getMessage());
+        }
+    }
+}
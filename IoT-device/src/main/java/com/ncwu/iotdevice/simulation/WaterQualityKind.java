@@ -0,0 +1,87 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.WaterQualityDataBo;
+import com.ncwu.iotdevice.service.DataSender;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 水质传感器
+ * <p>
+ * 槽位与运行状态来自 {@link SensorIndex}，同一个 tick 内的数据整批发送。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+@Component
+public class WaterQualityKind implements DeviceKind<WaterQualityDataBo> {
+
+    private final SensorIndex sensorIndex;
+    private final ServerConfig serverConfig;
+    private final ObjectProvider<DataSender> dataSender;
+    private final WaterQualityTelemetryModel model;
+
+    public WaterQualityKind(SensorIndex sensorIndex, ServerConfig serverConfig,
+                            ObjectProvider<DataSender> dataSender) {
+        this.sensorIndex = sensorIndex;
+        this.serverConfig = serverConfig;
+        this.dataSender = dataSender;
+        this.model = new WaterQualityTelemetryModel(sensorIndex::idOf);
+    }
+
+    @Override
+    public String name() {
+        return "water_quality";
+    }
+
+    @Override
+    public int capacity() {
+        return sensorIndex.capacity();
+    }
+
+    @Override
+    public String idOf(int slot) {
+        return sensorIndex.idOf(slot);
+    }
+
+    @Override
+    public boolean isRunning(int slot) {
+        return sensorIndex.isRunning(slot);
+    }
+
+    @Override
+    public long nextReportIndex(int slot) {
+        return sensorIndex.nextReportIndex(slot);
+    }
+
+    @Override
+    public TelemetryModel<WaterQualityDataBo> model() {
+        return model;
+    }
+
+    @Override
+    public void send(List<WaterQualityDataBo> batch, int[] slots) {
+        dataSender.getObject().sendWaterQualityDataBatch(batch);
+    }
+
+    @Override
+    public long reportPeriodMs() {
+        return serverConfig.getWaterQualityReportTimeOffsetMs() < 0
+                ? -1 : serverConfig.getWaterQualityReportFrequencyMs();
+    }
+
+    @Override
+    public long reportJitterMs() {
+        return serverConfig.getWaterQualityReportTimeOffsetMs();
+    }
+
+    @Override
+    public long heartbeatPeriodMs() {
+        return reportPeriodMs() + reportJitterMs();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ncwu.iotdevice.simulation;
+
+
+import com.ncwu.iotdevice.domain.Bo.WaterQualityDataBo;
+
+import java.util.function.IntFunction;
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+
+/**
+ * 水质模型
+ * <p>
+ * 按季节生成酸碱度、浊度与含氯量，季节取自模拟配置快照，不再逐次读取 redis。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/16
+ */
+public class WaterQualityTelemetryModel implements TelemetryModel<WaterQualityDataBo> {
+
+    private final IntFunction<String> idOf;
+
+    /**
+     * @param idOf 槽位到设备编号的映射
+     */
+    public WaterQualityTelemetryModel(IntFunction<String> idOf) {
+        this.idOf = idOf;
+    }
+
+    @Override
+    public WaterQualityDataBo build(int slot, SimulationContext context, RandomGenerator random) {
+        WaterQualityDataBo dataBo = new WaterQualityDataBo();
+        dataBo.setTimeStamp(context.timestamp());
+        dataBo.setDevice(2);
+        dataBo.setDeviceId(idOf.apply(slot));
+        double ph, turbidity, chlorine;
+        switch (context.season()) {
+            case 1 -> {
+                ph = random.nextDouble(6.8, 7.2);
+                turbidity = random.nextDouble(0.3, 0.6);
+                chlorine = random.nextDouble(0.3, 0.45);
+            }
+            case 2 -> {
+                ph = random.nextDouble(7.2, 7.8);
+                turbidity = random.nextDouble(0.4, 0.7);
+                chlorine = random.nextDouble(0.4, 0.7);
+            }
+            case 3 -> {
+                ph = random.nextDouble(7.0, 7.5);
+                turbidity = random.nextDouble(0.2, 0.4);
+                chlorine = random.nextDouble(0.3, 0.45);
+            }
+            default -> {
+                ph = random.nextDouble(7.4, 8.0);
+                turbidity = random.nextDouble(0.1, 0.25);
+                chlorine = random.nextDouble(0.2, 0.35);
+            }
+        }
+        dataBo.setPh(keep3(ph));
+        dataBo.setTurbidity(keep3(turbidity));
+        dataBo.setChlorine(keep3(chlorine + turbidity * 0.2));
+        dataBo.setStatus("normal");
+        return dataBo;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+
+/**
+ * 场景中可编排的异常事件类型
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+public enum IncidentType {
+    /**
+     * 爆管：压力骤降、流量激增
+     */
+    BURST,
+    /**
+     * 漏水：持续小流量
+     */
+    LEAK,
+    /**
+     * 演示：流量保持在较低的稳定区间
+     */
+    SHOWS;
+
+    static IncidentType parse(String keyword) {
+        return switch (keyword) {
+            case "burst", "burstPipe" -> BURST;
+            case "leak", "leaking" -> LEAK;
+            case "shows" -> SHOWS;
+            default -> null;
+        };
+    }
+}
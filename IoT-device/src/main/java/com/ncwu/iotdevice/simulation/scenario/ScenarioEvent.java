@@ -0,0 +1,56 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+
+/**
+ * 场景中的一条事件
+ * <p>
+ * 各范围均为闭区间，0 表示不限；时间为模拟时间当天的秒数，区间左闭右开，起点大于终点时跨越午夜。
+ *
+ * @param type        事件类型
+ * @param campusFrom  校区范围
+ * @param campusTo    校区范围
+ * @param buildingFrom 楼宇范围
+ * @param buildingTo  楼宇范围
+ * @param floorFrom   楼层范围
+ * @param floorTo     楼层范围
+ * @param roomFrom    房间范围
+ * @param roomTo      房间范围
+ * @param ratio       命中范围内受影响的水表比例 (0, 1]
+ * @param fromSecond  开始时间
+ * @param toSecond    结束时间
+ * @param source      原始文本，用于展示
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+public record ScenarioEvent(IncidentType type,
+                            int campusFrom, int campusTo,
+                            int buildingFrom, int buildingTo,
+                            int floorFrom, int floorTo,
+                            int roomFrom, int roomTo,
+                            double ratio, int fromSecond, int toSecond, String source) {
+
+    /**
+     * 位置是否落在事件范围内
+     */
+    boolean covers(int campus, int building, int floor, int room) {
+        return in(campus, campusFrom, campusTo) && in(building, buildingFrom, buildingTo)
+                && in(floor, floorFrom, floorTo) && in(room, roomFrom, roomTo);
+    }
+
+    /**
+     * 模拟时间是否落在事件时段内
+     */
+    boolean activeAt(int second) {
+        if (fromSecond == toSecond) {
+            return true;
+        }
+        return fromSecond < toSecond
+                ? second >= fromSecond && second < toSecond
+                : second >= fromSecond || second < toSecond;
+    }
+
+    private static boolean in(int v, int from, int to) {
+        return from == 0 || (v >= from && v <= to);
+    }
+}
@@ -0,0 +1,162 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 持有当前场景的编译结果
+ * <p>
+ * 场景原文保存在 redis 中，加载或清除后广播通知，各实例重新解析并按本地设备状态表编译；
+ * 状态表随拓扑重建时自动重新编译。首次启动时 redis 中没有场景且配置了 server.scenario-file，则从文件加载。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ScenarioHolder implements MessageListener {
+
+    /**
+     * 场景变更通知频道
+     */
+    public static final String CHANNEL = "simulation:scenario";
+    private static final String KEY = "simulation:scenario";
+
+    private final StringRedisTemplate redisTemplate;
+    private final DeviceIndex deviceIndex;
+    private final SimulationContextHolder contextHolder;
+    private final ServerConfig serverConfig;
+    private final MeterRegistry meterRegistry;
+
+    private volatile String text;
+    private volatile ScenarioTimeline timeline;
+
+    /**
+     * 场景中一条事件的概况
+     *
+     * @param source          事件原文
+     * @param affectedDevices 命中的水表数量
+     * @param active          当前模拟时间是否处于生效时段
+     */
+    public record Summary(String source, int affectedDevices, boolean active) {
+    }
+
+    @PostConstruct
+    void init() {
+        deviceIndex.addRebuildListener(this::recompile);
+        Gauge.builder("simulator.scenario.active.events", this, ScenarioHolder::activeEvents)
+                .description("当前模拟时间处于生效时段的场景事件数")
+                .register(meterRegistry);
+        try {
+            refresh();
+            String file = serverConfig.getScenarioFile();
+            if (text == null && file != null && !file.isBlank()) {
+                load(Files.readString(Path.of(file)));
+                log.info("已从 {} 加载场景", file);
+            }
+        } catch (Exception e) {
+            log.warn("场景加载失败，不启用场景: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 得到当前场景的时间线，未加载场景时返回 null
+     */
+    public ScenarioTimeline current() {
+        return timeline;
+    }
+
+    /**
+     * 解析并加载场景，语法错误时抛出异常且不影响当前场景
+     *
+     * @return 事件数量
+     */
+    public int load(String scenario) {
+        List<ScenarioEvent> events = ScenarioParser.parse(scenario);
+        redisTemplate.opsForValue().set(KEY, scenario);
+        apply(scenario, events);
+        redisTemplate.convertAndSend(CHANNEL, "refresh");
+        return events.size();
+    }
+
+    public void clear() {
+        redisTemplate.delete(KEY);
+        apply(null, List.of());
+        redisTemplate.convertAndSend(CHANNEL, "refresh");
+    }
+
+    /**
+     * 当前场景各事件的概况
+     */
+    public List<Summary> describe() {
+        ScenarioTimeline t = timeline;
+        List<Summary> result = new ArrayList<>();
+        if (t == null) {
+            return result;
+        }
+        int second = contextHolder.current().time();
+        for (int i = 0; i < t.size(); i++) {
+            ScenarioEvent e = t.event(i);
+            result.add(new Summary(e.source(), t.affectedDevices(i), e.activeAt(second)));
+        }
+        return result;
+    }
+
+    /**
+     * 从 redis 重新加载场景原文
+     */
+    public void refresh() {
+        String scenario = redisTemplate.opsForValue().get(KEY);
+        apply(scenario, ScenarioParser.parse(scenario));
+    }
+
+    private synchronized void apply(String scenario, List<ScenarioEvent> events) {
+        text = scenario;
+        timeline = events.isEmpty() ? null
+                : ScenarioTimeline.compile(events, deviceIndex.capacity(), deviceIndex::idOf);
+        if (timeline != null) {
+            log.info("场景已编译，共 {} 条事件", timeline.size());
+        }
+    }
+
+    private void recompile() {
+        try {
+            String scenario = text;
+            apply(scenario, ScenarioParser.parse(scenario));
+        } catch (Exception e) {
+            log.error("场景重新编译失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private int activeEvents() {
+        ScenarioTimeline t = timeline;
+        return t == null ? 0 : t.activeEvents(contextHolder.current().time());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("场景刷新失败: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+
+import com.ncwu.iotdevice.exception.ScenarioSyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 场景文件解析器
+ * <p>
+ * 每行(或以分号分隔)描述一条事件，# 之后为注释：
+ * <pre>
+ * # 2 校区 12 号楼 02:00 - 02:30 爆管
+ * burst campus=2 building=12 from=02:00 to=02:30
+ * # 3 - 5 层 5% 的水表夜间漏水
+ * leak floor=3-5 ratio=5% overnight
+ * </pre>
+ * 事件类型为 burst / leak / shows；范围键为 campus、building、floor、room，取值为单个编号或 a-b 区间，
+ * 省略即不限；ratio 为受影响水表的比例，可写作 5% 或 0.05，默认 100%；
+ * 时段用 from=HH:mm to=HH:mm 指定，overnight 等价于 from=22:00 to=06:00，省略则全天生效。
+ * 同一台水表同时命中多条事件时，先出现的事件生效。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+public final class ScenarioParser {
+
+    /**
+     * 单个场景最多包含的事件数，编译后每条事件占用一个比特
+     */
+    public static final int MAX_EVENTS = 64;
+    private static final int DAY_SECONDS = 24 * 3600;
+
+    private ScenarioParser() {
+    }
+
+    public static List<ScenarioEvent> parse(String text) {
+        List<ScenarioEvent> events = new ArrayList<>();
+        if (text == null) {
+            return events;
+        }
+        int no = 0;
+        for (String line : text.split("\\R")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            for (String statement : line.split(";")) {
+                String trimmed = statement.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                no++;
+                if (events.size() == MAX_EVENTS) {
+                    throw new ScenarioSyntaxException(no, "单个场景最多 " + MAX_EVENTS + " 条事件");
+                }
+                events.add(parseEvent(no, trimmed));
+            }
+        }
+        return events;
+    }
+
+    private static ScenarioEvent parseEvent(int no, String statement) {
+        String[] tokens = statement.split("\\s+");
+        IncidentType type = IncidentType.parse(tokens[0]);
+        if (type == null) {
+            throw new ScenarioSyntaxException(no, "未知的事件类型 " + tokens[0]);
+        }
+        int[] campus = {0, 0};
+        int[] building = {0, 0};
+        int[] floor = {0, 0};
+        int[] room = {0, 0};
+        double ratio = 1;
+        int from = 0;
+        int to = 0;
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+            if ("overnight".equals(token)) {
+                from = 22 * 3600;
+                to = 6 * 3600;
+                continue;
+            }
+            if ("allday".equals(token)) {
+                from = 0;
+                to = 0;
+                continue;
+            }
+            int eq = token.indexOf('=');
+            if (eq <= 0 || eq == token.length() - 1) {
+                throw new ScenarioSyntaxException(no, "无法识别 " + token);
+            }
+            String key = token.substring(0, eq);
+            String value = token.substring(eq + 1);
+            switch (key) {
+                case "campus" -> campus = range(no, key, value, 3);
+                case "building" -> building = range(no, key, value, 99);
+                case "floor", "floors" -> floor = range(no, key, value, 99);
+                case "room", "rooms" -> room = range(no, key, value, 999);
+                case "ratio" -> ratio = ratio(no, value);
+                case "from" -> from = time(no, value);
+                case "to" -> to = time(no, value);
+                default -> throw new ScenarioSyntaxException(no, "未知的参数 " + key);
+            }
+        }
+        return new ScenarioEvent(type, campus[0], campus[1], building[0], building[1], floor[0], floor[1],
+                room[0], room[1], ratio, from, to, statement);
+    }
+
+    private static int[] range(int no, String key, String value, int max) {
+        int dash = value.indexOf('-');
+        try {
+            int from = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(value.substring(dash + 1));
+            if (from < 1 || to > max || from > to) {
+                throw new ScenarioSyntaxException(no, key + " 取值应在 1-" + max + " 之间: " + value);
+            }
+            return new int[]{from, to};
+        } catch (NumberFormatException e) {
+            throw new ScenarioSyntaxException(no, key + " 取值格式错误: " + value);
+        }
+    }
+
+    private static double ratio(int no, String value) {
+        try {
+            double ratio = value.endsWith("%")
+                    ? Double.parseDouble(value.substring(0, value.length() - 1)) / 100
+                    : Double.parseDouble(value);
+            if (!(ratio > 0 && ratio <= 1)) {
+                throw new ScenarioSyntaxException(no, "ratio 应在 (0, 100%] 之间: " + value);
+            }
+            return ratio;
+        } catch (NumberFormatException e) {
+            throw new ScenarioSyntaxException(no, "ratio 格式错误: " + value);
+        }
+    }
+
+    private static int time(int no, String value) {
+        int colon = value.indexOf(':');
+        try {
+            int hour = Integer.parseInt(colon < 0 ? value : value.substring(0, colon));
+            int minute = colon < 0 ? 0 : Integer.parseInt(value.substring(colon + 1));
+            if (hour < 0 || hour > 24 || minute < 0 || minute > 59 || (hour == 24 && minute > 0)) {
+                throw new ScenarioSyntaxException(no, "时间应为 HH:mm: " + value);
+            }
+            return (hour * 3600 + minute * 60) % DAY_SECONDS;
+        } catch (NumberFormatException e) {
+            throw new ScenarioSyntaxException(no, "时间格式错误: " + value);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+
+import com.ncwu.iotdevice.simulation.SimulationRandom;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * 编译后的场景时间线
+ * <p>
+ * 每条事件占用一个比特：按分钟建立当天 1440 个时段的事件位掩码，按水表槽位建立受影响事件的位掩码，
+ * 热路径只需两次数组读取和一次按位与，即可得到某台水表在当前模拟时间生效的事件，与事件数量无关。
+ * <p>
+ * ratio 小于 1 的事件按 (设备编号, 事件序号) 的稳定哈希选择水表，同一场景每次运行命中同一批设备。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+public final class ScenarioTimeline {
+
+    private static final int MINUTES = 24 * 60;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final ScenarioEvent[] events;
+    private final long[] minuteMask;
+    private final long[] slotMask;
+    private final int[] affected;
+
+    private ScenarioTimeline(ScenarioEvent[] events, long[] minuteMask, long[] slotMask, int[] affected) {
+        this.events = events;
+        this.minuteMask = minuteMask;
+        this.slotMask = slotMask;
+        this.affected = affected;
+    }
+
+    /**
+     * 按当前拓扑编译场景
+     *
+     * @param events   事件，最多 {@link ScenarioParser#MAX_EVENTS} 条
+     * @param capacity 水表槽位数量
+     * @param idOf     槽位到设备编号的映射
+     */
+    public static ScenarioTimeline compile(List<ScenarioEvent> events, int capacity, IntFunction<String> idOf) {
+        ScenarioEvent[] array = events.toArray(new ScenarioEvent[0]);
+        long[] minuteMask = new long[MINUTES];
+        for (int m = 0; m < MINUTES; m++) {
+            long mask = 0;
+            for (int i = 0; i < array.length; i++) {
+                if (array[i].activeAt(m * 60)) {
+                    mask |= 1L << i;
+                }
+            }
+            minuteMask[m] = mask;
+        }
+        long[] slotMask = new long[capacity];
+        int[] affected = new int[array.length];
+        for (int slot = 0; slot < capacity; slot++) {
+            String id = idOf.apply(slot);
+            int campus = id.charAt(1) - '0';
+            int building = (id.charAt(2) - '0') * 10 + id.charAt(3) - '0';
+            int floor = (id.charAt(4) - '0') * 10 + id.charAt(5) - '0';
+            int room = (id.charAt(6) - '0') * 100 + (id.charAt(7) - '0') * 10 + id.charAt(8) - '0';
+            long key = SimulationRandom.deviceKey(id);
+            long mask = 0;
+            for (int i = 0; i < array.length; i++) {
+                ScenarioEvent e = array[i];
+                if (!e.covers(campus, building, floor, room)) {
+                    continue;
+                }
+                if (e.ratio() < 1) {
+                    long h = SimulationRandom.mix64(key + (i + 1) * GOLDEN_GAMMA);
+                    if ((h >>> 11) * 0x1.0p-53 >= e.ratio()) {
+                        continue;
+                    }
+                }
+                mask |= 1L << i;
+                affected[i]++;
+            }
+            slotMask[slot] = mask;
+        }
+        return new ScenarioTimeline(array, minuteMask, slotMask, affected);
+    }
+
+    /**
+     * 得到水表在模拟时间生效的事件
+     *
+     * @param slot   水表槽位
+     * @param second 模拟时间，当天的秒数
+     * @return 事件序号，没有生效的事件时返回 -1
+     */
+    public int eventAt(int slot, int second) {
+        if (slot < 0 || slot >= slotMask.length) {
+            return -1;
+        }
+        long mask = slotMask[slot] & minuteMask[Math.floorMod(second / 60, MINUTES)];
+        return mask == 0 ? -1 : Long.numberOfTrailingZeros(mask);
+    }
+
+    public ScenarioEvent event(int index) {
+        return events[index];
+    }
+
+    public int size() {
+        return events.length;
+    }
+
+    /**
+     * 模拟时间下处于生效时段的事件数
+     */
+    public int activeEvents(int second) {
+        return Long.bitCount(minuteMask[Math.floorMod(second / 60, MINUTES)]);
+    }
+
+    /**
+     * 事件命中的水表数量
+     */
+    public int affectedDevices(int index) {
+        return affected[index];
+    }
+}
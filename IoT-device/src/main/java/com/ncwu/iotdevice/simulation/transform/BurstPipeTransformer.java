@@ -0,0 +1,46 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import com.ncwu.iotdevice.simulation.SimulationRandom;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+
+/**
+ * 爆管事件：5% 的水表压力骤降、流量激增
+ * <p>
+ * 是否爆管由设备编号的稳定哈希决定，与上报先后无关，同一批设备在每次运行中都会爆管
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+public class BurstPipeTransformer implements TelemetryTransformer {
+
+    private static final double BURST_RATIO = 0.05;
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        long key = SimulationRandom.deviceKey(dataBo.getDeviceId());
+        if ((key >>> 11) * 0x1.0p-53 >= BURST_RATIO) {
+            return;
+        }
+        burst(dataBo, random);
+    }
+
+    /**
+     * 对单台水表施加爆管效果，不做设备选择
+     */
+    public void burst(MeterDataBo dataBo, RandomGenerator random) {
+        double dp = keep3(random.nextDouble(0.25, 0.35));
+        double df = keep3(random.nextDouble(0.25, 0.35));
+        dataBo.setPressure(Math.max(dataBo.getPressure() - dp, 0.12));
+        dataBo.setFlow(Math.min(df, 0.5));
+        dataBo.setStatus("burstPipe");
+    }
+}
@@ -0,0 +1,33 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.waterPressureGenerate;
+
+/**
+ * 漏水事件：所有水表持续小流量
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+@RequiredArgsConstructor
+public class LeakingTransformer implements TelemetryTransformer {
+
+    private final ServerConfig serverConfig;
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        double flow = 0.1 + random.nextDouble(0.05);
+        dataBo.setFlow(flow);
+        dataBo.setPressure(waterPressureGenerate(flow, serverConfig, random));
+    }
+}
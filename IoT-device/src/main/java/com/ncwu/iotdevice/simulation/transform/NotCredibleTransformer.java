@@ -0,0 +1,43 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+
+/**
+ * 以 pnotCredible 的概率污染数据，并将状态置为 error
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+@RequiredArgsConstructor
+public class NotCredibleTransformer implements TelemetryTransformer {
+
+    private final ServerConfig serverConfig;
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        if (random.nextDouble() > serverConfig.getPnotCredible()) {
+            return;
+        }
+        double p = random.nextDouble();
+        if (p <= 0.4) {
+            dataBo.setFlow(keep3(dataBo.getFlow() * random.nextDouble(3, 5)));
+        } else if (p <= 0.8) {
+            dataBo.setWaterTem(keep3(dataBo.getWaterTem() * random.nextDouble(2, 4)));
+        } else {
+            dataBo.setPressure(keep3(dataBo.getPressure() * random.nextDouble(2, 4)));
+        }
+        //模拟边缘设备计算
+        dataBo.setStatus("error");
+    }
+}
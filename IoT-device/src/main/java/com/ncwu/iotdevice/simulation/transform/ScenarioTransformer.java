@@ -0,0 +1,49 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.DeviceIndex;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import com.ncwu.iotdevice.simulation.scenario.ScenarioHolder;
+import com.ncwu.iotdevice.simulation.scenario.ScenarioTimeline;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 场景事件：按编译后的时间线对命中的水表施加爆管、漏水或演示效果
+ * <p>
+ * 未加载场景时只有一次 volatile 读取，加载后每台水表每次上报为 O(1) 的位掩码查询
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/17
+ */
+@Component
+@RequiredArgsConstructor
+public class ScenarioTransformer implements TelemetryTransformer {
+
+    private final ScenarioHolder scenarioHolder;
+    private final DeviceIndex deviceIndex;
+    private final BurstPipeTransformer burstPipe;
+    private final LeakingTransformer leaking;
+    private final ShowsTransformer shows;
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        ScenarioTimeline timeline = scenarioHolder.current();
+        if (timeline == null) {
+            return;
+        }
+        int event = timeline.eventAt(deviceIndex.slotOf(dataBo.getDeviceId()), context.time());
+        if (event < 0) {
+            return;
+        }
+        switch (timeline.event(event).type()) {
+            case BURST -> burstPipe.burst(dataBo, random);
+            case LEAK -> leaking.apply(dataBo, context, random);
+            case SHOWS -> shows.apply(dataBo, context, random);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+import static com.ncwu.iotdevice.utils.Utils.keep3;
+
+/**
+ * 演示模式：流量保持在较低的稳定区间
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+public class ShowsTransformer implements TelemetryTransformer {
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        dataBo.setFlow(keep3(0.04 + random.nextDouble(0.08)));
+    }
+}
@@ -0,0 +1,87 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import com.ncwu.iotdevice.simulation.SimulationContextHolder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * 水表数据变换链
+ * <p>
+ * 按 场景事件 → 异常事件 → 数据不可信 → 阀门关闭 的顺序依次修改数据，后三者与原先三个切面的生效顺序一致。
+ * 变换链只在模拟模式变化时重新组装，热路径上只有一次数组遍历，不经过代理、不访问 redis。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+@RequiredArgsConstructor
+public class TelemetryPipeline {
+
+    private final SimulationContextHolder contextHolder;
+    private final ScenarioTransformer scenario;
+    private final BurstPipeTransformer burstPipe;
+    private final LeakingTransformer leaking;
+    private final ShowsTransformer shows;
+    private final NotCredibleTransformer notCredible;
+    private final ValveClosedTransformer valveClosed;
+
+    private volatile Compiled compiled;
+
+    /**
+     * 按当前模拟配置原地修改数据
+     *
+     * @param random 本次上报使用的随机流，与生成数据时使用的是同一个
+     */
+    public MeterDataBo apply(MeterDataBo dataBo, RandomGenerator random) {
+        SimulationContext context = contextHolder.current();
+        for (TelemetryTransformer transformer : compile(context).chain()) {
+            transformer.apply(dataBo, context, random);
+        }
+        return dataBo;
+    }
+
+    /**
+     * 得到模拟模式对应的异常事件变换器，正常模式或未知模式返回 null
+     */
+    public TelemetryTransformer incidentFor(String mode) {
+        if (mode == null) {
+            return null;
+        }
+        return switch (mode) {
+            case "burstPipe" -> burstPipe;
+            case "leaking" -> leaking;
+            case "shows" -> shows;
+            default -> null;
+        };
+    }
+
+    private Compiled compile(SimulationContext context) {
+        Compiled current = compiled;
+        if (current != null && Objects.equals(current.mode(), context.mode())) {
+            return current;
+        }
+        List<TelemetryTransformer> chain = new ArrayList<>(4);
+        chain.add(scenario);
+        TelemetryTransformer incident = incidentFor(context.mode());
+        if (incident != null) {
+            chain.add(incident);
+        }
+        chain.add(notCredible);
+        chain.add(valveClosed);
+        current = new Compiled(context.mode(), chain.toArray(new TelemetryTransformer[0]));
+        compiled = current;
+        return current;
+    }
+
+    private record Compiled(String mode, TelemetryTransformer[] chain) {
+    }
+}
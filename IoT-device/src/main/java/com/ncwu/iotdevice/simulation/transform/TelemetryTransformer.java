@@ -0,0 +1,30 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 水表数据变换器
+ * <p>
+ * 直接修改传入的数据对象，不创建新对象，也不访问 redis。
+ * 多个变换器按固定顺序组成 {@link TelemetryPipeline}。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@FunctionalInterface
+public interface TelemetryTransformer {
+
+    /**
+     * 原地修改一条上报数据
+     *
+     * @param dataBo  待上报数据
+     * @param context 当前模拟配置快照
+     * @param random  本次上报使用的随机流
+     */
+    void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random);
+}
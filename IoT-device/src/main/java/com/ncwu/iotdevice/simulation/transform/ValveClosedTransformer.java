@@ -0,0 +1,32 @@
+package com.ncwu.iotdevice.simulation.transform;
+
+
+import com.ncwu.iotdevice.domain.Bo.MeterDataBo;
+import com.ncwu.iotdevice.simulation.SimulationContext;
+import com.ncwu.iotdevice.simulation.ValveStateCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * 阀门关闭的水表流量置为 0
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Component
+@RequiredArgsConstructor
+public class ValveClosedTransformer implements TelemetryTransformer {
+
+    private final ValveStateCache valveStateCache;
+
+    @Override
+    public void apply(MeterDataBo dataBo, SimulationContext context, RandomGenerator random) {
+        if (valveStateCache.isClosed(dataBo.getDeviceId())) {
+            dataBo.setFlow(0.0);
+            dataBo.setIsOpen("closed");
+        }
+    }
+}
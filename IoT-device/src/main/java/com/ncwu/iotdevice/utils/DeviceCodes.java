@@ -0,0 +1,48 @@
+package com.ncwu.iotdevice.utils;
+
+/**
+ * 设备编号生成工具
+ * <p>
+ * 设备编号格式为 T C BB FF RRR(类型、校区、楼宇、楼层、房间)，直接按位写入字符数组，
+ * 批量生成时不再使用 String.format。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/13
+ */
+public final class DeviceCodes {
+
+    public static final int METER = 1;
+    public static final int SENSOR = 2;
+
+    private DeviceCodes() {
+    }
+
+    /**
+     * 生成设备编号，各字段超出位数时只保留低位
+     */
+    public static String of(int type, int campus, int building, int floor, int room) {
+        char[] code = new char[9];
+        code[0] = (char) ('0' + type % 10);
+        code[1] = (char) ('0' + campus % 10);
+        code[2] = (char) ('0' + building / 10 % 10);
+        code[3] = (char) ('0' + building % 10);
+        code[4] = (char) ('0' + floor / 10 % 10);
+        code[5] = (char) ('0' + floor % 10);
+        code[6] = (char) ('0' + room / 100 % 10);
+        code[7] = (char) ('0' + room / 10 % 10);
+        code[8] = (char) ('0' + room % 10);
+        return new String(code);
+    }
+
+    public static String meter(int campus, int building, int floor, int room) {
+        return of(METER, campus, building, floor, room);
+    }
+
+    /**
+     * 水质传感器每层一台，房间号固定为 001
+     */
+    public static String sensor(int campus, int building, int floor) {
+        return of(SENSOR, campus, building, floor, 1);
+    }
+}
@@ -3,18 +3,22 @@ package com.ncwu.iotdevice.utils;
 
 import com.alibaba.nacos.shaded.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import com.ncwu.iotdevice.AOP.annotation.InitLuaScript;
+import com.ncwu.common.cache.NamespaceEpoch;
+import com.ncwu.common.registry.DeviceRegistryIndex;
+import com.ncwu.common.registry.DeviceRegistrySync;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.iotdevice.cluster.ShardCoordinator;
 import com.ncwu.iotdevice.config.ServerConfig;
-import com.ncwu.iotdevice.domain.Bo.DeviceIdList;
 import com.ncwu.iotdevice.domain.entity.VirtualDevice;
 import com.ncwu.iotdevice.exception.DeviceRegisterException;
 import com.ncwu.iotdevice.mapper.DeviceMapper;
+import com.ncwu.iotdevice.service.DeadlineIndex;
+import com.ncwu.iotdevice.service.DeviceProvisioner;
 import com.ncwu.iotdevice.service.VirtualMeterDeviceService;
+import com.ncwu.iotdevice.simulation.UsageLedger;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import lombok.RequiredArgsConstructor;
-import org.redisson.api.RBloomFilter;
-import org.redisson.api.RedissonClient;
 import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -25,11 +29,8 @@ import java.math.RoundingMode;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.random.RandomGenerator;
 
-import static com.ncwu.iotdevice.AOP.Aspects.InitLuaScript.Lua_script;
 
 /**
  * @author jingxu
@@ -39,11 +40,23 @@ import static com.ncwu.iotdevice.AOP.Aspects.InitLuaScript.Lua_script;
 @Component
 @RequiredArgsConstructor
 public class Utils {
+    /**
+     * 清空设备数据时一并作废的缓存命名空间
+     */
+    private static final List<String> CACHE_NAMESPACES = List.of(NamespaceEpoch.DEVICE_STATUS,
+            NamespaceEpoch.SCHOOL_USAGE, NamespaceEpoch.HISTORICAL_USAGE, NamespaceEpoch.WATER_QUALITY_SCORE,
+            NamespaceEpoch.PREDICTION_USAGE);
+
     private final StringRedisTemplate redisTemplate;
+    private final DeviceRegistryIndex registryIndex;
+    private final NamespaceEpoch namespaceEpoch;
 
 
     /**
-     * 此方法用于向 redis中初始化设备 id
+     * 此方法用于向 redis 中初始化模拟世界的拓扑与状态参数
+     * <p>
+     * 设备编号、心跳表与布隆过滤器由 {@link com.ncwu.iotdevice.service.DeviceProvisioner} 分块写入，
+     * 初始化标志位在全部设备注册完成后由调用方设置
      *
      * @param buildings     楼宇总数
      * @param floors        楼宇的层数
@@ -51,53 +64,18 @@ public class Utils {
      * @param redisTemplate redis 操作对象
      * @throws DeviceRegisterException 设备注册失败异常
      */
-    public static DeviceIdList initAllRedisData(int buildings, int floors, int rooms,
-                                                StringRedisTemplate redisTemplate, RedissonClient redissonClient) {
-
+    public static void initRedisSettings(int buildings, int floors, int rooms, StringRedisTemplate redisTemplate) {
         if (buildings <= 0 || floors <= 0 || rooms <= 0) {
             throw new DeviceRegisterException("楼宇、楼层、房间数量必须大于 0");
         }
-        Map<String, String> meterMap = new HashMap<>();
-        List<String> meterDeviceIds = new ArrayList<>();
-        List<String> waterQualityDeviceIds = new ArrayList<>();
-        for (int i = 1; i <= 3; i++) {
-            for (int b = 1; b <= buildings; b++) {
-                for (int f = 1; f <= floors; f++) {
-                    waterQualityDeviceIds.add(String.format("2%d%02d%02d001", i, b, f));
-                    for (int r = 1; r <= rooms; r++) {
-                        meterDeviceIds.add(String.format("1%d%02d%02d%03d", i, b, f, r));
-                    }
-                }
-            }
-        }
-        // 先删除旧的布隆过滤器，避免残留数据影响
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter("device:bloom");
-        bloomFilter.delete();
-        bloomFilter.tryInit(100000, 0.01);
-        bloomFilter.add(meterDeviceIds);
-        bloomFilter.add(waterQualityDeviceIds);
-        Map<String, String> map = Stream.concat(meterDeviceIds.stream(), waterQualityDeviceIds.stream())
-                .collect(Collectors.toMap(Function.identity(), id -> "-1"));
         try {
             redisTemplate.opsForValue().set("TotalBuildings", String.valueOf(buildings));
 
             redisTemplate.opsForValue().set("Floors", String.valueOf(floors));
 
             redisTemplate.opsForValue().set("Rooms", String.valueOf(rooms));
-            //初始化标志位
-            redisTemplate.opsForValue().set("isInit", "1");
-            //水表总用水量
-            redisTemplate.opsForHash().putAll("meter:total_usage", meterMap);
-            //水表设备 id 集合
-            redisTemplate.opsForSet().add("device:meter", meterDeviceIds.toArray(new String[0]));
-            //水质传感器设备 id 集合
-            redisTemplate.opsForSet().add("device:sensor", waterQualityDeviceIds.toArray(new String[0]));
-            //所以设备心跳表
-            redisTemplate.opsForHash().putAll("OnLineMap", map);
             //管网发生的特殊事件
             redisTemplate.opsForValue().set("mode", "normal");
-            //当天时间
-            redisTemplate.opsForValue().set("Time", "0");
             //世界的季节
             redisTemplate.opsForValue().set("Season", "1");
             //水表在线状态可否受检
@@ -108,7 +86,6 @@ public class Utils {
         } catch (Exception e) {
             throw new DeviceRegisterException("注册失败");
         }
-        return new DeviceIdList(meterDeviceIds, waterQualityDeviceIds);
     }
 
     /**
@@ -118,7 +95,9 @@ public class Utils {
         String prefix = "device:";
         try {
             delRedisData(redisTemplate, prefix);
-            redisScanDel("device:OffLine:*", 1000, redisTemplate);
+            DeviceRegistrySync.publishCleared(redisTemplate);
+            //离线标记集中在一个哈希表中，一次 DEL 即可清除，不再扫描整个键空间
+            redisTemplate.delete("device:OffLine");
             deviceMapper.delete(null);
         } catch (Exception e) {
             throw new DeviceRegisterException("移除设备失败");
@@ -126,20 +105,25 @@ public class Utils {
     }
 
     private static void delRedisData(StringRedisTemplate redisTemplate, String prefix) {
-        //清除缓存
-        redisScanDel("SchoolUsage:*",3,redisTemplate);
-        redisScanDel("WaterPredictionUsage:*",3,redisTemplate);
-        redisScanDel("historical:*",1000,redisTemplate);
-        redisScanDel("WaterQualityScore:*",10,redisTemplate);
-        redisScanDel("historical:*",1000,redisTemplate);
-        redisScanDel("SchoolUsage:*",3,redisTemplate);
-        redisScanDel("WaterPredictionUsage:*",3,redisTemplate);
+        //清除缓存：各命名空间版本号加一，旧键随过期时间回收，不再扫描整个键空间
+        for (String namespace : CACHE_NAMESPACES) {
+            NamespaceEpoch.invalidate(redisTemplate, namespace);
+        }
         redisTemplate.opsForValue().set("isInit", "0");
+        redisTemplate.delete(ShardCoordinator.STATE_KEY);
         redisTemplate.delete("allDeviceNums");
         redisTemplate.delete(prefix + "meter");
         redisTemplate.delete(prefix + "sensor");
-        redisTemplate.delete("meter:total_usage");
+        redisTemplate.delete(UsageLedger.TOTAL_KEY);
+        redisTemplate.delete(UsageLedger.MILLILITRE_KEY);
+        redisTemplate.delete(UsageLedger.CHECKPOINT_KEY);
         redisTemplate.delete("OnLineMap");
+        //阀门规则随设备一起清除，版本号计数器保留，各节点本地副本中的旧规则不会盖过之后的新指令
+        redisTemplate.delete(ValveCommand.CAMPUS_KEY);
+        redisTemplate.delete(ValveCommand.DEVICE_KEY);
+        redisTemplate.delete(DeviceProvisioner.CURSOR_KEY);
+        redisTemplate.delete(DeadlineIndex.METER_KEY);
+        redisTemplate.delete(DeadlineIndex.SENSOR_KEY);
         redisTemplate.delete("Time");
         redisTemplate.delete("Season");
         redisTemplate.delete("WaterQualityChecked");
@@ -198,9 +182,16 @@ public class Utils {
      * 根据管网水流对水压进行计算和离散化
      */
     public static double waterPressureGenerate(double flow, ServerConfig serverConfig) {
+        return waterPressureGenerate(flow, serverConfig, ThreadLocalRandom.current());
+    }
+
+    /**
+     * 使用指定随机流计算水压，用于可复现的模拟
+     */
+    public static double waterPressureGenerate(double flow, ServerConfig serverConfig, RandomGenerator random) {
         //管网初始压力
         double p0 = serverConfig.getP0();
-        double pressure = p0 - 0.15 * flow + ThreadLocalRandom.current().nextDouble(0.01, 0.03);
+        double pressure = p0 - 0.15 * flow + random.nextDouble(0.01, 0.03);
         //离散步长
         double s = serverConfig.getStep();
         double Pdiscrete = Math.round(pressure / s) * s;
@@ -230,8 +221,8 @@ public class Utils {
         });
 
         // 2. 清理离线缓存
-        redisTemplate.delete("device:OffLine:" + deviceCode);
-        redisTemplate.delete("cache:device:status:" + deviceCode);
+        redisTemplate.opsForHash().delete("device:OffLine", deviceCode);
+        redisTemplate.delete(namespaceEpoch.key(NamespaceEpoch.DEVICE_STATUS, deviceCode));
 
         // 3. 加入心跳监控
         redisTemplate.opsForHash()
@@ -239,14 +230,11 @@ public class Utils {
     }
 
 
-    @InitLuaScript("CheckIds.lua")
+    /**
+     * 检查一批水表编号是否都已注册
+     */
     public boolean checkId(List<String> ids) {
-        Long result = redisTemplate.execute(
-                Lua_script,
-                List.of("device:meter"),
-                ids.toArray()
-        );
-        return Long.valueOf(1L).equals(result);
+        return !hasInvalidDevice("meter", ids);
     }
 
     /**
@@ -292,12 +280,18 @@ public class Utils {
     }
 
     /**
-     * 检查设备列表中是否有无效设备（不在Redis中的设备）
+     * 检查设备列表中是否有无效设备（未注册的设备）
+     * <p>
+     * 优先查询进程内设备位图，位图尚未加载时回退到 redis 集合
      *
      * @param deviceIds 设备ID列表
      * @return true如果有无效设备，false如果所有设备都有效
      */
     public boolean hasInvalidDevice(String key, List<String> deviceIds) {
+        if (registryIndex.isLoaded()) {
+            int type = "meter".equals(key) ? DeviceCodes.METER : DeviceCodes.SENSOR;
+            return !registryIndex.containsAll(type, deviceIds);
+        }
         AtomicBoolean hasInvalidDevice = new AtomicBoolean(false);
         deviceIds.forEach(id -> {
             Boolean isMember = redisTemplate.opsForSet().isMember("device:" + key, id);
@@ -312,6 +306,9 @@ public class Utils {
             regexp = "^[12][1-3](0[1-9]|[1-9][0-9])(0[1-9]|[1-9][0-9])(00[1-9]|0[1-9][0-9]|[1-9][0-9]{2})$",
             message = "设备ID格式错误"
     ) String> deviceIds) {
+        if (registryIndex.isLoaded()) {
+            return !registryIndex.containsAll(deviceIds);
+        }
         AtomicBoolean hasInvalidDevice = new AtomicBoolean(false);
         deviceIds.forEach(id -> {
             // 根据设备ID第一位判断类型：1=水表，2=传感器
@@ -324,5 +321,3 @@ public class Utils {
         return hasInvalidDevice.get();
     }
 }
-
-
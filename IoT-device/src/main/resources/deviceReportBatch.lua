@@ -0,0 +1,47 @@
+---@diagnostic disable: undefined-global
+-- 同一 tick 内多台水表批量上报：重复检测、离线检测、心跳写入，一次往返完成
+-- 累计用水量由模拟器在本地以毫升整数累加，按周期经 usageFlush.lua 写回，这里只在需要时读取检查点
+-- KEYS[1] 心跳表 OnLineMap   KEYS[2] 累计用水量(毫升) meter:total_usage_ml
+-- KEYS[3] 累计用水量检查点 meter:usage_at   KEYS[4] 累计用水量 meter:total_usage
+-- KEYS[5] 离线设备表 device:OffLine
+-- ARGV[1] 当前时间，随后每三个参数为一台设备：设备编号、数据时间戳、是否需要读取检查点
+-- 返回按设备顺序展开的 {状态, 是否从离线恢复, 累计毫升, 检查点时间}，状态 0 正常上报 1 设备刚启动仅写入心跳 2 重复数据
+-- 不需要读取检查点的设备后两项为空串，没有检查点时检查点时间为空串
+local result = {}
+local now = ARGV[1]
+for i = 2, #ARGV, 3 do
+    local id = ARGV[i]
+    local deviceTime = tonumber(ARGV[i + 1])
+    local status = 0
+    local offline = 0
+    local base = ''
+    local at = ''
+    local pre = redis.call('HGET', KEYS[1], id)
+    if pre then
+        pre = tonumber(pre)
+        if pre == -1 then
+            redis.call('HSET', KEYS[1], id, now)
+            status = 1
+        elseif deviceTime <= pre then
+            status = 2
+        end
+    end
+    if status == 0 then
+        offline = redis.call('HEXISTS', KEYS[5], id)
+        redis.call('HSET', KEYS[1], id, ARGV[i + 1])
+    end
+    if ARGV[i + 2] == '1' then
+        base = redis.call('HGET', KEYS[2], id)
+        if not base then
+            -- 尚未按毫升写回过的设备沿用原有的浮点累计值
+            local legacy = redis.call('HGET', KEYS[4], id)
+            base = string.format('%.0f', legacy and tonumber(legacy) * 1000 or 0)
+        end
+        at = redis.call('HGET', KEYS[3], id) or ''
+    end
+    result[#result + 1] = status
+    result[#result + 1] = offline
+    result[#result + 1] = base
+    result[#result + 1] = at
+end
+return result
@@ -0,0 +1,6 @@
+---@diagnostic disable: undefined-global
+-- 执行一步 HSCAN，每一步的 COUNT 由调用方按当前块大小给出
+-- KEYS[1] 哈希表
+-- ARGV[1] 游标  ARGV[2] 字段匹配模式  ARGV[3] COUNT
+-- 返回 {下一个游标, {字段, 值, 字段, 值, ...}}，游标为 0 时遍历结束
+return redis.call('HSCAN', KEYS[1], ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])
@@ -0,0 +1,8 @@
+---@diagnostic disable: undefined-global
+-- 取出并删除截止时间早于当前时间的设备，只访问已到期的条目
+-- KEYS[1] 截止时间有序集合   ARGV[1] 当前时间   ARGV[2] 单次最多取出数量
+local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+if #ids > 0 then
+    redis.call('ZREM', KEYS[1], unpack(ids))
+end
+return ids
@@ -0,0 +1,22 @@
+---@diagnostic disable: undefined-global
+-- 删除一块已被整校区规则取代的设备规则，由调用方扫描设备规则表后分块调用
+-- KEYS[1] 校区规则 valve:campus   KEYS[2] 设备规则 valve:device
+-- ARGV[1] 校区编号  ARGV[2..] 本校区的设备编号
+-- 扫描之后设备规则可能已被更新的指令改写，删除前按当前的校区规则重新比较版本号
+-- 返回删除的规则数
+local function versionOf(rule)
+    if not rule then
+        return 0
+    end
+    return tonumber(string.match(rule, '^(%d+):'))
+end
+
+local campusVersion = versionOf(redis.call('HGET', KEYS[1], ARGV[1]))
+local deleted = 0
+for i = 2, #ARGV do
+    local rule = redis.call('HGET', KEYS[2], ARGV[i])
+    if rule and versionOf(rule) < campusVersion then
+        deleted = deleted + redis.call('HDEL', KEYS[2], ARGV[i])
+    end
+end
+return deleted
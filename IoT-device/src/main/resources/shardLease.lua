@@ -0,0 +1,13 @@
+---@diagnostic disable: undefined-global
+-- 获取或续约分区租约，租约无人持有或由本节点持有时写入并刷新过期时间
+-- KEYS 各分区的租约键   ARGV[1] 节点编号   ARGV[2] 租约时长(毫秒)
+-- 返回成功持有的租约在 KEYS 中的下标(从 1 开始)
+local held = {}
+for i = 1, #KEYS do
+    local owner = redis.call('GET', KEYS[i])
+    if owner == false or owner == ARGV[1] then
+        redis.call('SET', KEYS[i], ARGV[1], 'PX', tonumber(ARGV[2]))
+        held[#held + 1] = i
+    end
+end
+return held
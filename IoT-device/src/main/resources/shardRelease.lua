@@ -0,0 +1,11 @@
+---@diagnostic disable: undefined-global
+-- 释放本节点持有的分区租约，已被其他节点接管的租约不做改动
+-- KEYS 各分区的租约键   ARGV[1] 节点编号
+local released = 0
+for i = 1, #KEYS do
+    if redis.call('GET', KEYS[i]) == ARGV[1] then
+        redis.call('DEL', KEYS[i])
+        released = released + 1
+    end
+end
+return released
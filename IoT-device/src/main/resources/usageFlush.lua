@@ -0,0 +1,25 @@
+---@diagnostic disable: undefined-global
+-- 写回一批设备的累计用水量增量，每台设备的检查点保证同一段增量只计入一次
+-- KEYS[1] 累计用水量(毫升) meter:total_usage_ml   KEYS[2] 累计用水量检查点 meter:usage_at
+-- KEYS[3] 累计用水量 meter:total_usage，保留三位小数的字符串，供其他服务读取
+-- ARGV 每四个参数为一台设备：设备编号、增量起点、增量终点、增量(毫升)
+-- 检查点已越过增量起点的设备说明这段时间已由其他节点或此前的重试写入，跳过并返回其编号
+local rejected = {}
+for i = 1, #ARGV, 4 do
+    local id = ARGV[i]
+    local at = redis.call('HGET', KEYS[2], id)
+    if at and tonumber(at) > tonumber(ARGV[i + 1]) then
+        rejected[#rejected + 1] = id
+    else
+        if not at and redis.call('HEXISTS', KEYS[1], id) == 0 then
+            local legacy = redis.call('HGET', KEYS[3], id)
+            if legacy then
+                redis.call('HSET', KEYS[1], id, string.format('%.0f', tonumber(legacy) * 1000))
+            end
+        end
+        local ml = redis.call('HINCRBY', KEYS[1], id, ARGV[i + 3])
+        redis.call('HSET', KEYS[3], id, string.format('%.3f', ml / 1000))
+        redis.call('HSET', KEYS[2], id, ARGV[i + 2])
+    end
+end
+return rejected
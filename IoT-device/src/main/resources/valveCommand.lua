@@ -0,0 +1,52 @@
+---@diagnostic disable: undefined-global
+-- 下发阀门指令：写入规则与指令记录后广播，版本号由调用方预先从 valve:version 分配
+-- KEYS[1] 校区规则 valve:campus   KEYS[2] 设备规则 valve:device   KEYS[2 + i] 第 i 个批次的指令记录
+-- ARGV[1] 下发时间  ARGV[2] 广播频道  ARGV[3] 指令记录保留秒数  ARGV[4] 动作
+-- 随后每三个参数为一个校区批次：版本号、校区编号、逗号分隔的设备编号(整校区指令为空串)
+-- 版本号在脚本外分配，并发下发的批次可能乱序执行，规则只在版本号更大时覆盖
+-- 返回各批次的版本号
+local now = ARGV[1]
+local action = ARGV[4]
+local state = (action == 'close' or action == 'closeAll') and '1' or '0'
+local whole = action == 'closeAll' or action == 'openAll'
+
+local function versionOf(rule)
+    if not rule then
+        return 0
+    end
+    return tonumber(string.match(rule, '^(%d+):'))
+end
+
+local versions = {}
+local batch = 0
+for i = 5, #ARGV, 3 do
+    batch = batch + 1
+    local version = tonumber(ARGV[i])
+    local campus = ARGV[i + 1]
+    local ids = ARGV[i + 2]
+    local rule = version .. ':' .. state
+    local targets = 0
+    if whole then
+        if versionOf(redis.call('HGET', KEYS[1], campus)) < version then
+            redis.call('HSET', KEYS[1], campus, rule)
+        end
+        -- 本校区版本更小的设备规则已被整校区指令取代，读取时以版本号较大者为准，
+        -- 由调用方在脚本之外分块删除，脚本不遍历设备规则表
+    else
+        -- 已被更新的整校区指令取代的设备规则不再写入
+        local campusVersion = versionOf(redis.call('HGET', KEYS[1], campus))
+        for id in string.gmatch(ids, '[^,]+') do
+            if campusVersion < version and versionOf(redis.call('HGET', KEYS[2], id)) < version then
+                redis.call('HSET', KEYS[2], id, rule)
+            end
+            targets = targets + 1
+        end
+    end
+    -- 整校区指令的目标数量由各节点的确认数汇总得到，记录中为 0
+    local record = KEYS[2 + batch]
+    redis.call('HSET', record, 'issuedAt', now, 'campus', campus, 'action', action, 'targets', targets)
+    redis.call('EXPIRE', record, ARGV[3])
+    redis.call('PUBLISH', ARGV[2], version .. '|' .. now .. '|' .. campus .. '|' .. action .. '|' .. ids)
+    versions[#versions + 1] = version
+end
+return versions
@@ -0,0 +1,93 @@
+package com.ncwu.iotdevice.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+
+    private static final List<String> THREE = List.of("node-a", "node-b", "node-c");
+
+    @Test
+    void emptyRingOwnsNothing() {
+        ShardRing ring = new ShardRing(List.of());
+
+        assertNull(ring.ownerOf(0));
+        assertTrue(ring.partitionsOf("node-a").isEmpty());
+    }
+
+    @Test
+    void everyPartitionHasExactlyOneOwner() {
+        ShardRing ring = new ShardRing(THREE);
+
+        Set<Integer> seen = new HashSet<>();
+        for (String node : THREE) {
+            for (int p : ring.partitionsOf(node)) {
+                assertEquals(node, ring.ownerOf(p));
+                assertTrue(seen.add(p), "分区 " + p + " 重复分配");
+            }
+            assertFalse(ring.partitionsOf(node).isEmpty(), node + " 没有分到分区");
+        }
+        assertEquals(ShardRing.PARTITIONS, seen.size());
+        assertTrue(ring.partitionsOf("node-x").isEmpty());
+    }
+
+    @Test
+    void ownershipDependsOnlyOnMembership() {
+        ShardRing ring = new ShardRing(THREE);
+        ShardRing reordered = new ShardRing(List.of("node-c", "node-a", "node-b", "node-a"));
+
+        assertEquals(THREE, reordered.nodes());
+        for (int p = 0; p < ShardRing.PARTITIONS; p++) {
+            assertEquals(ring.ownerOf(p), reordered.ownerOf(p));
+        }
+    }
+
+    @Test
+    void joiningNodeOnlyTakesPartitions() {
+        ShardRing before = new ShardRing(THREE);
+        List<String> four = new ArrayList<>(THREE);
+        four.add("node-d");
+        ShardRing after = new ShardRing(four);
+
+        int moved = 0;
+        for (int p = 0; p < ShardRing.PARTITIONS; p++) {
+            if (!before.ownerOf(p).equals(after.ownerOf(p))) {
+                //换主的分区只能交给新节点，原有节点之间不互相迁移
+                assertEquals("node-d", after.ownerOf(p));
+                moved++;
+            }
+        }
+        assertEquals(after.partitionsOf("node-d").size(), moved);
+        assertTrue(moved > 0 && moved < ShardRing.PARTITIONS / 2, "迁移分区数 " + moved);
+    }
+
+    @Test
+    void leavingNodeOnlyReleasesItsOwnPartitions() {
+        ShardRing before = new ShardRing(THREE);
+        ShardRing after = new ShardRing(List.of("node-a", "node-c"));
+
+        for (int p = 0; p < ShardRing.PARTITIONS; p++) {
+            if (!"node-b".equals(before.ownerOf(p))) {
+                assertEquals(before.ownerOf(p), after.ownerOf(p));
+            } else {
+                assertNotEquals("node-b", after.ownerOf(p));
+            }
+        }
+        assertTrue(after.partitionsOf("node-b").isEmpty());
+    }
+
+    @Test
+    void devicePartitionIsStableAndInRange() {
+        for (String id : List.of("110101001", "239999999", "", "x")) {
+            int p = ShardRing.partitionOf(id);
+            assertTrue(p >= 0 && p < ShardRing.PARTITIONS);
+            assertEquals(p, ShardRing.partitionOf(new StringBuilder(id)));
+        }
+    }
+}
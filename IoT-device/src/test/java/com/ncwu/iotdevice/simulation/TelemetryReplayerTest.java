@@ -0,0 +1,72 @@
+package com.ncwu.iotdevice.simulation;
+
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.iotdevice.config.ServerConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TelemetryReplayerTest {
+
+    @TempDir
+    Path root;
+    private Path recordings;
+    private TelemetryReplayer replayer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        recordings = Files.createDirectory(root.resolve("recordings"));
+        ServerConfig serverConfig = new ServerConfig();
+        serverConfig.setRecordDir(recordings.toString());
+        replayer = new TelemetryReplayer(mock(BatchingProducer.class), serverConfig);
+    }
+
+    @Test
+    void replaysFilesInsideTheRecordingDirectory() throws Exception {
+        writeRecording(Files.createDirectory(recordings.resolve("day1")).resolve("a.rec"));
+
+        assertTrue(replayer.start("day1/a.rec", 0));
+    }
+
+    @Test
+    void rejectsPathsOutsideTheRecordingDirectory() throws IOException {
+        Path outside = root.resolve("secret.rec");
+        writeRecording(outside);
+
+        assertThrows(IOException.class, () -> replayer.start(outside.toString(), 0));
+        assertThrows(IOException.class, () -> replayer.start("../secret.rec", 0));
+        assertThrows(IOException.class, () -> replayer.start("day1/../../secret.rec", 0));
+        assertThrows(IOException.class, () -> replayer.start(".", 0));
+        assertThrows(IOException.class, () -> replayer.start("missing.rec", 0));
+        assertFalse(replayer.isRunning());
+    }
+
+    @Test
+    void rejectsSymlinksLeavingTheRecordingDirectory() throws IOException {
+        Path outside = root.resolve("secret.rec");
+        writeRecording(outside);
+        try {
+            Files.createSymbolicLink(recordings.resolve("link.rec"), outside);
+        } catch (UnsupportedOperationException | IOException e) {
+            //文件系统不支持符号链接时跳过
+            return;
+        }
+
+        assertThrows(IOException.class, () -> replayer.start("link.rec", 0));
+    }
+
+    private static void writeRecording(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.writeInt(TelemetryRecorder.MAGIC);
+            out.writeInt(TelemetryRecorder.VERSION);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.ncwu.iotdevice.simulation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+    /**
+     * 16 个桶向上取整为 32 个，上报周期 100 个 tick，需要在时间轮上转三圈多
+     */
+    private static final int WHEEL_SIZE = 16;
+    private static final long REPORT_MS = 1000;
+    private static final long HEARTBEAT_MS = 2000;
+
+    private final List<int[]> reports = new ArrayList<>();
+    private final List<int[]> heartbeats = new ArrayList<>();
+    private TimingWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        //不启动 ticker，直接同步推进
+        wheel = new TimingWheel(TICK_MS, WHEEL_SIZE, 4, (r, h) -> {
+            reports.add(r);
+            heartbeats.add(h);
+        }, Runnable::run);
+        wheel.setPeriods(REPORT_MS, 0, HEARTBEAT_MS);
+    }
+
+    @Test
+    void reportFiresOnlyAfterFullPeriodAcrossRollovers() {
+        wheel.arm(new int[]{3}, 1);
+
+        List<Integer> reportTicks = new ArrayList<>();
+        List<Integer> heartbeatTicks = new ArrayList<>();
+        for (int tick = 1; tick <= 250; tick++) {
+            int before = reports.size();
+            wheel.advance();
+            if (reports.size() > before) {
+                if (contains(reports.get(before), 3)) {
+                    reportTicks.add(tick);
+                }
+                if (contains(heartbeats.get(before), 3)) {
+                    heartbeatTicks.add(tick);
+                }
+            }
+        }
+        //桶 100 & 31 在第 4、36、68 个 tick 也被扫到，截止时间未到的条目不会提前触发
+        assertEquals(List.of(100, 200), reportTicks);
+        assertEquals(List.of(1, 201), heartbeatTicks);
+    }
+
+    @Test
+    void periodsShorterThanOneTickAreRoundedUp() {
+        wheel.setPeriods(1, 0, 1);
+        wheel.arm(new int[]{0}, 1);
+
+        wheel.advance();
+        wheel.advance();
+        assertEquals(2, reports.size());
+        assertArrayEquals(new int[]{0}, heartbeats.get(0));
+        assertArrayEquals(new int[]{0}, reports.get(0));
+        assertArrayEquals(new int[]{0}, heartbeats.get(1));
+    }
+
+    @Test
+    void disarmedSlotsNeverFire() {
+        wheel.arm(new int[]{1, 2, 3}, 3);
+        assertEquals(3, wheel.getArmedReports());
+
+        //三个条目挂在同一个桶中，摘除中间的一个不影响前后两个
+        wheel.disarm(new int[]{2}, 1);
+        assertFalse(wheel.isArmed(2));
+        assertTrue(wheel.isArmed(1));
+        assertEquals(2, wheel.getArmedReports());
+
+        List<Integer> fired = new ArrayList<>();
+        for (int tick = 1; tick <= 100; tick++) {
+            wheel.advance();
+        }
+        reports.forEach(r -> {
+            for (int slot : r) {
+                fired.add(slot);
+            }
+        });
+        heartbeats.forEach(h -> assertFalse(contains(h, 2)));
+        fired.sort(null);
+        assertEquals(List.of(1, 3), fired);
+    }
+
+    @Test
+    void disarmUnknownSlotIsIgnored() {
+        wheel.disarm(new int[]{1000}, 1);
+        assertFalse(wheel.isArmed(1000));
+        assertEquals(0, wheel.getArmedReports());
+    }
+
+    @Test
+    void rearmReplacesPendingDeadline() {
+        wheel.arm(new int[]{5}, 1);
+        for (int tick = 1; tick <= 50; tick++) {
+            wheel.advance();
+        }
+        //重新挂载后从第 50 个 tick 重新计算一个完整周期，计数不重复累加
+        wheel.arm(new int[]{5}, 1);
+        assertEquals(1, wheel.getArmedReports());
+        int before = reports.size();
+        for (int tick = 51; tick <= 149; tick++) {
+            wheel.advance();
+        }
+        assertTrue(reports.subList(before, reports.size()).stream().noneMatch(r -> contains(r, 5)));
+        wheel.advance();
+        assertTrue(contains(reports.get(reports.size() - 1), 5));
+    }
+
+    @Test
+    void disarmAllClearsEverySlot() {
+        wheel.arm(new int[]{0, 7, 40}, 3);
+        wheel.disarmAll();
+
+        assertEquals(0, wheel.getArmedReports());
+        for (int tick = 1; tick <= 250; tick++) {
+            wheel.advance();
+        }
+        assertTrue(reports.isEmpty());
+
+        //清空后仍可重新挂载
+        wheel.arm(new int[]{7}, 1);
+        wheel.advance();
+        assertArrayEquals(new int[]{7}, heartbeats.get(0));
+    }
+
+    @Test
+    void slotsBeyondInitialCapacityGrowTheTables() {
+        wheel.arm(new int[]{100}, 1);
+        assertTrue(wheel.isArmed(100));
+        wheel.advance();
+        assertArrayEquals(new int[]{100}, heartbeats.get(0));
+    }
+
+    private static boolean contains(int[] slots, int slot) {
+        for (int s : slots) {
+            if (s == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
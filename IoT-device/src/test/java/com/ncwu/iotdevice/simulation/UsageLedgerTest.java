@@ -0,0 +1,246 @@
+package com.ncwu.iotdevice.simulation;
+
+import com.ncwu.iotdevice.config.ServerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsageLedgerTest {
+
+    private static final int CAPACITY = 256;
+    /**
+     * 与 UsageLedger 中写回脚本的 KEYS 数量一致
+     */
+    private static final int FLUSH_KEYS = 3;
+
+    private StringRedisTemplate redisTemplate;
+    private DeviceIndex deviceIndex;
+    private ServerConfig serverConfig;
+    private UsageLedger ledger;
+    /**
+     * 每次 eval 的 KEYS 与 ARGV
+     */
+    private final List<byte[][]> evals = Collections.synchronizedList(new ArrayList<>());
+    private volatile List<Object> replies = List.of();
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        deviceIndex = mock(DeviceIndex.class);
+        when(deviceIndex.capacity()).thenReturn(CAPACITY);
+        serverConfig = new ServerConfig();
+        //刷新线程在测试期间不主动写回，由 stop 同步写回
+        serverConfig.setUsageFlushMs(3_600_000);
+        serverConfig.setUsageFlushChunkSize(2);
+
+        RedisScriptingCommands scripting = mock(RedisScriptingCommands.class, invocation -> {
+            if ("eval".equals(invocation.getMethod().getName())) {
+                evals.add((byte[][]) invocation.getRawArguments()[3]);
+            }
+            return null;
+        });
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.scriptingCommands()).thenReturn(scripting);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            RedisCallback<?> callback = invocation.getArgument(0);
+            callback.doInRedis(connection);
+            return replies;
+        });
+
+        ledger = new UsageLedger(redisTemplate, serverConfig, deviceIndex, new SimpleMeterRegistry());
+        ledger.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ledger.stop();
+    }
+
+    @Test
+    void integratesFlowBetweenReports() {
+        assertTrue(ledger.needsBase(0));
+        assertEquals(0, ledger.record(0, id(0), 1, 1000, 0.5, "", ""));
+        assertEquals(1000, ledger.record(0, id(0), 0, 3000, 0.5, "", ""));
+        assertEquals(1500, ledger.record(0, id(0), 0, 4000, 0.5, "", ""));
+
+        ledger.stop();
+
+        assertEquals(List.of(delta(0, 1000, 4000, 1500)), flushed());
+    }
+
+    @Test
+    void roundingErrorCarriesIntoNextReport() {
+        ledger.record(0, id(0), 1, 1000, 0.0004, "", "");
+
+        assertEquals(0, ledger.record(0, id(0), 0, 2000, 0.0004, "", ""));
+        assertEquals(1, ledger.record(0, id(0), 0, 3000, 0.0004, "", ""));
+        assertEquals(1, ledger.record(0, id(0), 0, 4000, 0.0004, "", ""));
+        assertEquals(2, ledger.record(0, id(0), 0, 5000, 0.0004, "", ""));
+    }
+
+    @Test
+    void duplicateAndOutOfOrderReportsAddNothing() {
+        ledger.record(0, id(0), 1, 1000, 1.0, "", "");
+        assertEquals(1000, ledger.record(0, id(0), 0, 2000, 1.0, "", ""));
+
+        assertEquals(1000, ledger.record(0, id(0), 2, 3000, 1.0, "", ""));
+        assertEquals(1000, ledger.record(0, id(0), 0, 2000, 1.0, "", ""));
+        assertEquals(1000, ledger.record(0, id(0), 0, 1500, 1.0, "", ""));
+        assertEquals(-1, ledger.record(CAPACITY, id(0), 0, 4000, 1.0, "", ""));
+    }
+
+    @Test
+    void redisBaseReplacesEmptyLocalState() {
+        assertEquals(7000, ledger.record(0, id(0), 1, 5000, 1.0, "7000", "4000"));
+        assertFalse(ledger.needsBase(0));
+        assertEquals(8000, ledger.record(0, id(0), 0, 6000, 1.0, "", ""));
+
+        ledger.stop();
+
+        //增量从 redis 中的检查点开始，不会重复计入检查点之前的用水量
+        assertEquals(List.of(delta(0, 4000, 6000, 1000)), flushed());
+    }
+
+    @Test
+    void flushIsSplitIntoChunks() {
+        for (int slot = 0; slot < 5; slot++) {
+            ledger.record(slot, id(slot), 1, 1000, 1.0, "", "");
+            ledger.record(slot, id(slot), 0, 1100, 1.0, "", "");
+        }
+
+        ledger.stop();
+
+        assertEquals(3, evals.size());
+        assertEquals(FLUSH_KEYS + 2 * 4, evals.get(0).length);
+        assertEquals(FLUSH_KEYS + 4, evals.get(2).length);
+        assertEquals(5, flushed().size());
+    }
+
+    @Test
+    void rejectedDeltaReloadsBaseFromRedis() {
+        when(deviceIndex.slotOf(id(0))).thenReturn(0);
+        replies = List.of(List.of(id(0)));
+        ledger.record(0, id(0), 1, 1000, 1.0, "", "");
+        ledger.record(0, id(0), 0, 2000, 1.0, "", "");
+
+        ledger.stop();
+
+        //检查点已越过本地起点，下一次上报以 redis 为准，从 redis 的检查点继续累计
+        assertTrue(ledger.needsBase(0));
+        assertEquals(9500, ledger.record(0, id(0), 0, 3000, 1.0, "9000", "2500"));
+    }
+
+    @Test
+    void rebuildDrainsOldTableAndMovesReportsToTheNewOne() {
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(deviceIndex).addRebuildListener(listener.capture());
+        ledger.record(0, id(0), 1, 1000, 1.0, "", "");
+        ledger.record(0, id(0), 0, 2000, 1.0, "", "");
+
+        listener.getValue().run();
+
+        //新表中没有本设备的状态，重新从 redis 读取
+        assertTrue(ledger.needsBase(0));
+        assertEquals(0, ledger.record(0, id(0), 0, 3000, 1.0, "", ""));
+        ledger.stop();
+        assertEquals(List.of(delta(0, 1000, 2000, 1000)), flushed());
+    }
+
+    @Test
+    void clearDiscardsPendingDeltas() {
+        ledger.record(0, id(0), 1, 1000, 1.0, "", "");
+        ledger.record(0, id(0), 0, 2000, 1.0, "", "");
+
+        ledger.clear();
+        ledger.stop();
+
+        assertTrue(evals.isEmpty());
+        assertTrue(ledger.needsBase(0));
+    }
+
+    @Test
+    void concurrentReportsOnSharedStripesAreAllCounted() throws InterruptedException {
+        int threads = 8;
+        int reports = 100;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            int worker = w;
+            //相邻线程的槽位落在同一批分段上，互相竞争分段锁
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    for (int slot = worker; slot < CAPACITY; slot += threads) {
+                        ledger.record(slot, id(slot), 1, 1000, 1.0, "", "");
+                    }
+                    for (int r = 1; r <= reports; r++) {
+                        for (int slot = worker; slot < CAPACITY; slot += threads) {
+                            ledger.record(slot, id(slot), 0, 1000 + r * 10L, 1.0, "", "");
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread t : workers) {
+            t.join();
+        }
+        assertNull(failure.get());
+
+        ledger.stop();
+
+        List<String> flushed = flushed();
+        assertEquals(CAPACITY, flushed.size());
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            assertTrue(flushed.contains(delta(slot, 1000, 1000 + reports * 10L, reports * 10L)), id(slot));
+        }
+    }
+
+    /**
+     * 全部写回的增量，格式为 设备编号:起点:终点:毫升
+     */
+    private List<String> flushed() {
+        List<String> result = new ArrayList<>();
+        synchronized (evals) {
+            for (byte[][] keysAndArgs : evals) {
+                for (int i = FLUSH_KEYS; i + 3 < keysAndArgs.length; i += 4) {
+                    result.add(text(keysAndArgs[i]) + ":" + text(keysAndArgs[i + 1]) + ":"
+                            + text(keysAndArgs[i + 2]) + ":" + text(keysAndArgs[i + 3]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String delta(int slot, long from, long to, long ml) {
+        return id(slot) + ":" + from + ":" + to + ":" + ml;
+    }
+
+    private static String id(int slot) {
+        return String.format("110101%03d", slot + 1);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
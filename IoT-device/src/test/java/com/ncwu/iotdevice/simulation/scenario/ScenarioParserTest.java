@@ -0,0 +1,99 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+import com.ncwu.iotdevice.exception.ScenarioSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioParserTest {
+
+    @Test
+    void parsesStatementsAcrossLinesAndSemicolons() {
+        List<ScenarioEvent> events = ScenarioParser.parse("""
+                # 2 校区 12 号楼 02:00 - 02:30 爆管
+                burst campus=2 building=12 from=02:00 to=02:30
+                leak floor=3-5 ratio=5% overnight; shows room=101   # 演示
+                """);
+
+        assertEquals(3, events.size());
+        ScenarioEvent burst = events.get(0);
+        assertEquals(IncidentType.BURST, burst.type());
+        assertEquals(2, burst.campusFrom());
+        assertEquals(2, burst.campusTo());
+        assertEquals(12, burst.buildingFrom());
+        assertEquals(0, burst.floorFrom());
+        assertEquals(2 * 3600, burst.fromSecond());
+        assertEquals(2 * 3600 + 30 * 60, burst.toSecond());
+        assertEquals(1, burst.ratio());
+
+        ScenarioEvent leak = events.get(1);
+        assertEquals(IncidentType.LEAK, leak.type());
+        assertEquals(3, leak.floorFrom());
+        assertEquals(5, leak.floorTo());
+        assertEquals(0.05, leak.ratio(), 1e-9);
+        assertEquals(22 * 3600, leak.fromSecond());
+        assertEquals(6 * 3600, leak.toSecond());
+
+        ScenarioEvent shows = events.get(2);
+        assertEquals(IncidentType.SHOWS, shows.type());
+        assertEquals(101, shows.roomFrom());
+        assertEquals(shows.fromSecond(), shows.toSecond());
+    }
+
+    @Test
+    void midnightAsEndTimeWrapsToZero() {
+        ScenarioEvent event = ScenarioParser.parse("burst from=23:00 to=24:00").get(0);
+
+        assertEquals(23 * 3600, event.fromSecond());
+        assertEquals(0, event.toSecond());
+        assertTrue(event.activeAt(23 * 3600 + 59 * 60));
+        assertFalse(event.activeAt(0));
+        assertFalse(event.activeAt(22 * 3600));
+    }
+
+    @Test
+    void overnightSpansMidnight() {
+        ScenarioEvent event = ScenarioParser.parse("leak overnight").get(0);
+
+        assertTrue(event.activeAt(22 * 3600));
+        assertTrue(event.activeAt(0));
+        assertTrue(event.activeAt(6 * 3600 - 1));
+        assertFalse(event.activeAt(6 * 3600));
+        assertFalse(event.activeAt(12 * 3600));
+    }
+
+    @Test
+    void emptyOrCommentOnlyTextHasNoEvents() {
+        assertTrue(ScenarioParser.parse(null).isEmpty());
+        assertTrue(ScenarioParser.parse("  \n# 只有注释\n;;").isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedStatementsWithTheirNumber() {
+        assertSyntaxError("burst\nflood campus=1", 2);
+        assertSyntaxError("burst color=red", 1);
+        assertSyntaxError("burst campus=4", 1);
+        assertSyntaxError("burst floor=5-3", 1);
+        assertSyntaxError("burst building=x", 1);
+        assertSyntaxError("burst from=24:30", 1);
+        assertSyntaxError("burst to=7:60", 1);
+        assertSyntaxError("leak ratio=0", 1);
+        assertSyntaxError("leak ratio=150%", 1);
+        assertSyntaxError("leak ratio=", 1);
+    }
+
+    @Test
+    void rejectsMoreThanMaxEvents() {
+        String text = "leak\n".repeat(ScenarioParser.MAX_EVENTS);
+        assertEquals(ScenarioParser.MAX_EVENTS, ScenarioParser.parse(text).size());
+
+        assertSyntaxError(text + "burst", ScenarioParser.MAX_EVENTS + 1);
+    }
+
+    private static void assertSyntaxError(String text, int statement) {
+        ScenarioSyntaxException e = assertThrows(ScenarioSyntaxException.class, () -> ScenarioParser.parse(text));
+        assertTrue(e.getMessage().contains("第 " + statement + " 条"), e.getMessage());
+    }
+}
@@ -0,0 +1,110 @@
+package com.ncwu.iotdevice.simulation.scenario;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioTimelineTest {
+
+    /**
+     * 2 校区 12 号楼 1 层、2 校区 12 号楼 3 层、1 校区 12 号楼 1 层各一台水表
+     */
+    private static final List<String> IDS = List.of("121201001", "121203001", "111201001");
+    private static final int FLOOR_1 = 0;
+    private static final int FLOOR_3 = 1;
+    private static final int OTHER_CAMPUS = 2;
+
+    @Test
+    void overnightEventWrapsAroundMidnight() {
+        ScenarioTimeline timeline = compile("leak campus=2 overnight");
+
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(22, 0)));
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(23, 59)));
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(0, 0)));
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(5, 59)));
+        assertEquals(-1, timeline.eventAt(FLOOR_1, at(6, 0)));
+        assertEquals(-1, timeline.eventAt(FLOOR_1, at(12, 0)));
+        assertEquals(-1, timeline.eventAt(FLOOR_1, at(21, 59)));
+        assertEquals(-1, timeline.eventAt(OTHER_CAMPUS, at(23, 0)));
+    }
+
+    @Test
+    void eventEndingAtMidnightStopsAtZero() {
+        ScenarioTimeline timeline = compile("burst from=23:00 to=24:00");
+
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(23, 59)));
+        assertEquals(-1, timeline.eventAt(FLOOR_1, at(0, 0)));
+    }
+
+    @Test
+    void secondsOutsideOneDayWrap() {
+        ScenarioTimeline timeline = compile("burst from=00:00 to=01:00; leak from=23:00 to=24:00");
+
+        assertEquals(0, timeline.eventAt(FLOOR_1, 86_400 + at(0, 30)));
+        assertEquals(1, timeline.eventAt(FLOOR_1, -60));
+    }
+
+    @Test
+    void earlierEventWinsWhereEventsOverlap() {
+        ScenarioTimeline timeline = compile("""
+                burst building=12 floor=1 from=02:00 to=03:00
+                leak campus=2 from=02:30 to=04:00
+                """);
+
+        assertEquals(0, timeline.eventAt(FLOOR_1, at(2, 45)));
+        assertEquals(1, timeline.eventAt(FLOOR_1, at(3, 15)));
+        assertEquals(1, timeline.eventAt(FLOOR_3, at(2, 45)));
+        assertEquals(0, timeline.eventAt(OTHER_CAMPUS, at(2, 45)));
+        assertEquals(-1, timeline.eventAt(OTHER_CAMPUS, at(3, 15)));
+
+        assertEquals(1, timeline.activeEvents(at(2, 15)));
+        assertEquals(2, timeline.activeEvents(at(2, 45)));
+        assertEquals(0, timeline.activeEvents(at(4, 0)));
+        assertEquals(2, timeline.affectedDevices(0));
+        assertEquals(2, timeline.affectedDevices(1));
+    }
+
+    @Test
+    void rangesSelectMatchingMeters() {
+        ScenarioTimeline timeline = compile("shows floor=2-5");
+
+        assertEquals(-1, timeline.eventAt(FLOOR_1, at(9, 0)));
+        assertEquals(0, timeline.eventAt(FLOOR_3, at(9, 0)));
+        assertEquals(1, timeline.affectedDevices(0));
+        assertEquals(-1, timeline.eventAt(-1, at(9, 0)));
+        assertEquals(-1, timeline.eventAt(IDS.size(), at(9, 0)));
+    }
+
+    @Test
+    void ratioSelectsAStableSubset() {
+        List<String> ids = new ArrayList<>();
+        for (int building = 1; building <= 10; building++) {
+            for (int floor = 1; floor <= 10; floor++) {
+                for (int room = 1; room <= 10; room++) {
+                    ids.add(String.format("11%02d%02d%03d", building, floor, room));
+                }
+            }
+        }
+        List<ScenarioEvent> events = ScenarioParser.parse("leak ratio=50%");
+        ScenarioTimeline first = ScenarioTimeline.compile(events, ids.size(), ids::get);
+        ScenarioTimeline second = ScenarioTimeline.compile(events, ids.size(), ids::get);
+
+        int affected = first.affectedDevices(0);
+        assertTrue(affected > 400 && affected < 600, "受影响水表数 " + affected);
+        assertEquals(affected, second.affectedDevices(0));
+        for (int slot = 0; slot < ids.size(); slot++) {
+            assertEquals(first.eventAt(slot, 0), second.eventAt(slot, 0));
+        }
+    }
+
+    private static ScenarioTimeline compile(String text) {
+        return ScenarioTimeline.compile(ScenarioParser.parse(text), IDS.size(), IDS::get);
+    }
+
+    private static int at(int hour, int minute) {
+        return hour * 3600 + minute * 60;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ncwu.iotingress;
+
+import com.ncwu.common.registry.DeviceRegistryConfig;
+import com.ncwu.common.valve.ValveCommandConfig;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+
+@SpringBootApplication
+@EnableScheduling
+@Import({DeviceRegistryConfig.class, ValveCommandConfig.class})
+public class IoTIngressApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(IoTIngressApplication.class, args);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.ncwu.iotingress.config;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.mq.BatchingProducer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 接入数据的批量消息发送器，与设备模拟器共用同一实现
+ * <p>
+ * 调用方是 Netty 的 IO 线程，只使用不阻塞的入队方法，队列已满时连接暂停读取，背压沿 TCP 窗口传回设备。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Configuration
+public class BatchingProducerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public BatchingProducer batchingProducer(RocketMQTemplate rocketMQTemplate, ObjectMapper objectMapper,
+                                             IngressConfig ingressConfig, MeterRegistry meterRegistry) {
+        Counter sent = Counter.builder("ingress.mq.sent")
+                .description("成功发送到 MQ 的消息数")
+                .register(meterRegistry);
+        Counter failed = Counter.builder("ingress.mq.failed")
+                .description("发送 MQ 失败并丢弃的消息数")
+                .register(meterRegistry);
+        BatchingProducer producer = new BatchingProducer(rocketMQTemplate, objectMapper, meterRegistry,
+                sent, failed, "ingress",
+                new BatchingProducer.Settings(ingressConfig::getQueueCapacity,
+                        ingressConfig::getBatchMaxBytes, ingressConfig::getBatchLingerMs));
+        Gauge.builder("ingress.paused.connections", producer, BatchingProducer::waiting)
+                .description("因待发送队列已满而暂停读取的连接数")
+                .register(meterRegistry);
+        return producer;
+    }
+}
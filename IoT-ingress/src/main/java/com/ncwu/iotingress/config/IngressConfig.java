@@ -0,0 +1,41 @@
+package com.ncwu.iotingress.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 接入网关配置
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Component
+@ConfigurationProperties(prefix = "ingress")
+@Data
+public class IngressConfig {
+    //MQTT 监听端口
+    private int mqttPort = 1883;
+    //二进制帧 TCP 监听端口
+    private int tcpPort = 9100;
+    //worker 线程数，0 表示使用 Netty 默认值
+    private int workerThreads = 0;
+    //全连接队列长度，大量设备同时重连时避免 SYN 被丢弃
+    private int soBacklog = 4096;
+    //单帧最大字节数，MQTT 与二进制帧共用
+    private int maxFrameBytes = 4096;
+    //每个连接写缓冲区的低水位与高水位，超过高水位后暂停读取该连接
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    //连接空闲超过该秒数后关闭，MQTT 连接以 keepAlive 的 1.5 倍为准
+    private int idleSeconds = 90;
+    //待发送队列容量，队列满后暂停读取新数据
+    private int queueCapacity = 200_000;
+    //单个批量消息的最大字节数
+    private int batchMaxBytes = 1024 * 1024;
+    //批量消息最长等待毫秒数
+    private int batchLingerMs = 20;
+    //设备凭证密钥，设备凭证为 HMAC-SHA256(密钥, 设备编号)，为空时拒绝全部设备
+    private String deviceSecret;
+}
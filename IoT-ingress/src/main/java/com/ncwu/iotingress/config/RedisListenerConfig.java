@@ -0,0 +1,35 @@
+package com.ncwu.iotingress.config;
+
+import com.ncwu.common.redis.RedisChannelListener;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.iotingress.service.ValveCommandRelay;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * redis 订阅配置
+ * <p>
+ * 服务内唯一的订阅容器，公共组件声明的订阅一并注册在这里
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer valveCommandListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ValveCommandRelay valveCommandRelay,
+                                                                       ObjectProvider<RedisChannelListener> sharedListeners) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(valveCommandRelay, new ChannelTopic(ValveCommand.CHANNEL));
+        RedisChannelListener.registerAll(container, sharedListeners);
+        return container;
+    }
+}
@@ -0,0 +1,349 @@
+package com.ncwu.iotingress.mqtt;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.domain.Bo.MeterDataBo;
+import com.ncwu.common.domain.Bo.WaterQualityDataBo;
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.iotingress.server.DeviceSessionHandler;
+import com.ncwu.iotingress.server.IngressMetrics;
+import com.ncwu.iotingress.service.DeviceAuthenticator;
+import com.ncwu.iotingress.service.ValveCommandRelay;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT 3.1.1 设备会话
+ * <p>
+ * 只实现设备上行需要的子集：CONNECT 以 clientId 作为设备编号、以密码作为十六进制的设备凭证鉴权，
+ * 用户名可以省略，给出时必须与 clientId 相同。设备向 {@code campus/{设备编号}/report}
+ * 发布 json 格式的上报数据，与模拟设备发往 MQ 的载荷相同。支持 QoS 0 与 QoS 1，QoS 1 的 PUBACK
+ * 在数据发送到 MQ 成功后回复，发送失败时不回复，由设备重发。QoS 2 与发往其他主题的发布视为协议错误并断开连接。
+ * <p>
+ * 水表可以订阅 {@code campus/{设备编号}/valve} 接收阀门指令，指令以 QoS 1 下发，
+ * 载荷为 {@code {"version":版本,"action":"close|open|closeAll|openAll","issuedAt":下发时间}}，设备的 PUBACK 即为确认。
+ * 订阅成功后立即推送一次当前生效的阀门状态，下发时间为 0。超过 {@link #RETRY_MILLIS} 未确认的指令以 DUP 标记重发，
+ * 已被更新版本取代的未确认指令不再重发。其他主题的订阅均回复失败。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Slf4j
+public class MqttIngressHandler extends DeviceSessionHandler<MqttMessage> {
+
+    private static final int MQTT_3_1_1 = 4;
+    private static final String TOPIC_PREFIX = "campus/";
+    private static final String TOPIC_SUFFIX = "/report";
+    private static final String VALVE_SUFFIX = "/valve";
+    /**
+     * 未确认的阀门指令上限，超出后丢弃最早的记录
+     */
+    private static final int MAX_INFLIGHT = 16;
+    /**
+     * 阀门指令的重发间隔
+     */
+    private static final long RETRY_MILLIS = 10_000;
+
+    private final DeviceAuthenticator authenticator;
+    private final ObjectMapper objectMapper;
+    private String reportTopic;
+    private String valveTopic;
+    private boolean valveSubscribed;
+    private int nextPacketId;
+    /**
+     * 已下发未确认的阀门指令，报文编号到指令与最近一次发送时间
+     */
+    private final Map<Integer, Inflight> inflight = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Inflight> eldest) {
+            return size() > MAX_INFLIGHT;
+        }
+    };
+    private ScheduledFuture<?> retryTask;
+
+    public MqttIngressHandler(DeviceAuthenticator authenticator, BatchingProducer batcher,
+                              IngressMetrics metrics, ObjectMapper objectMapper, ValveCommandRelay relay) {
+        super(batcher, metrics, relay);
+        this.authenticator = authenticator;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) {
+        if (msg.decoderResult().isFailure()) {
+            log.debug("MQTT 报文解码失败: {}", msg.decoderResult().cause().getMessage());
+            ctx.close();
+            return;
+        }
+        MqttMessageType type = msg.fixedHeader().messageType();
+        if (type == MqttMessageType.CONNECT) {
+            onConnect(ctx, (MqttConnectMessage) msg);
+            return;
+        }
+        //连接建立前的其他报文均为协议错误
+        if (deviceId == null) {
+            ctx.close();
+            return;
+        }
+        switch (type) {
+            case PUBLISH -> onPublish(ctx, (MqttPublishMessage) msg);
+            case PINGREQ -> ctx.write(new MqttMessage(
+                    new MqttFixedHeader(MqttMessageType.PINGRESP, false, MqttQoS.AT_MOST_ONCE, false, 0)));
+            case PUBACK -> onPubAck((MqttPubAckMessage) msg);
+            case SUBSCRIBE -> onSubscribe(ctx, (MqttSubscribeMessage) msg);
+            case UNSUBSCRIBE -> onUnsubscribe(ctx, (MqttUnsubscribeMessage) msg);
+            case DISCONNECT -> ctx.close();
+            default -> {
+                //PUBREC 等 QoS 2 相关报文不支持
+                ctx.close();
+            }
+        }
+    }
+
+    private void onConnect(ChannelHandlerContext ctx, MqttConnectMessage msg) {
+        //同一连接上的第二个 CONNECT 为协议错误
+        if (deviceId != null) {
+            ctx.close();
+            return;
+        }
+        if (msg.variableHeader().version() != MQTT_3_1_1) {
+            refuse(ctx, MqttConnectReturnCode.CONNECTION_REFUSED_UNACCEPTABLE_PROTOCOL_VERSION);
+            return;
+        }
+        if (!authenticator.isReady()) {
+            refuse(ctx, MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE);
+            return;
+        }
+        String clientId = msg.payload().clientIdentifier();
+        String userName = msg.variableHeader().hasUserName() ? msg.payload().userName() : null;
+        byte[] password = msg.variableHeader().hasPassword() ? msg.payload().passwordInBytes() : null;
+        if (password == null || (userName != null && !userName.equals(clientId))) {
+            metrics.getAuthRejected().increment();
+            refuse(ctx, MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD);
+            return;
+        }
+        int type = authenticator.authenticate(clientId, new String(password, StandardCharsets.US_ASCII));
+        if (type < 0) {
+            metrics.getAuthRejected().increment();
+            refuse(ctx, MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD);
+            return;
+        }
+        deviceId = clientId;
+        deviceType = type;
+        reportTopic = TOPIC_PREFIX + clientId + TOPIC_SUFFIX;
+        valveTopic = TOPIC_PREFIX + clientId + VALVE_SUFFIX;
+        //按设备声明的 keepAlive 调整空闲断开时间，协议规定为 1.5 倍
+        int keepAlive = msg.variableHeader().keepAliveTimeSeconds();
+        if (keepAlive > 0) {
+            ctx.pipeline().replace("idle", "idle", new IdleStateHandler(keepAlive * 3 / 2, 0, 0));
+        }
+        ctx.write(connAck(MqttConnectReturnCode.CONNECTION_ACCEPTED));
+        bound(ctx);
+    }
+
+    private void refuse(ChannelHandlerContext ctx, MqttConnectReturnCode code) {
+        ctx.writeAndFlush(connAck(code)).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private static MqttConnAckMessage connAck(MqttConnectReturnCode code) {
+        return MqttMessageBuilders.connAck().returnCode(code).sessionPresent(false).build();
+    }
+
+    private void onPublish(ChannelHandlerContext ctx, MqttPublishMessage msg) {
+        MqttQoS qos = msg.fixedHeader().qosLevel();
+        if (qos == MqttQoS.EXACTLY_ONCE || !reportTopic.equals(msg.variableHeader().topicName())) {
+            log.debug("设备 {} 发布不支持的报文: qos={}, topic={}", deviceId, qos, msg.variableHeader().topicName());
+            ctx.close();
+            return;
+        }
+        metrics.getMqttReceived().increment();
+        int packetId = msg.variableHeader().packetId();
+        Runnable ack = qos == MqttQoS.AT_LEAST_ONCE ? () -> ctx.write(pubAck(packetId)) : null;
+        Object payload;
+        try {
+            payload = decode(msg);
+        } catch (IOException e) {
+            //格式错误的数据重发也无法解析，照常确认避免设备反复重发
+            metrics.getMalformed().increment();
+            log.debug("设备 {} 上报数据无法解析: {}", deviceId, e.getMessage());
+            if (ack != null) {
+                ack.run();
+            }
+            return;
+        }
+        String topic = deviceType == DeviceAuthenticator.METER
+                ? METER_TOPIC : WATER_QUALITY_TOPIC;
+        submit(ctx, topic, payload, ack);
+    }
+
+    /**
+     * 解析上报数据，设备编号与类型以鉴权结果为准，缺省的时间与状态补齐
+     */
+    private Object decode(MqttPublishMessage msg) throws IOException {
+        try (ByteBufInputStream in = new ByteBufInputStream(msg.payload())) {
+            if (deviceType == DeviceAuthenticator.METER) {
+                MeterDataBo dataBo = objectMapper.readValue((InputStream) in, MeterDataBo.class);
+                dataBo.setDevice(deviceType);
+                dataBo.setDeviceId(deviceId);
+                if (dataBo.getTimeStamp() == null) {
+                    dataBo.setTimeStamp(LocalDateTime.now());
+                }
+                if (dataBo.getStatus() == null) {
+                    dataBo.setStatus("normal");
+                }
+                return dataBo;
+            }
+            WaterQualityDataBo dataBo = objectMapper.readValue((InputStream) in, WaterQualityDataBo.class);
+            dataBo.setDevice(deviceType);
+            dataBo.setDeviceId(deviceId);
+            if (dataBo.getTimeStamp() == null) {
+                dataBo.setTimeStamp(LocalDateTime.now());
+            }
+            if (dataBo.getStatus() == null) {
+                dataBo.setStatus("normal");
+            }
+            return dataBo;
+        }
+    }
+
+    private static MqttPubAckMessage pubAck(int packetId) {
+        return new MqttPubAckMessage(
+                new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 2),
+                MqttMessageIdVariableHeader.from(packetId));
+    }
+
+    /**
+     * 只有水表订阅自己的阀门指令主题时授予 QoS 1，其余订阅均回复失败
+     */
+    private void onSubscribe(ChannelHandlerContext ctx, MqttSubscribeMessage msg) {
+        List<MqttTopicSubscription> subscriptions = msg.payload().topicSubscriptions();
+        int[] codes = new int[subscriptions.size()];
+        boolean granted = false;
+        for (int i = 0; i < codes.length; i++) {
+            if (deviceType == DeviceAuthenticator.METER && valveTopic.equals(subscriptions.get(i).topicFilter())) {
+                granted = true;
+                codes[i] = MqttQoS.AT_LEAST_ONCE.value();
+            } else {
+                codes[i] = MqttQoS.FAILURE.value();
+            }
+        }
+        ctx.write(new MqttSubAckMessage(
+                new MqttFixedHeader(MqttMessageType.SUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                MqttMessageIdVariableHeader.from(msg.variableHeader().messageId()),
+                new MqttSubAckPayload(codes)));
+        if (!granted) {
+            return;
+        }
+        valveSubscribed = true;
+        //SUBACK 之后推送当前状态，断线期间错过的指令由此补上
+        syncValve(ctx);
+        if (retryTask == null) {
+            retryTask = ctx.executor().scheduleWithFixedDelay(() -> retry(ctx),
+                    RETRY_MILLIS, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void onUnsubscribe(ChannelHandlerContext ctx, MqttUnsubscribeMessage msg) {
+        if (msg.payload().topics().contains(valveTopic)) {
+            valveSubscribed = false;
+        }
+        ctx.write(new MqttUnsubAckMessage(
+                new MqttFixedHeader(MqttMessageType.UNSUBACK, false, MqttQoS.AT_MOST_ONCE, false, 2),
+                MqttMessageIdVariableHeader.from(msg.variableHeader().messageId())));
+    }
+
+    @Override
+    protected boolean writeValve(ChannelHandlerContext ctx, ValveCommand command) {
+        if (!valveSubscribed) {
+            return false;
+        }
+        nextPacketId = nextPacketId % 65535 + 1;
+        if (!publishValve(ctx, nextPacketId, command, false)) {
+            return false;
+        }
+        inflight.put(nextPacketId, new Inflight(command, System.currentTimeMillis()));
+        return true;
+    }
+
+    private boolean publishValve(ChannelHandlerContext ctx, int packetId, ValveCommand command, boolean dup) {
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(Map.of("version", command.version(),
+                    "action", command.action(), "issuedAt", command.issuedAt()));
+        } catch (JsonProcessingException e) {
+            log.warn("阀门指令序列化失败: {}", e.getMessage());
+            return false;
+        }
+        ctx.write(new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, dup, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttPublishVariableHeader(valveTopic, packetId),
+                ctx.alloc().buffer(payload.length).writeBytes(payload)));
+        return true;
+    }
+
+    /**
+     * 重发超时未确认的最新指令，更早的未确认指令已被取代，直接放弃
+     */
+    private void retry(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isActive() || inflight.isEmpty()) {
+            return;
+        }
+        long latest = 0;
+        for (Inflight f : inflight.values()) {
+            latest = Math.max(latest, f.command().version());
+        }
+        long now = System.currentTimeMillis();
+        boolean sent = false;
+        Iterator<Map.Entry<Integer, Inflight>> it = inflight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Inflight> e = it.next();
+            Inflight f = e.getValue();
+            if (f.command().version() < latest) {
+                it.remove();
+            } else if (valveSubscribed && now - f.sentAt() >= RETRY_MILLIS
+                    && publishValve(ctx, e.getKey(), f.command(), true)) {
+                e.setValue(new Inflight(f.command(), now));
+                sent = true;
+            }
+        }
+        if (sent) {
+            ctx.flush();
+        }
+    }
+
+    private void onPubAck(MqttPubAckMessage msg) {
+        Inflight f = inflight.remove(msg.variableHeader().messageId());
+        if (f != null) {
+            valveAcked(f.command().version());
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (retryTask != null) {
+            retryTask.cancel(false);
+        }
+        super.channelInactive(ctx);
+    }
+
+    private record Inflight(ValveCommand command, long sentAt) {
+    }
+}
@@ -0,0 +1,265 @@
+package com.ncwu.iotingress.server;
+
+
+import com.ncwu.common.domain.Bo.MeterDataBo;
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.iotingress.service.DeviceAuthenticator;
+import com.ncwu.iotingress.service.ValveCommandRelay;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个设备连接的会话处理器基类
+ * <p>
+ * 负责已鉴权设备的编号与类型、空闲断开以及连接级背压，具体协议由子类解析。
+ * 所有方法都在该连接所属的 IO 线程上执行，状态不需要同步。
+ * <p>
+ * 数据发送到 MQ 成功后才向设备确认，发送失败的数据不确认，由设备按协议重发，网关重启或 MQ 故障时不会丢失已确认的数据。
+ * <p>
+ * 背压有两个来源：待发送队列已满时 {@link #submit} 暂存当前数据并停止读取，等待发送线程回调恢复；
+ * 设备读取确认的速度跟不上、写缓冲区超过高水位时同样停止读取，回落到低水位后恢复。
+ * 停止读取后内核接收缓冲区逐渐填满，TCP 窗口收缩，设备端的发送随之放慢，网关内存不随连接数失控。
+ * <p>
+ * 连接鉴权后登记到 {@link ValveCommandRelay}，同一设备的新连接会关闭旧连接。
+ * 阀门指令由子类按协议推送给水表，旧版本的指令直接丢弃。水表接入或订阅阀门指令时先同步一次当前生效的状态，
+ * 同步不是新的下发，设备对它的确认不计入指令记录。
+ * 关阀指令推送后，设备第一条零流量上报记录从下发到生效的延迟。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Slf4j
+public abstract class DeviceSessionHandler<I> extends SimpleChannelInboundHandler<I> {
+
+    public static final String METER_TOPIC = "Meter-Data";
+    public static final String WATER_QUALITY_TOPIC = "WaterQuality-Data";
+
+    protected final BatchingProducer batcher;
+    protected final IngressMetrics metrics;
+    protected final ValveCommandRelay relay;
+
+    /**
+     * 已鉴权的设备编号与类型，未鉴权时为 null 与 0
+     */
+    protected String deviceId;
+    protected int deviceType;
+
+    /**
+     * 队列已满时暂存的数据，恢复后按到达顺序重新入队
+     */
+    private final ArrayDeque<Pending> backlog = new ArrayDeque<>(2);
+    private boolean waiting;
+
+    /**
+     * 鉴权成功后的连接上下文，阀门指令从其他线程经此切换到 IO 线程
+     */
+    private volatile ChannelHandlerContext session;
+    private long valveVersion;
+    private long valveIssuedAt;
+    /**
+     * 最近一次状态同步推送的版本
+     */
+    private long syncVersion;
+
+    protected DeviceSessionHandler(BatchingProducer batcher, IngressMetrics metrics, ValveCommandRelay relay) {
+        this.batcher = batcher;
+        this.metrics = metrics;
+        this.relay = relay;
+    }
+
+    /**
+     * 鉴权成功后调用，登记到阀门指令转发，同一设备已有的连接被关闭
+     */
+    protected void bound(ChannelHandlerContext ctx) {
+        session = ctx;
+        relay.register(deviceId, this);
+        syncValve(ctx);
+    }
+
+    /**
+     * 向水表同步当前生效的阀门状态，在 IO 线程上调用，不 flush
+     */
+    protected void syncValve(ChannelHandlerContext ctx) {
+        if (deviceType != DeviceAuthenticator.METER) {
+            return;
+        }
+        ValveCommand current = relay.current(deviceId);
+        if (current == null || current.version() < valveVersion || !writeValve(ctx, current)) {
+            return;
+        }
+        //版本相同时是对已下发指令的重发，确认照常计数
+        if (current.version() > valveVersion) {
+            valveVersion = current.version();
+            syncVersion = current.version();
+        }
+    }
+
+    /**
+     * 同一设备从新连接接入，关闭本连接，可在任意线程调用
+     */
+    public void takenOver() {
+        ChannelHandlerContext ctx = session;
+        if (ctx != null) {
+            log.info("设备 {} 从新连接接入，关闭旧连接 {}", deviceId, ctx.channel().remoteAddress());
+            ctx.close();
+        }
+    }
+
+    /**
+     * 推送一条阀门指令，可在任意线程调用，写入在连接所属的 IO 线程执行
+     */
+    public void deliver(ValveCommand command) {
+        ChannelHandlerContext ctx = session;
+        if (ctx == null) {
+            return;
+        }
+        ctx.executor().execute(() -> {
+            if (!ctx.channel().isActive() || command.version() <= valveVersion || !writeValve(ctx, command)) {
+                return;
+            }
+            valveVersion = command.version();
+            valveIssuedAt = command.closes() ? command.issuedAt() : 0;
+            metrics.getValveDelivered().increment();
+            ctx.flush();
+        });
+    }
+
+    /**
+     * 按协议写出阀门指令，不 flush
+     *
+     * @return 是否已写出，设备未订阅指令时返回 false
+     */
+    protected abstract boolean writeValve(ChannelHandlerContext ctx, ValveCommand command);
+
+    /**
+     * 设备确认了阀门指令
+     */
+    protected void valveAcked(long version) {
+        metrics.getValveAcked().increment();
+        if (version != syncVersion) {
+            relay.acked(version);
+        }
+    }
+
+    /**
+     * 提交一条数据，发送到 MQ 成功后执行确认
+     * <p>
+     * 已停止读取时，同一次读取中解码出的后续数据仍可能到达，按顺序追加到暂存队列
+     *
+     * @param ack 确认回调，只调用 write，切回 IO 线程后执行并 flush；不需要确认时为 null
+     */
+    protected void submit(ChannelHandlerContext ctx, String topic, Object payload, Runnable ack) {
+        if (valveIssuedAt > 0 && payload instanceof MeterDataBo dataBo
+                && dataBo.getFlow() != null && dataBo.getFlow() == 0) {
+            metrics.getValveLatency().record(Math.max(0, System.currentTimeMillis() - valveIssuedAt),
+                    TimeUnit.MILLISECONDS);
+            valveIssuedAt = 0;
+        }
+        Runnable onSent = ack == null ? null : onSent(ctx, ack);
+        if (backlog.isEmpty() && batcher.offer(topic, payload, onSent)) {
+            return;
+        }
+        backlog.add(new Pending(topic, payload, onSent));
+        if (!waiting) {
+            waiting = true;
+            ctx.channel().config().setAutoRead(false);
+            batcher.awaitCapacity(() -> ctx.executor().execute(() -> resume(ctx)));
+        }
+    }
+
+    /**
+     * 发送成功的回调在 RocketMQ 的回调线程中执行，切回 IO 线程写出确认，连接已关闭时不再确认
+     */
+    private static Runnable onSent(ChannelHandlerContext ctx, Runnable ack) {
+        return () -> ctx.executor().execute(() -> {
+            if (ctx.channel().isActive()) {
+                ack.run();
+                ctx.flush();
+            }
+        });
+    }
+
+    private void resume(ChannelHandlerContext ctx) {
+        waiting = false;
+        if (!ctx.channel().isActive()) {
+            backlog.clear();
+            return;
+        }
+        Pending pending;
+        while ((pending = backlog.peek()) != null) {
+            if (!batcher.offer(pending.topic, pending.payload, pending.onSent)) {
+                waiting = true;
+                batcher.awaitCapacity(() -> ctx.executor().execute(() -> resume(ctx)));
+                return;
+            }
+            backlog.poll();
+        }
+        if (ctx.channel().isWritable()) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        metrics.getConnections().incrementAndGet();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        metrics.getConnections().decrementAndGet();
+        backlog.clear();
+        if (session != null) {
+            relay.unregister(deviceId, this);
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        //写缓冲区越过高水位时停止读取，回落到低水位且没有暂存数据时恢复
+        boolean writable = ctx.channel().isWritable();
+        if (!writable) {
+            ctx.flush();
+        }
+        ctx.channel().config().setAutoRead(writable && !waiting);
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            log.debug("设备 {} 连接空闲超时，关闭连接", deviceId);
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (cause instanceof IOException) {
+            //设备断电、网络中断等，直接关闭
+            log.debug("设备 {} 连接异常: {}", deviceId, cause.getMessage());
+        } else {
+            log.warn("设备 {} 处理异常，关闭连接: {}", deviceId, cause.getMessage(), cause);
+        }
+        ctx.close();
+    }
+
+    private record Pending(String topic, Object payload, Runnable onSent) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.ncwu.iotingress.server;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 接入网关监控指标
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Getter
+@Component
+public class IngressMetrics {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Counter mqttReceived;
+    private final Counter tcpReceived;
+    private final Counter authRejected;
+    private final Counter malformed;
+    private final Counter valveDelivered;
+    private final Counter valveAcked;
+    private final Timer valveLatency;
+
+    public IngressMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder("ingress.connections", connections, AtomicInteger::get)
+                .description("当前已建立的设备连接数")
+                .register(meterRegistry);
+        mqttReceived = Counter.builder("ingress.received")
+                .description("收到的设备数据条数")
+                .tag("protocol", "mqtt")
+                .register(meterRegistry);
+        tcpReceived = Counter.builder("ingress.received")
+                .description("收到的设备数据条数")
+                .tag("protocol", "tcp")
+                .register(meterRegistry);
+        authRejected = Counter.builder("ingress.auth.rejected")
+                .description("鉴权失败的连接数")
+                .register(meterRegistry);
+        malformed = Counter.builder("ingress.malformed")
+                .description("无法解析的数据条数")
+                .register(meterRegistry);
+        valveDelivered = Counter.builder("ingress.valve.delivered")
+                .description("推送给设备连接的阀门指令数")
+                .register(meterRegistry);
+        valveAcked = Counter.builder("ingress.valve.acked")
+                .description("设备确认的阀门指令数")
+                .register(meterRegistry);
+        valveLatency = Timer.builder("valve.command.latency")
+                .description("关阀指令从下发到设备第一条零流量上报的耗时")
+                .tag("source", "device")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,129 @@
+package com.ncwu.iotingress.service;
+
+
+import com.ncwu.common.registry.DeviceRegistryIndex;
+import com.ncwu.iotingress.config.IngressConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * 设备接入鉴权
+ * <p>
+ * 设备编号按楼宇、楼层、房间顺序分配，可以被猜到，只校验编号等于任何人都能冒充任意设备。
+ * 每台设备在出厂配置时写入自己的凭证 {@code HMAC-SHA256(密钥, 设备编号)}，密钥只保存在网关的
+ * {@code ingress.device-secret} 中，网关接入时重新计算并以常量时间比较，不需要查询数据库。
+ * 编号还需存在于进程内的设备位图中，不在 IO 线程上访问 redis。位图尚未完成首次加载时拒绝接入，
+ * 设备按自身的重连策略稍后再试。未配置密钥时拒绝全部设备。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Slf4j
+@Component
+public class DeviceAuthenticator {
+
+    public static final int METER = 1;
+    public static final int WATER_QUALITY = 2;
+    /**
+     * 凭证长度，HMAC-SHA256 的输出字节数
+     */
+    public static final int CREDENTIAL_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final DeviceRegistryIndex registryIndex;
+    private final SecretKeySpec key;
+    /**
+     * Mac 不是线程安全的，每个 IO 线程各持有一个实例
+     */
+    private final ThreadLocal<Mac> macs;
+
+    public DeviceAuthenticator(DeviceRegistryIndex registryIndex, IngressConfig ingressConfig) {
+        this.registryIndex = registryIndex;
+        String secret = ingressConfig.getDeviceSecret();
+        if (secret == null || secret.isBlank()) {
+            log.error("未配置 ingress.device-secret，所有设备都将被拒绝接入");
+            this.key = null;
+        } else {
+            this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        }
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * 位图是否可用
+     */
+    public boolean isReady() {
+        return registryIndex.isLoaded();
+    }
+
+    /**
+     * 校验设备编号与凭证
+     *
+     * @param deviceId   设备编号
+     * @param credential 设备凭证，缺省时为 null
+     * @return 设备类型 {@link #METER} 或 {@link #WATER_QUALITY}，凭证错误或未注册的设备返回 -1
+     */
+    public int authenticate(String deviceId, byte[] credential) {
+        if (deviceId == null || deviceId.isEmpty() || key == null
+                || credential == null || credential.length != CREDENTIAL_LENGTH) {
+            return -1;
+        }
+        byte[] expected = macs.get().doFinal(deviceId.getBytes(StandardCharsets.US_ASCII));
+        if (!MessageDigest.isEqual(expected, credential) || !registryIndex.contains(deviceId)) {
+            return -1;
+        }
+        return deviceId.charAt(0) - '0';
+    }
+
+    /**
+     * 校验以十六进制字符串给出的凭证，MQTT 设备将其作为 CONNECT 的密码
+     */
+    public int authenticate(String deviceId, String credentialHex) {
+        if (credentialHex == null || credentialHex.length() != CREDENTIAL_LENGTH * 2) {
+            return -1;
+        }
+        byte[] credential;
+        try {
+            credential = HexFormat.of().parseHex(credentialHex);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return authenticate(deviceId, credential);
+    }
+
+    /**
+     * 计算设备凭证，供设备出厂配置与压测客户端使用
+     *
+     * @param secret   网关密钥
+     * @param deviceId 设备编号
+     */
+    public static byte[] credential(String secret, String deviceId) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac.doFinal(deviceId.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("无法计算设备凭证", e);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            if (key != null) {
+                mac.init(key);
+            }
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("无法初始化设备凭证校验", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ncwu.iotingress.service;
+
+
+import com.ncwu.common.valve.ValveAckBatcher;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.common.valve.ValveRules;
+import com.ncwu.iotingress.config.IngressConfig;
+import com.ncwu.iotingress.server.DeviceSessionHandler;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 阀门指令向真实设备连接的转发
+ * <p>
+ * 已鉴权的设备连接在此登记，同一设备重复接入时关闭旧连接，收到 {@link ValveCommand#CHANNEL} 广播后把指令交给连接所在的 IO 线程，
+ * 由会话按各自的协议推送给设备。整校区指令遍历本网关上该校区的全部水表连接，单台指令按编号直接查找，
+ * 不在本网关上的设备由其他网关或模拟器处理。设备的确认经 {@link ValveAckBatcher} 合并写回指令记录。
+ * <p>
+ * 网关同样保存一份 {@link ValveRules}，设备接入或订阅阀门指令时先同步当前生效的状态，
+ * 断线期间错过的指令不会让设备停留在旧状态。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+@Slf4j
+@Component
+public class ValveCommandRelay implements MessageListener {
+
+    private final ValveAckBatcher ackBatcher;
+    private final StringRedisTemplate redisTemplate;
+    private final String source;
+    private final Map<String, DeviceSessionHandler<?>> sessions = new ConcurrentHashMap<>();
+    private final ValveRules rules = new ValveRules();
+
+    public ValveCommandRelay(ValveAckBatcher ackBatcher, StringRedisTemplate redisTemplate,
+                             IngressConfig ingressConfig) {
+        this.ackBatcher = ackBatcher;
+        this.redisTemplate = redisTemplate;
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        this.source = "ingress-" + host + ":" + ingressConfig.getTcpPort();
+    }
+
+    @PostConstruct
+    void init() {
+        refresh();
+    }
+
+    /**
+     * 兜底刷新，防止订阅消息丢失，也清除已被整校区指令取代或随模拟数据删除的规则
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void refresh() {
+        try {
+            rules.load(redisTemplate);
+        } catch (Exception e) {
+            log.warn("阀门规则加载失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 设备当前生效的阀门状态，没有规则时为 null
+     */
+    public ValveCommand current(String deviceId) {
+        return rules.current(deviceId);
+    }
+
+    /**
+     * 登记已鉴权的设备连接，同一设备重连时新连接取代旧连接并关闭旧连接
+     */
+    public void register(String deviceId, DeviceSessionHandler<?> session) {
+        DeviceSessionHandler<?> previous = sessions.put(deviceId, session);
+        if (previous != null && previous != session) {
+            previous.takenOver();
+        }
+    }
+
+    public void unregister(String deviceId, DeviceSessionHandler<?> session) {
+        sessions.remove(deviceId, session);
+    }
+
+    /**
+     * 设备确认了一条指令
+     */
+    public void acked(long version) {
+        ackBatcher.ack(version, source, 1);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ValveCommand command;
+        try {
+            command = ValveCommand.decode(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            log.warn("无法解析的阀门指令: {}", e.getMessage());
+            return;
+        }
+        rules.apply(command);
+        if (command.campusWide()) {
+            char campus = (char) ('0' + command.campus());
+            sessions.forEach((id, session) -> {
+                if (id.charAt(0) == '1' && id.charAt(1) == campus) {
+                    session.deliver(command);
+                }
+            });
+            return;
+        }
+        for (String id : command.ids()) {
+            DeviceSessionHandler<?> session = sessions.get(id);
+            if (session != null) {
+                session.deliver(command);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.ncwu.iotingress.tcp;
+
+
+import com.ncwu.common.domain.Bo.MeterDataBo;
+import com.ncwu.common.domain.Bo.WaterQualityDataBo;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 紧凑二进制帧格式
+ * <p>
+ * 面向资源受限的设备，每帧前缀 2 字节大端长度(不含自身)，帧体首字节为类型，数值一律大端：
+ * <pre>
+ * 0x01 HELLO    设备编号 9 字节 ASCII | 设备凭证 32 字节
+ * 0x02 METER    seq u32 | 时间戳 i64(epoch 毫秒) | 流量 f32 | 总用水量 f64 | 水压 f32 | 水温 f32 | 标志 u8
+ * 0x03 QUALITY  seq u32 | 时间戳 i64(epoch 毫秒) | pH f32 | 浊度 f32 | 余氯 f32 | 标志 u8
+ * 0x04 PING
+ * 0x05 VALVE_ACK 版本 i64，设备执行阀门指令后回复
+ * 0x81 HELLO_ACK 结果 u8，0 成功，1 设备未注册或凭证错误，2 服务暂不可用
+ * 0x82 ACK      seq u32，数据发送到 MQ 后回复，发送失败时不回复，设备超时后重发
+ * 0x84 PONG
+ * 0x85 VALVE    版本 i64 | 动作 u8，1 关阀，0 开阀
+ * </pre>
+ * 标志位：bit0 阀门关闭，bit1 数据不可信，bit2 爆管。
+ * 一条水表数据 34 字节，相同内容的 json 约 200 字节。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+public final class BinaryFrames {
+
+    public static final byte HELLO = 0x01;
+    public static final byte METER = 0x02;
+    public static final byte QUALITY = 0x03;
+    public static final byte PING = 0x04;
+    public static final byte VALVE_ACK = 0x05;
+    public static final byte HELLO_ACK = (byte) 0x81;
+    public static final byte ACK = (byte) 0x82;
+    public static final byte PONG = (byte) 0x84;
+    public static final byte VALVE = (byte) 0x85;
+
+    public static final byte HELLO_OK = 0;
+    public static final byte HELLO_REJECTED = 1;
+    public static final byte HELLO_UNAVAILABLE = 2;
+
+    public static final int FLAG_VALVE_CLOSED = 1;
+    public static final int FLAG_NOT_CREDIBLE = 1 << 1;
+    public static final int FLAG_BURST_PIPE = 1 << 2;
+
+    public static final int LENGTH_FIELD = 2;
+    public static final int ID_LENGTH = 9;
+    public static final int CREDENTIAL_LENGTH = 32;
+    public static final int HELLO_BODY = ID_LENGTH + CREDENTIAL_LENGTH;
+    public static final int METER_BODY = 4 + 8 + 4 + 8 + 4 + 4 + 1;
+    public static final int QUALITY_BODY = 4 + 8 + 4 + 4 + 4 + 1;
+    public static final int VALVE_ACK_BODY = 8;
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private BinaryFrames() {
+    }
+
+    /**
+     * 读取 HELLO 帧中的设备编号
+     */
+    public static String readDeviceId(ByteBuf frame) {
+        return frame.readCharSequence(ID_LENGTH, StandardCharsets.US_ASCII).toString();
+    }
+
+    /**
+     * 读取 HELLO 帧中紧随设备编号的设备凭证
+     */
+    public static byte[] readCredential(ByteBuf frame) {
+        byte[] credential = new byte[CREDENTIAL_LENGTH];
+        frame.readBytes(credential);
+        return credential;
+    }
+
+    /**
+     * 解析水表数据帧，读取位置位于类型字节之后
+     */
+    public static MeterDataBo readMeter(ByteBuf frame, String deviceId) {
+        MeterDataBo dataBo = new MeterDataBo();
+        dataBo.setDevice(1);
+        dataBo.setDeviceId(deviceId);
+        dataBo.setTimeStamp(toTime(frame.readLong()));
+        dataBo.setFlow((double) frame.readFloat());
+        dataBo.setTotalUsage(frame.readDouble());
+        dataBo.setPressure((double) frame.readFloat());
+        dataBo.setWaterTem((double) frame.readFloat());
+        int flags = frame.readUnsignedByte();
+        dataBo.setIsOpen((flags & FLAG_VALVE_CLOSED) != 0 ? "closed" : "open");
+        dataBo.setStatus(status(flags));
+        return dataBo;
+    }
+
+    /**
+     * 解析水质数据帧，读取位置位于类型字节之后
+     */
+    public static WaterQualityDataBo readQuality(ByteBuf frame, String deviceId) {
+        WaterQualityDataBo dataBo = new WaterQualityDataBo();
+        dataBo.setDevice(2);
+        dataBo.setDeviceId(deviceId);
+        dataBo.setTimeStamp(toTime(frame.readLong()));
+        dataBo.setPh((double) frame.readFloat());
+        dataBo.setTurbidity((double) frame.readFloat());
+        dataBo.setChlorine((double) frame.readFloat());
+        dataBo.setStatus(status(frame.readUnsignedByte()));
+        return dataBo;
+    }
+
+    public static ByteBuf helloAck(ByteBufAllocator alloc, byte result) {
+        return alloc.buffer(LENGTH_FIELD + 2).writeShort(2).writeByte(HELLO_ACK).writeByte(result);
+    }
+
+    public static ByteBuf ack(ByteBufAllocator alloc, int seq) {
+        return alloc.buffer(LENGTH_FIELD + 5).writeShort(5).writeByte(ACK).writeInt(seq);
+    }
+
+    public static ByteBuf pong(ByteBufAllocator alloc) {
+        return alloc.buffer(LENGTH_FIELD + 1).writeShort(1).writeByte(PONG);
+    }
+
+    public static ByteBuf valve(ByteBufAllocator alloc, long version, boolean close) {
+        return alloc.buffer(LENGTH_FIELD + 10).writeShort(10).writeByte(VALVE).writeLong(version)
+                .writeByte(close ? 1 : 0);
+    }
+
+    public static void writeValveAck(ByteBuf out, long version) {
+        out.writeShort(1 + VALVE_ACK_BODY);
+        out.writeByte(VALVE_ACK);
+        out.writeLong(version);
+    }
+
+    public static void writeHello(ByteBuf out, String deviceId, byte[] credential) {
+        out.writeShort(1 + HELLO_BODY);
+        out.writeByte(HELLO);
+        out.writeCharSequence(deviceId, StandardCharsets.US_ASCII);
+        out.writeBytes(credential, 0, CREDENTIAL_LENGTH);
+    }
+
+    public static void writeMeter(ByteBuf out, long seq, long timestamp, float flow, double totalUsage,
+                                  float pressure, float waterTem, int flags) {
+        out.writeShort(1 + METER_BODY);
+        out.writeByte(METER);
+        out.writeInt((int) seq);
+        out.writeLong(timestamp);
+        out.writeFloat(flow);
+        out.writeDouble(totalUsage);
+        out.writeFloat(pressure);
+        out.writeFloat(waterTem);
+        out.writeByte(flags);
+    }
+
+    public static void writeQuality(ByteBuf out, long seq, long timestamp, float ph, float turbidity,
+                                    float chlorine, int flags) {
+        out.writeShort(1 + QUALITY_BODY);
+        out.writeByte(QUALITY);
+        out.writeInt((int) seq);
+        out.writeLong(timestamp);
+        out.writeFloat(ph);
+        out.writeFloat(turbidity);
+        out.writeFloat(chlorine);
+        out.writeByte(flags);
+    }
+
+    public static void writePing(ByteBuf out) {
+        out.writeShort(1);
+        out.writeByte(PING);
+    }
+
+    private static String status(int flags) {
+        if ((flags & FLAG_BURST_PIPE) != 0) {
+            return "burstPipe";
+        }
+        return (flags & FLAG_NOT_CREDIBLE) != 0 ? "error" : "normal";
+    }
+
+    private static LocalDateTime toTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZONE);
+    }
+}
@@ -0,0 +1,120 @@
+package com.ncwu.iotingress.tcp;
+
+
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.common.valve.ValveCommand;
+import com.ncwu.iotingress.server.DeviceSessionHandler;
+import com.ncwu.iotingress.server.IngressMetrics;
+import com.ncwu.iotingress.service.DeviceAuthenticator;
+import com.ncwu.iotingress.service.ValveCommandRelay;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 二进制帧设备会话
+ * <p>
+ * 帧已由长度字段解码器切分并去掉长度前缀。连接建立后第一帧必须是携带设备编号与凭证的 HELLO，
+ * 鉴权通过后数据帧不再携带设备编号，按连接绑定的编号与类型解析。阀门指令以 VALVE 帧下发，设备以 VALVE_ACK 确认。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+@Slf4j
+public class TcpIngressHandler extends DeviceSessionHandler<ByteBuf> {
+
+    private final DeviceAuthenticator authenticator;
+
+    public TcpIngressHandler(DeviceAuthenticator authenticator, BatchingProducer batcher, IngressMetrics metrics,
+                             ValveCommandRelay relay) {
+        super(batcher, metrics, relay);
+        this.authenticator = authenticator;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+        if (!frame.isReadable()) {
+            return;
+        }
+        byte type = frame.readByte();
+        if (type == BinaryFrames.HELLO) {
+            onHello(ctx, frame);
+            return;
+        }
+        if (deviceId == null) {
+            ctx.close();
+            return;
+        }
+        switch (type) {
+            case BinaryFrames.METER -> onData(ctx, frame, DeviceAuthenticator.METER, BinaryFrames.METER_BODY);
+            case BinaryFrames.QUALITY ->
+                    onData(ctx, frame, DeviceAuthenticator.WATER_QUALITY, BinaryFrames.QUALITY_BODY);
+            case BinaryFrames.PING -> ctx.write(BinaryFrames.pong(ctx.alloc()));
+            case BinaryFrames.VALVE_ACK -> {
+                if (frame.readableBytes() == BinaryFrames.VALVE_ACK_BODY) {
+                    valveAcked(frame.readLong());
+                } else {
+                    metrics.getMalformed().increment();
+                }
+            }
+            default -> {
+                log.debug("设备 {} 发送未知帧类型 {}", deviceId, type);
+                ctx.close();
+            }
+        }
+    }
+
+    private void onHello(ChannelHandlerContext ctx, ByteBuf frame) {
+        if (deviceId != null || frame.readableBytes() != BinaryFrames.HELLO_BODY) {
+            ctx.close();
+            return;
+        }
+        if (!authenticator.isReady()) {
+            refuse(ctx, BinaryFrames.HELLO_UNAVAILABLE);
+            return;
+        }
+        String id = BinaryFrames.readDeviceId(frame);
+        int type = authenticator.authenticate(id, BinaryFrames.readCredential(frame));
+        if (type < 0) {
+            metrics.getAuthRejected().increment();
+            refuse(ctx, BinaryFrames.HELLO_REJECTED);
+            return;
+        }
+        deviceId = id;
+        deviceType = type;
+        ctx.write(BinaryFrames.helloAck(ctx.alloc(), BinaryFrames.HELLO_OK));
+        bound(ctx);
+    }
+
+    @Override
+    protected boolean writeValve(ChannelHandlerContext ctx, ValveCommand command) {
+        ctx.write(BinaryFrames.valve(ctx.alloc(), command.version(), command.closes()));
+        return true;
+    }
+
+    private void refuse(ChannelHandlerContext ctx, byte result) {
+        ctx.writeAndFlush(BinaryFrames.helloAck(ctx.alloc(), result)).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private void onData(ChannelHandlerContext ctx, ByteBuf frame, int expectedType, int bodyLength) {
+        //水表只能发送水表帧，传感器只能发送水质帧
+        if (deviceType != expectedType) {
+            ctx.close();
+            return;
+        }
+        metrics.getTcpReceived().increment();
+        if (frame.readableBytes() != bodyLength) {
+            metrics.getMalformed().increment();
+            return;
+        }
+        int seq = frame.readInt();
+        Runnable ack = () -> ctx.write(BinaryFrames.ack(ctx.alloc(), seq));
+        if (expectedType == DeviceAuthenticator.METER) {
+            submit(ctx, METER_TOPIC, BinaryFrames.readMeter(frame, deviceId), ack);
+        } else {
+            submit(ctx, WATER_QUALITY_TOPIC, BinaryFrames.readQuality(frame, deviceId), ack);
+        }
+    }
+}
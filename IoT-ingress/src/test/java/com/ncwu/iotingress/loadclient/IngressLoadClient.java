@@ -0,0 +1,320 @@
+package com.ncwu.iotingress.loadclient;
+
+
+import com.ncwu.iotingress.service.DeviceAuthenticator;
+import com.ncwu.iotingress.tcp.BinaryFrames;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.mqtt.*;
+import io.netty.util.AttributeKey;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接入网关的本地压测客户端
+ * <p>
+ * 独立的 main 程序，不启动 Spring，只放在测试源码中，不打入网关的发布包。
+ * 可在 IDE 中直接运行，或执行 {@code mvn -pl IoT-ingress test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ncwu.iotingress.loadclient.IngressLoadClient -Dexec.args="--connections=10000 ..."}。
+ * <p>
+ * 按给定速率建立大量设备连接，每个连接以固定周期上报水表数据，
+ * 每 5 秒打印一次连接数、发送数、确认数、收到的阀门指令数与因写缓冲区已满而跳过的上报数。
+ * 收到关阀指令后立即确认，之后上报零流量，直到收到开阀指令。设备编号按
+ * 校区 1 的楼宇/楼层/房间顺序生成，需要先在设备模拟器中初始化同样规模的设备，
+ * 并以 secret 给出与网关 ingress.device-secret 相同的密钥，否则鉴权失败。
+ * <p>
+ * 参数以 {@code --key=value} 形式给出：
+ * <pre>
+ * --host=127.0.0.1 --port=9100 --protocol=tcp|mqtt --connections=10000 --connectRate=2000
+ * --intervalMs=5000 --buildings=10 --floors=10 --rooms=100 --localAddresses=10.0.0.2,10.0.0.3 --secret=密钥
+ * </pre>
+ * 单个源地址最多约六万个连接，十万级连接需要通过 localAddresses 指定多个本地地址。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/18
+ */
+public class IngressLoadClient {
+
+    private static final AttributeKey<String> DEVICE_ID = AttributeKey.valueOf("deviceId");
+
+    private final String host;
+    private final int port;
+    private final boolean mqtt;
+    private final int connections;
+    private final int connectRate;
+    private final long intervalMs;
+    private final int buildings;
+    private final int floors;
+    private final int rooms;
+    private final String[] localAddresses;
+    private final String secret;
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder valveCommands = new LongAdder();
+
+    public IngressLoadClient(Map<String, String> args) {
+        this.host = args.getOrDefault("host", "127.0.0.1");
+        this.mqtt = "mqtt".equalsIgnoreCase(args.getOrDefault("protocol", "tcp"));
+        this.port = Integer.parseInt(args.getOrDefault("port", mqtt ? "1883" : "9100"));
+        this.connections = Integer.parseInt(args.getOrDefault("connections", "10000"));
+        this.connectRate = Integer.parseInt(args.getOrDefault("connectRate", "2000"));
+        this.intervalMs = Long.parseLong(args.getOrDefault("intervalMs", "5000"));
+        this.buildings = Integer.parseInt(args.getOrDefault("buildings", "10"));
+        this.floors = Integer.parseInt(args.getOrDefault("floors", "10"));
+        this.rooms = Integer.parseInt(args.getOrDefault("rooms", "100"));
+        String locals = args.get("localAddresses");
+        this.localAddresses = locals == null || locals.isBlank() ? new String[0] : locals.split(",");
+        this.secret = args.getOrDefault("secret", "");
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("缺少 --secret，无法计算设备凭证");
+        }
+        if (connections > buildings * floors * rooms) {
+            throw new IllegalArgumentException("连接数超过设备数量 " + buildings * floors * rooms);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new IngressLoadClient(options).run();
+    }
+
+    public void run() throws InterruptedException {
+        boolean epoll = Epoll.isAvailable();
+        EventLoopGroup group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        if (mqtt) {
+                            ch.pipeline().addLast(new MqttDecoder(), MqttEncoder.INSTANCE, new MqttDevice());
+                        } else {
+                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(256, 0,
+                                    BinaryFrames.LENGTH_FIELD, 0, BinaryFrames.LENGTH_FIELD), new TcpDevice());
+                        }
+                    }
+                });
+        InetSocketAddress remote = new InetSocketAddress(host, port);
+        //按 connectRate 分批建立连接，避免瞬间的 SYN 洪峰压满服务端全连接队列
+        long batchPeriodMs = 100;
+        int perBatch = Math.max(1, connectRate / 10);
+        int index = 0;
+        while (index < connections) {
+            long batchStart = System.currentTimeMillis();
+            for (int i = 0; i < perBatch && index < connections; i++, index++) {
+                //设备编号在通道初始化时写入，channelActive 中一定可见
+                Bootstrap device = bootstrap.clone().attr(DEVICE_ID, meterId(index));
+                if (localAddresses.length == 0) {
+                    device.connect(remote);
+                } else {
+                    device.connect(remote, new InetSocketAddress(localAddresses[index % localAddresses.length], 0));
+                }
+            }
+            long elapsed = System.currentTimeMillis() - batchStart;
+            if (elapsed < batchPeriodMs) {
+                Thread.sleep(batchPeriodMs - elapsed);
+            }
+        }
+        long lastSent = 0;
+        long lastAcked = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            Thread.sleep(5000);
+            long s = sent.sum();
+            long a = acked.sum();
+            System.out.printf("连接 %d，拒绝 %d，发送 %d/s，确认 %d/s，跳过 %d，阀门指令 %d%n",
+                    connected.get(), rejected.get(), (s - lastSent) / 5, (a - lastAcked) / 5, throttled.sum(),
+                    valveCommands.sum());
+            lastSent = s;
+            lastAcked = a;
+        }
+        group.shutdownGracefully();
+    }
+
+    private String meterId(int index) {
+        int room = index % rooms + 1;
+        int floor = index / rooms % floors + 1;
+        int building = index / rooms / floors + 1;
+        return String.format("11%02d%02d%03d", building, floor, room);
+    }
+
+    /**
+     * 鉴权成功后开始周期上报，首次上报随机错开，写缓冲区已满时跳过本次上报
+     */
+    private void startReporting(Channel ch, Runnable report) {
+        connected.incrementAndGet();
+        long delay = ThreadLocalRandom.current().nextLong(Math.max(1, intervalMs));
+        ch.eventLoop().scheduleAtFixedRate(() -> {
+            if (!ch.isActive()) {
+                return;
+            }
+            if (!ch.isWritable()) {
+                throttled.increment();
+                return;
+            }
+            report.run();
+            sent.increment();
+        }, delay, intervalMs, TimeUnit.MILLISECONDS);
+        ch.closeFuture().addListener(f -> connected.decrementAndGet());
+    }
+
+    private final class TcpDevice extends SimpleChannelInboundHandler<ByteBuf> {
+        private long seq;
+        private double totalUsage;
+        private boolean closed;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            String deviceId = ctx.channel().attr(DEVICE_ID).get();
+            ByteBuf hello = ctx.alloc().buffer(BinaryFrames.LENGTH_FIELD + 1 + BinaryFrames.HELLO_BODY);
+            BinaryFrames.writeHello(hello, deviceId, DeviceAuthenticator.credential(secret, deviceId));
+            ctx.writeAndFlush(hello);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            byte type = frame.readByte();
+            if (type == BinaryFrames.ACK) {
+                acked.increment();
+            } else if (type == BinaryFrames.VALVE) {
+                long version = frame.readLong();
+                closed = frame.readByte() == 1;
+                valveCommands.increment();
+                ByteBuf ack = ctx.alloc().buffer(BinaryFrames.LENGTH_FIELD + 1 + BinaryFrames.VALVE_ACK_BODY);
+                BinaryFrames.writeValveAck(ack, version);
+                ctx.writeAndFlush(ack);
+            } else if (type == BinaryFrames.HELLO_ACK) {
+                if (frame.readByte() != BinaryFrames.HELLO_OK) {
+                    rejected.incrementAndGet();
+                    return;
+                }
+                startReporting(ctx.channel(), () -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    float flow = closed ? 0 : (float) (random.nextDouble() * 0.2);
+                    totalUsage += flow * intervalMs / 1000.0;
+                    ByteBuf out = ctx.alloc().buffer(BinaryFrames.LENGTH_FIELD + 1 + BinaryFrames.METER_BODY);
+                    BinaryFrames.writeMeter(out, seq++, System.currentTimeMillis(), flow, totalUsage,
+                            (float) (0.2 + random.nextDouble() * 0.1), (float) (15 + random.nextDouble() * 5),
+                            closed ? BinaryFrames.FLAG_VALVE_CLOSED : 0);
+                    ctx.writeAndFlush(out);
+                });
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    private final class MqttDevice extends SimpleChannelInboundHandler<MqttMessage> {
+        private int packetId;
+        private double totalUsage;
+        private boolean closed;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            String deviceId = ctx.channel().attr(DEVICE_ID).get();
+            ctx.writeAndFlush(MqttMessageBuilders.connect()
+                    .clientId(deviceId)
+                    .hasPassword(true)
+                    .password(HexFormat.of().formatHex(DeviceAuthenticator.credential(secret, deviceId))
+                            .getBytes(StandardCharsets.US_ASCII))
+                    .protocolVersion(MqttVersion.MQTT_3_1_1)
+                    .cleanSession(true)
+                    .keepAlive(60)
+                    .build());
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, MqttMessage msg) {
+            switch (msg.fixedHeader().messageType()) {
+                case PUBACK -> acked.increment();
+                case PUBLISH -> {
+                    //只订阅了阀门指令主题，close 与 closeAll 都以 close 开头
+                    MqttPublishMessage publish = (MqttPublishMessage) msg;
+                    closed = publish.payload().toString(StandardCharsets.UTF_8).contains("\"action\":\"close");
+                    valveCommands.increment();
+                    ctx.writeAndFlush(new MqttPubAckMessage(
+                            new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 2),
+                            MqttMessageIdVariableHeader.from(publish.variableHeader().packetId())));
+                }
+                case CONNACK -> {
+                    if (((MqttConnAckMessage) msg).variableHeader().connectReturnCode()
+                            != MqttConnectReturnCode.CONNECTION_ACCEPTED) {
+                        rejected.incrementAndGet();
+                        return;
+                    }
+                    String topic = "campus/" + ctx.channel().attr(DEVICE_ID).get() + "/report";
+                    ctx.write(MqttMessageBuilders.subscribe()
+                            .messageId(nextPacketId())
+                            .addSubscription(MqttQoS.AT_LEAST_ONCE,
+                                    "campus/" + ctx.channel().attr(DEVICE_ID).get() + "/valve")
+                            .build());
+                    startReporting(ctx.channel(), () -> ctx.writeAndFlush(MqttMessageBuilders.publish()
+                            .topicName(topic)
+                            .qos(MqttQoS.AT_LEAST_ONCE)
+                            .messageId(nextPacketId())
+                            .retained(false)
+                            .payload(ctx.alloc().buffer().writeBytes(payload().getBytes(StandardCharsets.UTF_8)))
+                            .build()));
+                }
+                default -> {
+                }
+            }
+        }
+
+        private int nextPacketId() {
+            packetId = packetId % 65535 + 1;
+            return packetId;
+        }
+
+        private String payload() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double flow = closed ? 0 : random.nextDouble() * 0.2;
+            totalUsage += flow * intervalMs / 1000.0;
+            return String.format(Locale.ROOT,
+                    "{\"timeStamp\":\"%s\",\"flow\":%.3f,\"totalUsage\":%.3f,\"pressure\":%.3f,"
+                            + "\"waterTem\":%.1f,\"isOpen\":\"%s\",\"status\":\"normal\"}",
+                    LocalDateTime.now().withNano(0), flow, totalUsage,
+                    0.2 + random.nextDouble() * 0.1, 15 + random.nextDouble() * 5, closed ? "closed" : "open");
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
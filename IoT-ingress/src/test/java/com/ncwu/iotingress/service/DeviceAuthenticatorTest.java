@@ -0,0 +1,86 @@
+package com.ncwu.iotingress.service;
+
+import com.ncwu.common.registry.DeviceRegistryIndex;
+import com.ncwu.iotingress.config.IngressConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceAuthenticatorTest {
+
+    private static final String SECRET = "test-secret";
+    private static final String METER_ID = "110101001";
+    private static final String SENSOR_ID = "210101001";
+
+    private DeviceRegistryIndex registryIndex;
+    private DeviceAuthenticator authenticator;
+
+    @BeforeEach
+    void setUp() {
+        registryIndex = new DeviceRegistryIndex();
+        registryIndex.replaceAll(List.of(METER_ID, SENSOR_ID));
+        authenticator = new DeviceAuthenticator(registryIndex, config(SECRET));
+    }
+
+    @Test
+    void acceptsRegisteredDevicesWithTheirOwnCredential() {
+        assertEquals(DeviceAuthenticator.METER,
+                authenticator.authenticate(METER_ID, DeviceAuthenticator.credential(SECRET, METER_ID)));
+        assertEquals(DeviceAuthenticator.WATER_QUALITY,
+                authenticator.authenticate(SENSOR_ID, DeviceAuthenticator.credential(SECRET, SENSOR_ID)));
+    }
+
+    @Test
+    void rejectsCredentialOfAnotherDevice() {
+        assertEquals(-1, authenticator.authenticate(METER_ID, DeviceAuthenticator.credential(SECRET, SENSOR_ID)));
+    }
+
+    @Test
+    void rejectsCredentialSignedWithAnotherSecret() {
+        assertEquals(-1, authenticator.authenticate(METER_ID, DeviceAuthenticator.credential("other", METER_ID)));
+    }
+
+    @Test
+    void rejectsUnregisteredDeviceEvenWithValidCredential() {
+        String unknown = "110101002";
+        assertEquals(-1, authenticator.authenticate(unknown, DeviceAuthenticator.credential(SECRET, unknown)));
+    }
+
+    @Test
+    void rejectsMissingOrMalformedCredential() {
+        assertEquals(-1, authenticator.authenticate(METER_ID, (byte[]) null));
+        assertEquals(-1, authenticator.authenticate(METER_ID, new byte[DeviceAuthenticator.CREDENTIAL_LENGTH - 1]));
+        assertEquals(-1, authenticator.authenticate(METER_ID, (String) null));
+        assertEquals(-1, authenticator.authenticate(METER_ID, "zz".repeat(DeviceAuthenticator.CREDENTIAL_LENGTH)));
+    }
+
+    @Test
+    void acceptsHexCredentialUsedAsMqttPassword() {
+        String hex = HexFormat.of().formatHex(DeviceAuthenticator.credential(SECRET, METER_ID));
+        assertEquals(DeviceAuthenticator.METER, authenticator.authenticate(METER_ID, hex));
+        assertEquals(DeviceAuthenticator.METER, authenticator.authenticate(METER_ID, hex.toUpperCase()));
+    }
+
+    @Test
+    void rejectsEveryDeviceWhenSecretIsNotConfigured() {
+        DeviceAuthenticator unconfigured = new DeviceAuthenticator(registryIndex, config(" "));
+        assertEquals(-1, unconfigured.authenticate(METER_ID, DeviceAuthenticator.credential(" ", METER_ID)));
+    }
+
+    @Test
+    void notReadyUntilRegistryIsLoaded() {
+        DeviceAuthenticator notLoaded = new DeviceAuthenticator(new DeviceRegistryIndex(), config(SECRET));
+        assertFalse(notLoaded.isReady());
+        assertTrue(authenticator.isReady());
+    }
+
+    private static IngressConfig config(String secret) {
+        IngressConfig config = new IngressConfig();
+        config.setDeviceSecret(secret);
+        return config;
+    }
+}
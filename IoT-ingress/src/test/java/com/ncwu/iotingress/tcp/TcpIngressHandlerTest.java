@@ -0,0 +1,142 @@
+package com.ncwu.iotingress.tcp;
+
+import com.ncwu.common.domain.Bo.MeterDataBo;
+import com.ncwu.common.mq.BatchingProducer;
+import com.ncwu.common.registry.DeviceRegistryIndex;
+import com.ncwu.iotingress.config.IngressConfig;
+import com.ncwu.iotingress.server.DeviceSessionHandler;
+import com.ncwu.iotingress.server.IngressMetrics;
+import com.ncwu.iotingress.service.DeviceAuthenticator;
+import com.ncwu.iotingress.service.ValveCommandRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 数据确认与 MQ 发送的先后顺序：确认只在批次发送成功的回调之后写出
+ */
+class TcpIngressHandlerTest {
+
+    private static final String SECRET = "test-secret";
+    private static final String METER_ID = "110101001";
+
+    private BatchingProducer batcher;
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        DeviceRegistryIndex registryIndex = new DeviceRegistryIndex();
+        registryIndex.replaceAll(List.of(METER_ID));
+        IngressConfig config = new IngressConfig();
+        config.setDeviceSecret(SECRET);
+        batcher = mock(BatchingProducer.class);
+        TcpIngressHandler handler = new TcpIngressHandler(new DeviceAuthenticator(registryIndex, config), batcher,
+                new IngressMetrics(new SimpleMeterRegistry()), mock(ValveCommandRelay.class));
+        channel = new EmbeddedChannel(new LengthFieldBasedFrameDecoder(4096,
+                0, BinaryFrames.LENGTH_FIELD, 0, BinaryFrames.LENGTH_FIELD), handler);
+
+        ByteBuf hello = Unpooled.buffer();
+        BinaryFrames.writeHello(hello, METER_ID, DeviceAuthenticator.credential(SECRET, METER_ID));
+        channel.writeInbound(hello);
+        ByteBuf helloAck = channel.readOutbound();
+        assertEquals(BinaryFrames.HELLO_ACK, helloAck.getByte(BinaryFrames.LENGTH_FIELD));
+        assertEquals(BinaryFrames.HELLO_OK, helloAck.getByte(BinaryFrames.LENGTH_FIELD + 1));
+        helloAck.release();
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void ackIsWrittenOnlyAfterBatchIsSent() {
+        when(batcher.offer(any(), any(), any())).thenReturn(true);
+        channel.writeInbound(meter(7));
+
+        ArgumentCaptor<Runnable> onSent = ArgumentCaptor.forClass(Runnable.class);
+        verify(batcher).offer(eq(DeviceSessionHandler.METER_TOPIC), any(MeterDataBo.class), onSent.capture());
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound(), "入队后、发送成功前不应确认");
+
+        onSent.getValue().run();
+        channel.runPendingTasks();
+        assertAck(7);
+    }
+
+    @Test
+    void noAckWhenBatchIsNeverSent() {
+        when(batcher.offer(any(), any(), any())).thenReturn(true);
+        channel.writeInbound(meter(1));
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    void noAckAfterConnectionClosed() {
+        when(batcher.offer(any(), any(), any())).thenReturn(true);
+        channel.writeInbound(meter(3));
+        ArgumentCaptor<Runnable> onSent = ArgumentCaptor.forClass(Runnable.class);
+        verify(batcher).offer(any(), any(), onSent.capture());
+
+        channel.close();
+        onSent.getValue().run();
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    void fullQueuePausesReadingAndAcksAfterResumedSend() {
+        when(batcher.offer(any(), any(), any())).thenReturn(false, true, true);
+        channel.writeInbound(meter(1), meter(2));
+        assertFalse(channel.config().isAutoRead());
+
+        ArgumentCaptor<Runnable> resume = ArgumentCaptor.forClass(Runnable.class);
+        verify(batcher).awaitCapacity(resume.capture());
+        resume.getValue().run();
+        channel.runPendingTasks();
+        assertTrue(channel.config().isAutoRead());
+        assertNull(channel.readOutbound(), "重新入队后同样等待发送成功");
+
+        //第一次入队失败，恢复后两条数据按到达顺序入队
+        ArgumentCaptor<Runnable> onSent = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(batcher, times(3)).offer(any(), payloads.capture(), onSent.capture());
+        List<Object> offered = payloads.getAllValues();
+        assertSame(offered.get(0), offered.get(1));
+        assertNotSame(offered.get(1), offered.get(2));
+
+        onSent.getAllValues().get(1).run();
+        onSent.getAllValues().get(2).run();
+        channel.runPendingTasks();
+        assertAck(1);
+        assertAck(2);
+    }
+
+    private static ByteBuf meter(int seq) {
+        ByteBuf frame = Unpooled.buffer();
+        BinaryFrames.writeMeter(frame, seq, System.currentTimeMillis(), 1.5f, 10.0, 0.3f, 20f, 0);
+        return frame;
+    }
+
+    private void assertAck(int seq) {
+        ByteBuf ack = channel.readOutbound();
+        assertNotNull(ack, "缺少确认 " + seq);
+        assertEquals(BinaryFrames.ACK, ack.getByte(BinaryFrames.LENGTH_FIELD));
+        assertEquals(seq, ack.getInt(BinaryFrames.LENGTH_FIELD + 1));
+        ack.release();
+    }
+}
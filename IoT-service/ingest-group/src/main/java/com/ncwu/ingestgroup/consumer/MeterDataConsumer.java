@@ -143,6 +143,20 @@ public class MeterDataConsumer extends ServiceImpl<IotDataMapper, IotDeviceData>
         //正常数据：送到influxdb
         ZonedDateTime zdt = meterDataBo.getTimeStamp().atZone(ZoneId.of("Asia/Shanghai"));
         synchronized (lock2) {
+            if (meterDataBo.getHoldFlow() != null && meterDataBo.getHoldPressure() != null) {
+                //按例外上报：变化时刻之前补一个保持点，被抑制的区间按上一次的数值呈阶梯状
+                //保持点带上抑制期间的累计用水量，区间用水量按首尾累计值相减时不会把抑制期间的用水算到变化之后
+                Point hold = Point
+                        .measurement("water_meter")
+                        .addTag("deviceId", meterDataBo.getDeviceId())
+                        .addField("flow", meterDataBo.getHoldFlow())
+                        .addField("pressure", meterDataBo.getHoldPressure())
+                        .time(zdt.toInstant().minusMillis(1), WritePrecision.MS);
+                if (meterDataBo.getHoldUsage() != null) {
+                    hold.addField("usage", meterDataBo.getHoldUsage());
+                }
+                points.add(hold);
+            }
             points.add(Point
                     .measurement("water_meter")
                     .addTag("deviceId", meterDataBo.getDeviceId())
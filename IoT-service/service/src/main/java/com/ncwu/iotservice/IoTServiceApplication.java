@@ -1,8 +1,12 @@
 package com.ncwu.iotservice;
 
+import com.ncwu.common.cache.NamespaceEpochConfig;
+import com.ncwu.common.clock.VirtualClockConfig;
+import com.ncwu.common.registry.DeviceRegistryConfig;
 import org.apache.dubbo.config.spring.context.annotation.EnableDubbo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -10,6 +14,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 @EnableScheduling
 @EnableDubbo
 @SpringBootApplication
+@Import({DeviceRegistryConfig.class, VirtualClockConfig.class, NamespaceEpochConfig.class})
 @CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.OPTIONS})
 public class IoTServiceApplication {
 
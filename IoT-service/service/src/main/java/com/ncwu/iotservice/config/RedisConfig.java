@@ -1,9 +1,12 @@
 package com.ncwu.iotservice.config;
 
+import com.ncwu.common.redis.RedisChannelListener;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -32,4 +35,16 @@ public class RedisConfig {
         
         return template;
     }
+
+    /**
+     * 服务内唯一的订阅容器，注册公共组件声明的订阅(设备位图、模拟时钟、缓存版本号)
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ObjectProvider<RedisChannelListener> sharedListeners) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        RedisChannelListener.registerAll(container, sharedListeners);
+        return container;
+    }
 }
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.domain.Bo.ErrorDataMessageBO;
 import com.ncwu.common.domain.IotDeviceEvent;
 import com.ncwu.iotservice.exception.DeserializationFailedException;
@@ -30,6 +31,7 @@ public class ErrorDataConsumer implements RocketMQListener<String> {
 
     private final IoTDeviceEventMapper ioTDeviceEventMapper;
     private final ObjectMapper objectMapper;
+    private final VirtualClock virtualClock;
 
     @Override
     public void onMessage(String s) {
@@ -53,16 +55,16 @@ public class ErrorDataConsumer implements RocketMQListener<String> {
         IotDeviceEvent preEvent = ioTDeviceEventMapper.selectOne(eq);
         if (preEvent == null) {
             IotDeviceEvent iotDeviceEvent = new IotDeviceEvent();
-            generateDTO(iotDeviceEvent, errorDataMessageBO);
+            generateDTO(iotDeviceEvent, errorDataMessageBO, virtualClock.now());
             ioTDeviceEventMapper.insert(iotDeviceEvent);
             return;
         }
         LocalDateTime eventTime = preEvent.getEventTime();
         Long id = preEvent.getId();
         //如果当前告警事件与数据库最新数据的时差超过30分钟，则插入一条新告警，将它的 ParentId 指向上一条
-        if (eventTime.isBefore(LocalDateTime.now().minusMinutes(30))) {
+        if (eventTime.isBefore(virtualClock.now().minusMinutes(30))) {
             IotDeviceEvent iotDeviceEvent = new IotDeviceEvent();
-            generateDTO(iotDeviceEvent, errorDataMessageBO);
+            generateDTO(iotDeviceEvent, errorDataMessageBO, virtualClock.now());
             //设置它的前驱
             iotDeviceEvent.setParentId(id);
             ioTDeviceEventMapper.insert(iotDeviceEvent);
@@ -74,7 +76,7 @@ public class ErrorDataConsumer implements RocketMQListener<String> {
         }
     }
 
-    private static void generateDTO(IotDeviceEvent iotDeviceEvent, ErrorDataMessageBO errorDataMessageBO) {
+    private static void generateDTO(IotDeviceEvent iotDeviceEvent, ErrorDataMessageBO errorDataMessageBO, LocalDateTime now) {
         iotDeviceEvent.setDeviceCode(errorDataMessageBO.getDeviceId());
         iotDeviceEvent.setDeviceType(errorDataMessageBO.getDeviceType());
         iotDeviceEvent.setEventType(errorDataMessageBO.getErrorType());
@@ -82,7 +84,7 @@ public class ErrorDataConsumer implements RocketMQListener<String> {
         iotDeviceEvent.setEventDesc(errorDataMessageBO.getDesc());
         //表示根节点
         iotDeviceEvent.setParentId(null);
-        LocalDateTime now = LocalDateTime.now();
+        //告警时间与模拟器上报的时间戳处于同一时间线
         iotDeviceEvent.setEventTime(now);
         iotDeviceEvent.setCnt(1);
     }
@@ -2,6 +2,7 @@ package com.ncwu.iotservice.controller;
 
 
 import com.ncwu.common.apis.BloomFilterService;
+import com.ncwu.common.clock.VirtualClock;
 import cn.hutool.core.date.DateUtil;
 import com.ncwu.common.domain.dto.IdsDTO;
 import com.ncwu.common.enums.ErrorCode;
@@ -43,6 +44,7 @@ import java.util.Map;
 public class IoTDataController {
 
     private final IoTDataService ioTDataService;
+    private final VirtualClock virtualClock;
 
     @DubboReference(version = "1.0.0")
     private BloomFilterService bloomFilterService;
@@ -63,7 +65,7 @@ public class IoTDataController {
      * 校验时间和 id 是否合法
      */
     private @Nullable Result<Double> checkDateAndDeviceId(LocalDateTime start, LocalDateTime end, String deviceId) {
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = virtualClock.now();
         if (end.isBefore(start) || end.isAfter(now)) {
             return Result.fail("Data_1000", "传入时间非法");
         }
@@ -85,7 +87,7 @@ public class IoTDataController {
      */
     private Result<Double> checkDate(LocalDateTime start, LocalDateTime end) {
         //校验时间
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = virtualClock.now();
         if (end.isBefore(start) || end.isAfter(now)) {
             return Result.fail("Data_1000", "传入时间非法");
         }
@@ -2,11 +2,13 @@ package com.ncwu.iotservice.schedule;
 
 
 import com.influxdb.client.QueryApi;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.apis.warning_service.EmailServiceInterFace;
 import com.ncwu.common.apis.warning_service.EventInterFace;
 import com.ncwu.common.apis.warning_service.WeChatNotifyInterFace;
 import com.ncwu.common.domain.IotDeviceEvent;
 import com.ncwu.common.domain.vo.Result;
+import com.ncwu.iotservice.service.impl.IoTDataServiceImpl;
 import jakarta.annotation.PostConstruct;
 import jakarta.mail.MessagingException;
 import lombok.RequiredArgsConstructor;
@@ -17,10 +19,13 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import static com.ncwu.iotservice.util.DataFormatUtils.getDateFormatBo;
+
 /**
  * @author jingxu
  * @version 1.0.0
@@ -32,6 +37,7 @@ import java.util.concurrent.Executors;
 public class CheckHighFlow {
     private final StringRedisTemplate redisTemplate;
     private final QueryApi queryApi;
+    private final VirtualClock virtualClock;
 
     @DubboReference(version = "1.0.0", interfaceClass = EmailServiceInterFace.class)
     private EmailServiceInterFace emailServiceInterFace;
@@ -63,11 +69,15 @@ public class CheckHighFlow {
         }
         if (Integer.parseInt(isInit) == 1) {
             log.info("定时任务---开始检测高流量");
+            //数据时间戳取自模拟时钟，查询窗口按模拟时间计算，时钟加速时窗口随倍速放大
+            LocalDateTime now = virtualClock.now();
+            IoTDataServiceImpl.DateFormatBo window = getDateFormatBo(
+                    now.minus(virtualClock.virtualSpan(15_000), ChronoUnit.MILLIS), now);
             //todo 拉离线设备列表，排除离线设备
             meters.forEach(id -> {
                 Double flow = queryApi.query(String.format("""
                                 from(bucket: "water")
-                                |> range(start: -15s)
+                                |> range(start: %s, stop: %s)
                                 |> filter(fn: (r) =>
                                         r._measurement == "water_meter" and
                                         r._field == "flow" and
@@ -75,7 +85,8 @@ public class CheckHighFlow {
                                    )
                                 |> last()
                                 |> keep(columns: ["_time", "_value"])
-                                """, id)).stream().flatMap(t -> t.getRecords().stream())
+                                """, window.startTime(), window.endTime(), id))
+                        .stream().flatMap(t -> t.getRecords().stream())
                         .map(r -> r.getValue() == null ?
                                 0.0 : Double.parseDouble(r.getValue().toString())).findFirst().orElse(0.0);
                 if (flow >= 0.25) {
@@ -106,9 +117,8 @@ public class CheckHighFlow {
     private void addEvent(String id, Double flow) {
         try {
             IotDeviceEvent iotDeviceEvent = new IotDeviceEvent();
-            LocalDateTime now = LocalDateTime.now();
-            iotDeviceEvent.setCreateTime(now);
-            iotDeviceEvent.setEventTime(now);
+            iotDeviceEvent.setCreateTime(LocalDateTime.now());
+            iotDeviceEvent.setEventTime(virtualClock.now());
             iotDeviceEvent.setEventType("THRESHOLD");
             iotDeviceEvent.setDeviceCode(id);
             iotDeviceEvent.setDeviceType("METER");
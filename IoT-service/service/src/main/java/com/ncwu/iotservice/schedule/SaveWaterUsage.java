@@ -1,5 +1,6 @@
 package com.ncwu.iotservice.schedule;
 
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.iotservice.config.ServiceConfig;
 import com.ncwu.iotservice.entity.WaterUsageRecord;
@@ -13,6 +14,7 @@ import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -20,7 +22,7 @@ import java.util.concurrent.TimeUnit;
 import static com.ncwu.iotservice.util.DataFormatUtils.getDateFormatBo;
 
 /**
- * 每天24点准时调用方法，保存当天用水量到数据库
+ * 每天24点准时调用方法，保存当天用水量到数据库，"每天"按模拟时钟计算
  *
  * @author jingxu
  * @version 1.0.0
@@ -34,6 +36,7 @@ public class SaveWaterUsage {
     private final IoTDataService ioTDataService;
     private final ServiceConfig serviceConfig;
     private final RocketMQTemplate rocketMQTemplate;
+    private final VirtualClock virtualClock;
 
     /**
      * 调度器，用于管理定时任务
@@ -42,6 +45,10 @@ public class SaveWaterUsage {
 
     double sum = 0;
     private String lastExecutionDate = "";
+    /**
+     * 上一次累加用水量的模拟时刻
+     */
+    private LocalDateTime lastRun;
 
     @PostConstruct
     public void init() {
@@ -55,35 +62,56 @@ public class SaveWaterUsage {
         scheduler.scheduleAtFixedRate(this::saveDailyWaterUsage, 0, serviceConfig.getSaveTimeInterval(), TimeUnit.SECONDS);
     }
 
+    /**
+     * 累加上一次执行以来的用水量，模拟时间跨过 0 点时保存前一天的用水量
+     * <p>
+     * 时间取自模拟时钟，时钟加速后一个调度周期可能跨过多个模拟分钟，因此不再等待 23:59 这一分钟，
+     * 而是在跨天时先补齐到 0 点的用水量再保存，查询窗口也从上一次执行的时刻开始，不重叠不遗漏
+     */
     public void saveDailyWaterUsage() {
-        LocalDateTime now = LocalDateTime.now();
-        String currentDate = now.toLocalDate().toString();
-        
-        // 11:00执行每日保存任务，且当天未执行过
-        if (now.getHour() == 23 && now.getMinute() == 59 && !currentDate.equals(lastExecutionDate)) {
-            log.info("开始执行每日用水量保存任务...");
-            //todo 改用消息队列，保证消息不丢失。避免在凌晨系统宕机丢失数据。
-            // 让下游消费者处理保存任务，失败可重试
-            // rocketMQTemplate.convertAndSend("");
-            for (int i = 1; i <= 3; i++) {
-                saveSchoolUsage(i, sum, now);
+        LocalDateTime now = virtualClock.now();
+        if (lastRun == null) {
+            lastRun = now.minus(virtualClock.virtualSpan(serviceConfig.getSaveTimeInterval() * 1000L),
+                    ChronoUnit.MILLIS);
+        }
+        LocalDateTime midnight = now.toLocalDate().atStartOfDay();
+        if (lastRun.isBefore(midnight)) {
+            sum += usageBetween(lastRun, midnight);
+            String currentDate = lastRun.toLocalDate().toString();
+            // 当天未执行过
+            if (!currentDate.equals(lastExecutionDate)) {
+                log.info("开始执行每日用水量保存任务...");
+                //todo 改用消息队列，保证消息不丢失。避免在凌晨系统宕机丢失数据。
+                // 让下游消费者处理保存任务，失败可重试
+                // rocketMQTemplate.convertAndSend("");
+                for (int i = 1; i <= 3; i++) {
+                    saveSchoolUsage(i, sum, midnight.minusMinutes(1));
+                }
+                log.info("每日用水量保存任务执行完成");
+                lastExecutionDate = currentDate; // 记录已执行的日期
             }
-            log.info("每日用水量保存任务执行完成");
             sum = 0;
-            lastExecutionDate = currentDate; // 记录已执行的日期
+            lastRun = midnight;
         }
-        int saveTimeInterval = serviceConfig.getSaveTimeInterval();
+        sum += usageBetween(lastRun, now);
+        lastRun = now;
+    }
+
+    /**
+     * 查询三个校区在 [start, end) 内的用水量之和
+     */
+    private double usageBetween(LocalDateTime start, LocalDateTime end) {
+        double usage = 0;
+        IoTDataServiceImpl.DateFormatBo dateFormatBo = getDateFormatBo(start, end);
         for (int j = 1; j <= 3; j++) {
-            // 只查询最近 saveTimeInterval 分钟的数据,前一个时间段我们已经查过了
-            LocalDateTime startTime = now.minusMinutes(saveTimeInterval);
-            IoTDataServiceImpl.DateFormatBo dateFormatBo = getDateFormatBo(startTime, now);
             Result<Double> schoolUsage = ioTDataService
                     .getSchoolUsageFromDb(j, dateFormatBo.startTime(), dateFormatBo.endTime());
             Double data = schoolUsage.getData();
             if (data != null) {
-                sum += data;
+                usage += data;
             }
         }
+        return usage;
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.ncwu.iotservice.service;
 
 import com.ncwu.common.apis.IoTDataServiceApi;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.domain.bo.ToAIBO;
 import com.ncwu.common.domain.vo.Result;
 import lombok.RequiredArgsConstructor;
@@ -27,10 +28,11 @@ import java.util.stream.Collectors;
 public class IoTDataDubboServiceImpl implements IoTDataServiceApi {
 
     private final com.ncwu.iotservice.mapper.WaterUsageRecordMapper waterUsageRecordMapper;
+    private final VirtualClock virtualClock;
 
     @Override
     public Result<ToAIBO> getRecentWeekUsage() {
-        LocalDateTime startDate = LocalDateTime.now().minusDays(7);
+        LocalDateTime startDate = virtualClock.now().minusDays(7);
         
         List<Double> HY = new ArrayList<>();
         List<Double> LH = new ArrayList<>();
@@ -13,6 +13,8 @@ import com.influxdb.client.QueryApi;
 import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 import com.ncwu.common.apis.iot_service.IotDataService;
+import com.ncwu.common.cache.NamespaceEpoch;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.enums.ErrorCode;
 import com.ncwu.common.enums.SuccessCode;
 import com.ncwu.common.domain.vo.Result;
@@ -73,6 +75,8 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     private final RedissonClient redissonClient;
     private final ObjectMapper objectMapper;
     private final ServiceConfig serviceConfig;
+    private final NamespaceEpoch namespaceEpoch;
+    private final VirtualClock virtualClock;
 
     private final WaterUsageRecordMapper waterUsageRecordMapper;
     private final ExecutorService pool = Executors.newFixedThreadPool(100);
@@ -119,6 +123,14 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     public record DateFormatBo(String startTime, String endTime) {
     }
 
+    /**
+     * 截止到当前模拟时间的最近一段时间，设备上报的时间戳来自模拟时钟，不能用 Flux 的相对时间
+     */
+    private DateFormatBo recentWindow(Duration window) {
+        LocalDateTime now = virtualClock.now();
+        return getDateFormatBo(now.minus(window), now);
+    }
+
     @Override
     public Result<Double> getTotalUsage(String deviceId) {
         Double value = Double.valueOf(Objects.requireNonNull(redisTemplate.opsForHash()
@@ -138,9 +150,10 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     public Result<Double> getFlowNow(String deviceId) {
         //todo 加入redis缓存
         // TTL 不超过5秒 key自定(value结构即可)
+        DateFormatBo window = recentWindow(Duration.ofSeconds(10));
         String fluxQuery = String.format("""
                 from(bucket: "water")
-                |> range(start: -10s)
+                |> range(start: %s, stop: %s)
                 |> filter(fn: (r) =>
                         r._measurement == "water_meter" and
                         r._field == "flow" and
@@ -148,7 +161,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                    )
                 |> last()
                 |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         Double flow;
         try {
             flow = influxDBClient.getQueryApi().query(fluxQuery).stream()
@@ -179,7 +192,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
 
         RLock lock = redissonClient.getLock("SchoolUsageUpdateLock" + school);
         Double res = null;
-        String json = redisTemplate.opsForValue().get("SchoolUsage:" + school);
+        String json = redisTemplate.opsForValue().get(namespaceEpoch.key(NamespaceEpoch.SCHOOL_USAGE, school));
         if (json == null) {
             try {
                 if (lock.tryLock()) {
@@ -234,7 +247,9 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
         try {
             //序列化
             String json = objectMapper.writeValueAsString(usageBO);
-            redisTemplate.opsForValue().set("SchoolUsage:" + school, json);
+            //逻辑过期时间之外再给键设置过期时间，命名空间换代后旧键由 redis 回收
+            redisTemplate.opsForValue().set(namespaceEpoch.key(NamespaceEpoch.SCHOOL_USAGE, school), json,
+                    Duration.ofHours(1));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -299,8 +314,8 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
 
     @Override
     public Result<Double> getAnnulus(String deviceId) {
-        LocalDateTime todayAtThisTime = LocalDateTime.now();
-        LocalDateTime yestDayZeroTime = LocalDate.now().minusDays(1).atStartOfDay();
+        LocalDateTime todayAtThisTime = virtualClock.now();
+        LocalDateTime yestDayZeroTime = todayAtThisTime.toLocalDate().minusDays(1).atStartOfDay();
         LocalDateTime yestDayAtThisTime = todayAtThisTime.minusDays(1);
         LocalDateTime todayZeroTime = yestDayZeroTime.plusDays(1);
 
@@ -333,7 +348,8 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
 
     @Override
     public Result<Double> getWaterQualityScore(String deviceId) {
-        String score = redisTemplate.opsForValue().get("WaterQualityScore:" + deviceId);
+        String score = redisTemplate.opsForValue()
+                .get(namespaceEpoch.key(NamespaceEpoch.WATER_QUALITY_SCORE, deviceId));
         if (score != null) {
             return Result.ok(Double.parseDouble(score));
         } else {
@@ -393,7 +409,8 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                         String resultStr = output.toString().trim();
                         try {
                             double result = keep2(Double.parseDouble(resultStr)) * 100;
-                            redisTemplate.opsForValue().set("WaterQualityScore:" + deviceId, String.valueOf(result)
+                            String scoreKey = namespaceEpoch.key(NamespaceEpoch.WATER_QUALITY_SCORE, deviceId);
+                            redisTemplate.opsForValue().set(scoreKey, String.valueOf(result)
                                     , 60 + ThreadLocalRandom.current().nextInt(10), TimeUnit.SECONDS);
                             return Result.ok(result);
                         } catch (NumberFormatException e) {
@@ -413,9 +430,10 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     @Override
     public Result<Double> getTurbidity(String deviceId) {
         //todo redis缓存 TTL 不超过5秒，key自定义
+        DateFormatBo window = recentWindow(Duration.ofMinutes(1));
         String flux = String.format("""
                     from(bucket: "water")
-                      |> range(start: -1m)
+                      |> range(start: %s, stop: %s)
                       |> filter(fn: (r) =>
                         r._measurement == "water_quality" and
                         r._field == "turbidity" and
@@ -423,7 +441,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                       )
                       |> last()
                       |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         return getQueryResult(flux);
     }
 
@@ -445,9 +463,10 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     @Override
     public Result<Double> getPh(String deviceId) {
         //todo redis缓存 TTL 不超过5秒，key自定义
+        DateFormatBo window = recentWindow(Duration.ofMinutes(1));
         String flux = String.format("""
                     from(bucket: "water")
-                      |> range(start: -1m)
+                      |> range(start: %s, stop: %s)
                       |> filter(fn: (r) =>
                         r._measurement == "water_quality" and
                         r._field == "ph" and
@@ -455,16 +474,17 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                       )
                       |> last()
                       |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         return getQueryResult(flux);
     }
 
     @Override
     public Result<Double> getChlorine(String deviceId) {
         //todo redis缓存 TTL 不超过5秒，key自定义
+        DateFormatBo window = recentWindow(Duration.ofMinutes(1));
         String flux = String.format("""
                     from(bucket: "water")
-                      |> range(start: -1m)
+                      |> range(start: %s, stop: %s)
                       |> filter(fn: (r) =>
                         r._measurement == "water_quality" and
                         r._field == "chlorine" and
@@ -472,7 +492,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                       )
                       |> last()
                       |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         return getQueryResult(flux);
     }
 
@@ -586,9 +606,10 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     public Result<Double> getPressureNow(String deviceId) {
         //todo 加入redis缓存
         // TTL 不超过5秒 key自定(value结构即可)
+        DateFormatBo window = recentWindow(Duration.ofMinutes(1));
         String fluxQuery = String.format("""
                 from(bucket: "water")
-                |> range(start: -1m)
+                |> range(start: %s, stop: %s)
                 |> filter(fn: (r) =>
                                 r._measurement == "water_meter" and
                         r._field == "pressure" and
@@ -596,7 +617,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                    )
                 |> last()
                 |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         Double pressure;
         try {
             pressure = influxDBClient.getQueryApi().query(fluxQuery).stream()
@@ -614,9 +635,10 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     public Result<Double> getTemNow(String deviceId) {
         //todo 加入redis缓存
         // TTL 不超过5秒 key自定(value结构即可)
+        DateFormatBo window = recentWindow(Duration.ofMinutes(1));
         String fluxQuery = String.format("""
                 from(bucket: "water")
-                |> range(start: -1m)
+                |> range(start: %s, stop: %s)
                 |> filter(fn: (r) =>
                                 r._measurement == "water_meter" and
                         r._field == "tem" and
@@ -624,7 +646,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
                    )
                 |> last()
                 |> keep(columns: ["_time", "_value"])
-                """, deviceId);
+                """, window.startTime(), window.endTime(), deviceId);
         Double tem;
         try {
             tem = influxDBClient.getQueryApi().query(fluxQuery).stream()
@@ -678,7 +700,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     @Override
     public Result<List<LocalDateTime>> getHighWaterUsageTime(int campus) {
         // 查询过去一天内，每30分钟用水数据（48个时间段）
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = virtualClock.now();
 
         // 生成时间段列表
         List<LocalDateTime[]> timeSlots = new ArrayList<>();
@@ -736,10 +758,11 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
         HashMap<Integer, Double> map = new HashMap<>();
         double sum = 0.0;
         CompletableFuture<Double>[] futures = new CompletableFuture[4];
+        LocalDateTime now = virtualClock.now();
         for (int i = 1; i <= 3; i++) {
             int finalI = i;
-            futures[i] = CompletableFuture.supplyAsync(() -> getSchoolUsage(finalI, LocalDateTime.now().minusDays(1),
-                    LocalDateTime.now()).getData());
+            futures[i] = CompletableFuture.supplyAsync(() -> getSchoolUsage(finalI, now.minusDays(1),
+                    now).getData());
         }
         for (int i = 1; i <= 3; i++) {
             res[i] = futures[i].join();
@@ -758,7 +781,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
 
     @Override
     public Result<ToAIBO> getRecentWeekUsage() {
-        LocalDateTime startDate = LocalDateTime.now().minusDays(7);
+        LocalDateTime startDate = virtualClock.now().minusDays(7);
 
         List<Double> HY = new ArrayList<>();
         List<Double> LH = new ArrayList<>();
@@ -807,7 +830,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
 
     @Override
     public Result<Map<String, Double>> getSwings() {
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = virtualClock.now();
         //结果映射集，每个学校的用水波动指数
         Map<String, Double> result = new HashMap<>();
         for (int i = 1; i <= 3; i++) {
@@ -841,7 +864,7 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
     public Result<Double> getUnNormalUsage(int campus) {
         double res = 0;
         // 从当天晚上22点整开始
-        LocalDateTime night = LocalDateTime.now()
+        LocalDateTime night = virtualClock.now()
                 .withHour(22)
                 .withMinute(0)
                 .withSecond(0);
@@ -994,8 +1017,8 @@ public class IoTDataServiceImpl extends ServiceImpl<IoTDeviceDataMapper, IotDevi
      * 构建历史数据缓存键
      */
     private String buildHistoricalCacheKey(int school, String startTime, String endTime) {
-        return String.format("historical:usage:%d:%s:%s", school,
+        return namespaceEpoch.key(NamespaceEpoch.HISTORICAL_USAGE, String.format("%d:%s:%s", school,
                 startTime.replaceAll("[:.]", "-"),
-                endTime.replaceAll("[:.]", "-"));
+                endTime.replaceAll("[:.]", "-")));
     }
 }
@@ -6,6 +6,7 @@ import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.QueryApi;
 import com.influxdb.query.FluxTable;
+import com.ncwu.common.clock.VirtualClock;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.domain.IotDeviceEvent;
 import com.ncwu.iotservice.mapper.IoTDeviceEventMapper;
@@ -43,6 +44,7 @@ public class IotEventServiceImpl extends ServiceImpl<IoTDeviceEventMapper, IotDe
     private String influxToken;
 
     private final StringRedisTemplate redisTemplate;
+    private final VirtualClock virtualClock;
 
     @PostConstruct
     public void init() {
@@ -57,7 +59,7 @@ public class IotEventServiceImpl extends ServiceImpl<IoTDeviceEventMapper, IotDe
 
     @Override
     public Result<List<List<String>>> getLeakingDeviceList() {
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = virtualClock.now();
         //是否位于目标时段
         if (now.getHour() == 23 || now.getHour() <= 5) {
             return check();
@@ -0,0 +1,137 @@
+package com.ncwu.common.cache;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存命名空间的版本号
+ * <p>
+ * 缓存键的格式为 {@code 命名空间 + v版本号: + 后缀}，例如 {@code cache:device:status:v3:1101001001}。
+ * 清空整个命名空间只需对 {@link #KEY} 中对应字段执行一次 HINCRBY，旧版本的键不再被读到，由各自的过期时间回收，
+ * 不必再 SCAN 整个键空间逐个删除。因此挂在命名空间下的缓存写入时都必须带过期时间。
+ * <p>
+ * 各实例在本地保存版本号，变更经 {@link #CHANNEL} 广播，另每 {@link #REFRESH_MILLIS} 毫秒兜底重新读取一次，
+ * 拼接缓存键通常不访问 redis。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Slf4j
+public class NamespaceEpoch implements MessageListener {
+
+    /**
+     * 各命名空间的版本号，字段为命名空间
+     */
+    public static final String KEY = "cache:epoch";
+    /**
+     * 版本号变更通知频道，消息内容为 {@code 命名空间|版本号}
+     */
+    public static final String CHANNEL = "cache:epoch:change";
+    private static final long REFRESH_MILLIS = 1000;
+
+    //设备状态缓存
+    public static final String DEVICE_STATUS = "cache:device:status:";
+    //校区实时用水量
+    public static final String SCHOOL_USAGE = "SchoolUsage:";
+    //校区历史用水量
+    public static final String HISTORICAL_USAGE = "historical:usage:";
+    //水质评分
+    public static final String WATER_QUALITY_SCORE = "WaterQualityScore:";
+    //校区用水量预测
+    public static final String PREDICTION_USAGE = "WaterPredictionUsage:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, Entry> epochs = new ConcurrentHashMap<>();
+
+    public NamespaceEpoch(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 命名空间当前版本下的缓存键
+     *
+     * @param namespace 命名空间，以冒号结尾
+     * @param suffix    键的其余部分
+     */
+    public String key(String namespace, Object suffix) {
+        return prefix(namespace) + suffix;
+    }
+
+    /**
+     * 命名空间当前版本下的键前缀，批量拼接或在 pipeline 中使用时先取一次前缀
+     */
+    public String prefix(String namespace) {
+        return namespace + "v" + epoch(namespace) + ":";
+    }
+
+    /**
+     * 命名空间当前的版本号，从未清空过的命名空间为 0
+     */
+    public long epoch(String namespace) {
+        long now = System.currentTimeMillis();
+        Entry entry = epochs.get(namespace);
+        if (entry != null && now - entry.loadedAt < REFRESH_MILLIS) {
+            return entry.epoch;
+        }
+        try {
+            Object value = redisTemplate.opsForHash().get(KEY, namespace);
+            long epoch = value == null ? 0 : Long.parseLong(value.toString());
+            update(namespace, epoch, now);
+            return epoch;
+        } catch (Exception e) {
+            //redis 暂时不可用时沿用本地版本号
+            log.warn("缓存版本号读取失败 {}: {}", namespace, e.getMessage());
+            return entry == null ? 0 : entry.epoch;
+        }
+    }
+
+    /**
+     * 清空命名空间：版本号加一并广播，O(1)
+     *
+     * @return 新的版本号
+     */
+    public long invalidate(String namespace) {
+        long epoch = invalidate(redisTemplate, namespace);
+        update(namespace, epoch, System.currentTimeMillis());
+        return epoch;
+    }
+
+    /**
+     * 供没有注入本组件的静态工具方法使用，其他实例经广播更新本地版本号
+     */
+    public static long invalidate(StringRedisTemplate redisTemplate, String namespace) {
+        Long epoch = redisTemplate.opsForHash().increment(KEY, namespace, 1);
+        redisTemplate.convertAndSend(CHANNEL, namespace + "|" + epoch);
+        return epoch == null ? 0 : epoch;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int split = body.lastIndexOf('|');
+        try {
+            update(body.substring(0, split), Long.parseLong(body.substring(split + 1)), System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("无法解析的缓存版本号变更: {}", body);
+        }
+    }
+
+    /**
+     * 版本号只增不减，乱序到达的旧消息不会覆盖新版本
+     */
+    private void update(String namespace, long epoch, long now) {
+        epochs.merge(namespace, new Entry(epoch, now),
+                (old, next) -> next.epoch >= old.epoch ? next : new Entry(old.epoch, now));
+    }
+
+    private record Entry(long epoch, long loadedAt) {
+    }
+}
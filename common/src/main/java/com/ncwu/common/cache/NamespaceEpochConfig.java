@@ -0,0 +1,30 @@
+package com.ncwu.common.cache;
+
+
+import com.ncwu.common.redis.RedisChannelListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 缓存命名空间版本号配置，读写或清空版本化缓存的服务通过 @Import 引入
+ * <p>
+ * 版本号变更的订阅由服务自己的订阅容器注册，见 {@link RedisChannelListener}
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Configuration
+public class NamespaceEpochConfig {
+
+    @Bean
+    public NamespaceEpoch namespaceEpoch(StringRedisTemplate redisTemplate) {
+        return new NamespaceEpoch(redisTemplate);
+    }
+
+    @Bean
+    public RedisChannelListener namespaceEpochListener(NamespaceEpoch namespaceEpoch) {
+        return new RedisChannelListener(namespaceEpoch, NamespaceEpoch.CHANNEL);
+    }
+}
@@ -0,0 +1,183 @@
+package com.ncwu.common.clock;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 模拟世界的时钟
+ * <p>
+ * 模拟时间由一个锚点推算：{@code 模拟时间 = 锚点模拟时间 + (当前真实时间 - 锚点真实时间) * 倍速}，
+ * 倍速为 288 时一个模拟日在五分钟内走完。锚点以 {@code 真实时间|模拟时间|倍速} 的格式保存在 {@link #KEY}，
+ * 修改时间或倍速时在当前模拟时刻重新锚定，时钟连续不回跳，并经 {@link #CHANNEL} 广播给所有实例。
+ * <p>
+ * 模拟器的上报时间戳、流量模型的当天时间与 IoT 服务的定时任务都从这里取时间，读取只做一次乘加，不访问 redis。
+ * redis 中没有锚点时以启动配置的倍速从当前真实时间开始，倍速为 1 时与真实时钟一致。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Slf4j
+public class VirtualClock implements MessageListener {
+
+    /**
+     * 时钟锚点
+     */
+    public static final String KEY = "VirtualClock";
+    /**
+     * 时钟变更通知频道，消息内容为新的锚点
+     */
+    public static final String CHANNEL = "clock:change";
+    public static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final StringRedisTemplate redisTemplate;
+    private final double initialFactor;
+    private volatile Anchor anchor;
+
+    public VirtualClock(StringRedisTemplate redisTemplate, double initialFactor) {
+        if (!(initialFactor > 0)) {
+            throw new IllegalArgumentException("时钟倍速必须大于 0: " + initialFactor);
+        }
+        this.redisTemplate = redisTemplate;
+        this.initialFactor = initialFactor;
+        long now = System.currentTimeMillis();
+        this.anchor = new Anchor(now, now, initialFactor);
+    }
+
+    /**
+     * 当前模拟时间，epoch 毫秒
+     */
+    public long millis() {
+        return anchor.at(System.currentTimeMillis());
+    }
+
+    public LocalDateTime now() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis()), ZONE);
+    }
+
+    /**
+     * 模拟时间在当天从 0 点开始的秒数
+     */
+    public int secondOfDay() {
+        return now().toLocalTime().toSecondOfDay();
+    }
+
+    public double factor() {
+        return anchor.factor;
+    }
+
+    /**
+     * 一段真实时长对应的模拟时长
+     *
+     * @param realMillis 真实时长，毫秒
+     * @return 模拟时长，毫秒
+     */
+    public long virtualSpan(long realMillis) {
+        return (long) (realMillis * anchor.factor);
+    }
+
+    /**
+     * 保持当前模拟时刻，修改倍速
+     */
+    public void setFactor(double factor) {
+        reset(millis(), factor);
+    }
+
+    /**
+     * 保持倍速，把当天时间调到指定的秒数
+     * <p>
+     * 时钟只向前走，目标时间早于当前时间时调到下一天的这一时刻，上报时间戳、心跳与用水量检查点都不会回退
+     */
+    public void setSecondOfDay(int seconds) {
+        long now = millis();
+        long midnight = LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZONE).toLocalDate()
+                .atStartOfDay(ZONE).toInstant().toEpochMilli();
+        long target = midnight + Math.floorMod(seconds * 1000L, DAY_MILLIS);
+        reset(target < now ? target + DAY_MILLIS : target, anchor.factor);
+    }
+
+    /**
+     * 以当前真实时间重新锚定，写入 redis 并广播
+     *
+     * @param virtualMillis 模拟时间，epoch 毫秒
+     * @param factor        倍速
+     * @throws IllegalArgumentException 倍速不大于 0
+     */
+    public void reset(long virtualMillis, double factor) {
+        if (!(factor > 0)) {
+            throw new IllegalArgumentException("时钟倍速必须大于 0: " + factor);
+        }
+        Anchor next = new Anchor(System.currentTimeMillis(), virtualMillis, factor);
+        anchor = next;
+        String encoded = next.encode();
+        redisTemplate.opsForValue().set(KEY, encoded);
+        redisTemplate.convertAndSend(CHANNEL, encoded);
+        log.info("模拟时钟已重新锚定: {}, 倍速 {}", now(), factor);
+    }
+
+    /**
+     * 从 redis 加载锚点，没有锚点时写入本实例的初始锚点，多个实例同时启动时只有一个生效
+     */
+    public void reload() {
+        try {
+            String value = redisTemplate.opsForValue().get(KEY);
+            if (value == null) {
+                Anchor initial = new Anchor(System.currentTimeMillis(), System.currentTimeMillis(), initialFactor);
+                if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(KEY, initial.encode()))) {
+                    anchor = initial;
+                    return;
+                }
+                value = redisTemplate.opsForValue().get(KEY);
+            }
+            if (value != null) {
+                anchor = Anchor.decode(value);
+            }
+        } catch (Exception e) {
+            log.warn("模拟时钟加载失败，沿用本地锚点: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            anchor = Anchor.decode(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            log.warn("无法解析的模拟时钟锚点: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 时钟锚点
+     *
+     * @param real    锚定时的真实时间，epoch 毫秒
+     * @param virtual 锚定时的模拟时间，epoch 毫秒
+     * @param factor  倍速
+     */
+    private record Anchor(long real, long virtual, double factor) {
+
+        long at(long realNow) {
+            return virtual + (long) ((realNow - real) * factor);
+        }
+
+        String encode() {
+            return real + "|" + virtual + "|" + factor;
+        }
+
+        static Anchor decode(String value) {
+            String[] parts = value.split("\\|");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("模拟时钟锚点格式错误: " + value);
+            }
+            return new Anchor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+        }
+    }
+}
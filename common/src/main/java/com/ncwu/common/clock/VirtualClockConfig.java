@@ -0,0 +1,33 @@
+package com.ncwu.common.clock;
+
+
+import com.ncwu.common.redis.RedisChannelListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 模拟时钟配置，需要按模拟时间运行的服务通过 @Import 引入
+ * <p>
+ * {@code clock.factor} 只在 redis 中还没有时钟锚点时生效，运行中修改倍速经模拟器接口完成。
+ * 倍速变更的订阅由服务自己的订阅容器注册，见 {@link RedisChannelListener}
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Configuration
+public class VirtualClockConfig {
+
+    @Bean(initMethod = "reload")
+    public VirtualClock virtualClock(StringRedisTemplate redisTemplate,
+                                     @Value("${clock.factor:1}") double factor) {
+        return new VirtualClock(redisTemplate, factor);
+    }
+
+    @Bean
+    public RedisChannelListener virtualClockListener(VirtualClock clock) {
+        return new RedisChannelListener(clock, VirtualClock.CHANNEL);
+    }
+}
@@ -0,0 +1,362 @@
+package com.ncwu.common.mq;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 批量消息发送器
+ * <p>
+ * 设备数据按 topic 暂存，达到批量字节上限或等待时间超过 linger 后，以 RocketMQ 批量消息一次发出，
+ * 每个批次只有一个回调。消费端仍按单条消息消费，无需任何修改。
+ * <p>
+ * 模拟器与接入网关共用：模拟器的发送线程可以阻塞，调用 {@link #send}，队列已满时等待；
+ * 网关的调用方是 Netty 的 IO 线程，调用 {@link #offer}，队列已满时返回 false，由连接登记 {@link #awaitCapacity}
+ * 回调后暂停读取，待所有队列回落到一半容量以下再逐个恢复。网关在数据真正发送到 MQ 后才向设备确认，
+ * 入队时附带发送成功的回调，发送失败的数据不确认，由设备重发。
+ * <p>
+ * 由使用方以 {@code @Bean(initMethod = "start", destroyMethod = "stop")} 注册，依赖使用方引入的 RocketMQ。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/5
+ */
+@Slf4j
+public class BatchingProducer {
+
+    /**
+     * 单条消息除消息体外的估算开销(topic、属性等)
+     */
+    private static final int MESSAGE_OVERHEAD = 64;
+
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final String metricPrefix;
+    private final Settings settings;
+
+    private final Map<String, TopicBuffer> buffers = new ConcurrentHashMap<>();
+    private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * 批量参数，每次使用时重新读取，支持动态配置
+     *
+     * @param queueCapacity 每个 topic 待发送队列的容量，创建队列时读取
+     * @param batchMaxBytes 单个批量消息的最大字节数，RocketMQ 单条消息上限为 4M
+     * @param lingerMs      批量消息的最长等待毫秒数
+     */
+    public record Settings(IntSupplier queueCapacity, IntSupplier batchMaxBytes, LongSupplier lingerMs) {
+    }
+
+    /**
+     * @param metricPrefix 监控指标与发送线程名的前缀，指标为 {@code 前缀.batch.size} 与 {@code 前缀.batch.queue.depth}
+     */
+    public BatchingProducer(RocketMQTemplate rocketMQTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                            Counter successCounter, Counter failureCounter, String metricPrefix, Settings settings) {
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.successCounter = successCounter;
+        this.failureCounter = failureCounter;
+        this.metricPrefix = metricPrefix;
+        this.settings = settings;
+    }
+
+    public void start() {
+        running = true;
+        flusher = Thread.ofPlatform().name(metricPrefix + "-batch-flusher").daemon(true).start(this::flushLoop);
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(flusher);
+        //关闭前发出所有剩余数据
+        buffers.forEach((topic, buffer) -> drain(buffer));
+    }
+
+    /**
+     * 将数据加入对应 topic 的待发送队列
+     * <p>
+     * 队列已满时调用方阻塞，形成背压而不是丢弃数据
+     *
+     * @param topic   目标 topic
+     * @param payload 数据载荷，发送时序列化为 json
+     */
+    public void send(String topic, Object payload) {
+        TopicBuffer buffer = buffers.computeIfAbsent(topic, this::newBuffer);
+        try {
+            if (!buffer.queue.offer(payload)) {
+                LockSupport.unpark(flusher);
+                buffer.queue.put(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        wakeIfFull(buffer);
+    }
+
+    /**
+     * 将数据加入对应 topic 的待发送队列，不阻塞
+     *
+     * @param topic   目标 topic
+     * @param payload 数据载荷，发送时序列化为 json
+     * @return 队列已满时返回 false，调用方应通过 {@link #awaitCapacity} 暂停读取
+     */
+    public boolean offer(String topic, Object payload) {
+        return offer(topic, payload, null);
+    }
+
+    /**
+     * 将数据加入对应 topic 的待发送队列，不阻塞，所在批次发送成功(含重试成功)后执行回调
+     * <p>
+     * 回调在 RocketMQ 的回调线程中执行，调用方负责切回自己的线程；批次最终发送失败时不执行
+     *
+     * @param onSent 发送成功的回调，为 null 时等同于 {@link #offer(String, Object)}
+     * @return 队列已满时返回 false，调用方应通过 {@link #awaitCapacity} 暂停读取
+     */
+    public boolean offer(String topic, Object payload, Runnable onSent) {
+        TopicBuffer buffer = buffers.computeIfAbsent(topic, this::newBuffer);
+        if (!buffer.queue.offer(onSent == null ? payload : new Tracked(payload, onSent))) {
+            LockSupport.unpark(flusher);
+            return false;
+        }
+        wakeIfFull(buffer);
+        return true;
+    }
+
+    /**
+     * 登记队列腾出空间后的恢复回调，回调在发送线程中执行，调用方负责切回自己的线程
+     */
+    public void awaitCapacity(Runnable resume) {
+        waiters.add(resume);
+        LockSupport.unpark(flusher);
+    }
+
+    /**
+     * 等待队列腾出空间的调用方数量
+     */
+    public int waiting() {
+        return waiters.size();
+    }
+
+    /**
+     * 估算队列已满一个批次，提前唤醒发送线程
+     */
+    private void wakeIfFull(TopicBuffer buffer) {
+        if ((long) buffer.queue.size() * buffer.avgBytes >= settings.batchMaxBytes().getAsInt()) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private TopicBuffer newBuffer(String topic) {
+        TopicBuffer buffer = new TopicBuffer(topic, new ArrayBlockingQueue<>(settings.queueCapacity().getAsInt()));
+        Gauge.builder(metricPrefix + ".batch.size", buffer, b -> b.lastBatchSize)
+                .description("最近一个批量消息包含的消息数")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        Gauge.builder(metricPrefix + ".batch.queue.depth", buffer, b -> b.queue.size())
+                .description("等待批量发送的消息数")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        return buffer;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            long lingerMs = settings.lingerMs().getAsLong();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, lingerMs)));
+            long now = System.currentTimeMillis();
+            for (TopicBuffer buffer : buffers.values()) {
+                try {
+                    //满一个批次、超过 linger 或有调用方在等待时发送
+                    boolean full = (long) buffer.queue.size() * buffer.avgBytes >= settings.batchMaxBytes().getAsInt();
+                    boolean expired = now - buffer.lastFlush >= lingerMs;
+                    if (full || expired || !waiters.isEmpty()) {
+                        drain(buffer);
+                        buffer.lastFlush = now;
+                    }
+                } catch (Exception e) {
+                    log.error("{} 批量发送异常: {}", buffer.topic, e.getMessage(), e);
+                }
+            }
+            resumeWaiters();
+        }
+    }
+
+    /**
+     * 所有队列回落到一半容量以下时恢复等待的调用方，留出余量避免在满与不满之间反复切换
+     */
+    private void resumeWaiters() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        for (TopicBuffer buffer : buffers.values()) {
+            if (buffer.queue.size() > buffer.capacity / 2) {
+                return;
+            }
+        }
+        Runnable resume;
+        while ((resume = waiters.poll()) != null) {
+            try {
+                resume.run();
+            } catch (Exception e) {
+                log.warn("恢复等待的调用方失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 取出队列中当前所有数据，按字节上限切分成多个批次发送
+     * <p>
+     * 只取调用时刻已入队的数据，持续写入时不会无限循环
+     */
+    private void drain(TopicBuffer buffer) {
+        int maxBytes = settings.batchMaxBytes().getAsInt();
+        List<Message<String>> batch = new ArrayList<>();
+        List<Runnable> callbacks = new ArrayList<>();
+        long batchBytes = 0;
+        long totalBytes = 0;
+        int total = 0;
+        int pending = buffer.queue.size();
+        Object item;
+        while (pending-- > 0 && (item = buffer.queue.poll()) != null) {
+            Object payload = item;
+            Runnable onSent = null;
+            if (item instanceof Tracked tracked) {
+                payload = tracked.payload();
+                onSent = tracked.onSent();
+            }
+            String json;
+            try {
+                json = objectMapper.writeValueAsString(payload);
+            } catch (JsonProcessingException e) {
+                log.error("{} 消息序列化失败: {}", buffer.topic, e.getMessage());
+                failureCounter.increment();
+                //重发同样无法序列化，照常确认避免设备反复重发
+                if (onSent != null) {
+                    runAll(List.of(onSent));
+                }
+                continue;
+            }
+            int size = json.getBytes(StandardCharsets.UTF_8).length + MESSAGE_OVERHEAD;
+            if (!batch.isEmpty() && batchBytes + size > maxBytes) {
+                sendBatch(buffer, batch, callbacks);
+                batch = new ArrayList<>();
+                callbacks = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(MessageBuilder.withPayload(json).build());
+            if (onSent != null) {
+                callbacks.add(onSent);
+            }
+            batchBytes += size;
+            totalBytes += size;
+            total++;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(buffer, batch, callbacks);
+        }
+        if (total > 0) {
+            buffer.avgBytes = Math.max(1, (int) (totalBytes / total));
+        }
+    }
+
+    /**
+     * 发送一个批次，失败重试一次，随后再失败将记录日志
+     *
+     * @param callbacks 批次中各条数据的发送成功回调，只在发送成功后执行
+     */
+    private void sendBatch(TopicBuffer buffer, List<Message<String>> batch, List<Runnable> callbacks) {
+        String topic = buffer.topic;
+        int size = batch.size();
+        buffer.lastBatchSize = size;
+        rocketMQTemplate.asyncSend(topic, batch, new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                successCounter.increment(size);
+                runAll(callbacks);
+            }
+
+            @Override
+            public void onException(Throwable throwable) {
+                log.error("{},MQ 批量发送失败，尝试再次发送 {} 条", throwable.getMessage(), size);
+                rocketMQTemplate.asyncSend(topic, batch, new SendCallback() {
+                    @Override
+                    public void onSuccess(SendResult sendResult) {
+                        log.info("批量重试发送成功");
+                        successCounter.increment(size);
+                        runAll(callbacks);
+                    }
+
+                    @Override
+                    public void onException(Throwable t) {
+                        failureCounter.increment(size);
+                        log.error("批量重试发送仍然失败，丢弃 {} 条 {} 消息", size, topic);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void runAll(List<Runnable> callbacks) {
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.warn("发送成功回调执行失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 附带发送成功回调的数据
+     */
+    private record Tracked(Object payload, Runnable onSent) {
+    }
+
+    /**
+     * 单个 topic 的待发送队列
+     */
+    private static final class TopicBuffer {
+        final String topic;
+        final BlockingQueue<Object> queue;
+        final int capacity;
+        volatile int lastBatchSize;
+        volatile int avgBytes = 512;
+        long lastFlush = System.currentTimeMillis();
+
+        TopicBuffer(String topic, ArrayBlockingQueue<Object> queue) {
+            this.topic = topic;
+            this.queue = queue;
+            this.capacity = queue.remainingCapacity();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ncwu.common.redis;
+
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 公共组件的 redis 订阅声明
+ * <p>
+ * 每个 {@link RedisMessageListenerContainer} 都占用一条独立的订阅连接与一个分发线程。公共配置不再各自创建容器，
+ * 只把监听器与频道声明为本类型的 bean，由服务自己唯一的订阅容器通过 {@link #registerAll} 统一注册。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+public record RedisChannelListener(MessageListener listener, String channel) {
+
+    /**
+     * 将容器中声明的全部公共订阅注册到服务的订阅容器上
+     */
+    public static void registerAll(RedisMessageListenerContainer container,
+                                   ObjectProvider<RedisChannelListener> listeners) {
+        listeners.orderedStream()
+                .forEach(l -> container.addMessageListener(l.listener(), new ChannelTopic(l.channel())));
+    }
+}
@@ -0,0 +1,35 @@
+package com.ncwu.common.registry;
+
+
+import com.ncwu.common.redis.RedisChannelListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 设备位图配置，需要在线校验设备编号的服务通过 @Import 引入
+ * <p>
+ * 位图变更的订阅由服务自己的订阅容器注册，见 {@link RedisChannelListener}
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/15
+ */
+@Configuration
+public class DeviceRegistryConfig {
+
+    @Bean
+    public DeviceRegistryIndex deviceRegistryIndex() {
+        return new DeviceRegistryIndex();
+    }
+
+    @Bean(initMethod = "reload")
+    public DeviceRegistrySync deviceRegistrySync(StringRedisTemplate redisTemplate, DeviceRegistryIndex index) {
+        return new DeviceRegistrySync(redisTemplate, index);
+    }
+
+    @Bean
+    public RedisChannelListener deviceRegistryListener(DeviceRegistrySync sync) {
+        return new RedisChannelListener(sync, DeviceRegistrySync.CHANNEL);
+    }
+}
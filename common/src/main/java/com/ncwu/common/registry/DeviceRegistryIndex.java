@@ -0,0 +1,161 @@
+package com.ncwu.common.registry;
+
+
+import java.util.Collection;
+
+/**
+ * 已注册设备的进程内位图
+ * <p>
+ * 设备编号 T C BB FF RRR 按位换算为稠密整数，每台设备占一个比特，判断合法性不需要访问 redis，
+ * 也没有布隆过滤器的误判。位图按 4096 位分页，只为实际存在设备的楼层分配页，十万台设备约占几十 KB。
+ * <p>
+ * 写入串行化，读取无锁：每次写入结束时更新 volatile 的计数，读取先读该计数，保证看到已完成的写入。
+ * 整体重建时先在新的页表中写好再替换引用，重建期间读取的仍是旧数据。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/15
+ */
+public class DeviceRegistryIndex {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_WORDS = 1 << (PAGE_SHIFT - 6);
+    /**
+     * 类型 2 种、校区 3 个、楼宇与楼层各 99、房间 0-999
+     */
+    private static final int MAX_CODE = 2 * 3 * 99 * 99 * 1000;
+
+    private volatile long[][] pages = new long[(MAX_CODE >>> PAGE_SHIFT) + 1][];
+    private volatile int size;
+    private volatile boolean loaded;
+
+    /**
+     * 设备编号换算为位图下标
+     *
+     * @return 下标，编号格式非法时返回 -1
+     */
+    public static int encode(CharSequence deviceId) {
+        if (deviceId == null || deviceId.length() != 9) {
+            return -1;
+        }
+        int type = digit(deviceId, 0);
+        int campus = digit(deviceId, 1);
+        int building = digit(deviceId, 2) * 10 + digit(deviceId, 3);
+        int floor = digit(deviceId, 4) * 10 + digit(deviceId, 5);
+        int room = digit(deviceId, 6) * 100 + digit(deviceId, 7) * 10 + digit(deviceId, 8);
+        if (type < 1 || type > 2 || campus < 1 || campus > 3 || building < 1 || building > 99
+                || floor < 1 || floor > 99 || room < 0) {
+            return -1;
+        }
+        return ((((type - 1) * 3 + campus - 1) * 99 + building - 1) * 99 + floor - 1) * 1000 + room;
+    }
+
+    /**
+     * 位图是否已经完成首次加载，未加载时调用方应回退到 redis 校验
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String deviceId) {
+        int code = encode(deviceId);
+        if (size == 0 || code < 0) {
+            return false;
+        }
+        return test(pages, code);
+    }
+
+    /**
+     * 批量判断，全部为已注册设备时返回 true
+     */
+    public boolean containsAll(Collection<String> deviceIds) {
+        if (size == 0) {
+            return deviceIds.isEmpty();
+        }
+        long[][] p = pages;
+        for (String id : deviceIds) {
+            int code = encode(id);
+            if (code < 0 || !test(p, code)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 批量判断，并要求全部设备属于指定类型(1 水表，2 水质传感器)
+     */
+    public boolean containsAll(int type, Collection<String> deviceIds) {
+        char expected = (char) ('0' + type);
+        for (String id : deviceIds) {
+            if (id == null || id.isEmpty() || id.charAt(0) != expected) {
+                return false;
+            }
+        }
+        return containsAll(deviceIds);
+    }
+
+    public synchronized void addAll(Collection<String> deviceIds) {
+        long[][] p = pages;
+        int added = 0;
+        for (String id : deviceIds) {
+            int code = encode(id);
+            if (code >= 0 && set(p, code)) {
+                added++;
+            }
+        }
+        size += added;
+    }
+
+    /**
+     * 以一批设备整体替换当前内容
+     */
+    public synchronized void replaceAll(Iterable<String> deviceIds) {
+        long[][] p = new long[pages.length][];
+        int count = 0;
+        for (String id : deviceIds) {
+            int code = encode(id);
+            if (code >= 0 && set(p, code)) {
+                count++;
+            }
+        }
+        pages = p;
+        size = count;
+        loaded = true;
+    }
+
+    public synchronized void clear() {
+        pages = new long[pages.length][];
+        size = 0;
+    }
+
+    private static boolean test(long[][] p, int code) {
+        long[] page = p[code >>> PAGE_SHIFT];
+        return page != null && (page[(code >>> 6) & (PAGE_WORDS - 1)] & (1L << code)) != 0;
+    }
+
+    private static boolean set(long[][] p, int code) {
+        int pageNo = code >>> PAGE_SHIFT;
+        long[] page = p[pageNo];
+        if (page == null) {
+            page = new long[PAGE_WORDS];
+            p[pageNo] = page;
+        }
+        int word = (code >>> 6) & (PAGE_WORDS - 1);
+        long bit = 1L << code;
+        if ((page[word] & bit) != 0) {
+            return false;
+        }
+        page[word] |= bit;
+        return true;
+    }
+
+    private static int digit(CharSequence s, int i) {
+        int d = s.charAt(i) - '0';
+        return d >= 0 && d <= 9 ? d : -100_000;
+    }
+}
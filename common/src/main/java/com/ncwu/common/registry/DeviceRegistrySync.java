@@ -0,0 +1,98 @@
+package com.ncwu.common.registry;
+
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 设备位图与 redis 设备集合的同步
+ * <p>
+ * 启动时扫描 device:meter 与 device:sensor 集合完成首次加载，之后由设备注册流程通过
+ * {@link #CHANNEL} 广播变更：以 + 开头的消息携带新注册的设备编号(逗号分隔)，
+ * * 表示重新全量加载，- 表示设备数据已被清空。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/15
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DeviceRegistrySync implements MessageListener {
+
+    /**
+     * 设备注册变更通知频道
+     */
+    public static final String CHANNEL = "device:registry";
+    private static final List<String> SETS = List.of("device:meter", "device:sensor");
+    private static final int SCAN_COUNT = 5000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final DeviceRegistryIndex index;
+
+    /**
+     * 广播一批新注册的设备
+     */
+    public static void publishAdded(StringRedisTemplate redisTemplate, Collection<String> deviceIds) {
+        if (!deviceIds.isEmpty()) {
+            redisTemplate.convertAndSend(CHANNEL, "+" + String.join(",", deviceIds));
+        }
+    }
+
+    /**
+     * 通知各实例从 redis 重新全量加载
+     */
+    public static void publishReload(StringRedisTemplate redisTemplate) {
+        redisTemplate.convertAndSend(CHANNEL, "*");
+    }
+
+    /**
+     * 通知各实例设备数据已被清空
+     */
+    public static void publishCleared(StringRedisTemplate redisTemplate) {
+        redisTemplate.convertAndSend(CHANNEL, "-");
+    }
+
+    /**
+     * 从 redis 设备集合全量加载，失败时位图保持未加载状态，校验回退到 redis
+     */
+    public void reload() {
+        try {
+            List<String> ids = new ArrayList<>();
+            for (String key : SETS) {
+                ScanOptions options = ScanOptions.scanOptions().count(SCAN_COUNT).build();
+                try (Cursor<String> cursor = redisTemplate.opsForSet().scan(key, options)) {
+                    cursor.forEachRemaining(ids::add);
+                }
+            }
+            index.replaceAll(ids);
+            log.info("设备位图已加载，共 {} 台设备", index.size());
+        } catch (Exception e) {
+            log.warn("设备位图加载失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (body.isEmpty()) {
+            return;
+        }
+        switch (body.charAt(0)) {
+            case '+' -> index.addAll(Arrays.asList(body.substring(1).split(",")));
+            case '-' -> index.clear();
+            case '*' -> reload();
+            default -> log.warn("未知的设备注册通知: {}", body);
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.ncwu.common.validator;
 
 
+import com.ncwu.common.registry.DeviceRegistryIndex;
 import com.ncwu.common.validator.annotations.Bloom;
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
 import lombok.RequiredArgsConstructor;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
 /**
+ * 设备编号存在性校验
+ * <p>
+ * 引入了 {@link com.ncwu.common.registry.DeviceRegistryConfig} 的服务直接查询进程内位图，无网络开销且没有误判；
+ * 其余服务或位图尚未加载时仍使用 redis 布隆过滤器。
+ *
  * @author jingxu
  * @version 1.0.0
  * @since 2026/1/18
@@ -20,11 +27,18 @@ import java.util.List;
 @RequiredArgsConstructor
 public class BloomFilterValidator implements ConstraintValidator<Bloom, List<String>> {
     private final RedissonClient redissonClient;
+    private final ObjectProvider<DeviceRegistryIndex> registryIndex;
 
     @Override
     public boolean isValid(List<String> list, ConstraintValidatorContext constraintValidatorContext) {
-        RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter("device:bloom");
-        boolean isValid = bloomFilter.contains(list) == list.size();
+        DeviceRegistryIndex index = registryIndex.getIfAvailable();
+        boolean isValid;
+        if (index != null && index.isLoaded()) {
+            isValid = index.containsAll(list);
+        } else {
+            RBloomFilter<String> bloomFilter = redissonClient.getBloomFilter("device:bloom");
+            isValid = bloomFilter.contains(list) == list.size();
+        }
         
         if (!isValid) {
             // 禁用默认错误信息，使用自定义信息
@@ -0,0 +1,125 @@
+package com.ncwu.common.valve;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 阀门指令确认的合并写入
+ * <p>
+ * 一条整校区指令可能同时得到上千台设备的确认，逐条 HINCRBY 会让确认流量与设备数一样多。
+ * 确认先在内存中按 (版本, 来源) 累加，每个刷新周期在一次 pipeline 中写入指令记录：
+ * {@code acked} 为确认总数，{@code ack:来源} 为各模拟器节点或接入网关的确认数。
+ * <p>
+ * 不依赖调度框架，需要的服务以 @Bean(initMethod = "start", destroyMethod = "stop") 声明。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+@Slf4j
+public class ValveAckBatcher {
+
+    private static final byte[] ACKED = "acked".getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final long flushMs;
+    /**
+     * 待写入的确认数，累加与取出都是单个键上的原子操作，取出之后到达的确认进入下一个刷新周期
+     */
+    private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    public ValveAckBatcher(StringRedisTemplate redisTemplate, long flushMs) {
+        this.redisTemplate = redisTemplate;
+        this.flushMs = flushMs;
+    }
+
+    /**
+     * 记录一批确认，只写内存
+     *
+     * @param version 指令版本
+     * @param source  确认来源，模拟器节点编号或接入网关编号
+     * @param count   确认的设备数量
+     */
+    public void ack(long version, String source, long count) {
+        if (count <= 0) {
+            return;
+        }
+        pending.merge(new Key(version, source), count, Long::sum);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform().name("valve-ack-flusher").daemon(true).start(this::runLoop);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+        }
+        flush();
+    }
+
+    private void runLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushMs));
+            try {
+                flush();
+            } catch (Exception e) {
+                log.warn("阀门指令确认写入失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 取出已累加的确认并写入 redis，写入失败的确认丢弃，不影响阀门状态
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Key, Long> drained = new HashMap<>();
+        for (Key key : pending.keySet()) {
+            //remove 与 ack 中的 merge 在同一个键上互斥，不会有确认累加到已取出的值上
+            Long count = pending.remove(key);
+            if (count != null) {
+                drained.merge(key, count, Long::sum);
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            write(connection, drained);
+            return null;
+        });
+    }
+
+    private static void write(RedisConnection connection, Map<Key, Long> drained) {
+        for (Map.Entry<Key, Long> e : drained.entrySet()) {
+            byte[] key = ValveCommand.ackKey(e.getKey().version).getBytes(StandardCharsets.UTF_8);
+            byte[] field = ("ack:" + e.getKey().source).getBytes(StandardCharsets.UTF_8);
+            connection.hashCommands().hIncrBy(key, ACKED, e.getValue());
+            connection.hashCommands().hIncrBy(key, field, e.getValue());
+            connection.keyCommands().expire(key, ValveCommand.RECORD_TTL_SECONDS);
+        }
+    }
+
+    private record Key(long version, String source) {
+    }
+}
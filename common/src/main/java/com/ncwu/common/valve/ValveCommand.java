@@ -0,0 +1,96 @@
+package com.ncwu.common.valve;
+
+
+import java.util.List;
+
+/**
+ * 阀门控制指令
+ * <p>
+ * 每条指令只针对一个校区，由下发脚本分配全局递增的版本号。整校区指令只记录一条校区规则，
+ * 单台指令按设备记录，设备的最终状态取校区规则与设备规则中版本号较大的一条，乱序或重复到达的旧指令不会覆盖新状态。
+ * <p>
+ * 指令经 {@link #CHANNEL} 广播给所有模拟器节点与接入网关，格式为 {@code 版本|下发时间|校区|动作|设备编号,...}，
+ * 整校区指令的设备列表为空。收到指令的模拟器节点或真实设备回复确认后累加到 {@link #ackKey(long)}。
+ *
+ * @param version  版本号
+ * @param issuedAt 下发时间，epoch 毫秒
+ * @param campus   校区编号 1~3
+ * @param action   动作
+ * @param ids      设备编号，整校区指令为空列表
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+public record ValveCommand(long version, long issuedAt, int campus, String action, List<String> ids) {
+
+    /**
+     * 阀门指令广播频道
+     */
+    public static final String CHANNEL = "valve:command";
+    /**
+     * 版本号计数器
+     */
+    public static final String VERSION_KEY = "valve:version";
+    /**
+     * 校区规则，field 为校区编号，value 为 {@code 版本:状态}，状态 1 关闭 0 打开
+     */
+    public static final String CAMPUS_KEY = "valve:campus";
+    /**
+     * 单台设备规则，field 为设备编号，value 格式同校区规则
+     */
+    public static final String DEVICE_KEY = "valve:device";
+    /**
+     * 指令记录与确认计数的前缀
+     */
+    public static final String ACK_PREFIX = "valve:cmd:";
+    /**
+     * 指令记录的保留时间
+     */
+    public static final long RECORD_TTL_SECONDS = 86_400;
+
+    public static final String CLOSE = "close";
+    public static final String OPEN = "open";
+    public static final String CLOSE_ALL = "closeAll";
+    public static final String OPEN_ALL = "openAll";
+
+    public static String ackKey(long version) {
+        return ACK_PREFIX + version;
+    }
+
+    public boolean closes() {
+        return CLOSE.equals(action) || CLOSE_ALL.equals(action);
+    }
+
+    public boolean campusWide() {
+        return CLOSE_ALL.equals(action) || OPEN_ALL.equals(action);
+    }
+
+    public String encode() {
+        return version + "|" + issuedAt + "|" + campus + "|" + action + "|" + String.join(",", ids);
+    }
+
+    /**
+     * 解析广播消息
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static ValveCommand decode(String message) {
+        String[] parts = message.split("\\|", -1);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("阀门指令格式错误: " + message);
+        }
+        List<String> ids = parts[4].isEmpty() ? List.of() : List.of(parts[4].split(","));
+        return new ValveCommand(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                Integer.parseInt(parts[2]), parts[3], ids);
+    }
+
+    /**
+     * 解析 redis 中的规则值
+     *
+     * @return {版本, 状态}，状态 1 关闭 0 打开
+     */
+    public static long[] parseRule(String rule) {
+        int i = rule.indexOf(':');
+        return new long[]{Long.parseLong(rule.substring(0, i)), Long.parseLong(rule.substring(i + 1))};
+    }
+}
@@ -0,0 +1,24 @@
+package com.ncwu.common.valve;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 阀门指令确认配置，接收阀门指令的服务通过 @Import 引入
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/19
+ */
+@Configuration
+public class ValveCommandConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ValveAckBatcher valveAckBatcher(StringRedisTemplate redisTemplate,
+                                           @Value("${valve.ack-flush-ms:100}") long flushMs) {
+        return new ValveAckBatcher(redisTemplate, flushMs);
+    }
+}
@@ -0,0 +1,151 @@
+package com.ncwu.common.valve;
+
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 阀门规则的本地副本
+ * <p>
+ * 与 valveCommand.lua 的写入规则一致：每个校区一条整校区规则，单台设备各一条设备规则，值为 {版本, 状态}，
+ * 设备的最终状态取两者中版本号较大的一条；整校区规则更新时删除本校区版本更小的设备规则。
+ * 模拟器与接入网关各持有一份，由广播的指令增量更新，并定时从 redis 整体替换。
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+public class ValveRules {
+
+    public static final int CAMPUSES = 3;
+
+    private final long[][] campusRules = new long[CAMPUSES + 1][];
+    private final Map<String, long[]> deviceRules = new HashMap<>();
+
+    /**
+     * 设备编号的第二位为校区编号
+     */
+    public static int campusOf(String deviceId) {
+        return deviceId.length() > 1 ? deviceId.charAt(1) - '0' : -1;
+    }
+
+    /**
+     * 写入一条指令，已被更新规则取代的指令不改变规则
+     *
+     * @return 规则是否发生变化
+     */
+    public synchronized boolean apply(ValveCommand command) {
+        long[] rule = {command.version(), command.closes() ? 1 : 0};
+        if (command.campusWide()) {
+            int campus = command.campus();
+            if (campus < 1 || campus > CAMPUSES
+                    || (campusRules[campus] != null && campusRules[campus][0] >= rule[0])) {
+                return false;
+            }
+            campusRules[campus] = rule;
+            deviceRules.entrySet().removeIf(e -> campusOf(e.getKey()) == campus && e.getValue()[0] < rule[0]);
+            return true;
+        }
+        boolean changed = false;
+        for (String id : command.ids()) {
+            long[] c = campusRule(campusOf(id));
+            long[] d = deviceRules.get(id);
+            if ((c == null || c[0] < rule[0]) && (d == null || d[0] < rule[0])) {
+                deviceRules.put(id, rule);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 校区规则，没有规则或校区编号非法时为 null
+     */
+    public synchronized long[] campusRule(int campus) {
+        return campus >= 1 && campus <= CAMPUSES ? campusRules[campus] : null;
+    }
+
+    public synchronized void forEachDevice(BiConsumer<String, long[]> action) {
+        deviceRules.forEach(action);
+    }
+
+    /**
+     * 设备当前生效的规则 {版本, 状态}，没有任何规则时为 null
+     */
+    public synchronized long[] effective(String deviceId) {
+        long[] c = campusRule(campusOf(deviceId));
+        long[] d = deviceRules.get(deviceId);
+        if (c == null) {
+            return d;
+        }
+        return d == null || c[0] > d[0] ? c : d;
+    }
+
+    /**
+     * 设备当前生效的规则还原成的指令，用于向新接入或重新订阅的设备同步阀门状态
+     * <p>
+     * 同步不是新的下发，下发时间为 0，不记录生效延迟
+     *
+     * @return 没有任何规则时为 null
+     */
+    public synchronized ValveCommand current(String deviceId) {
+        int campus = campusOf(deviceId);
+        long[] c = campusRule(campus);
+        long[] d = deviceRules.get(deviceId);
+        if (d != null && (c == null || d[0] > c[0])) {
+            return new ValveCommand(d[0], 0, campus, d[1] == 1 ? ValveCommand.CLOSE : ValveCommand.OPEN,
+                    List.of(deviceId));
+        }
+        if (c != null) {
+            return new ValveCommand(c[0], 0, campus, c[1] == 1 ? ValveCommand.CLOSE_ALL : ValveCommand.OPEN_ALL,
+                    List.of());
+        }
+        return null;
+    }
+
+    /**
+     * 从 redis 读取两张规则表，整体替换本地副本
+     * <p>
+     * 读取期间持有锁，广播的指令暂不写入。下发脚本先写规则再广播，本地已有的规则一定在读到的快照中，
+     * 快照之外的本地规则已被整校区指令取代或随模拟数据清除，直接以快照替换。
+     *
+     * @return 本地规则是否发生变化
+     */
+    public synchronized boolean load(StringRedisTemplate redisTemplate) {
+        Map<Object, Object> campus = redisTemplate.opsForHash().entries(ValveCommand.CAMPUS_KEY);
+        Map<Object, Object> devices = redisTemplate.opsForHash().entries(ValveCommand.DEVICE_KEY);
+        long[][] nextCampus = new long[CAMPUSES + 1][];
+        campus.forEach((c, rule) -> {
+            int i = Integer.parseInt(c.toString());
+            if (i >= 1 && i <= CAMPUSES) {
+                nextCampus[i] = ValveCommand.parseRule(rule.toString());
+            }
+        });
+        Map<String, long[]> nextDevices = new HashMap<>(devices.size());
+        devices.forEach((id, rule) -> nextDevices.put(id.toString(), ValveCommand.parseRule(rule.toString())));
+        if (Arrays.deepEquals(campusRules, nextCampus) && sameRules(deviceRules, nextDevices)) {
+            return false;
+        }
+        System.arraycopy(nextCampus, 0, campusRules, 0, campusRules.length);
+        deviceRules.clear();
+        deviceRules.putAll(nextDevices);
+        return true;
+    }
+
+    private static boolean sameRules(Map<String, long[]> a, Map<String, long[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (Map.Entry<String, long[]> e : a.entrySet()) {
+            if (!Arrays.equals(e.getValue(), b.get(e.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
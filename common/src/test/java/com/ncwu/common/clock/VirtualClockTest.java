@@ -0,0 +1,182 @@
+package com.ncwu.common.clock;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class VirtualClockTest {
+
+    private static final long HOUR = 3_600_000L;
+    /**
+     * 读取两次时钟之间允许经过的真实时间
+     */
+    private static final long SLACK = 500;
+
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> values;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+    }
+
+    @Test
+    void rejectsNonPositiveFactor() {
+        assertThrows(IllegalArgumentException.class, () -> new VirtualClock(redisTemplate, 0));
+        assertThrows(IllegalArgumentException.class, () -> new VirtualClock(redisTemplate, -1));
+        assertThrows(IllegalArgumentException.class, () -> new VirtualClock(redisTemplate, Double.NaN));
+
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+        assertThrows(IllegalArgumentException.class, () -> clock.setFactor(0));
+        assertEquals(1, clock.factor());
+        verify(values, never()).set(anyString(), anyString());
+    }
+
+    @Test
+    void unitFactorFollowsRealTime() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+
+        assertTrue(Math.abs(clock.millis() - System.currentTimeMillis()) < SLACK);
+        assertEquals(1000, clock.virtualSpan(1000));
+    }
+
+    @Test
+    void factorChangeKeepsCurrentInstantAndBroadcasts() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+        long before = clock.millis();
+
+        clock.setFactor(288);
+        long after = clock.millis();
+
+        //重新锚定在当前模拟时刻，时钟不跳变也不回退
+        assertTrue(after >= before && after - before < SLACK * 288, "跳变 " + (after - before));
+        assertEquals(288, clock.factor());
+        assertEquals(288_000, clock.virtualSpan(1000));
+
+        ArgumentCaptor<String> anchor = ArgumentCaptor.forClass(String.class);
+        verify(values).set(eq(VirtualClock.KEY), anchor.capture());
+        verify(redisTemplate).convertAndSend(VirtualClock.CHANNEL, anchor.getValue());
+        String[] parts = anchor.getValue().split("\\|");
+        assertEquals(3, parts.length);
+        long virtual = Long.parseLong(parts[1]);
+        assertTrue(virtual >= before && virtual <= after);
+        assertEquals(288, Double.parseDouble(parts[2]));
+    }
+
+    @Test
+    void repeatedFactorChangesStayContinuous() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+        long previous = clock.millis();
+        for (double factor : new double[]{60, 1, 1000, 0.5, 288}) {
+            clock.setFactor(factor);
+            long now = clock.millis();
+            assertTrue(now >= previous && now - previous < SLACK * 1000, "倍速 " + factor);
+            assertEquals(factor, clock.factor());
+            previous = now;
+        }
+    }
+
+    @Test
+    void broadcastAnchorDrivesAcceleratedTime() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+        long real = System.currentTimeMillis() - 1000;
+        long virtual = 1_700_000_000_000L;
+
+        clock.onMessage(message(real + "|" + virtual + "|288.0"), null);
+
+        long elapsed = clock.millis() - virtual;
+        assertTrue(elapsed >= 288_000 && elapsed < 288 * (1000 + SLACK), "模拟经过 " + elapsed);
+        assertEquals(288, clock.factor());
+    }
+
+    @Test
+    void malformedBroadcastIsIgnored() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 2);
+
+        clock.onMessage(message("bogus"), null);
+        clock.onMessage(message("1|2"), null);
+        clock.onMessage(message("1|2|fast"), null);
+
+        assertEquals(2, clock.factor());
+    }
+
+    @Test
+    void settingTimeOfDayNeverMovesBackwards() {
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+
+        long before = clock.millis();
+        clock.setSecondOfDay(clock.secondOfDay() + 3600);
+        long forward = clock.millis() - before;
+        assertTrue(Math.abs(forward - HOUR) < SLACK + 1000, "向后调整 " + forward);
+
+        before = clock.millis();
+        clock.setSecondOfDay(clock.secondOfDay() - 3600);
+        long wrapped = clock.millis() - before;
+        //目标早于当前时刻时调到下一天
+        assertTrue(Math.abs(wrapped - 23 * HOUR) < SLACK + 1000, "跨天调整 " + wrapped);
+        assertEquals(1, clock.factor());
+    }
+
+    @Test
+    void reloadAdoptsStoredAnchor() {
+        when(values.get(VirtualClock.KEY)).thenReturn(System.currentTimeMillis() + "|0|60.0");
+        VirtualClock clock = new VirtualClock(redisTemplate, 1);
+
+        clock.reload();
+
+        assertEquals(60, clock.factor());
+        assertTrue(clock.millis() < 60 * SLACK);
+        verify(values, never()).setIfAbsent(anyString(), anyString());
+    }
+
+    @Test
+    void reloadPublishesInitialAnchorOnlyWhenAbsent() {
+        when(values.get(VirtualClock.KEY)).thenReturn(null);
+        when(values.setIfAbsent(eq(VirtualClock.KEY), anyString())).thenReturn(true);
+        VirtualClock clock = new VirtualClock(redisTemplate, 5);
+
+        clock.reload();
+
+        assertEquals(5, clock.factor());
+        verify(values).setIfAbsent(eq(VirtualClock.KEY), anyString());
+    }
+
+    @Test
+    void reloadFollowsAnchorWrittenByAnotherInstance() {
+        when(values.get(VirtualClock.KEY)).thenReturn(null, System.currentTimeMillis() + "|0|12.0");
+        when(values.setIfAbsent(eq(VirtualClock.KEY), anyString())).thenReturn(false);
+        VirtualClock clock = new VirtualClock(redisTemplate, 5);
+
+        clock.reload();
+
+        assertEquals(12, clock.factor());
+    }
+
+    @Test
+    void reloadKeepsLocalAnchorWhenRedisFails() {
+        when(values.get(any())).thenThrow(new IllegalStateException("redis down"));
+        VirtualClock clock = new VirtualClock(redisTemplate, 3);
+
+        assertDoesNotThrow(clock::reload);
+        assertEquals(3, clock.factor());
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(VirtualClock.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,117 @@
+package com.ncwu.common.mq;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.messaging.Message;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BatchingProducerTest {
+
+    private static final String TOPIC = "Meter-Data";
+
+    private RocketMQTemplate rocketMQTemplate;
+    private Counter sent;
+    private Counter failed;
+    private BatchingProducer producer;
+
+    @BeforeEach
+    void setUp() {
+        rocketMQTemplate = mock(RocketMQTemplate.class);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        sent = registry.counter("test.sent");
+        failed = registry.counter("test.failed");
+        producer = new BatchingProducer(rocketMQTemplate, new ObjectMapper(), registry, sent, failed, "test",
+                new BatchingProducer.Settings(() -> 4, () -> 1024 * 1024, () -> 5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        producer.stop();
+    }
+
+    @Test
+    void callbacksRunOnlyAfterBatchIsSent() {
+        AtomicInteger acked = new AtomicInteger();
+        assertTrue(producer.offer(TOPIC, Map.of("seq", 1), acked::incrementAndGet));
+        assertTrue(producer.offer(TOPIC, Map.of("seq", 2), acked::incrementAndGet));
+        assertTrue(producer.offer(TOPIC, Map.of("seq", 3)));
+        //未启动发送线程，stop 同步发出剩余数据
+        producer.stop();
+
+        SendCallback callback = captureSend(1);
+        assertEquals(0, acked.get(), "发送结果返回前不应确认");
+        callback.onSuccess(new SendResult());
+        assertEquals(2, acked.get());
+        assertEquals(3, sent.count());
+    }
+
+    @Test
+    void callbacksRunAfterRetrySucceeds() {
+        AtomicInteger acked = new AtomicInteger();
+        producer.offer(TOPIC, Map.of("seq", 1), acked::incrementAndGet);
+        producer.stop();
+
+        captureSend(1).onException(new IllegalStateException("broker busy"));
+        assertEquals(0, acked.get());
+        captureSend(2).onSuccess(new SendResult());
+        assertEquals(1, acked.get());
+        assertEquals(0, failed.count());
+    }
+
+    @Test
+    void callbacksNeverRunWhenRetryFails() {
+        AtomicInteger acked = new AtomicInteger();
+        producer.offer(TOPIC, Map.of("seq", 1), acked::incrementAndGet);
+        producer.stop();
+
+        captureSend(1).onException(new IllegalStateException("broker busy"));
+        captureSend(2).onException(new IllegalStateException("broker down"));
+        assertEquals(0, acked.get());
+        assertEquals(1, failed.count());
+    }
+
+    @Test
+    void fullQueueRejectsOfferAndResumesWaitersOnceDrained() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(producer.offer(TOPIC, Map.of("seq", i)));
+        }
+        assertFalse(producer.offer(TOPIC, Map.of("seq", 4)));
+
+        CountDownLatch resumed = new CountDownLatch(1);
+        producer.awaitCapacity(resumed::countDown);
+        assertEquals(1, producer.waiting());
+        producer.start();
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, producer.waiting());
+        assertTrue(producer.offer(TOPIC, Map.of("seq", 4)));
+    }
+
+    /**
+     * 第 n 次发送的回调
+     */
+    private SendCallback captureSend(int times) {
+        ArgumentCaptor<SendCallback> callback = ArgumentCaptor.forClass(SendCallback.class);
+        verify(rocketMQTemplate, times(times)).asyncSend(eq(TOPIC),
+                ArgumentMatchers.<Collection<Message<String>>>any(), callback.capture());
+        return callback.getValue();
+    }
+}
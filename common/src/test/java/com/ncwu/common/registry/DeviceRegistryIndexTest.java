@@ -0,0 +1,116 @@
+package com.ncwu.common.registry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceRegistryIndexTest {
+
+    private static final String METER = "110101001";
+    private static final String SENSOR = "210101001";
+
+    private DeviceRegistryIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DeviceRegistryIndex();
+    }
+
+    @Test
+    void encodeRejectsMalformedIds() {
+        for (String id : new String[]{null, "", "11010100", "1101010011", "310101001", "140101001",
+                "100101001", "110001001", "110100001", "11010100a", "1a0101001"}) {
+            assertEquals(-1, DeviceRegistryIndex.encode(id), String.valueOf(id));
+        }
+    }
+
+    @Test
+    void encodeIsDenseAndUnique() {
+        assertEquals(0, DeviceRegistryIndex.encode("110101000"));
+        assertEquals(2 * 3 * 99 * 99 * 1000 - 1, DeviceRegistryIndex.encode("239999999"));
+
+        Set<Integer> codes = new HashSet<>();
+        for (String id : List.of("110101001", "110101002", "110102001", "110201001", "120101001", "210101001")) {
+            assertTrue(codes.add(DeviceRegistryIndex.encode(id)), id);
+        }
+    }
+
+    @Test
+    void addAllCountsNewDevicesOnly() {
+        assertFalse(index.contains(METER));
+
+        index.addAll(List.of(METER, SENSOR, METER, "bogus"));
+
+        assertEquals(2, index.size());
+        assertTrue(index.contains(METER));
+        assertTrue(index.contains(SENSOR));
+        assertFalse(index.contains("110101002"));
+        assertFalse(index.contains("bogus"));
+        //只有 addAll 不算完成首次加载
+        assertFalse(index.isLoaded());
+    }
+
+    @Test
+    void containsAllChecksEveryIdAndType() {
+        index.addAll(List.of(METER, "110101002", SENSOR));
+
+        assertTrue(index.containsAll(List.of(METER, "110101002")));
+        assertFalse(index.containsAll(List.of(METER, "110101003")));
+        assertTrue(index.containsAll(1, List.of(METER, "110101002")));
+        assertFalse(index.containsAll(1, List.of(METER, SENSOR)));
+        assertTrue(index.containsAll(2, List.of(SENSOR)));
+        assertTrue(index.containsAll(List.of()));
+    }
+
+    @Test
+    void emptyIndexOnlyContainsTheEmptySet() {
+        assertTrue(index.containsAll(List.of()));
+        assertFalse(index.containsAll(List.of(METER)));
+    }
+
+    @Test
+    void replaceAllSwapsContentAndMarksLoaded() {
+        index.addAll(List.of(METER));
+
+        index.replaceAll(List.of(SENSOR, "239999999", SENSOR));
+
+        assertTrue(index.isLoaded());
+        assertEquals(2, index.size());
+        assertFalse(index.contains(METER));
+        assertTrue(index.contains(SENSOR));
+        assertTrue(index.contains("239999999"));
+    }
+
+    @Test
+    void clearKeepsLoadedFlag() {
+        index.replaceAll(List.of(METER));
+
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertFalse(index.contains(METER));
+        assertTrue(index.isLoaded());
+    }
+
+    @Test
+    void readersSeeCompletedWrites() throws InterruptedException {
+        index.replaceAll(List.of(METER));
+        Thread writer = new Thread(() -> {
+            for (int room = 1; room < 1000; room++) {
+                index.addAll(List.of(String.format("1201%02d%03d", room % 99 + 1, room)));
+            }
+        });
+        writer.start();
+        //替换前的设备在并发写入期间始终可见
+        while (writer.isAlive()) {
+            assertTrue(index.contains(METER));
+        }
+        writer.join();
+        assertEquals(1000, index.size());
+    }
+}
@@ -1,9 +1,12 @@
 package com.ncwu.predictionservice;
 
+import com.ncwu.common.cache.NamespaceEpochConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(NamespaceEpochConfig.class)
 public class PredictionServiceApplication {
 
     public static void main(String[] args) {
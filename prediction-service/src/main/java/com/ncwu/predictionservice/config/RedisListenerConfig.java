@@ -0,0 +1,30 @@
+package com.ncwu.predictionservice.config;
+
+import com.ncwu.common.redis.RedisChannelListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * redis 订阅配置
+ * <p>
+ * 服务内唯一的订阅容器，注册公共组件声明的订阅(缓存版本号)
+ *
+ * @author jingxu
+ * @version 1.0.0
+ * @since 2026/4/20
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ObjectProvider<RedisChannelListener> sharedListeners) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        RedisChannelListener.registerAll(container, sharedListeners);
+        return container;
+    }
+}
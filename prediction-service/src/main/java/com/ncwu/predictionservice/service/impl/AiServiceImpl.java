@@ -3,6 +3,7 @@ package com.ncwu.predictionservice.service.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ncwu.common.cache.NamespaceEpoch;
 import com.ncwu.common.domain.vo.Result;
 import com.ncwu.common.apis.iot_service.IotDataService;
 import com.ncwu.predictionservice.agent.WaterAgent;
@@ -40,15 +41,14 @@ public class AiServiceImpl implements AiService {
     private final RedissonClient redissonClient;
     private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
+    private final NamespaceEpoch namespaceEpoch;
 
     @DubboReference(version = "1.0.0", timeout = 10000)
     private IotDataService iotDataService;
 
-    String keyPrefix = "WaterPredictionUsage:";
-
     @Override
     public Result<UsageVO> predictTomorrowWaterUsage(List<Double> usage, int campus) {
-        String json = redisTemplate.opsForValue().get(keyPrefix + campus);
+        String json = redisTemplate.opsForValue().get(namespaceEpoch.key(NamespaceEpoch.PREDICTION_USAGE, campus));
 
         if (json == null || json.isEmpty()) {
             return generateAndCachePrediction(usage, campus);
@@ -187,7 +187,8 @@ public class AiServiceImpl implements AiService {
         UsageBO usageBO = new UsageBO(predictedValue, LocalDateTime.now().plusMinutes(5));
 
         try {
-            redisTemplate.opsForValue().set(keyPrefix + campus, objectMapper.writeValueAsString(usageBO));
+            redisTemplate.opsForValue().set(namespaceEpoch.key(NamespaceEpoch.PREDICTION_USAGE, campus),
+                    objectMapper.writeValueAsString(usageBO), 1, TimeUnit.HOURS);
         } catch (JsonProcessingException e) {
             log.error("Failed to cache prediction for campus {}: {}", campus, e.getMessage());
         }